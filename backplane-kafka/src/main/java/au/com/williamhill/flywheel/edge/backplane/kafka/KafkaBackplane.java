@@ -126,7 +126,9 @@ public final class KafkaBackplane implements Backplane, RecordHandler<String, Ka
       
       if (! data.getSource().equals(source)) {
         if (LOG.isTraceEnabled()) LOG.trace("rx {}", data);
-        if (data.isText()) {
+        if (data.isTextUtf8()) {
+          connector.publishText(data.getTopic(), data.getTextPayloadUtf8());
+        } else if (data.isText()) {
           connector.publish(data.getTopic(), data.getTextPayload());
         } else {
           connector.publish(data.getTopic(), data.getBinaryPayload());
@@ -1,5 +1,7 @@
 package au.com.williamhill.flywheel.edge.backplane.kafka;
 
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
 
 public final class KafkaData {
@@ -13,6 +15,9 @@ public final class KafkaData {
   
   private final String textPayload;
   
+  /** The UTF-8 encoding of the text payload, if it was received as bytes; never modified. */
+  private final ByteBuffer textPayloadUtf8;
+  
   private final long timestamp;
   
   private final long expiry;
@@ -25,6 +30,7 @@ public final class KafkaData {
     topic = null;
     binaryPayload = null;
     textPayload = null;
+    textPayloadUtf8 = null;
     timestamp = 0;
     expiry = 0;
     this.error = error;
@@ -40,6 +46,35 @@ public final class KafkaData {
     this.topic = topic;
     this.binaryPayload = binaryPayload;
     this.textPayload = textPayload;
+    textPayloadUtf8 = null;
+    this.timestamp = timestamp;
+    this.expiry = expiry;
+    error = null;
+  }
+  
+  /**
+   *  Creates a text message over the UTF-8 encoding of its payload, which is carried as-is and
+   *  only decoded if a string is asked for.
+   *  
+   *  @param id The message ID.
+   *  @param source The source node.
+   *  @param topic The topic.
+   *  @param textPayloadUtf8 The UTF-8 encoded payload, from its position to its limit; must not
+   *                         be modified once handed over.
+   *  @param timestamp The send time.
+   *  @param expiry The expiry time.
+   */
+  public KafkaData(String id, String source, String topic, ByteBuffer textPayloadUtf8, 
+                   long timestamp, long expiry) {
+    if (textPayloadUtf8 == null)
+      throw new IllegalArgumentException("'textPayloadUtf8' must be assigned");
+    
+    this.id = id;
+    this.source = source;
+    this.topic = topic;
+    binaryPayload = null;
+    textPayload = null;
+    this.textPayloadUtf8 = textPayloadUtf8.slice();
     this.timestamp = timestamp;
     this.expiry = expiry;
     error = null;
@@ -66,7 +101,17 @@ public final class KafkaData {
   }
   
   public boolean isText() {
-    return textPayload != null;
+    return textPayload != null || textPayloadUtf8 != null;
+  }
+  
+  /**
+   *  Determines whether the text payload is held in its UTF-8 encoding, in which case
+   *  {@link #getTextPayloadUtf8()} is free and {@link #getTextPayload()} decodes it.
+   *  
+   *  @return True if the text payload is held as bytes.
+   */
+  public boolean isTextUtf8() {
+    return textPayloadUtf8 != null;
   }
 
   public byte[] getBinaryPayload() {
@@ -74,7 +119,28 @@ public final class KafkaData {
   }
 
   public String getTextPayload() {
-    return textPayload;
+    if (textPayloadUtf8 != null) {
+      return StandardCharsets.UTF_8.decode(textPayloadUtf8.duplicate()).toString();
+    } else {
+      return textPayload;
+    }
+  }
+  
+  /**
+   *  Obtains the UTF-8 encoding of the text payload, encoding it if the payload is held as a 
+   *  string.
+   *  
+   *  @return A read-only buffer, positioned at the start of the payload; null if this isn't a
+   *          text message.
+   */
+  public ByteBuffer getTextPayloadUtf8() {
+    if (textPayloadUtf8 != null) {
+      return textPayloadUtf8.asReadOnlyBuffer();
+    } else if (textPayload != null) {
+      return ByteBuffer.wrap(textPayload.getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    } else {
+      return null;
+    }
   }
 
   public long getTimestamp() {
@@ -92,7 +158,7 @@ public final class KafkaData {
   @Override
   public String toString() {
     return "KafkaData [id=" + id + ", source=" + source + ", topic=" + topic + ", binaryPayload="
-           + Arrays.toString(binaryPayload) + ", textPayload=" + textPayload + ", timestamp=" + timestamp + ", expiry="
+           + Arrays.toString(binaryPayload) + ", textPayload=" + getTextPayload() + ", timestamp=" + timestamp + ", expiry="
            + expiry + "]";
   }
 }
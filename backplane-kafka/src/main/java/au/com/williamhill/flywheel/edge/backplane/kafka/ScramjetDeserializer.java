@@ -1,5 +1,8 @@
 package au.com.williamhill.flywheel.edge.backplane.kafka;
 
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import org.apache.kafka.common.serialization.*;
@@ -9,19 +12,22 @@ import com.google.gson.*;
 import au.com.williamhill.flywheel.edge.backplane.scramjet.*;
 
 public final class ScramjetDeserializer implements Deserializer<KafkaData> {
-  private final StringDeserializer s = new StringDeserializer();
+  /** Exposes the written bytes without copying them. */
+  private static final class Utf8Output extends ByteArrayOutputStream {
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
   
   private final Gson gson = ScramjetMessage.defaultGsonBuilder().create();
 
   @Override
-  public void configure(Map<String, ?> configs, boolean isKey) {
-    s.configure(configs, isKey);
-  }
+  public void configure(Map<String, ?> configs, boolean isKey) {}
 
   @Override
   public KafkaData deserialize(String topic, byte[] data) {
     try {
-      final String json = s.deserialize(topic, data);
+      final Reader json = new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8);
       final ScramjetMessage msg = ScramjetMessage.fromJson(gson, json);
       return toKafka(msg);
     } catch(Throwable e) {
@@ -29,19 +35,24 @@ public final class ScramjetDeserializer implements Deserializer<KafkaData> {
     }
   }
   
-  private KafkaData toKafka(ScramjetMessage msg) {
+  private KafkaData toKafka(ScramjetMessage msg) throws IOException {
     final ScramjetPushUpdate update = (ScramjetPushUpdate) msg.getPayload();
     final Object payload = extractPayload(update.getPayload());
+    final long timestamp = msg.getSentAt().getTime();
+    final long expiry = timestamp + update.getTimeToLive() * 1000l;
+    if (payload instanceof ByteBuffer) {
+      return new KafkaData(msg.getId(), msg.getPublisher(), update.getTopic(), 
+                           (ByteBuffer) payload, timestamp, expiry);
+    }
+    
     final boolean text = payload instanceof String;
     final byte[] binaryPayload = text ? null : (byte[]) payload;
     final String textPayload = text ? (String) payload : null;
-    final long timestamp = msg.getSentAt().getTime();
-    final long expiry = timestamp + update.getTimeToLive() * 1000l;
     return new KafkaData(msg.getId(), msg.getPublisher(), update.getTopic(), 
                          binaryPayload, textPayload, timestamp, expiry);
   }
   
-  private Object extractPayload(Object payload) {
+  private Object extractPayload(Object payload) throws IOException {
     if (payload instanceof String) {
       return payload;
     } else if (payload instanceof Map) {
@@ -57,12 +68,22 @@ public final class ScramjetDeserializer implements Deserializer<KafkaData> {
     }
   }
   
-  private String toJson(Object obj) {
-    return gson.toJson(obj);
+  /**
+   *  Writes a structured payload straight into its UTF-8 encoding, which is then carried as a 
+   *  text payload without ever being held as a string.
+   *  
+   *  @param obj The payload.
+   *  @return The UTF-8 encoded JSON.
+   *  @throws IOException If an I/O error occurs.
+   */
+  private ByteBuffer toJson(Object obj) throws IOException {
+    final Utf8Output out = new Utf8Output();
+    try (Writer json = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      gson.toJson(obj, json);
+    }
+    return out.toByteBuffer();
   }
 
   @Override
-  public void close() {
-    s.close();
-  }
+  public void close() {}
 }
@@ -1,7 +1,10 @@
 package au.com.williamhill.flywheel.edge.backplane.kafka;
 
+import java.io.*;
+import java.nio.charset.*;
 import java.util.*;
 
+import org.apache.kafka.common.errors.*;
 import org.apache.kafka.common.serialization.*;
 
 import com.google.gson.*;
@@ -9,21 +12,23 @@ import com.google.gson.*;
 import au.com.williamhill.flywheel.edge.backplane.scramjet.*;
 
 public final class ScramjetSerializer implements Serializer<KafkaData> {
-  private final StringSerializer s = new StringSerializer();
   private final Gson gson = ScramjetMessage.defaultGsonBuilder().create();
 
   @Override
-  public void configure(Map<String, ?> configs, boolean isKey) {
-    s.configure(configs, isKey);
-  }
+  public void configure(Map<String, ?> configs, boolean isKey) {}
   
   @Override
   public byte[] serialize(String topic, KafkaData data) {
     if (data.isError()) throw new IllegalArgumentException("Cannot serialize an error");
     
     final ScramjetMessage msg = toScramjet(data);
-    final String json = msg.toJson(gson);
-    return s.serialize(topic, json);
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (Writer json = new OutputStreamWriter(out, StandardCharsets.UTF_8)) {
+      msg.toJson(gson, json);
+    } catch (IOException e) {
+      throw new SerializationException(e);
+    }
+    return out.toByteArray();
   }
   
   private static ScramjetMessage toScramjet(KafkaData data) {
@@ -37,7 +42,5 @@ public final class ScramjetSerializer implements Serializer<KafkaData> {
   }
 
   @Override
-  public void close() {
-    s.close(); 
-  }
+  public void close() {}
 }
@@ -1,5 +1,6 @@
 package au.com.williamhill.flywheel.edge.backplane.scramjet;
 
+import java.io.*;
 import java.util.*;
 
 import com.google.gson.*;
@@ -104,10 +105,18 @@ public final class ScramjetMessage {
     return gson.fromJson(json, ScramjetMessage.class);
   }
   
+  public static ScramjetMessage fromJson(Gson gson, Reader json) {
+    return gson.fromJson(json, ScramjetMessage.class);
+  }
+  
   public String toJson(Gson gson) {
     return gson.toJson(this);
   }
   
+  public void toJson(Gson gson, Appendable json) {
+    gson.toJson(this, json);
+  }
+  
   public static GsonBuilder defaultGsonBuilder() {
     return new GsonBuilder()
         .disableHtmlEscaping()
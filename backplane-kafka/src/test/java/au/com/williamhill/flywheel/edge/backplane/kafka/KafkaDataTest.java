@@ -1,5 +1,10 @@
 package au.com.williamhill.flywheel.edge.backplane.kafka;
 
+import static org.junit.Assert.*;
+
+import java.nio.*;
+import java.nio.charset.*;
+
 import org.junit.*;
 
 public final class KafkaDataTest {
@@ -7,4 +12,26 @@ public final class KafkaDataTest {
   public void testConstructorValidation() {
     new KafkaData(null, null, null, null, null, 0, 0);
   }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testUtf8ConstructorValidation() {
+    new KafkaData(null, null, null, (ByteBuffer) null, 0, 0);
+  }
+  
+  @Test
+  public void testTextPayloadUtf8() {
+    final String payload = "caf\u00e9";
+    final byte[] utf8 = payload.getBytes(StandardCharsets.UTF_8);
+    final KafkaData fromBytes = new KafkaData("id", "source", "topic", ByteBuffer.wrap(utf8), 0, 0);
+    assertTrue(fromBytes.isText());
+    assertTrue(fromBytes.isTextUtf8());
+    assertEquals(payload, fromBytes.getTextPayload());
+    assertEquals(ByteBuffer.wrap(utf8), fromBytes.getTextPayloadUtf8());
+    assertTrue(fromBytes.getTextPayloadUtf8().isReadOnly());
+    
+    final KafkaData fromString = new KafkaData("id", "source", "topic", null, payload, 0, 0);
+    assertTrue(fromString.isText());
+    assertFalse(fromString.isTextUtf8());
+    assertEquals(ByteBuffer.wrap(utf8), fromString.getTextPayloadUtf8());
+  }
 }
@@ -3,6 +3,8 @@ package au.com.williamhill.flywheel.edge.backplane.kafka;
 import static org.junit.Assert.*;
 
 import java.io.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import org.apache.kafka.common.serialization.*;
@@ -42,6 +44,16 @@ public final class ScramjetSerializerTest implements TestSupport {
                        65_000l));
   }
   
+  @Test
+  public void testTextUtf8() {
+    test(new KafkaData(UUID.randomUUID().toString(),
+                       "testSource",
+                       "testRoute",
+                       ByteBuffer.wrap("caf\u00e9 \"payload\"".getBytes(StandardCharsets.UTF_8)),
+                       30_000l,
+                       65_000l));
+  }
+  
   @Test
   public void testNegativeTtl() {
     test(new KafkaData(UUID.randomUUID().toString(),
@@ -99,6 +111,7 @@ public final class ScramjetSerializerTest implements TestSupport {
   public void testDeserializeStringPayload() throws IOException {
     final String json = getJson("string-payload.json");
     final KafkaData r = deserializer.deserialize("test", json.getBytes());
+    assertFalse(r.isTextUtf8());
     assertEquals("race started", r.getTextPayload());
   }
   
@@ -106,6 +119,7 @@ public final class ScramjetSerializerTest implements TestSupport {
   public void testDeserializeJsonObjectPayload() throws IOException {
     final String json = getJson("json-object-payload.json");
     final KafkaData r = deserializer.deserialize("test", json.getBytes());
+    assertTrue(r.isTextUtf8());
     assertEquals("{\"a\":\"b\"}", r.getTextPayload());
   }
   
@@ -113,6 +127,7 @@ public final class ScramjetSerializerTest implements TestSupport {
   public void testDeserializeJsonArrayPayload() throws IOException {
     final String json = getJson("json-array-payload.json");
     final KafkaData r = deserializer.deserialize("test", json.getBytes());
+    assertTrue(r.isTextUtf8());
     assertEquals("[0.0,1.0,2.0]", r.getTextPayload());
   }
   
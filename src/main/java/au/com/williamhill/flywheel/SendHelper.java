@@ -6,6 +6,7 @@ import java.util.concurrent.*;
 import com.obsidiandynamics.socketx.*;
 
 import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.util.*;
 
 public final class SendHelper {
   private SendHelper() {}
@@ -19,8 +20,22 @@ public final class SendHelper {
   }
   
   public static void sendAuto(Frame frame, XEndpoint endpoint, Wire wire, SendCallback callback) {
+    sendAuto(frame, endpoint, wire, wrapCallback(callback));
+  }
+  
+  /**
+   *  Sends a frame with a callback that has already been adapted for the endpoint, which 
+   *  allows a sender that always uses the same callback to adapt it once, rather than on 
+   *  every send.
+   *  
+   *  @param frame The frame to send.
+   *  @param endpoint The endpoint to send to.
+   *  @param wire The wire to encode with.
+   *  @param callback The endpoint callback; may be null.
+   */
+  public static void sendAuto(Frame frame, XEndpoint endpoint, Wire wire, XSendCallback callback) {
     if (frame instanceof TextFrame) {
-      send((TextFrame) frame, endpoint, wire, callback);
+      endpoint.send(wire.encode((TextFrame) frame), callback);
     } else {
       send((BinaryFrame) frame, endpoint, wire, callback);
     }
@@ -40,14 +55,77 @@ public final class SendHelper {
 
   public static CompletableFuture<SendOutcome> send(BinaryEncodedFrame frame, XEndpoint endpoint, Wire wire) {
     final CompletableFuture<SendOutcome> f = new CompletableFuture<>();
-    final ByteBuffer encoded = wire.encode(frame);
-    endpoint.send(encoded, wrapFuture(f));
+    if (wire.getBufferPool() != null) {
+      final PooledBuffer encoded = wire.encodePooled(frame);
+      endpoint.send(encoded.view(), releasing(encoded, wrapFuture(f)));
+    } else {
+      final ByteBuffer encoded = wire.encode(frame);
+      endpoint.send(encoded, wrapFuture(f));
+    }
     return f;
   }
   
   public static void send(BinaryEncodedFrame frame, XEndpoint endpoint, Wire wire, SendCallback callback) {
-    final ByteBuffer encoded = wire.encode(frame);
-    endpoint.send(encoded, wrapCallback(callback));
+    send(frame, endpoint, wire, wrapCallback(callback));
+  }
+  
+  private static void send(BinaryEncodedFrame frame, XEndpoint endpoint, Wire wire, XSendCallback callback) {
+    if (wire.getBufferPool() != null) {
+      final PooledBuffer encoded = wire.encodePooled(frame);
+      endpoint.send(encoded.view(), releasing(encoded, callback));
+    } else {
+      final ByteBuffer encoded = wire.encode(frame);
+      endpoint.send(encoded, callback);
+    }
+  }
+  
+  /**
+   *  Sends a frame of any type in version 2 of the binary protocol.
+   *  
+   *  @param frame The frame to send.
+   *  @param endpoint The endpoint to send to.
+   *  @param wire The wire to encode with.
+   *  @return A future, completed with the outcome of the send.
+   */
+  public static CompletableFuture<SendOutcome> sendV2(Frame frame, XEndpoint endpoint, Wire wire) {
+    final CompletableFuture<SendOutcome> f = new CompletableFuture<>();
+    endpoint.send(wire.encodeV2(frame), wrapFuture(f));
+    return f;
+  }
+  
+  public static void sendV2(Frame frame, XEndpoint endpoint, Wire wire, SendCallback callback) {
+    sendV2(frame, endpoint, wire, wrapCallback(callback));
+  }
+  
+  public static void sendV2(Frame frame, XEndpoint endpoint, Wire wire, XSendCallback callback) {
+    endpoint.send(wire.encodeV2(frame), callback);
+  }
+  
+  /**
+   *  Wraps a callback so that the given buffer is released once the endpoint is done with it,
+   *  whatever the outcome of the send.
+   *  
+   *  @param buffer The buffer being sent.
+   *  @param callback The callback to wrap; may be null.
+   *  @return The wrapped callback.
+   */
+  static XSendCallback releasing(PooledBuffer buffer, XSendCallback callback) {
+    return new XSendCallback() {
+      @Override public void onComplete(XEndpoint endpoint) {
+        buffer.release();
+        if (callback != null) callback.onComplete(endpoint);
+      }
+
+      @Override public void onError(XEndpoint endpoint, Throwable cause) {
+        buffer.release();
+        if (callback != null) callback.onError(endpoint, cause);
+      }
+
+      @Override public void onSkip(XEndpoint endpoint) {
+        buffer.release();
+        if (callback != null) callback.onSkip(endpoint);
+      }
+    };
   }
   
   static XSendCallback wrapFuture(CompletableFuture<SendOutcome> f) {
@@ -66,7 +144,13 @@ public final class SendHelper {
     };
   }
   
-  static XSendCallback wrapCallback(SendCallback callback) {
+  /**
+   *  Adapts a {@link SendCallback} for use with an {@link XEndpoint}.
+   *  
+   *  @param callback The callback; may be null.
+   *  @return The adapted callback, or null if the given callback is null.
+   */
+  public static XSendCallback wrapCallback(SendCallback callback) {
     if (callback != null) {
       return new XSendCallback() {
         @Override public void onComplete(XEndpoint endpoint) {
@@ -0,0 +1,216 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+
+import com.obsidiandynamics.indigo.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+/**
+ *  Group-commits subscription changes to the topic routers on behalf of the
+ *  {@link RoutingInterchange}.<p>
+ *
+ *  Binds arriving within a short window, along with the unsubscriptions that follow closed
+ *  connections, are coalesced into at most one {@link BatchSubscribe} and one
+ *  {@link BatchUnsubscribe} per root shard. The routers then split each batch by subtopic on
+ *  the way down, so a storm of reconnecting clients costs a handful of messages per level,
+ *  rather than one per topic per client.<p>
+ *
+ *  A bind is complete once every shard batch that it took part in has been acknowledged.
+ *  Binds from the same subscriber are never mixed into the same window, which preserves the
+ *  order in which a subscriber's changes are applied.
+ */
+final class BindBatcher extends Thread {
+  private static final Logger LOG = LoggerFactory.getLogger(BindBatcher.class);
+
+  /** The most binds that are drained from the queue in one go. */
+  private static final int MAX_DRAINED = 10_000;
+
+  static final class PendingBind {
+    final Subscriber subscriber;
+
+    /** The changes to the routed filters. */
+    final RoutingSubscription.Plan plan;
+
+    /** Completed once the bind has been applied. */
+    final CompletableFuture<Void> future;
+
+    /** The number of unacknowledged shard batches; only accessed by the ingress actor. */
+    private int outstanding;
+
+    /** The first fault raised by any of the shard batches; only accessed by the ingress actor. */
+    private Fault fault;
+
+    PendingBind(Subscriber subscriber, RoutingSubscription.Plan plan, CompletableFuture<Void> future) {
+      this.subscriber = subscriber;
+      this.plan = plan;
+      this.future = future;
+    }
+  }
+
+  private static final class ShardBatch<E> {
+    final List<E> entries = new ArrayList<>();
+
+    final Set<PendingBind> binds = new LinkedHashSet<>();
+
+    void add(E entry, PendingBind bind) {
+      entries.add(entry);
+      if (binds.add(bind)) bind.outstanding++;
+    }
+  }
+
+  private final ActorSystem system;
+
+  private final RootShards shards;
+
+  private final int windowMillis;
+
+  private final BlockingQueue<PendingBind> queue = new LinkedBlockingQueue<>();
+
+  private volatile boolean running = true;
+
+  BindBatcher(ActorSystem system, RootShards shards, int windowMillis) {
+    super(String.format("BindBatcher[window=%dms]", windowMillis));
+    this.system = system;
+    this.shards = shards;
+    this.windowMillis = windowMillis;
+    setDaemon(true);
+  }
+
+  void enqueue(PendingBind bind) {
+    queue.add(bind);
+  }
+
+  @Override
+  public void run() {
+    final List<PendingBind> drained = new ArrayList<>();
+    while (running || ! queue.isEmpty()) {
+      try {
+        drained.add(queue.take());
+        if (running && windowMillis != 0) collect(drained);
+      } catch (InterruptedException e) {
+        // interrupted by close() - flush whatever is left
+      }
+
+      queue.drainTo(drained, MAX_DRAINED - drained.size());
+      if (! drained.isEmpty()) {
+        dispatch(new ArrayList<>(drained));
+        drained.clear();
+      }
+    }
+  }
+
+  /**
+   *  Collects further binds until the window closes, or until {@link #MAX_DRAINED} binds have
+   *  been collected, whichever comes first.
+   *
+   *  @param drained The binds collected so far, starting with the one that opened the window.
+   *  @throws InterruptedException If interrupted by {@link #close()}.
+   */
+  private void collect(List<PendingBind> drained) throws InterruptedException {
+    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(windowMillis);
+    while (drained.size() < MAX_DRAINED) {
+      queue.drainTo(drained, MAX_DRAINED - drained.size());
+      final long remaining = deadline - System.nanoTime();
+      if (remaining <= 0 || drained.size() >= MAX_DRAINED) return;
+      
+      final PendingBind next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+      if (next == null) return;
+      drained.add(next);
+    }
+  }
+
+  /**
+   *  Splits the drained binds into windows with at most one bind per subscriber, and sends
+   *  them from a single ingress actor, so that successive windows arrive at the roots in order.
+   */
+  private void dispatch(List<PendingBind> binds) {
+    final List<List<PendingBind>> windows = new ArrayList<>();
+    List<PendingBind> window = new ArrayList<>();
+    final Set<Subscriber> subscribers = new HashSet<>();
+    for (PendingBind bind : binds) {
+      if (! subscribers.add(bind.subscriber)) {
+        windows.add(window);
+        window = new ArrayList<>();
+        subscribers.clear();
+        subscribers.add(bind.subscriber);
+      }
+      window.add(bind);
+    }
+    windows.add(window);
+
+    if (LOG.isTraceEnabled()) LOG.trace("Dispatching {} binds in {} windows", binds.size(), windows.size());
+    final List<Map<ActorRef, ShardBatch<Subscribe>>> subscribes = new ArrayList<>(windows.size());
+    final List<Map<ActorRef, ShardBatch<Unsubscribe>>> unsubscribes = new ArrayList<>(windows.size());
+    for (List<PendingBind> w : windows) {
+      final Map<ActorRef, ShardBatch<Subscribe>> s = new LinkedHashMap<>();
+      final Map<ActorRef, ShardBatch<Unsubscribe>> u = new LinkedHashMap<>();
+      for (PendingBind bind : w) {
+        final Subscriber subscriber = bind.subscriber;
+        for (Topic topic : bind.plan.subscribe) {
+          for (ActorRef routerRef : shards.routersFor(topic)) {
+            s.computeIfAbsent(routerRef, k -> new ShardBatch<>()).add(new Subscribe(topic, subscriber), bind);
+          }
+        }
+        for (Topic topic : bind.plan.unsubscribe) {
+          for (ActorRef routerRef : shards.routersFor(topic)) {
+            u.computeIfAbsent(routerRef, k -> new ShardBatch<>()).add(new Unsubscribe(topic, subscriber), bind);
+          }
+        }
+      }
+      subscribes.add(s);
+      unsubscribes.add(u);
+    }
+
+    system.ingress(a -> {
+      for (int i = 0; i < windows.size(); i++) {
+        for (Map.Entry<ActorRef, ShardBatch<Subscribe>> entry : subscribes.get(i).entrySet()) {
+          final ShardBatch<Subscribe> batch = entry.getValue();
+          a.to(entry.getKey()).ask(new BatchSubscribe(batch.entries))
+          .onFault(f -> batch.binds.forEach(b -> faulted(b, f)))
+          .onResponse(r -> batch.binds.forEach(this::acknowledged));
+        }
+        for (Map.Entry<ActorRef, ShardBatch<Unsubscribe>> entry : unsubscribes.get(i).entrySet()) {
+          final ShardBatch<Unsubscribe> batch = entry.getValue();
+          a.to(entry.getKey()).ask(new BatchUnsubscribe(batch.entries))
+          .onFault(f -> batch.binds.forEach(b -> faulted(b, f)))
+          .onResponse(r -> batch.binds.forEach(this::acknowledged));
+        }
+      }
+    });
+  }
+
+  private void faulted(PendingBind bind, Fault fault) {
+    LOG.warn("Fault while applying bind for {}: {}", bind.subscriber, fault);
+    if (bind.fault == null) bind.fault = fault;
+    acknowledged(bind);
+  }
+
+  /**
+   *  Accounts for one of the bind's shard batches. Once all have been accounted for, the bind
+   *  is completed, exceptionally if any of its batches faulted.
+   */
+  private void acknowledged(PendingBind bind) {
+    if (--bind.outstanding != 0) return;
+    
+    if (bind.fault != null) {
+      bind.future.completeExceptionally(new FaultException(bind.fault.getReason()));
+    } else {
+      bind.future.complete(null);
+    }
+  }
+
+  /**
+   *  Flushes any pending binds and stops the batcher.
+   *
+   *  @throws InterruptedException If interrupted while waiting for the batcher to stop.
+   */
+  void close() throws InterruptedException {
+    running = false;
+    interrupt();
+    join();
+  }
+}
@@ -2,47 +2,192 @@ package au.com.williamhill.flywheel.edge;
 
 import java.util.concurrent.*;
 
+import org.slf4j.*;
+
+import com.obsidiandynamics.socketx.*;
+
 import au.com.williamhill.flywheel.*;
 import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.frame.Wire.*;
+import au.com.williamhill.flywheel.topic.*;
 
 public final class EdgeNexus implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(EdgeNexus.class);
+  
   private final EdgeNode node;
   
   private final Peer peer;
   
   private final Session session = new Session();
+  
+  /** Flow control for routed deliveries; null if deliveries are sent directly. */
+  private final OutboundQueue outbound;
+  
+  /** Receives routed deliveries in-process; null if deliveries are sent to the peer. */
+  private final Subscriber subscriber;
+  
+  /** The outbound queue's completion callback, adapted for the endpoint on first use. */
+  private XSendCallback queuedCallback;
+  
+  /** The protocol version that frames are sent to the peer in. */
+  private volatile Protocol protocol = Protocol.V1;
 
   public EdgeNexus(EdgeNode node, Peer peer) {
+    this(node, peer, null);
+  }
+
+  EdgeNexus(EdgeNode node, Peer peer, Subscriber subscriber) {
     this.node = node;
     this.peer = peer;
+    this.subscriber = subscriber;
+    final OutboundConfig outboundConfig = node != null ? node.getOutboundConfig() : null;
+    if (outboundConfig != null && outboundConfig.isQueued() && peer.hasEndpoint()) {
+      outbound = new OutboundQueue(outboundConfig, this::sendQueued, this::disconnectSlowConsumer);
+    } else {
+      outbound = null;
+    }
   }
   
   public Session getSession() {
     return session;
   }
 
+  /**
+   *  Obtains the protocol version that frames are sent to the peer in. A nexus starts out in 
+   *  version 1, and is switched to version 2 once the peer sends a version 2 frame.
+   *  
+   *  @return The protocol version.
+   */
+  public Protocol getProtocol() {
+    return protocol;
+  }
+  
+  void setProtocol(Protocol protocol) {
+    this.protocol = protocol;
+  }
+  
+  private boolean isV2() {
+    return protocol == Protocol.V2;
+  }
+
   public CompletableFuture<SendOutcome> sendAuto(Frame frame) {
+    if (isV2()) return SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire());
     return SendHelper.sendAuto(frame, peer.getEndpoint(), node.getWire());
   }
 
   public void sendAuto(Frame frame, SendCallback callback) {
-    SendHelper.sendAuto(frame, peer.getEndpoint(), node.getWire(), callback);
+    if (isV2()) {
+      SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire(), callback);
+    } else {
+      SendHelper.sendAuto(frame, peer.getEndpoint(), node.getWire(), callback);
+    }
+  }
+  
+  /**
+   *  Sends a frame on behalf of the outbound queue, which always passes the same callback; it 
+   *  is adapted once, so that sends through the queue don't allocate a callback each.
+   */
+  private void sendQueued(Frame frame, SendCallback callback) {
+    XSendCallback adapted = queuedCallback;
+    if (adapted == null) queuedCallback = adapted = SendHelper.wrapCallback(callback);
+    
+    if (isV2()) {
+      SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire(), adapted);
+    } else {
+      SendHelper.sendAuto(frame, peer.getEndpoint(), node.getWire(), adapted);
+    }
+  }
+  
+  /**
+   *  Delivers a frame that was routed to this nexus by the {@link Interchange}. Unlike the
+   *  {@code send} methods, deliveries are subject to the node's {@link OutboundConfig}, and
+   *  may be queued, conflated or dropped if the client is not keeping up.
+   *  
+   *  @param frame The frame to deliver.
+   */
+  public void deliver(Frame frame) {
+    if (outbound != null) {
+      outbound.enqueue(frame);
+    } else {
+      sendAuto(frame, null);
+    }
+  }
+  
+  /**
+   *  Delivers a message that was routed to this nexus by the {@link Interchange}. A local 
+   *  subscriber is handed the delivery as is; otherwise its frame is delivered to the peer.
+   *  
+   *  @param delivery The delivery, whose payload is a {@link Frame}.
+   */
+  public void deliver(Delivery delivery) {
+    if (subscriber != null) {
+      subscriber.accept(delivery);
+    } else {
+      deliver((Frame) delivery.getPayload());
+    }
+  }
+  
+  /**
+   *  Obtains the number of deliveries that were discarded under the overflow policy.
+   *  
+   *  @return The number of dropped frames.
+   */
+  public long getDroppedFrames() {
+    return outbound != null ? outbound.getDropped() : 0;
+  }
+  
+  /**
+   *  Obtains the number of deliveries that were superseded by a newer frame for the same
+   *  topic, under last-value conflation.
+   *  
+   *  @return The number of conflated frames.
+   */
+  public long getConflatedFrames() {
+    return outbound != null ? outbound.getConflated() : 0;
+  }
+  
+  /**
+   *  Obtains the number of deliveries that are queued, awaiting room in the send window.
+   *  
+   *  @return The number of queued frames.
+   */
+  public int getQueuedFrames() {
+    return outbound != null ? outbound.getQueued() : 0;
+  }
+  
+  private void disconnectSlowConsumer() {
+    LOG.warn("{}: outbound queue overflowed; disconnecting", this);
+    try {
+      close();
+    } catch (Exception e) {
+      LOG.warn("Error closing nexus", e);
+    }
   }
   
   public CompletableFuture<SendOutcome> send(TextEncodedFrame frame) {
+    if (isV2()) return SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire());
     return SendHelper.send(frame, peer.getEndpoint(), node.getWire());
   }
   
   public void send(TextEncodedFrame frame, SendCallback callback) {
-    SendHelper.send(frame, peer.getEndpoint(), node.getWire(), callback);
+    if (isV2()) {
+      SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire(), callback);
+    } else {
+      SendHelper.send(frame, peer.getEndpoint(), node.getWire(), callback);
+    }
   }
   
   public CompletableFuture<SendOutcome> send(BinaryEncodedFrame frame) {
+    if (isV2()) return SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire());
     return SendHelper.send(frame, peer.getEndpoint(), node.getWire());
   }
   
   public void send(BinaryEncodedFrame frame, SendCallback callback) {
-    SendHelper.send(frame, peer.getEndpoint(), node.getWire(), callback);
+    if (isV2()) {
+      SendHelper.sendV2(frame, peer.getEndpoint(), node.getWire(), callback);
+    } else {
+      SendHelper.send(frame, peer.getEndpoint(), node.getWire(), callback);
+    }
   }
   
   public boolean isLocal() {
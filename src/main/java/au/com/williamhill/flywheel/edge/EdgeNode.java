@@ -3,6 +3,7 @@ package au.com.williamhill.flywheel.edge;
 import java.nio.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.*;
 
 import org.slf4j.*;
 
@@ -16,7 +17,9 @@ import au.com.williamhill.flywheel.edge.backplane.*;
 import au.com.williamhill.flywheel.edge.plugin.*;
 import au.com.williamhill.flywheel.frame.*;
 import au.com.williamhill.flywheel.frame.Error;
+import au.com.williamhill.flywheel.frame.Wire.*;
 import au.com.williamhill.flywheel.remote.*;
+import au.com.williamhill.flywheel.topic.*;
 
 public final class EdgeNode implements AutoCloseable, BackplaneConnector {
   private static final Logger LOG = LoggerFactory.getLogger(RemoteNode.class);
@@ -35,10 +38,15 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
   
   private final Backplane backplane;
   
+  private final OutboundConfig outboundConfig;
+  
   private final List<EdgeNexus> nexuses = new CopyOnWriteArrayList<>();
   
   private final List<TopicListener> topicListeners = new ArrayList<>();
   
+  /** Whether the buffers received from the server may be retained beyond the callback. */
+  private final boolean ownsInboundBuffers;
+  
   private boolean loggingEnabled = true;
   
   private Plugin[] plugins;
@@ -50,7 +58,9 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
                                         AuthChain<PubAuthChain> pubAuthChain,
                                         AuthChain<SubAuthChain> subAuthChain,
                                         Backplane backplane,
-                                        Plugin[] plugins) throws Exception {
+                                        OutboundConfig outboundConfig,
+                                        Plugin[] plugins,
+                                        boolean ownsInboundBuffers) throws Exception {
     pubAuthChain.validate();
     subAuthChain.validate();
     this.wire = wire;
@@ -58,7 +68,9 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
     this.pubAuthChain = pubAuthChain;
     this.subAuthChain = subAuthChain;
     this.backplane = backplane;
+    this.outboundConfig = outboundConfig;
     this.plugins = plugins;
+    this.ownsInboundBuffers = ownsInboundBuffers;
     server = serverFactory.create(config, new XEndpointListener<E>() {
       @Override public void onConnect(E endpoint) {
         handleOpen(endpoint);
@@ -72,7 +84,7 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
             case BIND:
               if (frame instanceof BindFrame) {
                 final BindFrame bind = (BindFrame) frame;
-                handleBind(nexus, bind);
+                handleBind(nexus, bind, res -> nexus.send(res));
               } else {
                 if (loggingEnabled) LOG.warn("{}: unsupported frame {}", nexus, frame);
               }
@@ -96,7 +108,14 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
       @Override public void onBinary(E endpoint, ByteBuffer message) {
         final EdgeNexus nexus = endpoint.getContext();
         try {
-          final BinaryEncodedFrame frame = wire.decode(message);
+          // decoded frames are views over the buffer, which may be recycled once we return
+          final ByteBuffer buf = ownsInboundBuffers ? message : copyOf(message);
+          if (Wire.isV2(buf)) {
+            handleV2(nexus, wire.decodeV2(buf));
+            return;
+          }
+          
+          final BinaryEncodedFrame frame = wire.decode(buf);
           if (frame.getType() == FrameType.PUBLISH) {
             final PublishBinaryFrame pub = (PublishBinaryFrame) frame;
             handlePublish(nexus, pub);
@@ -131,6 +150,13 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
     initPlugins();
   }
   
+  private static ByteBuffer copyOf(ByteBuffer buf) {
+    final ByteBuffer copy = ByteBuffer.allocate(buf.remaining());
+    copy.put(buf.duplicate());
+    copy.flip();
+    return copy;
+  }
+  
   private void initAuthChains() throws Exception {
     final AuthConnector pubConnector = new AuthConnector() {
       @Override public Collection<String> getActiveTopics(EdgeNexus nexus) {
@@ -191,7 +217,7 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
     return server;
   }
   
-  private void handleBind(EdgeNexus nexus, BindFrame bind) {
+  private void handleBind(EdgeNexus nexus, BindFrame bind, Consumer<BindResponseFrame> respond) {
     if (loggingEnabled && LOG.isDebugEnabled()) LOG.debug("{}: bind {}", nexus, bind);
     final Session session = nexus.getSession();
     if (session == null) {
@@ -211,7 +237,7 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
       } else if (! session.getSessionId().equals(bind.getSessionId())) {
         if (loggingEnabled) LOG.warn("{}: attempted to change its session ID from {} to {}", 
                                      nexus, session.getSessionId(), bind.getSessionId());
-        nexus.send(new BindResponseFrame(bind.getMessageId(), new GeneralError("Cannot reassign session ID")));
+        respond.accept(new BindResponseFrame(bind.getMessageId(), new GeneralError("Cannot reassign session ID")));
         return;
       } else {
         newSessionId = null;
@@ -243,23 +269,27 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
       }
     }
     
-    authenticateSubTopics(nexus, bind.getMessageId(), toSubscribe, () -> {
+    authenticateSubTopics(nexus, bind.getMessageId(), toSubscribe, respond, () -> {
       final CompletableFuture<Void> f = interchange.onBind(nexus, toSubscribe, toUnsubscribe);
       f.whenComplete((void_, cause) -> {
         if (cause == null) {
           final BindResponseFrame bindRes = new BindResponseFrame(bind.getMessageId());
-          nexus.send(bindRes);
+          respond.accept(bindRes);
           fireBindEvent(nexus, bind, bindRes);
         } else {
           if (loggingEnabled) LOG.warn("{}: error handling bind {}", nexus, bind);
           if (loggingEnabled) LOG.warn("", cause);
-          fireBindEvent(nexus, bind, new BindResponseFrame(bind.getMessageId(), new GeneralError("Internal error")));
+          final BindResponseFrame bindRes = new BindResponseFrame(bind.getMessageId(), new GeneralError("Internal error"));
+          // remote clients aren't told of internal errors, but a local caller is waiting on the outcome
+          if (nexus.isLocal()) respond.accept(bindRes);
+          fireBindEvent(nexus, bind, bindRes);
         }
       });      
     });
   }
   
-  private void authenticateSubTopics(EdgeNexus nexus, UUID messageId, Set<String> topics, Runnable onSuccess) {
+  private void authenticateSubTopics(EdgeNexus nexus, UUID messageId, Set<String> topics, 
+                                     Consumer<BindResponseFrame> respond, Runnable onSuccess) {
     final CombinedMatches combined = subAuthChain.getMatches(topics);
     combined.invokeAll(nexus, errors -> {
       if (errors.isEmpty()) {
@@ -267,11 +297,32 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
       } else {
         if (loggingEnabled) LOG.warn("{}: subscriber authentication failed with errors {}, auth: {}", 
                                      nexus, errors, nexus.getSession().getCredentials());
-        nexus.send(new BindResponseFrame(messageId, errors));
+        respond.accept(new BindResponseFrame(messageId, errors));
       }
     });
   }
   
+  /**
+   *  Handles a frame received in version 2 of the binary protocol, switching the nexus to 
+   *  version 2 if it isn't already.
+   */
+  private void handleV2(EdgeNexus nexus, Frame frame) {
+    if (nexus.getProtocol() != Protocol.V2) {
+      if (loggingEnabled && LOG.isDebugEnabled()) LOG.debug("{}: switching to protocol {}", nexus, Protocol.V2);
+      nexus.setProtocol(Protocol.V2);
+    }
+    
+    if (frame instanceof BindFrame) {
+      handleBind(nexus, (BindFrame) frame, res -> nexus.send(res));
+    } else if (frame instanceof PublishTextFrame) {
+      handlePublish(nexus, (PublishTextFrame) frame);
+    } else if (frame instanceof PublishBinaryFrame) {
+      handlePublish(nexus, (PublishBinaryFrame) frame);
+    } else {
+      if (loggingEnabled) LOG.warn("{}: unsupported frame {}", nexus, frame);
+    }
+  }
+  
   private void handlePublish(EdgeNexus nexus, PublishTextFrame pub) {
     authenticatePubTopic(nexus, pub.getTopic(), () -> {
       interchange.onPublish(nexus, pub);
@@ -309,6 +360,10 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
     final EdgeNexus nexus = new EdgeNexus(this, new XEndpointPeer(endpoint));
     nexuses.add(nexus);
     endpoint.setContext(nexus);
+    handleOpen(nexus);
+  }
+  
+  private void handleOpen(EdgeNexus nexus) {
     interchange.onOpen(nexus);
     fireConnectEvent(nexus);
   }
@@ -365,7 +420,8 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
   }
 
   /**
-   *  Obtains the currently connected non-local nexuses.
+   *  Obtains the currently open nexuses: those of connected clients, and any in-process ones
+   *  opened with {@link #openLocal(Subscriber)}.
    *  
    *  @return List of nexuses.
    */
@@ -386,10 +442,100 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
     interchange.onPublish(localNexus, pub);
     firePublishEvent(localNexus, pub);
   }
+
+  @Override
+  public void publishText(String topic, ByteBuffer utf8) {
+    final PublishTextFrame pub = new PublishTextFrame(topic, utf8);
+    interchange.onPublish(localNexus, pub);
+    firePublishEvent(localNexus, pub);
+  }
+  
+  /**
+   *  Opens an in-process nexus, for consuming messages without a connection. Messages routed
+   *  to the nexus are handed to the given subscriber as {@link Delivery} objects, with a 
+   *  {@link TextFrame} or {@link BinaryFrame} payload, and are never encoded. The subscriber
+   *  is called from the interchange's threads, and shouldn't block.<p>
+   *  
+   *  Subscriptions are made with {@link #bindLocal(EdgeNexus, BindFrame)}, and the nexus is 
+   *  released by closing it, or else when the node is closed.
+   *  
+   *  @param subscriber The subscriber to deliver to.
+   *  @return The local nexus.
+   */
+  public EdgeNexus openLocal(Subscriber subscriber) {
+    final EdgeNexus[] nexus = { null };
+    nexus[0] = new EdgeNexus(this, new LocalPeer(() -> {
+      nexuses.remove(nexus[0]);
+      handleClose(nexus[0]);
+    }), subscriber);
+    nexuses.add(nexus[0]);
+    handleOpen(nexus[0]);
+    return nexus[0];
+  }
+  
+  /**
+   *  Binds a nexus opened with {@link #openLocal(Subscriber)}. As with a remote client, the 
+   *  bind's credentials are checked by the subscriber auth chain.
+   *  
+   *  @param nexus The local nexus.
+   *  @param bind The bind frame.
+   *  @return A future completed with the bind response, carrying any errors.
+   */
+  public CompletableFuture<BindResponseFrame> bindLocal(EdgeNexus nexus, BindFrame bind) {
+    if (! nexus.isLocal() || nexus == localNexus) {
+      throw new IllegalArgumentException("Not an in-process nexus: " + nexus);
+    }
+    final CompletableFuture<BindResponseFrame> f = new CompletableFuture<>();
+    handleBind(nexus, bind, f::complete);
+    return f;
+  }
+  
+  /**
+   *  Obtains a handle for publishing to the given topic repeatedly. Publishing through a handle
+   *  skips parsing the topic, and reuses the routing lookups from the last publish for as long 
+   *  as the subscriptions don't change.
+   *  
+   *  @param topic The topic, which may not contain wildcards.
+   *  @return The topic handle.
+   */
+  public TopicHandle handle(String topic) {
+    return new TopicHandle(topic);
+  }
+  
+  public void publish(TopicHandle handle, String payload) {
+    final PublishTextFrame pub = new PublishTextFrame(handle.getName(), payload);
+    interchange.onPublish(localNexus, handle, pub);
+    firePublishEvent(localNexus, pub);
+  }
+  
+  public void publish(TopicHandle handle, byte[] payload) {
+    final PublishBinaryFrame pub = new PublishBinaryFrame(handle.getName(), payload);
+    interchange.onPublish(localNexus, handle, pub);
+    firePublishEvent(localNexus, pub);
+  }
+  
+  /**
+   *  Publishes a batch of messages, in order.
+   *  
+   *  @param batch The messages to publish.
+   */
+  public void publish(List<Publication> batch) {
+    for (Publication publication : batch) {
+      if (publication.isText()) {
+        publish(publication.getHandle(), publication.<String>getPayload());
+      } else {
+        publish(publication.getHandle(), publication.<byte[]>getPayload());
+      }
+    }
+  }
   
   Wire getWire() {
     return wire;
   }
+  
+  OutboundConfig getOutboundConfig() {
+    return outboundConfig;
+  }
 
   @Override
   public void close() throws Exception {
@@ -398,6 +544,9 @@ public final class EdgeNode implements AutoCloseable, BackplaneConnector {
     }
     backplane.close();
     server.close();
+    for (EdgeNexus nexus : nexuses) {
+      if (nexus.isLocal()) nexus.close();
+    }
     interchange.close();
     pubAuthChain.close();
     subAuthChain.close();
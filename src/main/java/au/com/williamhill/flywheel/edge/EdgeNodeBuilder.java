@@ -16,7 +16,9 @@ public final class EdgeNodeBuilder {
   private AuthChain<PubAuthChain> pubAuthChain = new PubAuthChain();
   private AuthChain<SubAuthChain> subAuthChain = new SubAuthChain();
   private Backplane backplane = new NoOpBackplane();
+  private OutboundConfig outboundConfig = new OutboundConfig();
   private Plugin[] plugins = new Plugin[0];
+  private boolean ownsInboundBuffers;
   
   private void init() throws Exception {
     if (serverFactory == null) {
@@ -64,17 +66,37 @@ public final class EdgeNodeBuilder {
     return this;
   }
   
+  public EdgeNodeBuilder withOutboundConfig(OutboundConfig outboundConfig) {
+    this.outboundConfig = outboundConfig;
+    return this;
+  }
+  
   public EdgeNodeBuilder withPlugins(Plugin... plugins) {
     this.plugins = plugins;
     return this;
   }
 
+  /**
+   *  Declares whether the server hands over the buffer passed to 
+   *  {@link XEndpointListener#onBinary(XEndpoint, java.nio.ByteBuffer)} to the listener, and
+   *  never reuses it once the callback returns. If so, binary publishes are routed as views 
+   *  over the received buffer, without copying. Otherwise (the default), each received message 
+   *  is copied once before decoding, as a publish may be routed after the callback returns.
+   *  
+   *  @param ownsInboundBuffers Whether the node may retain received buffers.
+   *  @return This builder, for chaining.
+   */
+  public EdgeNodeBuilder withOwnedInboundBuffers(boolean ownsInboundBuffers) {
+    this.ownsInboundBuffers = ownsInboundBuffers;
+    return this;
+  }
+
   public EdgeNode build() throws Exception {
     init();
     for (Plugin plugin : plugins) {
       plugin.onBuild(this);
     }
     return new EdgeNode(serverFactory, serverConfig, wire, interchange, 
-                        pubAuthChain, subAuthChain, backplane, plugins);
+                        pubAuthChain, subAuthChain, backplane, outboundConfig, plugins, ownsInboundBuffers);
   }
 }
\ No newline at end of file
@@ -4,6 +4,7 @@ import java.util.*;
 import java.util.concurrent.*;
 
 import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.topic.*;
 
 public interface Interchange extends AutoCloseable {
   void onOpen(EdgeNexus nexus);
@@ -15,4 +16,28 @@ public interface Interchange extends AutoCloseable {
   void onPublish(EdgeNexus nexus, PublishTextFrame pub);
   
   void onPublish(EdgeNexus nexus, PublishBinaryFrame pub);
+  
+  /**
+   *  Handles a local publish to a pre-parsed topic. The frame's topic is always the handle's
+   *  name. By default, the handle is ignored.
+   *  
+   *  @param nexus The local nexus.
+   *  @param handle The topic handle.
+   *  @param pub The publish frame.
+   */
+  default void onPublish(EdgeNexus nexus, TopicHandle handle, PublishTextFrame pub) {
+    onPublish(nexus, pub);
+  }
+  
+  /**
+   *  Handles a local publish to a pre-parsed topic. The frame's topic is always the handle's
+   *  name. By default, the handle is ignored.
+   *  
+   *  @param nexus The local nexus.
+   *  @param handle The topic handle.
+   *  @param pub The publish frame.
+   */
+  default void onPublish(EdgeNexus nexus, TopicHandle handle, PublishBinaryFrame pub) {
+    onPublish(nexus, pub);
+  }
 }
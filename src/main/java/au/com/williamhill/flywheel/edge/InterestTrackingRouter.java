@@ -0,0 +1,66 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+/**
+ *  Keeps an {@link InterestFilter} in step with the filters routed through a
+ *  {@link SubscriberGroups.Router}. A filter is added to the interest filter when a subscriber
+ *  is first routed to it, and removed only when that routing is undone, so repeated routes or
+ *  unroutes of the same filter can never unbalance the filter's counters.<p>
+ *
+ *  Interest is widened ahead of routing, and narrowed once unrouting has been handed off.
+ */
+final class InterestTrackingRouter implements SubscriberGroups.Router {
+  private static final class Registration {
+    final Subscriber subscriber;
+
+    final Topic filter;
+
+    Registration(Subscriber subscriber, Topic filter) {
+      this.subscriber = subscriber;
+      this.filter = filter;
+    }
+
+    @Override
+    public int hashCode() {
+      return System.identityHashCode(subscriber) * 31 + filter.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (! (obj instanceof Registration)) return false;
+      final Registration that = (Registration) obj;
+      return subscriber == that.subscriber && filter.equals(that.filter);
+    }
+  }
+
+  private final InterestFilter interest;
+
+  private final SubscriberGroups.Router router;
+
+  private final Set<Registration> registrations = ConcurrentHashMap.newKeySet();
+
+  InterestTrackingRouter(InterestFilter interest, SubscriberGroups.Router router) {
+    this.interest = interest;
+    this.router = router;
+  }
+
+  @Override
+  public CompletableFuture<Void> route(Subscriber subscriber, RoutingSubscription.Plan plan) {
+    for (Topic topic : plan.subscribe) {
+      if (registrations.add(new Registration(subscriber, topic))) interest.add(topic);
+    }
+    final CompletableFuture<Void> future = router.route(subscriber, plan);
+    for (Topic topic : plan.unsubscribe) {
+      if (registrations.remove(new Registration(subscriber, topic))) interest.remove(topic);
+    }
+    return future;
+  }
+
+  int size() {
+    return registrations.size();
+  }
+}
@@ -1,14 +1,24 @@
 package au.com.williamhill.flywheel.edge;
 
 import java.net.*;
+import java.util.concurrent.atomic.*;
 
 import com.obsidiandynamics.socketx.*;
 
 public final class LocalPeer implements Peer {
-  private static final LocalPeer INSTANCE = new LocalPeer();
+  private static final LocalPeer INSTANCE = new LocalPeer(null);
   
   public static LocalPeer instance() { return INSTANCE; }
   
+  /** Invoked on the first close; null if closing does nothing. */
+  private final Runnable onClose;
+  
+  private final AtomicBoolean closed = new AtomicBoolean();
+  
+  LocalPeer(Runnable onClose) {
+    this.onClose = onClose;
+  }
+  
   @Override
   public InetSocketAddress getAddress() {
     return null;
@@ -20,7 +30,11 @@ public final class LocalPeer implements Peer {
   }
   
   @Override
-  public void close() {}
+  public void close() {
+    if (onClose != null && closed.compareAndSet(false, true)) {
+      onClose.run();
+    }
+  }
 
   @Override
   public String toString() {
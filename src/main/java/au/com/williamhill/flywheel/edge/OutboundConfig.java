@@ -0,0 +1,114 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+
+import com.obsidiandynamics.yconf.*;
+
+import au.com.williamhill.flywheel.topic.*;
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  Flow control settings for frames delivered to a connected client. By default the queue
+ *  is unbounded and nothing is conflated, in which case frames are handed straight to the
+ *  endpoint.
+ */
+@Y
+public class OutboundConfig {
+  /** The number of distinct topics whose conflation decision is remembered. */
+  private static final int CONFLATION_CACHE_CAPACITY = 1 << 16;
+  
+  @YInject
+  int sendWindow = 64;
+
+  @YInject
+  int maxQueuedFrames = Integer.MAX_VALUE;
+
+  @YInject
+  long maxQueuedBytes = Long.MAX_VALUE;
+
+  @YInject
+  OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+  
+  @YInject
+  Topic[] conflateTopics = new Topic[0];
+  
+  /** Whether each recently seen topic is conflated; created on first use. */
+  private volatile ClockMap<String, Boolean> conflationCache;
+
+  /**
+   *  Sets the maximum number of frames that may be in flight to the endpoint (written but
+   *  not yet acknowledged) before further frames are queued.
+   *
+   *  @param sendWindow The send window.
+   *  @return This config, for chaining.
+   */
+  public OutboundConfig withSendWindow(int sendWindow) {
+    this.sendWindow = sendWindow;
+    return this;
+  }
+
+  public OutboundConfig withMaxQueuedFrames(int maxQueuedFrames) {
+    this.maxQueuedFrames = maxQueuedFrames;
+    return this;
+  }
+
+  public OutboundConfig withMaxQueuedBytes(long maxQueuedBytes) {
+    this.maxQueuedBytes = maxQueuedBytes;
+    return this;
+  }
+
+  public OutboundConfig withOverflowPolicy(OverflowPolicy overflowPolicy) {
+    this.overflowPolicy = overflowPolicy;
+    return this;
+  }
+
+  /**
+   *  Sets the topic filters subject to last-value conflation. While a client's send window
+   *  is full, at most one frame is held back for each exact topic matching one of these
+   *  filters; a newer frame replaces the pending one in place, keeping its position in the
+   *  queue.
+   *
+   *  @param conflateTopics The topic filters.
+   *  @return This config, for chaining.
+   */
+  public OutboundConfig withConflateTopics(Topic... conflateTopics) {
+    this.conflateTopics = conflateTopics;
+    conflationCache = null;
+    return this;
+  }
+
+  boolean isQueued() {
+    return maxQueuedFrames != Integer.MAX_VALUE || maxQueuedBytes != Long.MAX_VALUE || conflateTopics.length != 0;
+  }
+  
+  boolean isConflated(String topic) {
+    if (conflateTopics.length == 0) return false;
+    
+    ClockMap<String, Boolean> cache = conflationCache;
+    if (cache == null) {
+      conflationCache = cache = new ClockMap<>(CONFLATION_CACHE_CAPACITY);
+    }
+    
+    final Boolean cached = cache.get(topic);
+    if (cached != null) return cached;
+    
+    return cache.admit(topic, matchesConflateTopics(topic));
+  }
+  
+  private boolean matchesConflateTopics(String topic) {
+    final Topic exact = Topic.of(topic);
+    for (Topic conflateTopic : conflateTopics) {
+      if (conflateTopic.accepts(exact)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return "OutboundConfig [sendWindow: " + sendWindow + ", maxQueuedFrames: " + maxQueuedFrames +
+           ", maxQueuedBytes: " + maxQueuedBytes + ", overflowPolicy: " + overflowPolicy + 
+           ", conflateTopics: " + Arrays.toString(conflateTopics) + "]";
+  }
+}
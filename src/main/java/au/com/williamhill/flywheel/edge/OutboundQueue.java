@@ -0,0 +1,293 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+
+import au.com.williamhill.flywheel.*;
+import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  A bounded queue of frames awaiting delivery to a single endpoint.<p>
+ *
+ *  Up to {@link OutboundConfig#sendWindow} frames are handed to the endpoint without
+ *  acknowledgement; beyond that, frames are held here until a send completes, subject to
+ *  the frame and byte limits. A healthy consumer never fills its window, so frames go
+ *  straight through without being queued.<p>
+ *
+ *  Frames for topics matching {@link OutboundConfig#conflateTopics} are conflated while
+ *  queued: the queue holds at most one such frame per exact topic, and a newer frame
+ *  replaces the pending one in place.
+ */
+final class OutboundQueue {
+  /**
+   *  Sends frames released by the queue; always called with the same callback.
+   */
+  @FunctionalInterface
+  interface Sender {
+    void send(Frame frame, SendCallback callback);
+  }
+
+  private static final class Entry {
+    Frame frame;
+
+    int size;
+    
+    /** The topic, if this entry is indexed in {@link OutboundQueue#latest}; null otherwise. */
+    final String topic;
+
+    Entry(Frame frame, int size, String topic) {
+      this.frame = frame;
+      this.size = size;
+      this.topic = topic;
+    }
+  }
+
+  private final OutboundConfig config;
+
+  private final Sender sender;
+
+  private final Runnable disconnect;
+
+  private final Deque<Entry> queue = new ArrayDeque<>();
+  
+  /** 
+   *  The most recently queued entry for each topic that may be replaced in place: topics
+   *  subject to conflation, and under {@link OverflowPolicy#CONFLATE}, all topics.
+   */
+  private final Map<String, Entry> latest = new HashMap<>();
+
+  private final SendCallback onSent = this::onSent;
+
+  private int inFlight;
+
+  private long queuedBytes;
+
+  private long dropped;
+  
+  private long conflated;
+
+  private boolean disconnected;
+
+  OutboundQueue(OutboundConfig config, Sender sender, Runnable disconnect) {
+    this.config = config;
+    this.sender = sender;
+    this.disconnect = disconnect;
+  }
+
+  void enqueue(Frame frame) {
+    final boolean sendNow;
+    final boolean disconnectNow;
+    synchronized (this) {
+      if (disconnected) {
+        dropped++;
+        return;
+      }
+
+      if (queue.isEmpty() && inFlight < config.sendWindow) {
+        inFlight++;
+        sendNow = true;
+        disconnectNow = false;
+      } else {
+        sendNow = false;
+        disconnectNow = ! offer(frame);
+      }
+    }
+
+    if (sendNow) {
+      sender.send(frame, onSent);
+    } else if (disconnectNow) {
+      disconnect.run();
+    }
+  }
+
+  /**
+   *  Queues a frame, applying the overflow policy if the queue is full. Must be called
+   *  while holding the lock.
+   *
+   *  @param frame The frame to queue.
+   *  @return False if the overflow policy demands a disconnect.
+   */
+  private boolean offer(Frame frame) {
+    final int size = sizeOf(frame);
+    final String topic = topicOf(frame);
+    final boolean conflatable = topic != null && config.isConflated(topic);
+    if (conflatable) {
+      final Entry existing = latest.get(topic);
+      if (existing != null) {
+        queuedBytes += size - existing.size;
+        existing.frame = frame;
+        existing.size = size;
+        conflated++;
+        return true;
+      }
+    }
+    
+    final String indexKey = conflatable || config.overflowPolicy == OverflowPolicy.CONFLATE ? topic : null;
+    if (fits(size)) {
+      add(frame, size, indexKey);
+      return true;
+    }
+
+    switch (config.overflowPolicy) {
+      case DROP_NEWEST:
+        dropped++;
+        return true;
+
+      case CONFLATE:
+        if (! replace(frame, size, topic)) dropOldest(frame, size, indexKey);
+        return true;
+
+      case DROP_OLDEST:
+        dropOldest(frame, size, indexKey);
+        return true;
+
+      case DISCONNECT:
+        disconnected = true;
+        dropped += queue.size() + 1;
+        clear();
+        return false;
+
+      default:
+        throw new UnsupportedOperationException("Unsupported overflow policy " + config.overflowPolicy);
+    }
+  }
+
+  /**
+   *  Drops frames from the head of the queue until the given frame fits, then queues it. If
+   *  the frame can't fit in an empty queue, it is dropped instead.
+   */
+  private void dropOldest(Frame frame, int size, String indexKey) {
+    while (! queue.isEmpty() && ! fits(size)) {
+      removed(queue.removeFirst());
+      dropped++;
+    }
+    if (fits(size)) {
+      add(frame, size, indexKey);
+    } else {
+      dropped++;
+    }
+  }
+
+  private boolean fits(int size) {
+    return queue.size() < config.maxQueuedFrames && queuedBytes + size <= config.maxQueuedBytes;
+  }
+
+  private void add(Frame frame, int size, String indexKey) {
+    final Entry entry = new Entry(frame, size, indexKey);
+    queue.addLast(entry);
+    queuedBytes += size;
+    if (indexKey != null) {
+      latest.put(indexKey, entry);
+    }
+  }
+  
+  private void removed(Entry entry) {
+    queuedBytes -= entry.size;
+    if (entry.topic != null) {
+      // older entries for the same topic leave the queue first, so only the latest unindexes it
+      latest.remove(entry.topic, entry);
+    }
+  }
+  
+  private void clear() {
+    queue.clear();
+    latest.clear();
+    queuedBytes = 0;
+  }
+  
+  /**
+   *  Replaces the latest queued frame for the same topic in place, if the resulting queue
+   *  would fit.
+   *
+   *  @param frame The new frame.
+   *  @param size The size of the new frame.
+   *  @param topic The topic of the new frame.
+   *  @return True if a frame was replaced.
+   */
+  private boolean replace(Frame frame, int size, String topic) {
+    if (topic == null) return false;
+
+    final Entry entry = latest.get(topic);
+    if (entry == null || queuedBytes - entry.size + size > config.maxQueuedBytes) return false;
+    queuedBytes += size - entry.size;
+    entry.frame = frame;
+    entry.size = size;
+    dropped++;
+    return true;
+  }
+
+  private void onSent(SendOutcome outcome, Throwable cause) {
+    final Frame next;
+    synchronized (this) {
+      if (outcome == SendOutcome.ERROR) {
+        // the endpoint is no longer writable; there is no point draining into it
+        dropped += queue.size();
+        clear();
+      }
+
+      final Entry entry = queue.pollFirst();
+      if (entry != null) {
+        removed(entry);
+        next = entry.frame;
+      } else {
+        inFlight--;
+        next = null;
+      }
+    }
+
+    if (next != null) {
+      sender.send(next, onSent);
+    }
+  }
+
+  synchronized long getDropped() {
+    return dropped;
+  }
+
+  synchronized long getConflated() {
+    return conflated;
+  }
+
+  synchronized int getQueued() {
+    return queue.size();
+  }
+
+  synchronized long getQueuedBytes() {
+    return queuedBytes;
+  }
+
+  private static String topicOf(Frame frame) {
+    if (frame instanceof TextFrame) {
+      return ((TextFrame) frame).getTopic();
+    } else if (frame instanceof BinaryFrame) {
+      return ((BinaryFrame) frame).getTopic();
+    } else {
+      return null;
+    }
+  }
+
+  /**
+   *  Approximates the encoded size of a frame, without encoding it, by counting the UTF-8 bytes
+   *  of its topic and payload, plus a few bytes of framing.
+   *
+   *  @param frame The frame.
+   *  @return The approximate size, in bytes.
+   */
+  static int sizeOf(Frame frame) {
+    if (frame instanceof TextFrame) {
+      final TextFrame text = (TextFrame) frame;
+      return 3 + Utf8.length(text.getTopic()) + text.getPayloadUtf8Length();
+    } else if (frame instanceof BinaryFrame) {
+      final BinaryFrame bin = (BinaryFrame) frame;
+      return 3 + Utf8.length(bin.getTopic()) + bin.getPayloadLength();
+    } else {
+      return 0;
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "OutboundQueue [inFlight=" + inFlight + ", queued=" + queue.size() + ", queuedBytes=" + queuedBytes +
+        ", dropped=" + dropped + ", conflated=" + conflated + "]";
+  }
+}
@@ -0,0 +1,27 @@
+package au.com.williamhill.flywheel.edge;
+
+import com.obsidiandynamics.yconf.*;
+
+/**
+ *  What an {@link EdgeNexus} does with an outbound frame when its queue is full.
+ */
+@Y(OverflowPolicy.Mapper.class)
+public enum OverflowPolicy {
+  /** Evict the oldest queued frames to make room for the new one. */
+  DROP_OLDEST,
+
+  /** Discard the new frame, keeping the queue intact. */
+  DROP_NEWEST,
+
+  /** Replace a queued frame for the same topic, falling back to {@link #DROP_OLDEST}. */
+  CONFLATE,
+
+  /** Close the connection. */
+  DISCONNECT;
+
+  public static final class Mapper implements TypeMapper {
+    @Override public Object map(YObject y, Class<?> type) {
+      return OverflowPolicy.valueOf(y.value());
+    }
+  }
+}
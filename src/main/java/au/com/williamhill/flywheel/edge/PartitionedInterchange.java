@@ -0,0 +1,300 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.stream.*;
+
+import org.slf4j.*;
+
+import com.obsidiandynamics.yconf.*;
+
+import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.topic.*;
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  A shared-nothing {@link Interchange}, where connections are partitioned across a fixed
+ *  number of threads (typically one per core). Each partition owns a replica of the routing
+ *  state for its own connections only, and is the only thread that reads or writes it.<p>
+ *
+ *  A publish is broadcast to every partition through its inbound ring, and each partition
+ *  delivers to its own connections. Binds are likewise queued to the connection's partition,
+ *  so the routing state is never contended, and a publish takes exactly one thread hand-off
+ *  on its way to any connection.<p>
+ *
+ *  Publishers never wait on a partition: a publish that finds a partition's ring full is
+ *  dropped for that partition's connections, and counted in {@link #getDropped()}, so one
+ *  slow partition can't hold up delivery to the others. Anything queued to a partition by its
+ *  own thread, e.g. by a local subscriber that publishes or binds as it is delivered to, is
+ *  held aside and run once the current element has been processed, rather than waiting on the
+ *  partition's own ring.
+ */
+@Y
+public final class PartitionedInterchange implements Interchange {
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedInterchange.class);
+
+  /** Default capacity of each partition's inbound ring. */
+  public static final int DEFAULT_RING_CAPACITY = 1 << 14;
+
+  /** How long an idle partition parks for before re-checking whether it should stop. */
+  private static final long IDLE_PARK_NANOS = 100_000_000L;
+
+  private final class Partition extends Thread {
+    /** Holds deliveries to broadcast, and tasks to run against the routing state. */
+    private final MpscRing<Object> ring;
+
+    private final SubscriptionTrie trie = new SubscriptionTrie(new RouteCache());
+
+    private final SubscriberGroups groups;
+
+    /** Elements queued by this partition's own thread; only accessed by that thread. */
+    private final Deque<Object> reentrant = new ArrayDeque<>();
+
+    private volatile boolean running = true;
+
+    Partition(int index, int ringCapacity) {
+      super("PartitionedInterchange-partition-" + index);
+      setDaemon(true);
+      ring = new MpscRing<>(ringCapacity);
+      groups = new SubscriberGroups(new InterestTrackingRouter(interest, (subscriber, plan) -> {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        enqueue((Runnable) () -> {
+          for (Topic topic : plan.subscribe) {
+            trie.subscribe(topic, subscriber);
+          }
+          for (Topic topic : plan.unsubscribe) {
+            trie.unsubscribe(topic, subscriber);
+          }
+          // completing may run the caller's continuations, which mustn't hold up the partition
+          ForkJoinPool.commonPool().execute(() -> future.complete(null));
+        });
+        return future;
+      }));
+    }
+
+    /**
+     *  Queues a task, waiting for room in the ring if need be.
+     */
+    void enqueue(Runnable task) {
+      if (Thread.currentThread() == this) {
+        reentrant.add(task);
+      } else {
+        ring.put(task);
+      }
+    }
+
+    /**
+     *  Queues a delivery, if there is room in the ring.
+     *
+     *  @return False if the ring is full.
+     */
+    boolean offer(Delivery delivery) {
+      if (Thread.currentThread() == this) {
+        reentrant.add(delivery);
+        return true;
+      } else {
+        return ring.offer(delivery);
+      }
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        final Object element = ring.take(IDLE_PARK_NANOS);
+        if (element != null) process(element);
+      }
+
+      Object element;
+      while ((element = ring.poll()) != null) {
+        process(element);
+      }
+    }
+
+    private void process(Object element) {
+      processOne(element);
+      Object queued;
+      while ((queued = reentrant.poll()) != null) {
+        processOne(queued);
+      }
+    }
+
+    private void processOne(Object element) {
+      try {
+        if (element instanceof Delivery) {
+          trie.publish((Delivery) element);
+        } else {
+          ((Runnable) element).run();
+        }
+      } catch (Throwable e) {
+        LOG.warn("Exception in " + getName(), e);
+      }
+    }
+
+    void close() throws InterruptedException {
+      running = false;
+      interrupt();
+      join();
+    }
+  }
+
+  private final Partition[] partitions;
+
+  private final Map<EdgeNexus, Partition> assignments = new ConcurrentHashMap<>();
+
+  private final AtomicInteger nextPartition = new AtomicInteger();
+
+  private final InterestFilter interest = new InterestFilter();
+
+  private final LongAdder dropped = new LongAdder();
+
+  public PartitionedInterchange() {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   *  Creates an interchange with the given number of partitions.
+   *
+   *  @param partitions The number of partitions.
+   */
+  public PartitionedInterchange(int partitions) {
+    this(partitions, DEFAULT_RING_CAPACITY);
+  }
+
+  /**
+   *  Creates an interchange with the given number of partitions, each with an inbound ring of
+   *  the given capacity. A publish that finds a partition's ring full is dropped for that
+   *  partition, while binds wait for room.
+   *
+   *  @param partitions The number of partitions.
+   *  @param ringCapacity The ring capacity; must be a power of two.
+   */
+  public PartitionedInterchange(int partitions, int ringCapacity) {
+    this.partitions = new Partition[partitions];
+    for (int i = 0; i < partitions; i++) {
+      this.partitions[i] = new Partition(i, ringCapacity);
+      this.partitions[i].start();
+    }
+  }
+
+  /**
+   *  Obtains the filter that publishes without local subscribers are dropped by, along with
+   *  the drop statistics.
+   *
+   *  @return The interest filter.
+   */
+  public InterestFilter getInterestFilter() {
+    return interest;
+  }
+
+  /**
+   *  Obtains the number of times a publish was dropped for a partition, as the partition's
+   *  ring was full. A publish dropped for several partitions is counted once for each.
+   *
+   *  @return The number of dropped publishes.
+   */
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  @Override
+  public void onOpen(EdgeNexus nexus) {
+    final Partition partition = partitions[(nextPartition.getAndIncrement() & Integer.MAX_VALUE) % partitions.length];
+    if (LOG.isDebugEnabled()) LOG.debug("{}: opened on {}", nexus, partition.getName());
+    assignments.put(nexus, partition);
+    final Subscriber subscriber = d -> {
+      if (LOG.isTraceEnabled()) LOG.trace("{}: delivering {}", nexus, d.getPayload());
+      nexus.deliver(d);
+    };
+    nexus.getSession().setSubscription(new RoutingSubscription(subscriber));
+  }
+
+  @Override
+  public void onClose(EdgeNexus nexus) {
+    if (LOG.isDebugEnabled()) LOG.debug("{}: closed", nexus);
+    final Partition partition = assignments.remove(nexus);
+    final RoutingSubscription subscription = nexus.getSession().getSubscription();
+    if (partition == null || subscription == null) {
+      LOG.error("{}: no subscription", nexus);
+      return;
+    }
+    subscription.close();
+    partition.groups.close(subscription);
+  }
+
+  @Override
+  public CompletableFuture<Void> onBind(EdgeNexus nexus, Set<String> subscribe, Set<String> unsubscribe) {
+    if (subscribe.isEmpty() && unsubscribe.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final Partition partition = assignments.get(nexus);
+    final RoutingSubscription subscription = nexus.getSession().getSubscription();
+    if (partition == null || subscription == null) {
+      LOG.error("{}: no subscription", nexus);
+      throw new IllegalStateException("No subscription set for " + nexus);
+    }
+
+    final List<Topic> subTopics = subscribe.stream().map(t -> Topic.of(t)).collect(Collectors.toList());
+    final List<Topic> unsubTopics = unsubscribe.stream().map(t -> Topic.of(t)).collect(Collectors.toList());
+    final RoutingSubscription.Plan plan = subscription.plan(subTopics, unsubTopics);
+    if (plan.isEmpty()) {
+      subscription.addTopics(subTopics);
+      subscription.removeTopics(unsubTopics);
+      return CompletableFuture.completedFuture(null);
+    }
+
+    return partition.groups.apply(subscription, plan).thenRun(() -> {
+      subscription.addTopics(subTopics);
+      subscription.removeTopics(unsubTopics);
+      subscription.settle();
+    });
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, PublishTextFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(pub.getTopic())) return;
+    broadcast(new Delivery(Topic.of(pub.getTopic()), new TextFrame(pub)));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, PublishBinaryFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(pub.getTopic())) return;
+    broadcast(new Delivery(Topic.of(pub.getTopic()), new BinaryFrame(pub.getTopic(), pub.getPayloadBuffer())));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, TopicHandle handle, PublishTextFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(handle)) return;
+    broadcast(new Delivery(handle.getTopic(), new TextFrame(pub)));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, TopicHandle handle, PublishBinaryFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(handle)) return;
+    broadcast(new Delivery(handle.getTopic(), new BinaryFrame(pub.getTopic(), pub.getPayloadBuffer())));
+  }
+
+  private void broadcast(Delivery delivery) {
+    for (Partition partition : partitions) {
+      if (! partition.offer(delivery)) dropped.increment();
+    }
+  }
+
+  @Override
+  public void close() throws InterruptedException {
+    if (LOG.isDebugEnabled()) LOG.debug("Closing interchange");
+    for (Partition partition : partitions) {
+      partition.close();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return PartitionedInterchange.class.getSimpleName() + " [partitions=" + partitions.length + "]";
+  }
+}
@@ -0,0 +1,40 @@
+package au.com.williamhill.flywheel.edge;
+
+import au.com.williamhill.flywheel.topic.*;
+
+/**
+ *  A message for a local publisher to publish to a {@link TopicHandle}, as part of a batch.
+ */
+public final class Publication {
+  private final TopicHandle handle;
+  
+  private final Object payload;
+  
+  public Publication(TopicHandle handle, String payload) {
+    this.handle = handle;
+    this.payload = payload;
+  }
+  
+  public Publication(TopicHandle handle, byte[] payload) {
+    this.handle = handle;
+    this.payload = payload;
+  }
+
+  public TopicHandle getHandle() {
+    return handle;
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T> T getPayload() {
+    return (T) payload;
+  }
+  
+  public boolean isText() {
+    return payload instanceof String;
+  }
+
+  @Override
+  public String toString() {
+    return "Publication [handle=" + handle + ", payload=" + payload + "]";
+  }
+}
@@ -0,0 +1,146 @@
+package au.com.williamhill.flywheel.edge;
+
+import com.obsidiandynamics.indigo.*;
+import com.obsidiandynamics.indigo.ActorSystemConfig.*;
+import com.obsidiandynamics.yconf.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+/**
+ *  Threading and tuning settings for the {@link RoutingInterchange}. Settings left at 0 take
+ *  the actor system's own defaults, or are sized to the number of processors, as noted.
+ */
+@Y
+public class RoutingConfig {
+  /** The name of an {@link ExecutorChoice}; held as a string, as the enum has no type mapper. */
+  @YInject
+  String executor = ExecutorChoice.FIXED_THREAD_POOL.name();
+
+  @YInject
+  int threads;
+
+  @YInject
+  int bias = 10;
+
+  @YInject
+  int backlogThrottleCapacity;
+
+  @YInject
+  int backlogThrottleTries;
+
+  @YInject
+  int backlogThrottleMillis;
+
+  @YInject
+  int rootShards = 1;
+
+  @YInject
+  int bindWindowMillis = RoutingInterchange.DEFAULT_BIND_WINDOW_MILLIS;
+
+  @YInject
+  int fanOutThreshold = FanOut.DEFAULT_THRESHOLD;
+
+  @YInject
+  long lingerMillis;
+
+  public RoutingConfig withExecutor(ExecutorChoice executor) {
+    this.executor = executor.name();
+    return this;
+  }
+
+  ExecutorChoice getExecutor() {
+    return ExecutorChoice.valueOf(executor);
+  }
+
+  /**
+   *  Sets the number of threads in the actor system.
+   *
+   *  @param threads The number of threads; 0 for the actor system default.
+   *  @return This config, for chaining.
+   */
+  public RoutingConfig withThreads(int threads) {
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   *  Sets the number of messages that a topic router may process in one go before yielding
+   *  its thread to other routers.
+   *
+   *  @param bias The actor bias.
+   *  @return This config, for chaining.
+   */
+  public RoutingConfig withBias(int bias) {
+    this.bias = bias;
+    return this;
+  }
+
+  /**
+   *  Sets the mailbox backlog at which senders to a topic router are throttled, along with
+   *  how many times and for how long a sender waits for the backlog to clear.
+   *
+   *  @param capacity The backlog capacity; 0 for the actor system default.
+   *  @param tries The number of throttling attempts; 0 for the actor system default.
+   *  @param millis The wait per attempt; 0 for the actor system default.
+   *  @return This config, for chaining.
+   */
+  public RoutingConfig withBacklogThrottle(int capacity, int tries, int millis) {
+    this.backlogThrottleCapacity = capacity;
+    this.backlogThrottleTries = tries;
+    this.backlogThrottleMillis = millis;
+    return this;
+  }
+
+  /**
+   *  Sets the number of root routers that the topic hierarchy is partitioned across. There
+   *  is a single root by default; sharding is opt-in, as publishes to topics under different
+   *  roots are no longer routed in the order they were published.
+   *
+   *  @param rootShards The number of root shards; 0 for one per processor.
+   *  @return This config, for chaining.
+   */
+  public RoutingConfig withRootShards(int rootShards) {
+    this.rootShards = rootShards;
+    return this;
+  }
+
+  public RoutingConfig withBindWindowMillis(int bindWindowMillis) {
+    this.bindWindowMillis = bindWindowMillis;
+    return this;
+  }
+
+  public RoutingConfig withFanOutThreshold(int fanOutThreshold) {
+    this.fanOutThreshold = fanOutThreshold;
+    return this;
+  }
+
+  public RoutingConfig withLingerMillis(long lingerMillis) {
+    this.lingerMillis = lingerMillis;
+    return this;
+  }
+
+  int getRootShards() {
+    return rootShards != 0 ? rootShards : Runtime.getRuntime().availableProcessors();
+  }
+
+  void applyTo(ActorSystemConfig config) {
+    config.executor = getExecutor();
+    if (threads != 0) config.parallelism = threads;
+  }
+
+  void applyTo(ActorConfig config) {
+    config.bias = bias;
+    if (backlogThrottleCapacity != 0) config.backlogThrottleCapacity = backlogThrottleCapacity;
+    if (backlogThrottleTries != 0) config.backlogThrottleTries = backlogThrottleTries;
+    if (backlogThrottleMillis != 0) config.backlogThrottleMillis = backlogThrottleMillis;
+  }
+
+  @Override
+  public String toString() {
+    return "RoutingConfig [executor: " + executor + ", threads: " + threads + ", bias: " + bias +
+           ", backlogThrottleCapacity: " + backlogThrottleCapacity + ", backlogThrottleTries: " + backlogThrottleTries +
+           ", backlogThrottleMillis: " + backlogThrottleMillis + ", rootShards: " + rootShards +
+           ", bindWindowMillis: " + bindWindowMillis + ", fanOutThreshold: " + fanOutThreshold +
+           ", lingerMillis: " + lingerMillis + "]";
+  }
+}
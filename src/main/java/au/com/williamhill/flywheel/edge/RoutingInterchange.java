@@ -8,30 +8,115 @@ import java.util.stream.*;
 import org.slf4j.*;
 
 import com.obsidiandynamics.indigo.*;
+import com.obsidiandynamics.yconf.*;
 
 import au.com.williamhill.flywheel.frame.*;
 import au.com.williamhill.flywheel.topic.*;
 
+@Y
 public final class RoutingInterchange implements Interchange {
   private static final Logger LOG = LoggerFactory.getLogger(RoutingInterchange.class);
+  
+  /** Default time that binds are held back for, so that they may be batched with others. */
+  public static final int DEFAULT_BIND_WINDOW_MILLIS = 1;
+
+  private final RoutingConfig config;
 
   private final ActorSystem system;
 
-  private final ActorRef routerRef = ActorRef.of(TopicRouter.ROLE);
+  private final RootShards shards;
+  
+  private final BindBatcher batcher;
+  
+  private final FanOut fanOut;
+  
+  private final SubscriberGroups groups;
+  
+  private final CountingTopicWatcher topicWatcher = new CountingTopicWatcher();
+  
+  private final InterestFilter interest = new InterestFilter();
 
   public RoutingInterchange() {
+    this(new RoutingConfig());
+  }
+
+  /**
+   *  Creates an interchange with the topic hierarchy partitioned across the given number of
+   *  root routers.
+   *  
+   *  @param rootShards The number of root shards.
+   */
+  public RoutingInterchange(int rootShards) {
+    this(new RoutingConfig().withRootShards(rootShards));
+  }
+
+  /**
+   *  Creates an interchange with the topic hierarchy partitioned across the given number of
+   *  root routers, batching subscription changes that arrive within the given window.
+   *  
+   *  @param rootShards The number of root shards.
+   *  @param bindWindowMillis The batching window for binds; 0 to only batch binds that are
+   *         already queued.
+   */
+  public RoutingInterchange(int rootShards, int bindWindowMillis) {
+    this(new RoutingConfig().withRootShards(rootShards).withBindWindowMillis(bindWindowMillis));
+  }
+
+  /**
+   *  Creates an interchange with the given threading and tuning settings.
+   *  
+   *  @param routingConfig The routing config; null for the defaults.
+   */
+  public RoutingInterchange(@YInject(name="routingConfig") RoutingConfig routingConfig) {
+    final RoutingConfig routing = routingConfig != null ? routingConfig : new RoutingConfig();
+    config = routing;
+    final int rootShards = config.getRootShards();
+    shards = new RootShards(rootShards);
     final BiConsumer<ActorSystem, Throwable> loggingExceptionHandler = (sys, t) -> {
       LOG.warn("Exception in actor thread", t);
     };
+    fanOut = config.fanOutThreshold != 0 ? new FanOut(Runtime.getRuntime().availableProcessors(), config.fanOutThreshold) : null;
     
     this.system = new ActorSystemConfig() {{
-      executor = ActorSystemConfig.ExecutorChoice.FIXED_THREAD_POOL;
+      routing.applyTo(this);
       exceptionHandler = loggingExceptionHandler.andThen(ActorSystemConfig.ExceptionHandlerChoice.DRAIN);
     }}
     .createActorSystem()
     .on(TopicRouter.ROLE).withConfig(new ActorConfig() {{
-      bias = 10;
-    }}).cue(() -> new TopicRouter(new TopicConfig()));
+      routing.applyTo(this);
+    }}).cue(() -> new TopicRouter(new TopicConfig()
+                                  .withRootShards(rootShards)
+                                  .withTopicWatcher(topicWatcher)
+                                  .withFanOut(fanOut)
+                                  .withLingerMillis(config.lingerMillis)));
+    
+    batcher = new BindBatcher(system, shards, config.bindWindowMillis);
+    batcher.start();
+    
+    groups = new SubscriberGroups(new InterestTrackingRouter(interest, (subscriber, plan) -> {
+      final CompletableFuture<Void> future = new CompletableFuture<>();
+      batcher.enqueue(new BindBatcher.PendingBind(subscriber, plan, future));
+      return future;
+    }));
+  }
+
+  /**
+   *  Obtains the counts of topic router creations, deletions and subscriptions.
+   *  
+   *  @return The topic watcher.
+   */
+  public CountingTopicWatcher getTopicWatcher() {
+    return topicWatcher;
+  }
+
+  /**
+   *  Obtains the filter that publishes without local subscribers are dropped by, along with
+   *  the drop statistics.
+   *  
+   *  @return The interest filter.
+   */
+  public InterestFilter getInterestFilter() {
+    return interest;
   }
 
   @Override
@@ -39,7 +124,7 @@ public final class RoutingInterchange implements Interchange {
     if (LOG.isDebugEnabled()) LOG.debug("{}: opened", nexus);
     final Subscriber subscriber = d -> {
       if (LOG.isTraceEnabled()) LOG.trace("{}: delivering {}", nexus, d.getPayload());
-      nexus.sendAuto(d.getPayload(), null);
+      nexus.deliver(d);
     };
     nexus.getSession().setSubscription(new RoutingSubscription(subscriber));
   }
@@ -52,10 +137,8 @@ public final class RoutingInterchange implements Interchange {
       LOG.error("{}: no subscription", nexus);
       return;
     }
-    for (Topic topic : subscription.getSubscribedTopics()) {
-      if (LOG.isTraceEnabled()) LOG.trace("{}: unsubscribing from {}", nexus, topic);
-      system.tell(routerRef, new Unsubscribe(topic, subscription.getSubscriber()));
-    }
+    subscription.close();
+    groups.close(subscription);
   }
 
   @Override
@@ -70,68 +153,60 @@ public final class RoutingInterchange implements Interchange {
       throw new IllegalStateException("No subscription set for " + nexus);
     }
 
-    final CompletableFuture<Void> future = new CompletableFuture<>();
     final List<Topic> subTopics = subscribe.stream().map(t -> Topic.of(t)).collect(Collectors.toList());
     final List<Topic> unsubTopics = unsubscribe.stream().map(t -> Topic.of(t)).collect(Collectors.toList());
+    final RoutingSubscription.Plan plan = subscription.plan(subTopics, unsubTopics);
+    if (LOG.isTraceEnabled()) LOG.trace("{}: routing {}", nexus, plan);
+    if (plan.isEmpty()) {
+      // the bind only touches topics covered by other subscriptions
+      subscription.addTopics(subTopics);
+      subscription.removeTopics(unsubTopics);
+      return CompletableFuture.completedFuture(null);
+    }
 
-    system.ingress(a -> {
-      final List<SubscribeResponse> subResponses = new ArrayList<>(subTopics.size());
-      final List<UnsubscribeResponse> unsubResponses = new ArrayList<>(unsubTopics.size());
-
-      for (final Topic topic : subTopics) {
-        a.to(routerRef).ask(new Subscribe(topic, subscription.getSubscriber()))
-        .onFault(f -> {
-          LOG.warn("{}: fault while handling subscription to topic {}: {}", nexus, topic, f);
-          future.completeExceptionally(new FaultException(f.getReason()));
-        })
-        .onResponse(r -> {
-          subResponses.add(r.body());
-          subscription.addTopic(topic);
-          checkComplete(future, subTopics, subResponses, unsubTopics, unsubResponses);
-        });
-      }
-
-      for (final Topic topic : unsubTopics) {
-        a.to(routerRef).ask(new Unsubscribe(topic, subscription.getSubscriber()))
-        .onFault(f -> {
-          LOG.warn("{}: fault while handling unsubscription from topic {}: {}", nexus, topic, f);
-          future.completeExceptionally(new FaultException(f.getReason()));
-        })
-        .onResponse(r -> {
-          unsubResponses.add(r.body());
-          subscription.removeTopic(topic);
-          checkComplete(future, subTopics, subResponses, unsubTopics, unsubResponses);
-        });
-      }
+    return groups.apply(subscription, plan).thenRun(() -> {
+      subscription.addTopics(subTopics);
+      subscription.removeTopics(unsubTopics);
+      subscription.settle();
     });
-    return future;
-  }
-
-  private static void checkComplete(CompletableFuture<Void> future,
-                                    List<Topic> subTopics, List<SubscribeResponse> subResponses,
-                                    List<Topic> unsubTopics, List<UnsubscribeResponse> unsubResponses) {
-    if (subResponses.size() == subTopics.size() &&
-        unsubResponses.size() == unsubTopics.size()) {
-      future.complete(null);
-    }
   }
 
   @Override
   public void onPublish(EdgeNexus nexus, PublishTextFrame pub) {
     if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
-    system.tell(routerRef, new Publish(Topic.of(pub.getTopic()), new TextFrame(pub.getTopic(), pub.getPayload())));
+    if (! interest.admit(pub.getTopic())) return;
+    final Topic topic = Topic.of(pub.getTopic());
+    system.tell(shards.routerFor(topic), new Publish(topic, new TextFrame(pub)));
   }
 
   @Override
   public void onPublish(EdgeNexus nexus, PublishBinaryFrame pub) {
     if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
-    system.tell(routerRef, new Publish(Topic.of(pub.getTopic()), new BinaryFrame(pub.getTopic(), pub.getPayload())));
+    if (! interest.admit(pub.getTopic())) return;
+    final Topic topic = Topic.of(pub.getTopic());
+    system.tell(shards.routerFor(topic), new Publish(topic, new BinaryFrame(pub.getTopic(), pub.getPayloadBuffer())));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, TopicHandle handle, PublishTextFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(handle)) return;
+    system.tell(shards.routerFor(handle), new Publish(handle.getTopic(), new TextFrame(pub)));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, TopicHandle handle, PublishBinaryFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(handle)) return;
+    system.tell(shards.routerFor(handle), new Publish(handle.getTopic(), new BinaryFrame(pub.getTopic(), pub.getPayloadBuffer())));
   }
 
   @Override
   public void close() throws Exception {
     if (LOG.isDebugEnabled()) LOG.trace("Closing interchange");
+    batcher.close();
     system.shutdown();
+    if (fanOut != null) fanOut.close();
     final List<Fault> dlq = system.getDeadLetterQueue();
     if (! dlq.isEmpty()) {
       LOG.warn("Actor system had a non-empty dead-letter queue");
@@ -140,4 +215,9 @@ public final class RoutingInterchange implements Interchange {
       }
     }
   }
+
+  @Override
+  public String toString() {
+    return RoutingInterchange.class.getSimpleName() + " [" + config + "]";
+  }
 }
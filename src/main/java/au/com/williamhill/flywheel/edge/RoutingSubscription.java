@@ -6,12 +6,110 @@ import java.util.stream.*;
 
 import au.com.williamhill.flywheel.topic.*;
 
+/**
+ *  Tracks the topics that a connection is subscribed to.<p>
+ *  
+ *  The topics requested by the client may overlap, e.g. {@code odds/football/#} and
+ *  {@code odds/football/epl}. Registering both with the router would deliver (and encode) a 
+ *  message on the latter topic twice. Instead, only the filters that aren't covered by another 
+ *  requested filter are routed; see {@link #plan(Collection, Collection)}.<p>
+ *  
+ *  Filters may also overlap partially, e.g. {@code odds/football/#} and {@code odds/+/epl}, 
+ *  in which case both must be routed. The subscriber then claims each {@link Delivery} 
+ *  before passing it on, discarding any repeats of the same publish. As every subscriber
+ *  matching a publish is handed the same {@link Delivery} instance, a repeat is recognised by
+ *  identity among the last {@link #RECENT_CLAIMS} deliveries to this subscriber.
+ */
 final class RoutingSubscription implements Subscription {
+  /** The number of recent deliveries that repeats are looked for among; a power of 2. */
+  static final int RECENT_CLAIMS = 16;
+  
+  /**
+   *  The changes that need to be made to the routed filters to effect a bind.
+   */
+  static final class Plan {
+    final List<Topic> subscribe;
+    
+    final List<Topic> unsubscribe;
+    
+    Plan(List<Topic> subscribe, List<Topic> unsubscribe) {
+      this.subscribe = subscribe;
+      this.unsubscribe = unsubscribe;
+    }
+    
+    boolean isEmpty() {
+      return subscribe.isEmpty() && unsubscribe.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return "Plan [subscribe=" + subscribe + ", unsubscribe=" + unsubscribe + "]";
+    }
+  }
+  
   private final Subscriber subscriber;
+  
+  /** The topics that the client has been bound to. */
   private final Set<Topic> topics = new CopyOnWriteArraySet<>();
   
-  RoutingSubscription(Subscriber subscriber) {
-    this.subscriber = subscriber;
+  /** The topics that the client has requested, including binds that are still in flight. */
+  private final Set<Topic> requested = new HashSet<>();
+  
+  /** The subset of requested topics that aren't covered by another; guarded by this. */
+  private Set<Topic> routed = new HashSet<>();
+  
+  /** Whether any two of the routed filters overlap. */
+  private volatile boolean overlapping;
+  
+  /** The number of plans that are yet to be settled; guarded by this. */
+  private int unsettled;
+  
+  /** The group that this subscription belongs to; guarded by the owning {@link SubscriberGroups}. */
+  SubscriberGroups.Group group;
+  
+  /** The private filters that have been handed to the router; guarded by this. */
+  final Set<Topic> privateRouted = new HashSet<>();
+  
+  private volatile boolean closed;
+  
+  /** The deliveries most recently claimed while overlapping; guarded by itself. */
+  private final Delivery[] recentClaims = new Delivery[RECENT_CLAIMS];
+  
+  /** The next slot in {@link #recentClaims} to be overwritten; guarded by recentClaims. */
+  private int nextClaim;
+  
+  RoutingSubscription(Subscriber target) {
+    subscriber = d -> {
+      if (overlapping && ! claim(d)) return;
+      target.accept(d);
+    };
+  }
+  
+  /**
+   *  Claims a delivery on behalf of this subscription.
+   *  
+   *  @param delivery The delivery.
+   *  @return True if the delivery wasn't among the recently claimed ones.
+   */
+  private boolean claim(Delivery delivery) {
+    synchronized (recentClaims) {
+      for (Delivery claimed : recentClaims) {
+        if (claimed == delivery) return false;
+      }
+      recentClaims[nextClaim] = delivery;
+      nextClaim = (nextClaim + 1) & (RECENT_CLAIMS - 1);
+      return true;
+    }
+  }
+  
+  /**
+   *  Forgets the recently claimed deliveries, so that their payloads aren't retained once 
+   *  overlap detection is turned off.
+   */
+  private void clearClaims() {
+    synchronized (recentClaims) {
+      Arrays.fill(recentClaims, null);
+    }
   }
   
   Subscriber getSubscriber() {
@@ -32,6 +130,118 @@ final class RoutingSubscription implements Subscription {
     topics.removeAll(toRemove);
   }
   
+  /**
+   *  Records a change in the requested topics, returning the minimal changes to the routed 
+   *  filters needed so that each publish is delivered at most once. Subscribing to a filter
+   *  that covers existing ones displaces them from the router; unsubscribing from it restores 
+   *  any that are no longer covered.<p>
+   *  
+   *  The plan must be applied in the order in which it was obtained, subscriptions before 
+   *  unsubscriptions, so that there is no gap in delivery. 
+   *  
+   *  @param subscribe The topics being subscribed to.
+   *  @param unsubscribe The topics being unsubscribed from.
+   *  @return The changes to the routed filters.
+   */
+  synchronized Plan plan(Collection<Topic> subscribe, Collection<Topic> unsubscribe) {
+    requested.removeAll(unsubscribe);
+    requested.addAll(subscribe);
+    
+    final Set<Topic> newRouted = new HashSet<>();
+    for (Topic topic : requested) {
+      if (! isCovered(topic, requested)) newRouted.add(topic);
+    }
+    
+    final List<Topic> toSubscribe = new ArrayList<>();
+    for (Topic topic : newRouted) {
+      if (! routed.contains(topic)) toSubscribe.add(topic);
+    }
+    final List<Topic> toUnsubscribe = new ArrayList<>();
+    for (Topic topic : routed) {
+      if (! newRouted.contains(topic)) toUnsubscribe.add(topic);
+    }
+    if (! toSubscribe.isEmpty()) {
+      // until the plan is applied, both the old and the new filters may be routed; only
+      // settling narrows the overlap detection, as other plans may still be in flight
+      final Set<Topic> transitional = new HashSet<>(routed);
+      transitional.addAll(toSubscribe);
+      if (hasOverlaps(transitional)) overlapping = true;
+    }
+    routed = newRouted;
+    final Plan plan = new Plan(toSubscribe, toUnsubscribe);
+    if (! plan.isEmpty()) unsettled++;
+    return plan;
+  }
+  
+  synchronized Set<Topic> getRouted() {
+    return new HashSet<>(routed);
+  }
+  
+  /**
+   *  Claims every delivery until all pending plans have been settled. Used while the 
+   *  subscription moves between {@link SubscriberGroups.Group}s, as it is briefly a member of 
+   *  both, and a publish matching a filter common to the two would otherwise be delivered twice.
+   */
+  synchronized void beginTransition() {
+    overlapping = true;
+  }
+  
+  /**
+   *  Called once a non-empty plan has been applied. When no other plans are in flight, overlap 
+   *  detection is narrowed to the filters that remain routed.
+   */
+  synchronized void settle() {
+    if (unsettled > 0 && --unsettled == 0) {
+      overlapping = hasOverlaps(routed);
+      if (! overlapping) clearClaims();
+    }
+  }
+  
+  private static boolean hasOverlaps(Set<Topic> filters) {
+    final Topic[] array = filters.toArray(new Topic[filters.size()]);
+    for (int i = 0; i < array.length; i++) {
+      for (int j = i + 1; j < array.length; j++) {
+        if (array[i].intersects(array[j])) return true;
+      }
+    }
+    return false;
+  }
+  
+  private static boolean isCovered(Topic topic, Set<Topic> filters) {
+    for (Topic filter : filters) {
+      if (filter != topic && filter.covers(topic)) return true;
+    }
+    return false;
+  }
+  
+  /**
+   *  Obtains the filters that are currently routed, clearing the requested topics, as is
+   *  the case when the connection closes.
+   *  
+   *  @return The routed filters that need to be unsubscribed from.
+   */
+  synchronized List<Topic> clearRouted() {
+    final List<Topic> toUnsubscribe = new ArrayList<>(routed);
+    requested.clear();
+    routed = new HashSet<>();
+    overlapping = false;
+    unsettled = 0;
+    clearClaims();
+    return toUnsubscribe;
+  }
+  
+  /**
+   *  Marks the owning connection as closed, so that binds still in flight no longer change 
+   *  the routed filters.
+   */
+  void close() {
+    closed = true;
+  }
+  
+  boolean isClosed() {
+    return closed;
+  }
+  
   Set<Topic> getSubscribedTopics() {
     return Collections.unmodifiableSet(topics);
   }
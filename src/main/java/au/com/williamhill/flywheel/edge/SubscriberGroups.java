@@ -0,0 +1,257 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.slf4j.*;
+
+import au.com.williamhill.flywheel.*;
+import au.com.williamhill.flywheel.topic.*;
+
+/**
+ *  Shares routing state between connections that are subscribed to the same set of filters.<p>
+ *
+ *  Most connections to an edge subscribe to the same handful of filters. Rather than registering
+ *  each connection with the router under every filter, connections with an identical set of
+ *  routed filters join a common {@link Group}, which is registered with the router once and fans
+ *  out to its members. Router state and per-publish iteration therefore scale with the number of
+ *  distinct subscription sets, rather than the number of connections.<p>
+ *
+ *  Session-specific filters (those under {@link Flywheel#REMOTE_PREFIX}) are never shared, and
+ *  are routed for each connection individually.<p>
+ *
+ *  When a connection's filter set changes, it joins the group for the new set straight away,
+ *  but only leaves its old group once the new group (and any private filters) have been routed,
+ *  so that there is no gap in delivery. While it belongs to both, its {@link RoutingSubscription}
+ *  claims every delivery (see {@link RoutingSubscription#beginTransition()}), discarding the
+ *  repeats of a publish that matches both groups. A group is unrouted once its last member leaves.
+ */
+final class SubscriberGroups {
+  private static final Logger LOG = LoggerFactory.getLogger(SubscriberGroups.class);
+
+  /**
+   *  Applies changes to the routed filters of a subscriber.
+   */
+  @FunctionalInterface
+  interface Router {
+    CompletableFuture<Void> route(Subscriber subscriber, RoutingSubscription.Plan plan);
+  }
+
+  /**
+   *  A set of members sharing the same filters, routed as a single {@link CompositeSubscriber},
+   *  so that a hot topic's audience can still be fanned out across the router's lanes.
+   */
+  static final class Group implements CompositeSubscriber {
+    private static final Subscriber[] EMPTY = {};
+
+    final Set<Topic> filters;
+
+    final Set<RoutingSubscription> members = ConcurrentHashMap.newKeySet();
+
+    /** The members' subscribers partitioned by lane; null if stale. Rebuilt and invalidated under this. */
+    private volatile Subscriber[][] laneSnapshot;
+
+    /** Completed once the group's filters have been routed. */
+    CompletableFuture<Void> routed;
+
+    Group(Set<Topic> filters) {
+      this.filters = filters;
+    }
+
+    synchronized void add(RoutingSubscription member) {
+      if (members.add(member)) laneSnapshot = null;
+    }
+
+    synchronized boolean remove(RoutingSubscription member) {
+      if (members.remove(member)) {
+        laneSnapshot = null;
+        return true;
+      } else {
+        return false;
+      }
+    }
+
+    @Override
+    public void accept(Delivery delivery) {
+      for (RoutingSubscription member : members) {
+        member.getSubscriber().accept(delivery);
+      }
+    }
+
+    @Override
+    public int size() {
+      return members.size();
+    }
+
+    @Override
+    public Subscriber[][] toLanes(int lanes) {
+      final Subscriber[][] laneSnapshot = this.laneSnapshot;
+      if (laneSnapshot != null && laneSnapshot.length == lanes) return laneSnapshot;
+
+      synchronized (this) {
+        final List<List<Subscriber>> byLane = new ArrayList<>(lanes);
+        for (int lane = 0; lane < lanes; lane++) byLane.add(new ArrayList<>());
+        for (RoutingSubscription member : members) {
+          final Subscriber subscriber = member.getSubscriber();
+          byLane.get(FanOut.laneOf(subscriber, lanes)).add(subscriber);
+        }
+        final Subscriber[][] rebuilt = new Subscriber[lanes][];
+        for (int lane = 0; lane < lanes; lane++) {
+          final List<Subscriber> subscribers = byLane.get(lane);
+          rebuilt[lane] = subscribers.isEmpty() ? EMPTY : subscribers.toArray(new Subscriber[subscribers.size()]);
+        }
+        this.laneSnapshot = rebuilt;
+        return rebuilt;
+      }
+    }
+
+    @Override
+    public String toString() {
+      return "Group [filters=" + filters + ", members=" + members.size() + "]";
+    }
+  }
+
+  private final Router router;
+
+  /** Groups keyed by their filter set; guarded by this. */
+  private final Map<Set<Topic>, Group> groups = new HashMap<>();
+
+  SubscriberGroups(Router router) {
+    this.router = router;
+  }
+
+  static boolean isPrivate(Topic filter) {
+    return filter.length() != 0 && filter.getParts()[0].equals(Flywheel.REMOTE_PREFIX);
+  }
+
+  /**
+   *  Applies a plan obtained from {@link RoutingSubscription#plan(Collection, Collection)},
+   *  moving the member to the group matching its new set of shared filters.
+   *
+   *  @param member The subscription.
+   *  @param plan The changes to the member's routed filters.
+   *  @return A future that completes once the member's new filters are routed.
+   */
+  CompletableFuture<Void> apply(RoutingSubscription member, RoutingSubscription.Plan plan) {
+    final RoutingSubscription.Plan privatePlan = new RoutingSubscription.Plan(privateOf(plan.subscribe), privateOf(plan.unsubscribe));
+    final Set<Topic> shared = sharedOf(member.getRouted());
+
+    final Group oldGroup;
+    final Group newGroup;
+    synchronized (this) {
+      oldGroup = member.group;
+      if (member.isClosed() || shared.equals(oldGroup != null ? oldGroup.filters : Collections.emptySet())) {
+        // a closed member doesn't join, as it has left (or is about to leave) its group for good
+        newGroup = oldGroup;
+      } else {
+        if (oldGroup != null && ! shared.isEmpty()) member.beginTransition();
+        newGroup = shared.isEmpty() ? null : join(shared, member);
+        member.group = newGroup;
+      }
+    }
+
+    final CompletableFuture<Void> privateRouted = routePrivate(member, privatePlan);
+    final CompletableFuture<Void> groupRouted = newGroup != oldGroup && newGroup != null ?
+        newGroup.routed : CompletableFuture.completedFuture(null);
+
+    return CompletableFuture.allOf(privateRouted, groupRouted).thenRun(() -> {
+      if (newGroup != oldGroup && oldGroup != null) leave(oldGroup, member);
+    });
+  }
+
+  /**
+   *  Hands a member's private filters to the router, recording them so that {@link #close}
+   *  unroutes exactly those that were routed. Nothing is routed once the member has closed.
+   */
+  private CompletableFuture<Void> routePrivate(RoutingSubscription member, RoutingSubscription.Plan privatePlan) {
+    if (privatePlan.isEmpty()) return CompletableFuture.completedFuture(null);
+    
+    synchronized (member) {
+      if (member.isClosed()) return CompletableFuture.completedFuture(null);
+      member.privateRouted.addAll(privatePlan.subscribe);
+      member.privateRouted.removeAll(privatePlan.unsubscribe);
+      return router.route(member.getSubscriber(), privatePlan);
+    }
+  }
+
+  /**
+   *  Removes a closed member from its group, and unroutes its private filters, including any
+   *  whose bind is still in flight.
+   *
+   *  @param member The subscription.
+   */
+  void close(RoutingSubscription member) {
+    final List<Topic> privateRouted;
+    synchronized (member) {
+      member.close();
+      member.clearRouted();
+      privateRouted = new ArrayList<>(member.privateRouted);
+      member.privateRouted.clear();
+    }
+    if (! privateRouted.isEmpty()) {
+      router.route(member.getSubscriber(), new RoutingSubscription.Plan(Collections.emptyList(), privateRouted));
+    }
+
+    final Group group;
+    synchronized (this) {
+      group = member.group;
+      member.group = null;
+    }
+    if (group != null) leave(group, member);
+  }
+
+  private Group join(Set<Topic> filters, RoutingSubscription member) {
+    Group group = groups.get(filters);
+    if (group == null) {
+      final Group created = new Group(filters);
+      group = created;
+      groups.put(filters, created);
+      if (LOG.isDebugEnabled()) LOG.debug("Creating {}", created);
+      created.routed = router.route(created, new RoutingSubscription.Plan(new ArrayList<>(filters), Collections.emptyList()));
+      created.routed.whenComplete((void_, cause) -> {
+        if (cause != null) {
+          synchronized (this) {
+            groups.remove(filters, created);
+          }
+        }
+      });
+    }
+    group.add(member);
+    return group;
+  }
+
+  private synchronized void leave(Group group, RoutingSubscription member) {
+    if (member.group == group) return; // rejoined by a later bind
+    if (! group.remove(member) || ! group.members.isEmpty()) return;
+
+    if (groups.remove(group.filters, group)) {
+      if (LOG.isDebugEnabled()) LOG.debug("Removing {}", group);
+      router.route(group, new RoutingSubscription.Plan(Collections.emptyList(), new ArrayList<>(group.filters)));
+    }
+  }
+
+  synchronized int size() {
+    return groups.size();
+  }
+
+  private static List<Topic> privateOf(Collection<Topic> filters) {
+    final List<Topic> privateFilters = new ArrayList<>();
+    for (Topic filter : filters) {
+      if (isPrivate(filter)) privateFilters.add(filter);
+    }
+    return privateFilters;
+  }
+
+  private static Set<Topic> sharedOf(Collection<Topic> filters) {
+    final Set<Topic> shared = new HashSet<>();
+    for (Topic filter : filters) {
+      if (! isPrivate(filter)) shared.add(filter);
+    }
+    return shared;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "SubscriberGroups [groups=" + groups.size() + "]";
+  }
+}
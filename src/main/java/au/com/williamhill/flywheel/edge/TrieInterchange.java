@@ -0,0 +1,156 @@
+package au.com.williamhill.flywheel.edge;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.*;
+
+import org.slf4j.*;
+
+import com.obsidiandynamics.yconf.*;
+
+import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.topic.*;
+
+/**
+ *  An {@link Interchange} backed by a {@link SubscriptionTrie}, where a publish is routed and
+ *  delivered directly on the publishing thread, without any intermediate actor hops. Only
+ *  bind and close events mutate the shared routing state.
+ */
+@Y
+public final class TrieInterchange implements Interchange {
+  private static final Logger LOG = LoggerFactory.getLogger(TrieInterchange.class);
+
+  /** Default capacity of the route cache. */
+  public static final int DEFAULT_ROUTE_CACHE_CAPACITY = RouteCache.DEFAULT_CAPACITY;
+
+  private final SubscriptionTrie trie;
+  
+  private final InterestFilter interest = new InterestFilter();
+  
+  private final SubscriberGroups groups;
+  
+  public TrieInterchange() {
+    this(DEFAULT_ROUTE_CACHE_CAPACITY);
+  }
+  
+  /**
+   *  Creates an interchange that caches the resolved routes of up to the given number of
+   *  exact topics.
+   *  
+   *  @param routeCacheCapacity The route cache capacity; 0 to disable route caching.
+   */
+  public TrieInterchange(int routeCacheCapacity) {
+    trie = new SubscriptionTrie(routeCacheCapacity != 0 ? new RouteCache(routeCacheCapacity) : null);
+    groups = new SubscriberGroups((subscriber, plan) -> {
+      for (Topic topic : plan.subscribe) {
+        if (trie.subscribe(topic, subscriber)) interest.add(topic);
+      }
+      for (Topic topic : plan.unsubscribe) {
+        if (trie.unsubscribe(topic, subscriber)) interest.remove(topic);
+      }
+      return CompletableFuture.completedFuture(null);
+    });
+  }
+  
+  /**
+   *  Obtains the route cache, with its hit, miss and invalidation counts.
+   *  
+   *  @return The route cache; null if disabled.
+   */
+  public RouteCache getRouteCache() {
+    return trie.getRouteCache();
+  }
+
+  /**
+   *  Obtains the filter that publishes without local subscribers are dropped by, along with
+   *  the drop statistics.
+   *  
+   *  @return The interest filter.
+   */
+  public InterestFilter getInterestFilter() {
+    return interest;
+  }
+
+  @Override
+  public void onOpen(EdgeNexus nexus) {
+    if (LOG.isDebugEnabled()) LOG.debug("{}: opened", nexus);
+    final Subscriber subscriber = d -> {
+      if (LOG.isTraceEnabled()) LOG.trace("{}: delivering {}", nexus, d.getPayload());
+      nexus.deliver(d);
+    };
+    nexus.getSession().setSubscription(new RoutingSubscription(subscriber));
+  }
+
+  @Override
+  public void onClose(EdgeNexus nexus) {
+    if (LOG.isDebugEnabled()) LOG.debug("{}: closed", nexus);
+    final RoutingSubscription subscription = nexus.getSession().getSubscription();
+    if (subscription == null) {
+      LOG.error("{}: no subscription", nexus);
+      return;
+    }
+    subscription.close();
+    groups.close(subscription);
+  }
+
+  @Override
+  public CompletableFuture<Void> onBind(EdgeNexus nexus, Set<String> subscribe, Set<String> unsubscribe) {
+    if (subscribe.isEmpty() && unsubscribe.isEmpty()) {
+      return CompletableFuture.completedFuture(null);
+    }
+
+    final RoutingSubscription subscription = nexus.getSession().getSubscription();
+    if (subscription == null) {
+      LOG.error("{}: no subscription", nexus);
+      throw new IllegalStateException("No subscription set for " + nexus);
+    }
+
+    final List<Topic> subTopics = subscribe.stream().map(t -> Topic.of(t)).collect(Collectors.toList());
+    final List<Topic> unsubTopics = unsubscribe.stream().map(t -> Topic.of(t)).collect(Collectors.toList());
+
+    final RoutingSubscription.Plan plan = subscription.plan(subTopics, unsubTopics);
+    if (! plan.isEmpty()) groups.apply(subscription, plan).join();
+    subscription.addTopics(subTopics);
+    subscription.removeTopics(unsubTopics);
+    if (! plan.isEmpty()) subscription.settle();
+    return CompletableFuture.completedFuture(null);
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, PublishTextFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(pub.getTopic())) return;
+    trie.publish(Topic.of(pub.getTopic()), new TextFrame(pub));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, PublishBinaryFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(pub.getTopic())) return;
+    trie.publish(Topic.of(pub.getTopic()), new BinaryFrame(pub.getTopic(), pub.getPayloadBuffer()));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, TopicHandle handle, PublishTextFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(handle)) return;
+    trie.publish(handle, new TextFrame(pub));
+  }
+
+  @Override
+  public void onPublish(EdgeNexus nexus, TopicHandle handle, PublishBinaryFrame pub) {
+    if (LOG.isTraceEnabled()) LOG.trace("{}: published {}", nexus, pub);
+    if (! interest.admit(handle)) return;
+    trie.publish(handle, new BinaryFrame(pub.getTopic(), pub.getPayloadBuffer()));
+  }
+
+  @Override
+  public void close() {
+    if (LOG.isDebugEnabled()) LOG.debug("Closing interchange");
+  }
+
+  @Override
+  public String toString() {
+    return TrieInterchange.class.getSimpleName();
+  }
+}
@@ -18,7 +18,10 @@ public interface Backplane extends AutoCloseable {
   
   /**
    *  Invoked when a text message is published on the local node. The backplane is responsible
-   *  for disseminating this message to the peer nodes.
+   *  for disseminating this message to the peer nodes. A byte-oriented backplane should take 
+   *  the payload from {@link PublishTextFrame#getPayloadUtf8()}, and hand it to its peers'
+   *  {@link BackplaneConnector#publishText(String, java.nio.ByteBuffer)}, so that the payload 
+   *  isn't transcoded on either side.
    *  
    *  @param nexus The publisher nexus.
    *  @param pub The published frame.
@@ -1,7 +1,26 @@
 package au.com.williamhill.flywheel.edge.backplane;
 
+import java.nio.*;
+import java.nio.charset.*;
+
 public interface BackplaneConnector {
   void publish(String topic, String payload);
   
   void publish(String topic, byte[] payload);
+  
+  /**
+   *  Publishes a text message given in its UTF-8 encoding, as received by a byte-oriented 
+   *  backplane. The payload is carried through to the subscribers as bytes, and is only decoded 
+   *  if and when a string is needed; a backplane should therefore prefer this method over 
+   *  {@link #publish(String, String)} where it already holds the encoded form.<p>
+   *  
+   *  The default implementation decodes the payload and calls {@link #publish(String, String)}.
+   *  
+   *  @param topic The topic.
+   *  @param utf8 The UTF-8 encoded payload, from its position to its limit; must not be modified
+   *              once published.
+   */
+  default void publishText(String topic, ByteBuffer utf8) {
+    publish(topic, StandardCharsets.UTF_8.decode(utf8.duplicate()).toString());
+  }
 }
@@ -1,15 +1,38 @@
 package au.com.williamhill.flywheel.frame;
 
-import java.util.*;
+import java.nio.*;
+
+import au.com.williamhill.flywheel.util.*;
 
 public final class BinaryFrame implements BinaryEncodedFrame {
   private final String topic;
   
-  private final byte[] payload;
+  private final BinaryPayload payload;
+  
+  /** Memoised encoding; excluded from equality. */
+  transient volatile Encoding<ByteBuffer> encoding;
+  
+  /** Memoised version 2 binary encoding; excluded from equality. */
+  transient volatile Encoding<ByteBuffer> encodingV2;
+  
+  /** Memoised pooled encoding, valid while it holds a reference; excluded from equality. */
+  transient volatile Encoding<PooledBuffer> pooledEncoding;
 
   public BinaryFrame(String topic, byte[] payload) {
     this.topic = topic;
-    this.payload = payload;
+    this.payload = new BinaryPayload(payload);
+  }
+  
+  /**
+   *  Creates a frame over the remaining contents of the given buffer, without copying them.
+   *  The buffer must not be modified for as long as the frame is in use.
+   *  
+   *  @param topic The topic.
+   *  @param payload The payload buffer.
+   */
+  public BinaryFrame(String topic, ByteBuffer payload) {
+    this.topic = topic;
+    this.payload = new BinaryPayload(payload);
   }
 
   @Override
@@ -21,15 +44,34 @@ public final class BinaryFrame implements BinaryEncodedFrame {
     return topic;
   }
 
+  /**
+   *  Obtains the payload as an array. If the frame was created over a buffer, the payload is
+   *  copied on the first call.
+   *  
+   *  @return The payload.
+   */
   public final byte[] getPayload() {
-    return payload;
+    return payload.array();
+  }
+  
+  /**
+   *  Obtains a read-only view of the payload, which doesn't copy it.
+   *  
+   *  @return The payload buffer, positioned at the start of the payload.
+   */
+  public final ByteBuffer getPayloadBuffer() {
+    return payload.buffer();
+  }
+  
+  public final int getPayloadLength() {
+    return payload.length();
   }
   
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + Arrays.hashCode(payload);
+    result = prime * result + payload.hashCode();
     result = prime * result + ((topic == null) ? 0 : topic.hashCode());
     return result;
   }
@@ -43,7 +85,7 @@ public final class BinaryFrame implements BinaryEncodedFrame {
     if (getClass() != obj.getClass())
       return false;
     BinaryFrame other = (BinaryFrame) obj;
-    if (!Arrays.equals(payload, other.payload))
+    if (!payload.equals(other.payload))
       return false;
     if (topic == null) {
       if (other.topic != null)
@@ -55,6 +97,6 @@ public final class BinaryFrame implements BinaryEncodedFrame {
 
   @Override
   public String toString() {
-    return "Binary [topic=" + topic + ", payload.length=" + payload.length + "]";
+    return "Binary [topic=" + topic + ", payload.length=" + payload.length() + "]";
   }
 }
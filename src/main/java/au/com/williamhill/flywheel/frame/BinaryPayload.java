@@ -0,0 +1,65 @@
+package au.com.williamhill.flywheel.frame;
+
+import java.nio.*;
+
+/**
+ *  The payload of a binary frame, held either as an array or as a read-only view over a
+ *  buffer that the frame doesn't own (typically the buffer that the frame was decoded from).
+ *  Whichever form is missing is derived on first use; a view is copied into an array at most
+ *  once.
+ */
+final class BinaryPayload {
+  /** A read-only view, positioned at the start of the payload; null if created from an array. */
+  private final ByteBuffer buffer;
+  
+  /** The payload as an array; created on first use if created from a buffer. */
+  private volatile byte[] array;
+  
+  BinaryPayload(byte[] array) {
+    buffer = null;
+    this.array = array;
+  }
+  
+  BinaryPayload(ByteBuffer buffer) {
+    this.buffer = buffer.isReadOnly() ? buffer.slice() : buffer.asReadOnlyBuffer().slice();
+  }
+  
+  byte[] array() {
+    final byte[] array = this.array;
+    if (array != null) return array;
+    
+    final byte[] copy = new byte[buffer.remaining()];
+    buffer.duplicate().get(copy);
+    this.array = copy;
+    return copy;
+  }
+  
+  ByteBuffer buffer() {
+    return buffer != null ? buffer.duplicate() : ByteBuffer.wrap(array).asReadOnlyBuffer();
+  }
+  
+  int length() {
+    return buffer != null ? buffer.remaining() : array.length;
+  }
+  
+  boolean isView() {
+    return buffer != null;
+  }
+  
+  @Override
+  public int hashCode() {
+    return buffer().hashCode();
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    BinaryPayload other = (BinaryPayload) obj;
+    return buffer().equals(other.buffer());
+  }
+}
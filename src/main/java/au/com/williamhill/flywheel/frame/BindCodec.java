@@ -0,0 +1,445 @@
+package au.com.williamhill.flywheel.frame;
+
+import java.io.*;
+import java.util.*;
+
+import com.google.gson.*;
+import com.google.gson.stream.*;
+
+/**
+ *  Streams the JSON body of {@link BindFrame}s and {@link BindResponseFrame}s, without
+ *  reflection and without building an intermediate tree.<p>
+ *
+ *  The output matches, byte for byte, that of the reflective {@link Gson} configuration in
+ *  {@link Wire}: the type label comes first, then the fields of the class, then those of its
+ *  superclass, each in declaration order, with null fields omitted. Parsing accepts the same
+ *  documents, and fails where Gson would. Only the metadata, being arbitrary JSON, is handed
+ *  to Gson.
+ */
+final class BindCodec {
+  private static final String TYPE = "type";
+
+  private final Gson gson;
+
+  private final TypeAdapter<Object> metadataAdapter;
+
+  BindCodec(Gson gson) {
+    this.gson = gson;
+    metadataAdapter = gson.getAdapter(Object.class);
+  }
+
+  /**
+   *  Appends the JSON form of a frame to the given builder.
+   *
+   *  @param frame The frame.
+   *  @param sb The builder to append to.
+   */
+  void encode(IdFrame frame, StringBuilder sb) {
+    try (JsonWriter out = gson.newJsonWriter(new StringBuilderWriter(sb))) {
+      if (frame instanceof BindFrame) {
+        writeBind((BindFrame) frame, out);
+      } else if (frame instanceof BindResponseFrame) {
+        writeBindResponse((BindResponseFrame) frame, out);
+      } else {
+        throw new JsonParseException("cannot serialize " + frame.getClass().getName() + "; did you forget to register a subtype?");
+      }
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+  }
+
+  private void writeBind(BindFrame frame, JsonWriter out) throws IOException {
+    out.beginObject();
+    out.name(TYPE).value(BindFrame.JSON_TYPE_NAME);
+    if (frame.getSessionId() != null) {
+      out.name("sessionId").value(frame.getSessionId());
+    }
+    if (frame.getAuth() != null) {
+      out.name("auth");
+      writeAuth(frame.getAuth(), out);
+    }
+    if (frame.subscribe != null) {
+      out.name("subscribe");
+      writeStrings(frame.subscribe, out);
+    }
+    if (frame.unsubscribe != null) {
+      out.name("unsubscribe");
+      writeStrings(frame.unsubscribe, out);
+    }
+    if (frame.getMetadata() != null) {
+      out.name("metadata");
+      gson.toJson(frame.getMetadata(), frame.getMetadata().getClass(), out);
+    }
+    writeMessageId(frame, out);
+    out.endObject();
+  }
+
+  private static void writeBindResponse(BindResponseFrame frame, JsonWriter out) throws IOException {
+    out.beginObject();
+    out.name(TYPE).value(BindResponseFrame.JSON_TYPE_NAME);
+    if (frame.getErrors() != null) {
+      out.name("errors");
+      out.beginArray();
+      for (Error error : frame.getErrors()) {
+        writeError(error, out);
+      }
+      out.endArray();
+    }
+    writeMessageId(frame, out);
+    out.endObject();
+  }
+
+  private static void writeMessageId(IdFrame frame, JsonWriter out) throws IOException {
+    if (frame.messageId != null) {
+      out.name("messageId").value(frame.messageId.toString());
+    }
+  }
+
+  private static void writeStrings(String[] strings, JsonWriter out) throws IOException {
+    out.beginArray();
+    for (String string : strings) {
+      out.value(string);
+    }
+    out.endArray();
+  }
+
+  private static void writeAuth(AuthCredentials auth, JsonWriter out) throws IOException {
+    if (auth instanceof BasicAuthCredentials) {
+      final BasicAuthCredentials basic = (BasicAuthCredentials) auth;
+      out.beginObject();
+      out.name(TYPE).value(BasicAuthCredentials.JSON_TYPE_NAME);
+      if (basic.getUsername() != null) out.name("username").value(basic.getUsername());
+      if (basic.getPassword() != null) out.name("password").value(basic.getPassword());
+      out.endObject();
+    } else if (auth instanceof BearerAuthCredentials) {
+      final BearerAuthCredentials bearer = (BearerAuthCredentials) auth;
+      out.beginObject();
+      out.name(TYPE).value(BearerAuthCredentials.JSON_TYPE_NAME);
+      if (bearer.getToken() != null) out.name("token").value(bearer.getToken());
+      out.endObject();
+    } else {
+      throw new JsonParseException("cannot serialize " + auth.getClass().getName() + "; did you forget to register a subtype?");
+    }
+  }
+
+  private static void writeError(Error error, JsonWriter out) throws IOException {
+    if (error == null) {
+      out.nullValue();
+    } else if (error instanceof GeneralError) {
+      out.beginObject();
+      out.name(TYPE).value(GeneralError.JSON_TYPE_NAME);
+      if (error.getDescription() != null) out.name("description").value(error.getDescription());
+      out.endObject();
+    } else if (error instanceof TopicAccessError) {
+      final TopicAccessError topicAccess = (TopicAccessError) error;
+      out.beginObject();
+      out.name(TYPE).value(TopicAccessError.JSON_TYPE_NAME);
+      if (topicAccess.getTopic() != null) out.name("topic").value(topicAccess.getTopic());
+      if (error.getDescription() != null) out.name("description").value(error.getDescription());
+      out.endObject();
+    } else {
+      throw new JsonParseException("cannot serialize " + error.getClass().getName() + "; did you forget to register a subtype?");
+    }
+  }
+
+  /**
+   *  Decodes a frame from the given string, starting at the given offset.
+   *
+   *  @param str The string containing the JSON document.
+   *  @param offset The offset at which the document starts.
+   *  @param expected The expected frame class: {@link BindFrame}, {@link BindResponseFrame}, or
+   *                  {@link IdFrame}, in which case the class is given by the type label.
+   *  @return The decoded frame, or null if the document is empty or null.
+   */
+  IdFrame decode(String str, int offset, Class<? extends Frame> expected) {
+    final StringReader reader = new StringReader(str);
+    final JsonReader in = gson.newJsonReader(reader);
+    final IdFrame frame;
+    try {
+      reader.skip(offset);
+      in.setLenient(true);
+      try {
+        in.peek();
+      } catch (EOFException e) {
+        return null;
+      }
+      frame = readFrame(in, expected);
+    } catch (IllegalStateException | IOException e) {
+      throw new JsonSyntaxException(e);
+    }
+
+    try {
+      in.setLenient(false);
+      if (frame != null && in.peek() != JsonToken.END_DOCUMENT) {
+        throw new JsonIOException("JSON document was not fully consumed.");
+      }
+    } catch (MalformedJsonException e) {
+      throw new JsonSyntaxException(e);
+    } catch (IOException e) {
+      throw new JsonIOException(e);
+    }
+    return frame;
+  }
+
+  /**
+   *  Reads a frame. If the expected class is {@link IdFrame}, the type label is used to pick
+   *  the class, and any fields preceding the label are read as if they could belong to either
+   *  class. Otherwise, the label is ignored, as it is by Gson.
+   */
+  private IdFrame readFrame(JsonReader in, Class<? extends Frame> expected) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    final boolean labelled = expected == IdFrame.class;
+    Class<?> type = labelled ? null : expected;
+    UUID messageId = null;
+    String sessionId = null;
+    AuthCredentials auth = null;
+    String[] subscribe = null;
+    String[] unsubscribe = null;
+    Object metadata = null;
+    Error[] errors = null;
+
+    in.beginObject();
+    while (in.hasNext()) {
+      final String name = in.nextName();
+      if (labelled && name.equals(TYPE)) {
+        type = frameClass(readString(in));
+        continue;
+      }
+
+      switch (name) {
+        case "messageId":
+          messageId = readUuid(in);
+          break;
+
+        case "sessionId":
+          if (type != BindResponseFrame.class) sessionId = readString(in); else in.skipValue();
+          break;
+
+        case "auth":
+          if (type != BindResponseFrame.class) auth = readAuth(in); else in.skipValue();
+          break;
+
+        case "subscribe":
+          if (type != BindResponseFrame.class) subscribe = readStrings(in); else in.skipValue();
+          break;
+
+        case "unsubscribe":
+          if (type != BindResponseFrame.class) unsubscribe = readStrings(in); else in.skipValue();
+          break;
+
+        case "metadata":
+          if (type != BindResponseFrame.class) metadata = metadataAdapter.read(in); else in.skipValue();
+          break;
+
+        case "errors":
+          if (type != BindFrame.class) errors = readErrors(in); else in.skipValue();
+          break;
+
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    if (type == BindFrame.class) {
+      return new BindFrame(messageId, sessionId, auth, subscribe, unsubscribe, metadata);
+    } else if (type == BindResponseFrame.class) {
+      return new BindResponseFrame(messageId, errors);
+    } else {
+      throw new JsonParseException("cannot deserialize " + IdFrame.class + " because it does not define a field named " + TYPE);
+    }
+  }
+
+  private static Class<?> frameClass(String label) {
+    if (BindFrame.JSON_TYPE_NAME.equals(label)) {
+      return BindFrame.class;
+    } else if (BindResponseFrame.JSON_TYPE_NAME.equals(label)) {
+      return BindResponseFrame.class;
+    } else if (label == null) {
+      return null;
+    } else {
+      throw new JsonParseException("cannot deserialize " + IdFrame.class + " subtype named " + label + "; did you forget to register a subtype?");
+    }
+  }
+
+  private static AuthCredentials readAuth(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    String label = null;
+    String username = null;
+    String password = null;
+    String token = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      final String name = in.nextName();
+      switch (name) {
+        case TYPE:
+          label = readString(in);
+          break;
+
+        case "username":
+          if (label == null || label.equals(BasicAuthCredentials.JSON_TYPE_NAME)) username = readString(in); else in.skipValue();
+          break;
+
+        case "password":
+          if (label == null || label.equals(BasicAuthCredentials.JSON_TYPE_NAME)) password = readString(in); else in.skipValue();
+          break;
+
+        case "token":
+          if (label == null || label.equals(BearerAuthCredentials.JSON_TYPE_NAME)) token = readString(in); else in.skipValue();
+          break;
+
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    if (label == null) {
+      throw new JsonParseException("cannot deserialize " + AuthCredentials.class + " because it does not define a field named " + TYPE);
+    } else if (label.equals(BasicAuthCredentials.JSON_TYPE_NAME)) {
+      return new BasicAuthCredentials(username, password);
+    } else if (label.equals(BearerAuthCredentials.JSON_TYPE_NAME)) {
+      return new BearerAuthCredentials(token);
+    } else {
+      throw new JsonParseException("cannot deserialize " + AuthCredentials.class + " subtype named " + label + "; did you forget to register a subtype?");
+    }
+  }
+
+  private static Error[] readErrors(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    final List<Error> errors = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      errors.add(readError(in));
+    }
+    in.endArray();
+    return errors.toArray(new Error[errors.size()]);
+  }
+
+  private static Error readError(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    String label = null;
+    String description = null;
+    String topic = null;
+    in.beginObject();
+    while (in.hasNext()) {
+      final String name = in.nextName();
+      switch (name) {
+        case TYPE:
+          label = readString(in);
+          break;
+
+        case "description":
+          description = readString(in);
+          break;
+
+        case "topic":
+          if (label == null || label.equals(TopicAccessError.JSON_TYPE_NAME)) topic = readString(in); else in.skipValue();
+          break;
+
+        default:
+          in.skipValue();
+      }
+    }
+    in.endObject();
+
+    if (label == null) {
+      throw new JsonParseException("cannot deserialize " + Error.class + " because it does not define a field named " + TYPE);
+    } else if (label.equals(GeneralError.JSON_TYPE_NAME)) {
+      return new GeneralError(description);
+    } else if (label.equals(TopicAccessError.JSON_TYPE_NAME)) {
+      return new TopicAccessError(description, topic);
+    } else {
+      throw new JsonParseException("cannot deserialize " + Error.class + " subtype named " + label + "; did you forget to register a subtype?");
+    }
+  }
+
+  private static String[] readStrings(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+
+    final List<String> strings = new ArrayList<>();
+    in.beginArray();
+    while (in.hasNext()) {
+      strings.add(readString(in));
+    }
+    in.endArray();
+    return strings.toArray(new String[strings.size()]);
+  }
+
+  /**
+   *  Reads a string the way Gson does, accepting numbers and booleans in place of strings.
+   */
+  private static String readString(JsonReader in) throws IOException {
+    switch (in.peek()) {
+      case NULL:
+        in.nextNull();
+        return null;
+
+      case BOOLEAN:
+        return Boolean.toString(in.nextBoolean());
+
+      default:
+        return in.nextString();
+    }
+  }
+
+  private static UUID readUuid(JsonReader in) throws IOException {
+    if (in.peek() == JsonToken.NULL) {
+      in.nextNull();
+      return null;
+    }
+    return UUID.fromString(in.nextString());
+  }
+
+  /**
+   *  Appends to a {@link StringBuilder}, rather than to the synchronized buffer of a
+   *  {@link StringWriter}.
+   */
+  private static final class StringBuilderWriter extends Writer {
+    private final StringBuilder sb;
+
+    StringBuilderWriter(StringBuilder sb) {
+      this.sb = sb;
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+      sb.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(int c) {
+      sb.append((char) c);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+      sb.append(str, off, off + len);
+    }
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+}
@@ -9,9 +9,11 @@ public final class BindFrame extends IdFrame implements TextEncodedFrame {
   
   private AuthCredentials auth;
   
-  private String[] subscribe;
+  /** Package-private, so that {@link BindCodec} can tell an unset array apart from an empty one. */
+  String[] subscribe;
   
-  private String[] unsubscribe;
+  /** Package-private, as above. */
+  String[] unsubscribe;
   
   private Object metadata;
   
@@ -0,0 +1,18 @@
+package au.com.williamhill.flywheel.frame;
+
+/**
+ *  A memoised wire form of a frame, tagged with the {@link Wire} that produced it, so that
+ *  a frame fanned out to many recipients is only encoded once.
+ *
+ *  @param <E> The encoded type.
+ */
+final class Encoding<E> {
+  final Wire wire;
+
+  final E encoded;
+
+  Encoding(Wire wire, E encoded) {
+    this.wire = wire;
+    this.encoded = encoded;
+  }
+}
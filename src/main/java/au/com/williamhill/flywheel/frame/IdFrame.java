@@ -3,7 +3,8 @@ package au.com.williamhill.flywheel.frame;
 import java.util.*;
 
 public abstract class IdFrame implements Frame {
-  private UUID messageId;
+  /** Package-private, so that {@link BindCodec} can tell an unset ID apart. */
+  UUID messageId;
   
   protected IdFrame(UUID messageId) {
     this.messageId = messageId;
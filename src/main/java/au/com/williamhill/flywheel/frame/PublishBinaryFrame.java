@@ -1,15 +1,27 @@
 package au.com.williamhill.flywheel.frame;
 
-import java.util.*;
+import java.nio.*;
 
 public final class PublishBinaryFrame implements BinaryEncodedFrame {
   private final String topic;
   
-  private final byte[] payload;
+  private final BinaryPayload payload;
 
   public PublishBinaryFrame(String topic, byte[] payload) {
     this.topic = topic;
-    this.payload = payload;
+    this.payload = new BinaryPayload(payload);
+  }
+  
+  /**
+   *  Creates a frame over the remaining contents of the given buffer, without copying them.
+   *  The buffer must not be modified for as long as the frame is in use.
+   *  
+   *  @param topic The topic.
+   *  @param payload The payload buffer.
+   */
+  public PublishBinaryFrame(String topic, ByteBuffer payload) {
+    this.topic = topic;
+    this.payload = new BinaryPayload(payload);
   }
 
   @Override
@@ -21,15 +33,34 @@ public final class PublishBinaryFrame implements BinaryEncodedFrame {
     return topic;
   }
 
+  /**
+   *  Obtains the payload as an array. If the frame was created over a buffer, the payload is
+   *  copied on the first call.
+   *  
+   *  @return The payload.
+   */
   public final byte[] getPayload() {
-    return payload;
+    return payload.array();
+  }
+  
+  /**
+   *  Obtains a read-only view of the payload, which doesn't copy it.
+   *  
+   *  @return The payload buffer, positioned at the start of the payload.
+   */
+  public final ByteBuffer getPayloadBuffer() {
+    return payload.buffer();
+  }
+  
+  public final int getPayloadLength() {
+    return payload.length();
   }
 
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + Arrays.hashCode(payload);
+    result = prime * result + payload.hashCode();
     result = prime * result + ((topic == null) ? 0 : topic.hashCode());
     return result;
   }
@@ -43,7 +74,7 @@ public final class PublishBinaryFrame implements BinaryEncodedFrame {
     if (getClass() != obj.getClass())
       return false;
     PublishBinaryFrame other = (PublishBinaryFrame) obj;
-    if (!Arrays.equals(payload, other.payload))
+    if (!payload.equals(other.payload))
       return false;
     if (topic == null) {
       if (other.topic != null)
@@ -55,6 +86,6 @@ public final class PublishBinaryFrame implements BinaryEncodedFrame {
 
   @Override
   public String toString() {
-    return "PublishBinary [topic=" + topic + ", payload.length=" + payload.length + "]";
+    return "PublishBinary [topic=" + topic + ", payload.length=" + payload.length() + "]";
   }
 }
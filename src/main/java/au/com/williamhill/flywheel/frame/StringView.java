@@ -0,0 +1,54 @@
+package au.com.williamhill.flywheel.frame;
+
+/**
+ *  A read-only view of a range of a string, which, unlike {@link String#substring(int, int)}, 
+ *  doesn't copy the characters. The view keeps the whole underlying string reachable.
+ */
+final class StringView implements CharSequence {
+  private final String source;
+  
+  private final int start;
+  
+  private final int end;
+  
+  StringView(String source, int start, int end) {
+    if (start < 0 || end > source.length() || start > end) {
+      throw new IndexOutOfBoundsException("Range [" + start + ", " + end + ") out of bounds for length " + source.length());
+    }
+    this.source = source;
+    this.start = start;
+    this.end = end;
+  }
+
+  @Override
+  public int length() {
+    return end - start;
+  }
+
+  @Override
+  public char charAt(int index) {
+    if (index < 0 || index >= end - start) {
+      throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + (end - start));
+    }
+    return source.charAt(start + index);
+  }
+
+  @Override
+  public CharSequence subSequence(int start, int end) {
+    return new StringView(source, this.start + start, this.start + end);
+  }
+  
+  /**
+   *  Appends the viewed characters to the given builder, in bulk.
+   *  
+   *  @param sb The builder to append to.
+   */
+  void appendTo(StringBuilder sb) {
+    sb.append(source, start, end);
+  }
+
+  @Override
+  public String toString() {
+    return source.substring(start, end);
+  }
+}
@@ -1,13 +1,57 @@
 package au.com.williamhill.flywheel.frame;
 
+import java.nio.*;
+
 public final class TextFrame implements TextEncodedFrame {
   private final String topic;
   
-  private final String payload;
+  private final TextPayload payload;
+  
+  /** Memoised encoding; excluded from equality. */
+  transient volatile Encoding<String> encoding;
+  
+  /** Memoised version 2 binary encoding; excluded from equality. */
+  transient volatile Encoding<ByteBuffer> encodingV2;
 
   public TextFrame(String topic, String payload) {
     this.topic = topic;
-    this.payload = payload;
+    this.payload = new TextPayload(payload);
+  }
+  
+  /**
+   *  Creates a frame over the given payload, without copying it. The payload must not change 
+   *  for as long as the frame is in use.
+   *  
+   *  @param topic The topic.
+   *  @param payload The payload.
+   */
+  public TextFrame(String topic, CharSequence payload) {
+    this.topic = topic;
+    this.payload = new TextPayload(payload);
+  }
+
+  /**
+   *  Creates a frame over the UTF-8 encoding of the payload, without copying or decoding it. 
+   *  The payload is only decoded into a string if asked for, or when the frame is encoded.
+   *  The buffer's content must not change for as long as the frame is in use.
+   *  
+   *  @param topic The topic.
+   *  @param utf8 The UTF-8 encoded payload, from its position to its limit.
+   */
+  public TextFrame(String topic, ByteBuffer utf8) {
+    this.topic = topic;
+    this.payload = new TextPayload(utf8);
+  }
+  
+  /**
+   *  Creates a frame for delivering the given publish, sharing its payload in whatever form 
+   *  it is held, so that neither frame decodes or encodes the payload more than once.
+   *  
+   *  @param pub The published frame.
+   */
+  public TextFrame(PublishTextFrame pub) {
+    this.topic = pub.getTopic();
+    this.payload = pub.payload;
   }
 
   @Override
@@ -19,15 +63,58 @@ public final class TextFrame implements TextEncodedFrame {
     return topic;
   }
 
+  /**
+   *  Obtains the payload as a string. If the frame was created over a view, the payload is
+   *  copied into a string on the first call.
+   *  
+   *  @return The payload.
+   */
   public final String getPayload() {
-    return payload;
+    return payload.string();
+  }
+  
+  /**
+   *  Obtains the payload without copying it.
+   *  
+   *  @return The payload.
+   */
+  public final CharSequence getPayloadSequence() {
+    return payload.sequence();
+  }
+  
+  /**
+   *  Obtains the UTF-8 encoding of the payload. If the frame was created over characters, the
+   *  payload is encoded on the first call.
+   *  
+   *  @return A read-only buffer, positioned at the start of the payload.
+   */
+  public final ByteBuffer getPayloadUtf8() {
+    return payload.utf8();
+  }
+  
+  public final int getPayloadLength() {
+    return payload.length();
+  }
+  
+  /**
+   *  Obtains the length of the payload's UTF-8 encoding. If the frame was created over UTF-8
+   *  bytes, the payload isn't decoded to size it.
+   *  
+   *  @return The encoded length, in bytes.
+   */
+  public final int getPayloadUtf8Length() {
+    return payload.utf8Length();
+  }
+  
+  void appendPayload(StringBuilder sb) {
+    payload.appendTo(sb);
   }
   
   @Override
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + ((payload == null) ? 0 : payload.hashCode());
+    result = prime * result + payload.hashCode();
     result = prime * result + ((topic == null) ? 0 : topic.hashCode());
     return result;
   }
@@ -41,10 +128,7 @@ public final class TextFrame implements TextEncodedFrame {
     if (getClass() != obj.getClass())
       return false;
     TextFrame other = (TextFrame) obj;
-    if (payload == null) {
-      if (other.payload != null)
-        return false;
-    } else if (!payload.equals(other.payload))
+    if (!payload.equals(other.payload))
       return false;
     if (topic == null) {
       if (other.topic != null)
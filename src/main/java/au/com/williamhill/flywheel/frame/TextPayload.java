@@ -0,0 +1,139 @@
+package au.com.williamhill.flywheel.frame;
+
+import java.nio.*;
+import java.nio.charset.*;
+
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  The payload of a text frame, held as a string, as a view over a larger string (typically 
+ *  the frame that the payload was decoded from), or as UTF-8 bytes (typically received from a
+ *  byte-oriented backplane). Whichever form is missing is derived on first use, at most once.
+ *  Hashing and equality are consistent with {@link String}, and don't materialise a view.
+ */
+final class TextPayload {
+  private static final Charset UTF8 = StandardCharsets.UTF_8;
+  
+  /** A view of the payload; null if created from a string or from bytes. */
+  private final CharSequence view;
+  
+  /** The payload as a string; created on first use if created from a view or from bytes. */
+  private volatile String string;
+  
+  /** The payload's UTF-8 encoding, only ever handed out read-only; created on first use if created from characters. */
+  private volatile ByteBuffer utf8;
+  
+  TextPayload(String string) {
+    view = null;
+    this.string = string;
+  }
+  
+  TextPayload(CharSequence payload) {
+    if (payload instanceof String) {
+      view = null;
+      string = (String) payload;
+    } else {
+      view = payload;
+    }
+  }
+  
+  TextPayload(ByteBuffer utf8) {
+    view = null;
+    this.utf8 = utf8.slice();
+  }
+  
+  String string() {
+    final String string = this.string;
+    if (string != null) return string;
+    
+    final String materialised;
+    if (view != null) {
+      materialised = view.toString();
+    } else if (utf8 != null) {
+      materialised = decode(utf8);
+    } else {
+      return null;
+    }
+    this.string = materialised;
+    return materialised;
+  }
+  
+  private static String decode(ByteBuffer utf8) {
+    if (utf8.hasArray()) {
+      return new String(utf8.array(), utf8.arrayOffset() + utf8.position(), utf8.remaining(), UTF8);
+    } else {
+      return UTF8.decode(utf8.duplicate()).toString();
+    }
+  }
+  
+  ByteBuffer utf8() {
+    final ByteBuffer utf8 = this.utf8;
+    if (utf8 != null) return utf8.asReadOnlyBuffer();
+    
+    final CharSequence seq = sequence();
+    if (seq == null) return null;
+    final ByteBuffer encoded = seq instanceof String 
+        ? ByteBuffer.wrap(((String) seq).getBytes(UTF8)) 
+        : UTF8.encode(CharBuffer.wrap(seq));
+    this.utf8 = encoded;
+    return encoded.asReadOnlyBuffer();
+  }
+  
+  CharSequence sequence() {
+    return view != null ? view : string();
+  }
+  
+  int length() {
+    return sequence().length();
+  }
+  
+  int utf8Length() {
+    final ByteBuffer utf8 = this.utf8;
+    return utf8 != null ? utf8.remaining() : Utf8.length(sequence());
+  }
+  
+  void appendTo(StringBuilder sb) {
+    if (view instanceof StringView) {
+      ((StringView) view).appendTo(sb);
+    } else {
+      sb.append(sequence());
+    }
+  }
+  
+  @Override
+  public int hashCode() {
+    final CharSequence seq = sequence();
+    if (seq == null) return 0;
+    if (seq instanceof String) return seq.hashCode();
+    
+    int h = 0;
+    for (int i = 0; i < seq.length(); i++) {
+      h = 31 * h + seq.charAt(i);
+    }
+    return h;
+  }
+  
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    TextPayload other = (TextPayload) obj;
+    final CharSequence seq = sequence();
+    final CharSequence otherSeq = other.sequence();
+    if (seq == null) return otherSeq == null;
+    if (otherSeq == null || seq.length() != otherSeq.length()) return false;
+    for (int i = 0; i < seq.length(); i++) {
+      if (seq.charAt(i) != otherSeq.charAt(i)) return false;
+    }
+    return true;
+  }
+  
+  @Override
+  public String toString() {
+    return String.valueOf(sequence());
+  }
+}
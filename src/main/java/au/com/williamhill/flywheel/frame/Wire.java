@@ -7,21 +7,61 @@ import com.google.gson.*;
 import com.google.gson.typeadapters.*;
 import com.obsidiandynamics.socketx.util.*;
 
+import au.com.williamhill.flywheel.util.*;
+
 public final class Wire {
   private static final Charset UTF8 = Charset.forName("UTF-8");
   
   private static final int MAX_UNSIGNED_SHORT = (1 << 16) - 1;
   
+  private static final int TOPIC_BYTES_CACHE_CAPACITY = 1 << 16;
+  
   public static enum LocationHint {
     REMOTE, EDGE, UNSPECIFIED
   }
   
+  /**
+   *  The protocol versions. Version 1 sends binds and bind responses as JSON text frames, and
+   *  messages as text or binary frames, of up to 64 KB each. Version 2 sends every frame 
+   *  as a binary frame, with varint lengths and no limit on the frame size.<p>
+   *  
+   *  The version is negotiated in-band: version 2 frames are marked as such, and an edge node
+   *  switches a connection to version 2 as soon as it receives a version 2 frame on it, which 
+   *  is typically the remote's first bind. Version 1 remotes never send one, so they are 
+   *  served exactly as before, side by side with version 2 remotes.
+   */
+  public static enum Protocol {
+    V1, V2
+  }
+  
   private final Gson gson;
+  
+  private final BindCodec bindCodec;
+  
+  private final WireV2 v2;
 
   private final LocationHint locationHint;
   
+  private final BufferPool bufferPool;
+  
+  private final ClockMap<String, byte[]> topicBytesCache = new ClockMap<>(TOPIC_BYTES_CACHE_CAPACITY);
+  
   public Wire(boolean prettyPrinting, LocationHint locationHint) {
+    this(prettyPrinting, locationHint, null);
+  }
+  
+  /**
+   *  Creates a wire that optionally encodes binary frames into pooled buffers, rather than 
+   *  allocating a buffer for each frame. Pooled encoding is used by {@link SendHelper}, which
+   *  releases each buffer once its send completes.
+   *  
+   *  @param prettyPrinting Whether to pretty-print JSON.
+   *  @param locationHint Where the wire is used.
+   *  @param bufferPool The pool to encode binary frames into; null to allocate each buffer.
+   */
+  public Wire(boolean prettyPrinting, LocationHint locationHint, BufferPool bufferPool) {
     this.locationHint = locationHint;
+    this.bufferPool = bufferPool;
     final GsonBuilder builder = new GsonBuilder()
         .registerTypeAdapterFactory(RuntimeTypeAdapterFactory
                                     .of(IdFrame.class, "type")
@@ -37,31 +77,73 @@ public final class Wire {
                                     .registerSubtype(BearerAuthCredentials.class, BearerAuthCredentials.JSON_TYPE_NAME));
     if (prettyPrinting) builder.setPrettyPrinting();
     gson = builder.disableHtmlEscaping().create();
+    bindCodec = new BindCodec(gson);
+    v2 = new WireV2(gson);
   }
 
+  /**
+   *  Encodes a text frame. Where the frame is a {@link TextFrame}, the encoded form is memoised
+   *  on the frame, so that the same frame delivered to many recipients is only encoded once.
+   *  
+   *  @param frame The frame to encode.
+   *  @return The encoded string.
+   */
   public String encode(TextEncodedFrame frame) {
-    final StringBuilder sb = new StringBuilder();
+    if (frame instanceof TextFrame) {
+      final TextFrame text = (TextFrame) frame;
+      final Encoding<String> encoding = text.encoding;
+      if (encoding != null && encoding.wire == this) {
+        return encoding.encoded;
+      }
+      final String encoded = encodeUncached(frame);
+      text.encoding = new Encoding<>(this, encoded);
+      return encoded;
+    } else {
+      return encodeUncached(frame);
+    }
+  }
+  
+  private String encodeUncached(TextEncodedFrame frame) {
+    final StringBuilder sb = new StringBuilder(estimateLength(frame));
     sb.append(frame.getType().getCharCode()).append(' ');
     encodeFrameBody(frame, sb);
     return sb.toString();
   }
   
+  /**
+   *  Estimates the encoded length of a frame, so that a large payload is copied only once,
+   *  rather than each time the builder is grown.
+   */
+  private static int estimateLength(TextEncodedFrame frame) {
+    if (frame instanceof TextFrame) {
+      final TextFrame text = (TextFrame) frame;
+      return 3 + text.getTopic().length() + text.getPayloadLength();
+    } else if (frame instanceof PublishTextFrame) {
+      final PublishTextFrame pub = (PublishTextFrame) frame;
+      return 3 + pub.getTopic().length() + pub.getPayloadLength();
+    } else {
+      return 16;
+    }
+  }
+  
   private void encodeFrameBody(Frame frame, StringBuilder sb) {
     switch (frame.getType()) {
       case BIND: {
-        sb.append(gson.toJson(frame, IdFrame.class));
+        bindCodec.encode((IdFrame) frame, sb);
         return;
       }
         
       case RECEIVE: {
         final TextFrame text = (TextFrame) frame;
-        sb.append(text.getTopic()).append(' ').append(text.getPayload());
+        sb.append(text.getTopic()).append(' ');
+        text.appendPayload(sb);
         return;
       }
         
       case PUBLISH: {
         final PublishTextFrame pub = (PublishTextFrame) frame;
-        sb.append(pub.getTopic()).append(' ').append(pub.getPayload());
+        sb.append(pub.getTopic()).append(' ');
+        pub.appendPayload(sb);
         return;
       }
         
@@ -70,53 +152,137 @@ public final class Wire {
     }
   }
 
+  /**
+   *  Encodes a binary frame. Where the frame is a {@link BinaryFrame}, the encoded form is memoised
+   *  on the frame, and each caller is given its own read-only view of the shared buffer.
+   *  
+   *  @param frame The frame to encode.
+   *  @return The encoded buffer, positioned at the start of the frame.
+   */
   public ByteBuffer encode(BinaryEncodedFrame frame) {
-    final FrameType type = frame.getType();
-    switch (type) {
-      case RECEIVE: {
-        final BinaryFrame bin = (BinaryFrame) frame;
-        final byte[] topicBytes = bin.getTopic().getBytes(UTF8);
-        if (topicBytes.length > MAX_UNSIGNED_SHORT) {
-          throw new IllegalArgumentException("Topic length cannot exceed " + MAX_UNSIGNED_SHORT + " bytes");
-        }
-        final byte[] payload = bin.getPayload();
-        final ByteBuffer buf = ByteBuffer.allocate(3 + topicBytes.length + payload.length);
-        buf.put(type.getByteCode());
-        buf.putShort((short) topicBytes.length);
-        buf.put(topicBytes);
-        buf.put(payload);
-        buf.flip();
-        return verifiedBuffer(buf);
+    if (frame instanceof BinaryFrame) {
+      final BinaryFrame bin = (BinaryFrame) frame;
+      final Encoding<ByteBuffer> encoding = bin.encoding;
+      if (encoding != null && encoding.wire == this) {
+        return encoding.encoded.asReadOnlyBuffer();
       }
-        
-      case PUBLISH: {
-        final PublishBinaryFrame pub = (PublishBinaryFrame) frame;
-        final byte[] topicBytes = pub.getTopic().getBytes(UTF8);
-        if (topicBytes.length > MAX_UNSIGNED_SHORT) {
-          throw new IllegalArgumentException("Topic length cannot exceed " + MAX_UNSIGNED_SHORT + " bytes");
-        }
-        final byte[] payload = pub.getPayload();
-        final ByteBuffer buf = ByteBuffer.allocate(3 + topicBytes.length + payload.length);
-        buf.put(type.getByteCode());
-        buf.putShort((short) topicBytes.length);
-        buf.put(topicBytes);
-        buf.put(payload);
-        buf.flip();
-        return verifiedBuffer(buf);
+      final ByteBuffer encoded = encodeUncached(frame);
+      bin.encoding = new Encoding<>(this, encoded);
+      return encoded.asReadOnlyBuffer();
+    } else {
+      return encodeUncached(frame);
+    }
+  }
+  
+  /**
+   *  Encodes a binary frame into a buffer taken from this wire's {@link BufferPool}. The caller
+   *  is given a reference to the buffer, and must release it once done with it, typically upon
+   *  completion of the send. Where the frame is a {@link BinaryFrame}, the buffer is memoised on 
+   *  the frame for as long as a reference to it is held, so that recipients sending the same
+   *  frame at the same time share one encoding.
+   *  
+   *  @param frame The frame to encode.
+   *  @return The encoded buffer, positioned at the start of the frame.
+   *  @exception IllegalStateException If this wire has no buffer pool.
+   */
+  public PooledBuffer encodePooled(BinaryEncodedFrame frame) {
+    if (bufferPool == null) throw new IllegalStateException("No buffer pool set");
+    
+    if (frame instanceof BinaryFrame) {
+      final BinaryFrame bin = (BinaryFrame) frame;
+      final Encoding<PooledBuffer> encoding = bin.pooledEncoding;
+      if (encoding != null && encoding.wire == this && encoding.encoded.retain()) {
+        return encoding.encoded;
       }
-      
+      final PooledBuffer encoded = encodePooledUncached(frame);
+      bin.pooledEncoding = new Encoding<>(this, encoded);
+      return encoded;
+    } else {
+      return encodePooledUncached(frame);
+    }
+  }
+  
+  private ByteBuffer encodeUncached(BinaryEncodedFrame frame) {
+    final byte[] topicBytes = topicBytes(topicOf(frame));
+    final ByteBuffer payload = payloadOf(frame);
+    final ByteBuffer buf = ByteBuffer.allocate(encodedLength(topicBytes, payload));
+    write(frame.getType(), topicBytes, payload, buf);
+    return buf;
+  }
+  
+  private PooledBuffer encodePooledUncached(BinaryEncodedFrame frame) {
+    final byte[] topicBytes = topicBytes(topicOf(frame));
+    final ByteBuffer payload = payloadOf(frame);
+    final PooledBuffer pooled = bufferPool.acquire(encodedLength(topicBytes, payload));
+    write(frame.getType(), topicBytes, payload, pooled.buffer());
+    return pooled;
+  }
+  
+  private static String topicOf(BinaryEncodedFrame frame) {
+    switch (frame.getType()) {
+      case RECEIVE:
+        return ((BinaryFrame) frame).getTopic();
+        
+      case PUBLISH:
+        return ((PublishBinaryFrame) frame).getTopic();
+        
+      default:
+        throw new IllegalArgumentException("Unsupported frame " + frame);
+    }
+  }
+  
+  private static ByteBuffer payloadOf(BinaryEncodedFrame frame) {
+    switch (frame.getType()) {
+      case RECEIVE:
+        return ((BinaryFrame) frame).getPayloadBuffer();
+        
+      case PUBLISH:
+        return ((PublishBinaryFrame) frame).getPayloadBuffer();
+        
       default:
         throw new IllegalArgumentException("Unsupported frame " + frame);
     }
   }
   
-  private static ByteBuffer verifiedBuffer(ByteBuffer buf) {
-    if (buf.remaining() > MAX_UNSIGNED_SHORT) {
+  /**
+   *  Obtains the UTF-8 encoding of a topic, from a cache of recently encoded topics. Once the
+   *  cache fills up, topics that haven't been used recently make way for new ones.
+   */
+  private byte[] topicBytes(String topic) {
+    final byte[] cached = topicBytesCache.get(topic);
+    if (cached != null) return cached;
+    
+    final byte[] topicBytes = topic.getBytes(UTF8);
+    if (topicBytes.length > MAX_UNSIGNED_SHORT) {
+      throw new IllegalArgumentException("Topic length cannot exceed " + MAX_UNSIGNED_SHORT + " bytes");
+    }
+    return topicBytesCache.admit(topic, topicBytes);
+  }
+  
+  private static int encodedLength(byte[] topicBytes, ByteBuffer payload) {
+    final int length = 3 + topicBytes.length + payload.remaining();
+    if (length > MAX_UNSIGNED_SHORT) {
       throw new IllegalArgumentException("Frame length cannot exceed " + MAX_UNSIGNED_SHORT + " bytes");
     }
-    return buf;
+    return length;
+  }
+  
+  private static void write(FrameType type, byte[] topicBytes, ByteBuffer payload, ByteBuffer buf) {
+    buf.put(type.getByteCode());
+    buf.putShort((short) topicBytes.length);
+    buf.put(topicBytes);
+    buf.put(payload);
+    buf.flip();
   }
   
+  /**
+   *  Decodes a text frame. The payload of a decoded {@link TextFrame} or 
+   *  {@link PublishTextFrame} isn't copied out of the given string, but is a view over it, 
+   *  which is only materialised into a string of its own if asked for.
+   *  
+   *  @param str The encoded frame.
+   *  @return The decoded frame.
+   */
   public TextEncodedFrame decode(String str) {
     final FrameType type = FrameType.fromCharCode(str.charAt(0));
     return decodeFrameBody(type, str);
@@ -126,23 +292,21 @@ public final class Wire {
     if (str.length() <= 2) return throwError(type, str);
     switch (type) {
       case BIND: {
-        return (TextEncodedFrame) gson.fromJson(str.substring(2), getBindClass());
+        return (TextEncodedFrame) bindCodec.decode(str, 2, getBindClass());
       }
         
       case RECEIVE: {
         final int splitIdx = str.indexOf(' ', 2);
         if (splitIdx == -1) return throwError(type, str);
         final String topic = str.substring(2, splitIdx);
-        final String payload = str.substring(splitIdx + 1);
-        return new TextFrame(topic, payload);
+        return new TextFrame(topic, new StringView(str, splitIdx + 1, str.length()));
       }
       
       case PUBLISH: {
         final int splitIdx = str.indexOf(' ', 2);
         if (splitIdx == -1) return throwError(type, str);
         final String topic = str.substring(2, splitIdx);
-        final String payload = str.substring(splitIdx + 1);
-        return new PublishTextFrame(topic, payload);
+        return new PublishTextFrame(topic, new StringView(str, splitIdx + 1, str.length()));
       }
       
       default:
@@ -170,6 +334,15 @@ public final class Wire {
     throw new IllegalArgumentException("Invalid '" + type.getCharCode() + "' frame with content '" + str + "'");
   }
   
+  /**
+   *  Decodes a binary frame. The payload of a decoded {@link BinaryFrame} or 
+   *  {@link PublishBinaryFrame} isn't copied, but is a read-only view over the given buffer; 
+   *  the buffer must therefore not be modified or recycled for as long as the frame is in use.
+   *  Where the buffer is only lent for the duration of a callback, decode a copy instead.
+   *  
+   *  @param buf The buffer, positioned at the start of the frame; consumed by this call.
+   *  @return The decoded frame.
+   */
   public BinaryEncodedFrame decode(ByteBuffer buf) {
     final int pos = buf.position();
     final byte byteCode = buf.get();
@@ -180,11 +353,9 @@ public final class Wire {
         if (topicLength > MAX_UNSIGNED_SHORT) {
           throw new IllegalArgumentException("Topic length cannot exceed " + MAX_UNSIGNED_SHORT + " bytes");
         }
-        final byte[] topicBytes = new byte[topicLength];
-        buf.get(topicBytes);
-        final String topic = new String(topicBytes, UTF8);
-        final byte[] payload = new byte[buf.remaining()];
-        buf.get(payload);
+        final String topic = decodeTopic(buf, topicLength);
+        final ByteBuffer payload = buf.slice();
+        buf.position(buf.limit());
         return new BinaryFrame(topic, payload);
       }
         
@@ -193,11 +364,9 @@ public final class Wire {
         if (topicLength > MAX_UNSIGNED_SHORT) {
           throw new IllegalArgumentException("Topic length cannot exceed " + MAX_UNSIGNED_SHORT + " bytes");
         }
-        final byte[] topicBytes = new byte[topicLength];
-        buf.get(topicBytes);
-        final String topic = new String(topicBytes, UTF8);
-        final byte[] payload = new byte[buf.remaining()];
-        buf.get(payload);
+        final String topic = decodeTopic(buf, topicLength);
+        final ByteBuffer payload = buf.slice();
+        buf.position(buf.limit());
         return new PublishBinaryFrame(topic, payload);
       }
         
@@ -209,6 +378,97 @@ public final class Wire {
     }
   }
   
+  private static String decodeTopic(ByteBuffer buf, int topicLength) {
+    if (topicLength > buf.remaining()) {
+      throw new IllegalArgumentException("Topic length " + topicLength + " exceeds the remaining " + buf.remaining() + " bytes");
+    }
+    final String topic;
+    if (buf.hasArray()) {
+      topic = new String(buf.array(), buf.arrayOffset() + buf.position(), topicLength, UTF8);
+      buf.position(buf.position() + topicLength);
+    } else {
+      final byte[] topicBytes = new byte[topicLength];
+      buf.get(topicBytes);
+      topic = new String(topicBytes, UTF8);
+    }
+    return topic;
+  }
+  
+  /**
+   *  Encodes a frame of any type in version 2 of the binary protocol. Where the frame is a 
+   *  {@link TextFrame} or a {@link BinaryFrame}, the encoded form is memoised on the frame, and 
+   *  each caller is given its own read-only view of the shared buffer.
+   *  
+   *  @param frame The frame to encode.
+   *  @return The encoded buffer, positioned at the start of the frame.
+   */
+  public ByteBuffer encodeV2(Frame frame) {
+    if (frame instanceof TextFrame) {
+      final TextFrame text = (TextFrame) frame;
+      final Encoding<ByteBuffer> encoding = text.encodingV2;
+      if (encoding != null && encoding.wire == this) {
+        return encoding.encoded.asReadOnlyBuffer();
+      }
+      final ByteBuffer encoded = v2.encode(frame);
+      text.encodingV2 = new Encoding<>(this, encoded);
+      return encoded.asReadOnlyBuffer();
+    } else if (frame instanceof BinaryFrame) {
+      final BinaryFrame bin = (BinaryFrame) frame;
+      final Encoding<ByteBuffer> encoding = bin.encodingV2;
+      if (encoding != null && encoding.wire == this) {
+        return encoding.encoded.asReadOnlyBuffer();
+      }
+      final ByteBuffer encoded = v2.encode(frame);
+      bin.encodingV2 = new Encoding<>(this, encoded);
+      return encoded.asReadOnlyBuffer();
+    } else {
+      return v2.encode(frame);
+    }
+  }
+  
+  /**
+   *  Determines whether the given binary frame is in version 2 of the binary protocol, and 
+   *  should be decoded with {@link #decodeV2(ByteBuffer)}, rather than {@link #decode(ByteBuffer)}.
+   *  
+   *  @param buf The buffer, positioned at the start of the frame; left unchanged.
+   *  @return True if the frame is in version 2.
+   */
+  public static boolean isV2(ByteBuffer buf) {
+    return WireV2.isV2(buf);
+  }
+  
+  /**
+   *  Decodes a frame in version 2 of the binary protocol. As in version 1, message payloads 
+   *  aren't copied, but are read-only views over the given buffer, including text payloads, 
+   *  which are decoded from UTF-8 only if asked for.
+   *  
+   *  @param buf The buffer, positioned at the start of the frame; consumed by this call.
+   *  @return The decoded frame.
+   */
+  public Frame decodeV2(ByteBuffer buf) {
+    return v2.decode(buf);
+  }
+  
+  /**
+   *  Encodes a bind frame reflectively, with Gson, as bind frames were encoded before 
+   *  {@link BindCodec}. Retained for verifying compatibility, and for benchmarking.
+   */
+  String encodeBindReflectively(IdFrame frame) {
+    return gson.toJson(frame, IdFrame.class);
+  }
+  
+  /**
+   *  Decodes a bind frame reflectively, with Gson, as bind frames were decoded before 
+   *  {@link BindCodec}. Retained for verifying compatibility, and for benchmarking.
+   */
+  Frame decodeBindReflectively(String json) {
+    return gson.fromJson(json, getBindClass());
+  }
+  
+  public BufferPool getBufferPool() {
+    return bufferPool;
+  }
+  
   public String encodeJson(Object obj) {
     return gson.toJson(obj);
   }
@@ -0,0 +1,403 @@
+package au.com.williamhill.flywheel.frame;
+
+import java.nio.*;
+import java.nio.charset.*;
+import java.util.*;
+
+import com.google.gson.*;
+
+/**
+ *  Encodes and decodes frames in version 2 of the binary protocol, which covers every frame
+ *  type, and has no limit on the frame size other than that of the WebSocket transport.<p>
+ *
+ *  Every frame starts with the frame type's byte code, with the protocol version in the low
+ *  nibble (so that a version 2 frame is never mistaken for a version 1 frame), followed by a
+ *  flags byte. The rest of the frame depends on the type -
+ *  <ul>
+ *  <li>{@code PUBLISH} and {@code RECEIVE}: the topic, then the payload, running to the end of
+ *  the frame. The {@link #FLAG_TEXT} flag marks a text payload, encoded as UTF-8.</li>
+ *  <li>{@code BIND} request: the message ID, session ID, auth credentials, topics to subscribe
+ *  to and to unsubscribe from, and the metadata, as JSON.</li>
+ *  <li>{@code BIND} response, marked by the {@link #FLAG_RESPONSE} flag: the message ID and
+ *  the errors.</li>
+ *  </ul>
+ *
+ *  Lengths and counts are unsigned LEB128 varints. A string is its UTF-8 length, then its
+ *  bytes; where a string or an array may be null, its length or count is incremented by one,
+ *  so that a zero stands for null. Credentials and errors start with a kind byte, which is zero
+ *  for null.
+ */
+final class WireV2 {
+  static final int VERSION = 2;
+
+  private static final int VERSION_MASK = 0x0F;
+
+  static final byte FLAG_RESPONSE = 0x01;
+
+  static final byte FLAG_TEXT = 0x01;
+
+  private static final byte AUTH_BASIC = 1;
+
+  private static final byte AUTH_BEARER = 2;
+
+  private static final byte ERROR_GENERAL = 1;
+
+  private static final byte ERROR_TOPIC_ACCESS = 2;
+
+  private static final Charset UTF8 = StandardCharsets.UTF_8;
+
+  private final Gson gson;
+
+  WireV2(Gson gson) {
+    this.gson = gson;
+  }
+
+  static boolean isV2(ByteBuffer buf) {
+    return buf.hasRemaining() && (buf.get(buf.position()) & VERSION_MASK) == VERSION;
+  }
+
+  private static byte code(FrameType type) {
+    return (byte) (type.getByteCode() | VERSION);
+  }
+
+  ByteBuffer encode(Frame frame) {
+    if (frame instanceof TextFrame) {
+      final TextFrame text = (TextFrame) frame;
+      return encodeMessage(FrameType.RECEIVE, FLAG_TEXT, text.getTopic(), text.getPayloadUtf8());
+    } else if (frame instanceof BinaryFrame) {
+      final BinaryFrame bin = (BinaryFrame) frame;
+      return encodeMessage(FrameType.RECEIVE, (byte) 0, bin.getTopic(), bin.getPayloadBuffer());
+    } else if (frame instanceof PublishTextFrame) {
+      final PublishTextFrame pub = (PublishTextFrame) frame;
+      return encodeMessage(FrameType.PUBLISH, FLAG_TEXT, pub.getTopic(), pub.getPayloadUtf8());
+    } else if (frame instanceof PublishBinaryFrame) {
+      final PublishBinaryFrame pub = (PublishBinaryFrame) frame;
+      return encodeMessage(FrameType.PUBLISH, (byte) 0, pub.getTopic(), pub.getPayloadBuffer());
+    } else if (frame instanceof BindFrame) {
+      return encodeBind((BindFrame) frame);
+    } else if (frame instanceof BindResponseFrame) {
+      return encodeBindResponse((BindResponseFrame) frame);
+    } else {
+      throw new IllegalArgumentException("Unsupported frame " + frame);
+    }
+  }
+
+  private static ByteBuffer encodeMessage(FrameType type, byte flags, String topic, ByteBuffer payload) {
+    final byte[] topicBytes = topic.getBytes(UTF8);
+    final Output out = new Output(2 + varintSize(topicBytes.length) + topicBytes.length + payload.remaining());
+    out.put(code(type));
+    out.put(flags);
+    out.putVarint(topicBytes.length);
+    out.put(topicBytes);
+    out.put(payload);
+    return out.flip();
+  }
+
+  private ByteBuffer encodeBind(BindFrame bind) {
+    final Output out = new Output(64);
+    out.put(code(FrameType.BIND));
+    out.put((byte) 0);
+    out.putUuid(bind.messageId);
+    out.putNullableString(bind.getSessionId());
+    putAuth(out, bind.getAuth());
+    out.putNullableStrings(bind.subscribe);
+    out.putNullableStrings(bind.unsubscribe);
+    out.putNullableString(bind.getMetadata() != null ? gson.toJson(bind.getMetadata()) : null);
+    return out.flip();
+  }
+
+  private static void putAuth(Output out, AuthCredentials auth) {
+    if (auth == null) {
+      out.put((byte) 0);
+    } else if (auth instanceof BasicAuthCredentials) {
+      final BasicAuthCredentials basic = (BasicAuthCredentials) auth;
+      out.put(AUTH_BASIC);
+      out.putNullableString(basic.getUsername());
+      out.putNullableString(basic.getPassword());
+    } else if (auth instanceof BearerAuthCredentials) {
+      out.put(AUTH_BEARER);
+      out.putNullableString(((BearerAuthCredentials) auth).getToken());
+    } else {
+      throw new IllegalArgumentException("Unsupported credentials " + auth.getClass().getName());
+    }
+  }
+
+  private static ByteBuffer encodeBindResponse(BindResponseFrame bindRes) {
+    final Output out = new Output(32);
+    out.put(code(FrameType.BIND));
+    out.put(FLAG_RESPONSE);
+    out.putUuid(bindRes.messageId);
+    final Error[] errors = bindRes.getErrors();
+    out.putVarint(errors != null ? errors.length + 1 : 0);
+    if (errors != null) {
+      for (Error error : errors) {
+        putError(out, error);
+      }
+    }
+    return out.flip();
+  }
+
+  private static void putError(Output out, Error error) {
+    if (error == null) {
+      out.put((byte) 0);
+    } else if (error instanceof GeneralError) {
+      out.put(ERROR_GENERAL);
+      out.putNullableString(error.getDescription());
+    } else if (error instanceof TopicAccessError) {
+      out.put(ERROR_TOPIC_ACCESS);
+      out.putNullableString(error.getDescription());
+      out.putNullableString(((TopicAccessError) error).getTopic());
+    } else {
+      throw new IllegalArgumentException("Unsupported error " + error.getClass().getName());
+    }
+  }
+
+  Frame decode(ByteBuffer buf) {
+    final byte code = buf.get();
+    if ((code & VERSION_MASK) != VERSION) {
+      throw new IllegalArgumentException("Not a version " + VERSION + " frame: " + code);
+    }
+    final FrameType type = FrameType.fromByteCode((byte) (code & ~VERSION_MASK));
+    final byte flags = buf.get();
+    switch (type) {
+      case BIND: {
+        final Frame frame = (flags & FLAG_RESPONSE) != 0 ? decodeBindResponse(buf) : decodeBind(buf);
+        if (buf.hasRemaining()) {
+          throw new IllegalArgumentException(buf.remaining() + " unexpected trailing bytes in " + frame);
+        }
+        return frame;
+      }
+
+      case PUBLISH: {
+        final String topic = getString(buf);
+        final ByteBuffer payload = buf.slice();
+        buf.position(buf.limit());
+        return (flags & FLAG_TEXT) != 0 ? new PublishTextFrame(topic, payload) : new PublishBinaryFrame(topic, payload);
+      }
+
+      case RECEIVE: {
+        final String topic = getString(buf);
+        final ByteBuffer payload = buf.slice();
+        buf.position(buf.limit());
+        return (flags & FLAG_TEXT) != 0 ? new TextFrame(topic, payload) : new BinaryFrame(topic, payload);
+      }
+
+      default:
+        throw new IllegalArgumentException("Unsupported frame type " + type);
+    }
+  }
+
+  private BindFrame decodeBind(ByteBuffer buf) {
+    final UUID messageId = getUuid(buf);
+    final String sessionId = getNullableString(buf);
+    final AuthCredentials auth = getAuth(buf);
+    final String[] subscribe = getNullableStrings(buf);
+    final String[] unsubscribe = getNullableStrings(buf);
+    final String metadataJson = getNullableString(buf);
+    final Object metadata = metadataJson != null ? gson.fromJson(metadataJson, Object.class) : null;
+    return new BindFrame(messageId, sessionId, auth, subscribe, unsubscribe, metadata);
+  }
+
+  private static AuthCredentials getAuth(ByteBuffer buf) {
+    final byte kind = buf.get();
+    switch (kind) {
+      case 0:
+        return null;
+
+      case AUTH_BASIC:
+        return new BasicAuthCredentials(getNullableString(buf), getNullableString(buf));
+
+      case AUTH_BEARER:
+        return new BearerAuthCredentials(getNullableString(buf));
+
+      default:
+        throw new IllegalArgumentException("Unsupported credentials kind " + kind);
+    }
+  }
+
+  private static BindResponseFrame decodeBindResponse(ByteBuffer buf) {
+    final UUID messageId = getUuid(buf);
+    final int count = getVarint(buf);
+    final Error[] errors;
+    if (count == 0) {
+      errors = null;
+    } else {
+      errors = new Error[checkCount(count - 1, buf)];
+      for (int i = 0; i < errors.length; i++) {
+        errors[i] = getError(buf);
+      }
+    }
+    return new BindResponseFrame(messageId, errors);
+  }
+
+  private static Error getError(ByteBuffer buf) {
+    final byte kind = buf.get();
+    switch (kind) {
+      case 0:
+        return null;
+
+      case ERROR_GENERAL:
+        return new GeneralError(getNullableString(buf));
+
+      case ERROR_TOPIC_ACCESS:
+        return new TopicAccessError(getNullableString(buf), getNullableString(buf));
+
+      default:
+        throw new IllegalArgumentException("Unsupported error kind " + kind);
+    }
+  }
+
+  static int varintSize(int value) {
+    int size = 1;
+    while ((value & ~0x7F) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  static int getVarint(ByteBuffer buf) {
+    int value = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      final byte b = buf.get();
+      value |= (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        if (value < 0) throw new IllegalArgumentException("Varint out of range: " + Integer.toUnsignedString(value));
+        return value;
+      }
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+
+  /**
+   *  Ensures that a decoded count is plausible, given that each element takes at least a byte,
+   *  so that a corrupt count can't cause a huge allocation.
+   */
+  private static int checkCount(int count, ByteBuffer buf) {
+    if (count > buf.remaining()) {
+      throw new IllegalArgumentException("Count " + count + " exceeds the remaining " + buf.remaining() + " bytes");
+    }
+    return count;
+  }
+
+  private static String getString(ByteBuffer buf) {
+    return getString(buf, getVarint(buf));
+  }
+
+  private static String getNullableString(ByteBuffer buf) {
+    final int length = getVarint(buf);
+    return length != 0 ? getString(buf, length - 1) : null;
+  }
+
+  private static String getString(ByteBuffer buf, int length) {
+    if (length > buf.remaining()) {
+      throw new IllegalArgumentException("Length " + length + " exceeds the remaining " + buf.remaining() + " bytes");
+    }
+    final String str;
+    if (buf.hasArray()) {
+      str = new String(buf.array(), buf.arrayOffset() + buf.position(), length, UTF8);
+      buf.position(buf.position() + length);
+    } else {
+      final byte[] bytes = new byte[length];
+      buf.get(bytes);
+      str = new String(bytes, UTF8);
+    }
+    return str;
+  }
+
+  private static String[] getNullableStrings(ByteBuffer buf) {
+    final int count = getVarint(buf);
+    if (count == 0) return null;
+
+    final String[] strings = new String[checkCount(count - 1, buf)];
+    for (int i = 0; i < strings.length; i++) {
+      strings[i] = getNullableString(buf);
+    }
+    return strings;
+  }
+
+  private static UUID getUuid(ByteBuffer buf) {
+    return buf.get() != 0 ? new UUID(buf.getLong(), buf.getLong()) : null;
+  }
+
+  /**
+   *  A buffer that grows as it is written to.
+   */
+  private static final class Output {
+    private ByteBuffer buf;
+
+    Output(int initialCapacity) {
+      buf = ByteBuffer.allocate(initialCapacity);
+    }
+
+    private void ensure(int bytes) {
+      if (buf.remaining() < bytes) {
+        final ByteBuffer grown = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+        buf.flip();
+        grown.put(buf);
+        buf = grown;
+      }
+    }
+
+    void put(byte b) {
+      ensure(1);
+      buf.put(b);
+    }
+
+    void put(byte[] bytes) {
+      ensure(bytes.length);
+      buf.put(bytes);
+    }
+
+    void put(ByteBuffer bytes) {
+      ensure(bytes.remaining());
+      buf.put(bytes);
+    }
+
+    void putVarint(int value) {
+      ensure(varintSize(value));
+      while ((value & ~0x7F) != 0) {
+        buf.put((byte) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      buf.put((byte) value);
+    }
+
+    void putNullableString(String str) {
+      if (str == null) {
+        putVarint(0);
+      } else {
+        final byte[] bytes = str.getBytes(UTF8);
+        putVarint(bytes.length + 1);
+        put(bytes);
+      }
+    }
+
+    void putNullableStrings(String[] strings) {
+      if (strings == null) {
+        putVarint(0);
+      } else {
+        putVarint(strings.length + 1);
+        for (String str : strings) {
+          putNullableString(str);
+        }
+      }
+    }
+
+    void putUuid(UUID uuid) {
+      if (uuid == null) {
+        put((byte) 0);
+      } else {
+        ensure(17);
+        buf.put((byte) 1);
+        buf.putLong(uuid.getMostSignificantBits());
+        buf.putLong(uuid.getLeastSignificantBits());
+      }
+    }
+
+    ByteBuffer flip() {
+      buf.flip();
+      return buf;
+    }
+  }
+}
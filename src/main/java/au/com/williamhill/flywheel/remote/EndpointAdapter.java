@@ -36,13 +36,7 @@ final class EndpointAdapter<E extends XEndpoint> implements XEndpointListener<E>
       switch (frame.getType()) {
         case BIND:
           if (frame instanceof BindResponseFrame) {
-            final BindResponseFrame bindRes = (BindResponseFrame) frame;
-            final CompletableFuture<BindResponseFrame> f = nexus.removeBindRequest(bindRes.getMessageId());
-            if (f != null) {
-              f.complete(bindRes);
-            } else {
-              LOG.debug("Ignoring {}", bindRes);
-            }
+            handleBindResponse((BindResponseFrame) frame);
           } else {
             LOG.error("Unsupported frame {}", frame);
           }
@@ -63,9 +57,23 @@ final class EndpointAdapter<E extends XEndpoint> implements XEndpointListener<E>
     }
   }
 
+  private void handleBindResponse(BindResponseFrame bindRes) {
+    final CompletableFuture<BindResponseFrame> f = nexus.removeBindRequest(bindRes.getMessageId());
+    if (f != null) {
+      f.complete(bindRes);
+    } else {
+      LOG.debug("Ignoring {}", bindRes);
+    }
+  }
+
   @Override 
   public void onBinary(E endpoint, ByteBuffer message) {
     try {
+      if (Wire.isV2(message)) {
+        handleV2(node.getWire().decodeV2(message));
+        return;
+      }
+      
       final BinaryEncodedFrame frame = node.getWire().decode(message);
       if (frame.getType() == FrameType.RECEIVE) {
         final BinaryFrame bin = (BinaryFrame) frame;
@@ -79,6 +87,20 @@ final class EndpointAdapter<E extends XEndpoint> implements XEndpointListener<E>
     }
   }
 
+  private void handleV2(Frame frame) {
+    if (frame instanceof BindResponseFrame) {
+      handleBindResponse((BindResponseFrame) frame);
+    } else if (frame instanceof TextFrame) {
+      final TextFrame text = (TextFrame) frame;
+      handler.onText(nexus, text.getTopic(), text.getPayload());
+    } else if (frame instanceof BinaryFrame) {
+      final BinaryFrame bin = (BinaryFrame) frame;
+      handler.onBinary(nexus, bin.getTopic(), bin.getPayload());
+    } else {
+      LOG.error("Unsupported frame {}", frame);
+    }
+  }
+
   @Override 
   public void onDisconnect(E endpoint, int statusCode, String reason) {}
 
@@ -8,6 +8,7 @@ import com.obsidiandynamics.socketx.*;
 
 import au.com.williamhill.flywheel.*;
 import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.frame.Wire.*;
 
 public final class RemoteNexus implements AutoCloseable {
   private final RemoteNode node;
@@ -52,24 +53,42 @@ public final class RemoteNexus implements AutoCloseable {
     if (bind.getSessionId() != null) {
       setSessionId(bind.getSessionId());
     }
-    SendHelper.send(bind, endpoint, node.getWire());
+    if (isV2()) {
+      SendHelper.sendV2(bind, endpoint, node.getWire());
+    } else {
+      SendHelper.send(bind, endpoint, node.getWire());
+    }
     return future;
   }
   
+  private boolean isV2() {
+    return node.getProtocol() == Protocol.V2;
+  }
+  
   public CompletableFuture<SendOutcome> publish(PublishTextFrame pub) {
+    if (isV2()) return SendHelper.sendV2(pub, endpoint, node.getWire());
     return SendHelper.send(pub, endpoint, node.getWire());
   }
   
   public void publish(PublishTextFrame pub, SendCallback callback) {
-    SendHelper.send(pub, endpoint, node.getWire(), callback);
+    if (isV2()) {
+      SendHelper.sendV2(pub, endpoint, node.getWire(), callback);
+    } else {
+      SendHelper.send(pub, endpoint, node.getWire(), callback);
+    }
   }
   
   public CompletableFuture<SendOutcome> publish(PublishBinaryFrame pub) {
+    if (isV2()) return SendHelper.sendV2(pub, endpoint, node.getWire());
     return SendHelper.send(pub, endpoint, node.getWire());
   }
   
   public void publish(PublishBinaryFrame pub, SendCallback callback) {
-    SendHelper.send(pub, endpoint, node.getWire(), callback);
+    if (isV2()) {
+      SendHelper.sendV2(pub, endpoint, node.getWire(), callback);
+    } else {
+      SendHelper.send(pub, endpoint, node.getWire(), callback);
+    }
   }
   
   @Override
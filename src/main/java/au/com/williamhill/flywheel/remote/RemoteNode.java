@@ -9,6 +9,7 @@ import org.slf4j.*;
 import com.obsidiandynamics.socketx.*;
 
 import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.frame.Wire.*;
 
 public final class RemoteNode implements AutoCloseable {
   private static final Logger LOG = LoggerFactory.getLogger(RemoteNode.class);
@@ -17,11 +18,28 @@ public final class RemoteNode implements AutoCloseable {
   
   private final Wire wire;
   
+  private final Protocol protocol;
+  
   private final List<RemoteNexus> nexuses = new CopyOnWriteArrayList<>();
   
   public RemoteNode(XClientFactory<?> clientFactory, XClientConfig config, Wire wire) throws Exception {
+    this(clientFactory, config, wire, Protocol.V1);
+  }
+  
+  /**
+   *  Creates a remote node that sends frames in the given protocol version. A node may always 
+   *  receive frames in either version.
+   *  
+   *  @param clientFactory The client factory.
+   *  @param config The client config.
+   *  @param wire The wire to encode and decode frames with.
+   *  @param protocol The protocol version to send frames in.
+   *  @throws Exception If the client couldn't be created.
+   */
+  public RemoteNode(XClientFactory<?> clientFactory, XClientConfig config, Wire wire, Protocol protocol) throws Exception {
     this.client = clientFactory.create(config);
     this.wire = wire;
+    this.protocol = protocol;
   }
   
   public RemoteNexus open(URI uri, RemoteNexusHandler handler) throws Exception {
@@ -53,6 +71,10 @@ public final class RemoteNode implements AutoCloseable {
   Wire getWire() {
     return wire;
   }
+  
+  public Protocol getProtocol() {
+    return protocol;
+  }
 
   @Override
   public void close() throws Exception {
@@ -9,6 +9,7 @@ public final class RemoteNodeBuilder {
   private XClientFactory<?> clientFactory;
   private XClientConfig clientConfig = new XClientConfig();
   private Wire wire = new Wire(false, LocationHint.REMOTE);
+  private Protocol protocol = Protocol.V1;
   
   public RemoteNodeBuilder withClientFactory(XClientFactory<?> clientFactory) {
     this.clientFactory = clientFactory;
@@ -25,6 +26,19 @@ public final class RemoteNodeBuilder {
     return this;
   }
   
+  /**
+   *  Sets the protocol version that the node sends frames in. With {@link Protocol#V2}, 
+   *  every frame is sent in binary form, and the edge switches each connection over to 
+   *  version 2 when it receives the first frame.
+   *  
+   *  @param protocol The protocol version.
+   *  @return This builder, for chaining.
+   */
+  public RemoteNodeBuilder withProtocol(Protocol protocol) {
+    this.protocol = protocol;
+    return this;
+  }
+  
   private void init() throws Exception {
     if (clientFactory == null) {
       clientFactory = (XClientFactory<?>) 
@@ -34,6 +48,6 @@ public final class RemoteNodeBuilder {
   
   public RemoteNode build() throws Exception {
     init();
-    return new RemoteNode(clientFactory, clientConfig, wire);
+    return new RemoteNode(clientFactory, clientConfig, wire, protocol);
   }
 }
\ No newline at end of file
@@ -0,0 +1,25 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.*;
+
+/**
+ *  Applies many subscriptions in a single pass down the topic tree. Each router applies the
+ *  entries held at its own level and forwards the remainder to its subtopics, one batch per
+ *  subtopic, replying with a {@link SubscribeResponse} once its entire subtree is done.
+ */
+public final class BatchSubscribe {
+  private final List<Subscribe> entries;
+
+  public BatchSubscribe(List<Subscribe> entries) {
+    this.entries = entries;
+  }
+
+  List<Subscribe> getEntries() {
+    return entries;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchSubscribe [entries=" + entries.size() + "]";
+  }
+}
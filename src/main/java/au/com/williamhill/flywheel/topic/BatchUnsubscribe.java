@@ -0,0 +1,25 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.*;
+
+/**
+ *  Removes many subscriptions in a single pass down the topic tree. Each router applies the
+ *  entries held at its own level and forwards the remainder to its subtopics, one batch per
+ *  subtopic, replying with an {@link UnsubscribeResponse} once its entire subtree is done.
+ */
+public final class BatchUnsubscribe {
+  private final List<Unsubscribe> entries;
+
+  public BatchUnsubscribe(List<Unsubscribe> entries) {
+    this.entries = entries;
+  }
+
+  List<Unsubscribe> getEntries() {
+    return entries;
+  }
+
+  @Override
+  public String toString() {
+    return "BatchUnsubscribe [entries=" + entries.size() + "]";
+  }
+}
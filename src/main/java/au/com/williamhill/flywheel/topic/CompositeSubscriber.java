@@ -0,0 +1,26 @@
+package au.com.williamhill.flywheel.topic;
+
+/**
+ *  A {@link Subscriber} that stands in for a number of others, such as the connections that
+ *  share a set of filters. When routed, its members count towards the {@link FanOut} threshold,
+ *  and a fanned-out publish is delivered to each member by the lane that the member is pinned
+ *  to, rather than by the composite as a whole.
+ */
+public interface CompositeSubscriber extends Subscriber {
+  /**
+   *  Obtains the number of members.
+   *
+   *  @return The member count.
+   */
+  int size();
+
+  /**
+   *  Obtains the members partitioned by the lane that they are pinned to, as per
+   *  {@link FanOut#laneOf(Subscriber, int)}. The returned arrays must not be modified once
+   *  handed out, as they are passed to the lanes.
+   *
+   *  @param lanes The number of lanes.
+   *  @return The members of each lane.
+   */
+  Subscriber[][] toLanes(int lanes);
+}
@@ -0,0 +1,87 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.concurrent.atomic.*;
+
+import com.obsidiandynamics.indigo.*;
+
+/**
+ *  A {@link TopicWatcher} that keeps running totals of topic router lifecycle and subscription
+ *  events, before passing them on to a delegate. Useful for tuning the linger period set by
+ *  {@link TopicConfig#withLingerMillis(long)}: a high rate of creations and deletions
+ *  relative to the number of live topics suggests that routers are being churned.
+ */
+public final class CountingTopicWatcher implements TopicWatcher {
+  private final TopicWatcher delegate;
+  
+  private final LongAdder created = new LongAdder();
+  
+  private final LongAdder deleted = new LongAdder();
+  
+  private final LongAdder subscribed = new LongAdder();
+  
+  private final LongAdder unsubscribed = new LongAdder();
+  
+  public CountingTopicWatcher() {
+    this(VOID);
+  }
+  
+  public CountingTopicWatcher(TopicWatcher delegate) {
+    this.delegate = delegate;
+  }
+
+  @Override
+  public void created(Activation a, Topic topic) {
+    created.increment();
+    delegate.created(a, topic);
+  }
+
+  @Override
+  public void deleted(Activation a, Topic topic) {
+    deleted.increment();
+    delegate.deleted(a, topic);
+  }
+
+  @Override
+  public void subscribed(Activation a, Topic topic, Subscriber subscriber) {
+    subscribed.increment();
+    delegate.subscribed(a, topic, subscriber);
+  }
+
+  @Override
+  public void unsubscribed(Activation a, Topic topic, Subscriber subscriber) {
+    unsubscribed.increment();
+    delegate.unsubscribed(a, topic, subscriber);
+  }
+  
+  public long getCreated() {
+    return created.sum();
+  }
+  
+  public long getDeleted() {
+    return deleted.sum();
+  }
+  
+  /**
+   *  Obtains the number of topic routers that are currently active, i.e. created but not
+   *  yet deleted.
+   *  
+   *  @return The number of live topics.
+   */
+  public long getLive() {
+    return getCreated() - getDeleted();
+  }
+  
+  public long getSubscribed() {
+    return subscribed.sum();
+  }
+  
+  public long getUnsubscribed() {
+    return unsubscribed.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "CountingTopicWatcher [created=" + getCreated() + ", deleted=" + getDeleted() + 
+        ", subscribed=" + getSubscribed() + ", unsubscribed=" + getUnsubscribed() + "]";
+  }
+}
@@ -0,0 +1,120 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.slf4j.*;
+
+/**
+ *  Offloads delivery to large subscriber sets from the {@link TopicRouter} actors onto a
+ *  fixed number of lanes, so that a hot topic with a vast audience doesn't monopolise an
+ *  actor thread, and stall the publishes queued behind it.<p>
+ *
+ *  Each lane is served by a single thread, and a subscriber is always assigned to the same
+ *  lane; a publish is split into one chunk per lane, with the lanes working through their
+ *  chunks in parallel. Because a lane runs its chunks in the order that they were submitted,
+ *  a subscriber observes the publishes to a topic in the order that they were routed.<p>
+ *
+ *  While any chunk is outstanding, the fan-out is {@link #isBusy() busy}, and every router
+ *  sharing it delivers through the lanes, however few subscribers a publish matches. A
+ *  subscriber matched at several levels is thus always reached through its own lane, and a
+ *  small delivery at one level can't overtake a large one fanned out at another.
+ */
+public final class FanOut implements AutoCloseable {
+  private static final Logger LOG = LoggerFactory.getLogger(FanOut.class);
+
+  /** Default number of matching subscribers, above which a publish is fanned out. */
+  public static final int DEFAULT_THRESHOLD = 10_000;
+
+  private final int threshold;
+
+  private final ExecutorService[] lanes;
+
+  /** The number of submitted chunks that are yet to be run by the lanes. */
+  private final AtomicInteger pending = new AtomicInteger();
+
+  /**
+   *  Creates a fan-out with the given number of lanes.
+   *
+   *  @param lanes The number of lanes (threads).
+   *  @param threshold The number of subscribers matching a publish at a single router, at or
+   *         above which delivery is fanned out.
+   */
+  public FanOut(int lanes, int threshold) {
+    if (lanes < 1) throw new IllegalArgumentException("Must have at least one lane");
+    if (threshold < 1) throw new IllegalArgumentException("Threshold must be at least 1");
+    this.threshold = threshold;
+    this.lanes = new ExecutorService[lanes];
+    for (int i = 0; i < lanes; i++) {
+      final String name = "FanOut-lane-" + i;
+      this.lanes[i] = Executors.newSingleThreadExecutor(r -> {
+        final Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+  }
+
+  int getThreshold() {
+    return threshold;
+  }
+
+  int getLanes() {
+    return lanes.length;
+  }
+
+  /**
+   *  Obtains the lane that the given subscriber is pinned to.
+   *
+   *  @param subscriber The subscriber.
+   *  @param lanes The number of lanes.
+   *  @return The lane index.
+   */
+  public static int laneOf(Subscriber subscriber, int lanes) {
+    final int hash = subscriber.hashCode();
+    return ((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % lanes;
+  }
+
+  /**
+   *  Determines whether any submitted chunks are still outstanding, in which case any
+   *  further deliveries must also go through the lanes to stay in order.
+   *
+   *  @return True if the lanes are yet to catch up.
+   */
+  boolean isBusy() {
+    return pending.get() != 0;
+  }
+
+  void submit(int lane, Runnable task) {
+    pending.incrementAndGet();
+    lanes[lane].execute(() -> {
+      try {
+        task.run();
+      } catch (Throwable e) {
+        LOG.warn("Exception in fan-out lane " + lane, e);
+      } finally {
+        pending.decrementAndGet();
+      }
+    });
+  }
+
+  /**
+   *  Completes any outstanding deliveries and stops the lanes.
+   *
+   *  @throws InterruptedException If interrupted while waiting for the lanes to stop.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    for (ExecutorService lane : lanes) {
+      lane.shutdown();
+    }
+    for (ExecutorService lane : lanes) {
+      lane.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "FanOut [lanes=" + lanes.length + ", threshold=" + threshold + "]";
+  }
+}
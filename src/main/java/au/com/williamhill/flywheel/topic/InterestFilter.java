@@ -0,0 +1,231 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ *  A compact summary of the filters that are subscribed to locally, used to discard publishes
+ *  that can't possibly be delivered before any routing work is done.<p>
+ *
+ *  Filters are held in a counting Bloom filter, keyed on their literal prefix, i.e. the
+ *  segments ahead of the first wildcard. An exact filter is keyed on the whole topic, while
+ *  a wildcard filter such as {@code a/b/+/d} is keyed on {@code a/b}, and admits every topic
+ *  under {@code a/b}. Filters starting with a wildcard admit everything. A published topic is
+ *  tested by hashing it one character at a time, probing the filter at every segment boundary,
+ *  so a test costs a few array reads per segment and allocates nothing.<p>
+ *
+ *  The filter may admit a topic that has no subscribers (a false positive), but never rejects
+ *  one that does. It is safe for concurrent use; updates are lock-free.
+ */
+public final class InterestFilter {
+  /** Default number of counters; a 1 MB filter, good for around 100k distinct filters. */
+  public static final int DEFAULT_COUNTERS = 1 << 18;
+
+  private static final int HASHES = 3;
+
+  private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+  private static final long EXACT_SALT = 0x9e3779b97f4a7c15L;
+
+  private static final long PREFIX_SALT = 0xc2b2ae3d27d4eb4fL;
+
+  private final AtomicIntegerArray counters;
+
+  private final int mask;
+
+  /** The number of filters that start with a wildcard. */
+  private final AtomicInteger universal = new AtomicInteger();
+
+  /** Issues versions that are unique across all filters, so that a memo can't be mistaken for another filter's. */
+  private static final AtomicLong VERSIONS = new AtomicLong();
+
+  /** Changes whenever a filter is added or removed. */
+  private volatile long version = VERSIONS.incrementAndGet();
+
+  private final LongAdder tested = new LongAdder();
+
+  private final LongAdder dropped = new LongAdder();
+
+  public InterestFilter() {
+    this(DEFAULT_COUNTERS);
+  }
+
+  /**
+   *  Creates a filter with the given number of counters.
+   *
+   *  @param counters The number of counters; must be a power of two.
+   */
+  public InterestFilter(int counters) {
+    if (counters < 1 || Integer.bitCount(counters) != 1) {
+      throw new IllegalArgumentException("Number of counters must be a positive power of two");
+    }
+    this.counters = new AtomicIntegerArray(counters);
+    mask = counters - 1;
+  }
+
+  /**
+   *  Registers an interest in the given filter. Every call must eventually be matched by
+   *  a call to {@link #remove(Topic)}.
+   *
+   *  @param filter The subscribed filter.
+   */
+  public void add(Topic filter) {
+    update(filter, 1);
+  }
+
+  /**
+   *  Deregisters an interest previously registered with {@link #add(Topic)}.
+   *
+   *  @param filter The unsubscribed filter.
+   */
+  public void remove(Topic filter) {
+    update(filter, -1);
+  }
+
+  private void update(Topic filter, int delta) {
+    try {
+      updateCounters(filter, delta);
+    } finally {
+      // bumped after the counters change, so that a memo computed in the meantime is discarded
+      version = VERSIONS.incrementAndGet();
+    }
+  }
+
+  private void updateCounters(Topic filter, int delta) {
+    final String[] parts = filter.getParts();
+    int literals = 0;
+    while (literals < parts.length && ! isWildcard(parts[literals])) literals++;
+
+    if (literals == 0) {
+      universal.addAndGet(delta);
+      return;
+    }
+
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < literals; i++) {
+      if (i != 0) hash = hash(hash, '/');
+      final String part = parts[i];
+      for (int j = 0; j < part.length(); j++) {
+        hash = hash(hash, part.charAt(j));
+      }
+    }
+
+    final long key = mix(hash ^ (literals == parts.length ? EXACT_SALT : PREFIX_SALT));
+    for (int i = 0; i < HASHES; i++) {
+      counters.addAndGet(indexOf(key, i), delta);
+    }
+  }
+
+  private static boolean isWildcard(String part) {
+    return part.equals(Topic.SL_WILDCARD) || part.equals(Topic.ML_WILDCARD);
+  }
+
+  /**
+   *  Tests whether a publish to the given topic may have local subscribers, recording the
+   *  outcome in the drop statistics.
+   *
+   *  @param topic The published topic.
+   *  @return False if there are definitely no subscribers.
+   */
+  public boolean admit(String topic) {
+    tested.increment();
+    if (mightMatch(topic)) {
+      return true;
+    } else {
+      dropped.increment();
+      return false;
+    }
+  }
+
+  /**
+   *  Tests whether a publish to the given topic may have local subscribers, reusing the
+   *  outcome memoised in the handle if no filters have changed since. Otherwise identical to
+   *  {@link #admit(String)}.
+   *
+   *  @param handle The published topic.
+   *  @return False if there are definitely no subscribers.
+   */
+  public boolean admit(TopicHandle handle) {
+    tested.increment();
+    final long version = this.version;
+    final long memo = handle.interest;
+    final boolean admitted;
+    if (memo >>> 1 == version) {
+      admitted = (memo & 1) != 0;
+    } else {
+      admitted = mightMatch(handle.getName());
+      handle.interest = version << 1 | (admitted ? 1 : 0);
+    }
+
+    if (! admitted) dropped.increment();
+    return admitted;
+  }
+
+  /**
+   *  Tests whether a publish to the given topic may have local subscribers.
+   *
+   *  @param topic The published topic.
+   *  @return False if there are definitely no subscribers.
+   */
+  public boolean mightMatch(String topic) {
+    if (universal.get() != 0) return true;
+
+    long hash = FNV_OFFSET;
+    for (int i = 0; i < topic.length(); i++) {
+      final char c = topic.charAt(i);
+      if (c == '/' && contains(mix(hash ^ PREFIX_SALT))) return true;
+      hash = hash(hash, c);
+    }
+    return contains(mix(hash ^ PREFIX_SALT)) || contains(mix(hash ^ EXACT_SALT));
+  }
+
+  private boolean contains(long key) {
+    for (int i = 0; i < HASHES; i++) {
+      if (counters.get(indexOf(key, i)) == 0) return false;
+    }
+    return true;
+  }
+
+  private int indexOf(long key, int i) {
+    return ((int) key + i * (int) (key >>> 32)) & mask;
+  }
+
+  private static long hash(long hash, char c) {
+    return (hash ^ c) * FNV_PRIME;
+  }
+
+  /** The finaliser from MurmurHash3, spreading the FNV hash across all 64 bits. */
+  private static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  public long getTested() {
+    return tested.sum();
+  }
+
+  public long getDropped() {
+    return dropped.sum();
+  }
+
+  /**
+   *  Obtains the fraction of tested publishes that were dropped.
+   *
+   *  @return The drop rate, in the range [0, 1]; 0 if nothing was tested.
+   */
+  public double getDropRate() {
+    final long tested = getTested();
+    return tested != 0 ? (double) getDropped() / tested : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "InterestFilter [counters=" + counters.length() + ", tested=" + getTested() +
+        ", dropped=" + getDropped() + "]";
+  }
+}
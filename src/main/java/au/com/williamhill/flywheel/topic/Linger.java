@@ -0,0 +1,18 @@
+package au.com.williamhill.flywheel.topic;
+
+/**
+ *  Sent by an empty {@link TopicRouter} to itself, as an ask that is deliberately left
+ *  unanswered; the timeout of the ask marks the end of the linger period.
+ */
+final class Linger {
+  private static final Linger INSTANCE = new Linger();
+  
+  static Linger instance() { return INSTANCE; }
+  
+  private Linger() {}
+
+  @Override
+  public String toString() {
+    return "Linger";
+  }
+}
@@ -1,25 +1,27 @@
 package au.com.williamhill.flywheel.topic;
 
 public final class Publish {
-  private final Topic topic;
-  
-  private final Object payload;
+  /** Shared by every router that the publish passes through. */
+  private final Delivery delivery;
 
   public Publish(Topic topic, Object payload) {
-    this.topic = topic;
-    this.payload = payload;
+    delivery = new Delivery(topic, payload);
   }
   
   public Topic getTopic() {
-    return topic;
+    return delivery.getTopic();
   }
 
   public Object getPayload() {
-    return payload;
+    return delivery.getPayload();
+  }
+
+  Delivery getDelivery() {
+    return delivery;
   }
 
   @Override
   public String toString() {
-    return "Publish [topic=" + topic + ", payload=" + payload + "]";
+    return "Publish [topic=" + getTopic() + ", payload=" + getPayload() + "]";
   }
 }
@@ -0,0 +1,101 @@
+package au.com.williamhill.flywheel.topic;
+
+import com.obsidiandynamics.indigo.*;
+
+/**
+ *  Partitions the topic hierarchy across a number of independent root {@link TopicRouter}s,
+ *  by hashing the first segment of a topic. Each first-level subtree is owned by exactly
+ *  one shard, so publishes to unrelated subtrees don't contend for the same mailbox.<p>
+ *
+ *  Subscriptions with a wildcard in the first segment (e.g. {@code #} or {@code +/b})
+ *  may match topics in any subtree, and are therefore registered with every shard.<p>
+ *
+ *  Shard 0 is the conventional root {@code ActorRef.of(TopicRouter.ROLE)}, so a single-shard
+ *  configuration is identical to an unsharded one.
+ */
+public final class RootShards {
+  /** Prefix of the key of a non-zero shard; can never clash with a valid topic. */
+  private static final String SHARD_KEY_PREFIX = Topic.ML_WILDCARD;
+
+  private final ActorRef[] roots;
+
+  public RootShards(int count) {
+    if (count < 1) throw new IllegalArgumentException("Shard count must be at least 1");
+    roots = new ActorRef[count];
+    for (int i = 0; i < count; i++) {
+      roots[i] = i == 0 ? ActorRef.of(TopicRouter.ROLE) : ActorRef.of(TopicRouter.ROLE, SHARD_KEY_PREFIX + i);
+    }
+  }
+
+  public int count() {
+    return roots.length;
+  }
+
+  /**
+   *  Obtains the root router responsible for the given exact topic.
+   *
+   *  @param exact A topic with no wildcard in its first segment.
+   *  @return The root router.
+   */
+  public ActorRef routerFor(Topic exact) {
+    if (roots.length == 1) return roots[0];
+    return roots[shardOf(exact.getParts()[0])];
+  }
+
+  /**
+   *  Obtains the root router responsible for the given topic, reusing the shard memoised in
+   *  the handle if it was computed for the same number of shards.
+   *
+   *  @param handle The published topic.
+   *  @return The root router.
+   */
+  public ActorRef routerFor(TopicHandle handle) {
+    if (roots.length == 1) return roots[0];
+    final long memo = handle.shard;
+    if ((int) (memo >>> 32) == roots.length) return roots[(int) memo];
+
+    final int shard = shardOf(handle.getTopic().getParts()[0]);
+    handle.shard = (long) roots.length << 32 | shard;
+    return roots[shard];
+  }
+
+  /**
+   *  Obtains the root routers that must be made aware of a subscription to the given
+   *  topic filter.
+   *
+   *  @param filter The topic filter.
+   *  @return The root routers.
+   */
+  public ActorRef[] routersFor(Topic filter) {
+    if (roots.length == 1 || isBroadcast(filter)) {
+      return roots.clone();
+    } else {
+      return new ActorRef[] { routerFor(filter) };
+    }
+  }
+
+  private int shardOf(String firstSegment) {
+    final int h = firstSegment.hashCode();
+    return ((h ^ (h >>> 16)) & Integer.MAX_VALUE) % roots.length;
+  }
+
+  private static boolean isBroadcast(Topic filter) {
+    final String first = filter.getParts()[0];
+    return first.equals(Topic.SL_WILDCARD) || first.equals(Topic.ML_WILDCARD);
+  }
+
+  /**
+   *  Determines whether the given reference points to a shard root.
+   *
+   *  @param ref The actor reference.
+   *  @return True if this is a root router.
+   */
+  static boolean isRoot(ActorRef ref) {
+    return ref.key() == null || ref.key().startsWith(SHARD_KEY_PREFIX);
+  }
+
+  @Override
+  public String toString() {
+    return "RootShards [count=" + roots.length + "]";
+  }
+}
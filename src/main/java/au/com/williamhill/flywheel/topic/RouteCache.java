@@ -0,0 +1,278 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ *  A bounded cache of resolved routes for the {@link SubscriptionTrie}, mapping an exact topic
+ *  to the flattened array of subscribers that a publish to it is delivered to.<p>
+ *
+ *  Rather than tracking which routes a subscription change affects, routes are validated
+ *  against subscription epochs. A change to a filter bumps the epoch of the stripe that its
+ *  literal prefix (the segments ahead of the first wildcard, as per {@link InterestFilter})
+ *  hashes to, or the global epoch if the filter starts with a wildcard. A filter can only
+ *  match topics under its literal prefix, so a route depends on the global epoch and on the
+ *  stripes of each of its topic's prefixes, e.g. {@code a}, {@code a/b} and {@code a/b/c}
+ *  for {@code a/b/c}; a change to {@code a/d/+} leaves it alone. A route is only served if
+ *  none of these epochs has moved since it was resolved; otherwise it is counted as an
+ *  invalidation, and resolved afresh.<p>
+ *
+ *  Like the {@link TopicCache}, lookups are lock-free, and entries are evicted using the clock
+ *  algorithm once the capacity is reached.
+ */
+public final class RouteCache {
+  /** Default capacity, in routes. */
+  public static final int DEFAULT_CAPACITY = 1 << 14;
+
+  private static final int STRIPES = 1 << 10;
+
+  static final class Route {
+    final RouteCache cache;
+    final Subscriber[] subscribers;
+    final long globalEpoch;
+
+    /** The stripes of the topic's prefixes, shortest first. */
+    final int[] stripes;
+
+    /** The sum of the stripes' epochs. */
+    final long stripeEpoch;
+
+    Route(RouteCache cache, Subscriber[] subscribers, long globalEpoch, int[] stripes, long stripeEpoch) {
+      this.cache = cache;
+      this.subscribers = subscribers;
+      this.globalEpoch = globalEpoch;
+      this.stripes = stripes;
+      this.stripeEpoch = stripeEpoch;
+    }
+  }
+
+  private static final class Entry {
+    final Topic topic;
+    volatile Route route;
+    volatile boolean referenced;
+
+    Entry(Topic topic, Route route) {
+      this.topic = topic;
+      this.route = route;
+    }
+  }
+
+  private final Map<Topic, Entry> entries;
+
+  /** The clock; guarded by this. */
+  private final Entry[] ring;
+
+  /** The clock hand; guarded by this. */
+  private int hand;
+
+  private final AtomicLong globalEpoch = new AtomicLong();
+
+  private final AtomicLongArray stripeEpochs = new AtomicLongArray(STRIPES);
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  private final LongAdder invalidations = new LongAdder();
+
+  private final LongAdder evictions = new LongAdder();
+
+  public RouteCache() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public RouteCache(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+    entries = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+    ring = new Entry[capacity];
+  }
+
+  /**
+   *  Hashes the first {@code length} segments of a topic, extending the hash of the first
+   *  {@code length - 1} segments.
+   */
+  private static int prefixHash(int prefixHash, String segment) {
+    return prefixHash * 0x9e3779b1 + segment.hashCode();
+  }
+
+  private static int stripeOf(int prefixHash) {
+    return (prefixHash ^ (prefixHash >>> 16)) & (STRIPES - 1);
+  }
+
+  /**
+   *  Obtains the stripes of every prefix of the given exact topic.
+   *
+   *  @param exact The published topic.
+   *  @return The stripes, shortest prefix first.
+   */
+  static int[] stripesOf(Topic exact) {
+    final String[] parts = exact.getParts();
+    final int[] stripes = new int[parts.length];
+    int hash = 0;
+    for (int i = 0; i < parts.length; i++) {
+      hash = prefixHash(hash, parts[i]);
+      stripes[i] = stripeOf(hash);
+    }
+    return stripes;
+  }
+
+  long getGlobalEpoch() {
+    return globalEpoch.get();
+  }
+
+  /**
+   *  Sums the epochs of the given stripes. As epochs only ever grow, the sum only stays the
+   *  same if none of them has moved.
+   *
+   *  @param stripes The stripes, as obtained from {@link #stripesOf(Topic)}.
+   *  @return The combined epoch.
+   */
+  long getStripeEpoch(int[] stripes) {
+    long sum = 0;
+    for (int stripe : stripes) {
+      sum += stripeEpochs.get(stripe);
+    }
+    return sum;
+  }
+
+  /**
+   *  Obtains the subscribers for the given exact topic, if a current route is cached.
+   *
+   *  @param exact The published topic.
+   *  @return The subscribers, or null if the route needs to be resolved.
+   */
+  Subscriber[] get(Topic exact) {
+    final Entry entry = entries.get(exact);
+    if (entry != null) {
+      final Route route = entry.route;
+      if (isCurrent(route, exact)) {
+        if (! entry.referenced) entry.referenced = true;
+        hits.increment();
+        return route.subscribers;
+      }
+      invalidations.increment();
+    }
+    misses.increment();
+    return null;
+  }
+
+  /**
+   *  Determines whether a route is still current for the given exact topic. Unlike
+   *  {@link #get(Topic)}, this isn't reflected in the statistics.
+   *
+   *  @param route The route, possibly resolved by another cache.
+   *  @param exact The published topic.
+   *  @return True if the route may be served.
+   */
+  boolean isCurrent(Route route, Topic exact) {
+    return route.cache == this && route.globalEpoch == globalEpoch.get() && route.stripeEpoch == getStripeEpoch(route.stripes);
+  }
+
+  /**
+   *  Caches a route, resolved after reading the given epochs.
+   *
+   *  @param exact The published topic.
+   *  @param subscribers The resolved subscribers.
+   *  @param globalEpoch The global epoch, read before resolving.
+   *  @param stripes The stripes of the topic's prefixes.
+   *  @param stripeEpoch The combined epoch of the stripes, read before resolving.
+   *  @return The cached route.
+   */
+  Route put(Topic exact, Subscriber[] subscribers, long globalEpoch, int[] stripes, long stripeEpoch) {
+    final Route route = new Route(this, subscribers, globalEpoch, stripes, stripeEpoch);
+    final Entry existing = entries.get(exact);
+    if (existing != null) {
+      existing.route = route;
+    } else {
+      admit(exact, route);
+    }
+    return route;
+  }
+
+  private synchronized void admit(Topic topic, Route route) {
+    final Entry existing = entries.get(topic);
+    if (existing != null) {
+      existing.route = route;
+      return;
+    }
+
+    for (;;) {
+      final Entry candidate = ring[hand];
+      if (candidate == null) {
+        break;
+      } else if (candidate.referenced) {
+        candidate.referenced = false;
+        hand = (hand + 1) % ring.length;
+      } else {
+        entries.remove(candidate.topic);
+        evictions.increment();
+        break;
+      }
+    }
+
+    final Entry entry = new Entry(topic, route);
+    ring[hand] = entry;
+    hand = (hand + 1) % ring.length;
+    entries.put(topic, entry);
+  }
+
+  /**
+   *  Invalidates all routes that may be affected by a change to the given filter. Must be
+   *  called after the change is visible to publishers.
+   *
+   *  @param filter The filter that was subscribed to or unsubscribed from.
+   */
+  void invalidate(Topic filter) {
+    final String[] parts = filter.getParts();
+    int hash = 0;
+    int prefixLength = 0;
+    for (String part : parts) {
+      if (part.equals(Topic.SL_WILDCARD) || part.equals(Topic.ML_WILDCARD)) break;
+      hash = prefixHash(hash, part);
+      prefixLength++;
+    }
+    
+    if (prefixLength == 0) {
+      globalEpoch.incrementAndGet();
+    } else {
+      stripeEpochs.incrementAndGet(stripeOf(hash));
+    }
+  }
+
+  public int capacity() {
+    return ring.length;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   *  Obtains the number of lookups that found a route, only to discard it because of a
+   *  subscription change. These are also counted as misses.
+   *
+   *  @return The number of invalidated lookups.
+   */
+  public long getInvalidations() {
+    return invalidations.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "RouteCache [capacity=" + ring.length + ", size=" + size() + ", hits=" + getHits() +
+        ", misses=" + getMisses() + ", invalidations=" + getInvalidations() + ", evictions=" + getEvictions() + "]";
+  }
+}
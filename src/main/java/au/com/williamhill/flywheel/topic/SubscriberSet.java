@@ -0,0 +1,131 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.*;
+
+/**
+ *  A set of subscribers that is iterated far more often than it is mutated. Membership is
+ *  tracked by a hash set, while delivery iterates over an array snapshot that is only rebuilt
+ *  after the set changes. Not thread-safe; intended for use within a single actor.
+ */
+final class SubscriberSet {
+  private static final Subscriber[] EMPTY = {};
+
+  private static final CompositeSubscriber[] NO_COMPOSITES = {};
+
+  private final Set<Subscriber> members = new LinkedHashSet<>();
+
+  /** Array view of the members; null if stale. */
+  private Subscriber[] snapshot = EMPTY;
+
+  /** The non-composite members partitioned by {@link FanOut} lane; null if stale. */
+  private Subscriber[][] laneSnapshot;
+
+  /** The members that are {@link CompositeSubscriber}s. */
+  private CompositeSubscriber[] composites = NO_COMPOSITES;
+
+  boolean add(Subscriber subscriber) {
+    if (members.add(subscriber)) {
+      snapshot = null;
+      laneSnapshot = null;
+      if (subscriber instanceof CompositeSubscriber) {
+        composites = Arrays.copyOf(composites, composites.length + 1);
+        composites[composites.length - 1] = (CompositeSubscriber) subscriber;
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  boolean remove(Subscriber subscriber) {
+    if (members.remove(subscriber)) {
+      snapshot = null;
+      laneSnapshot = null;
+      if (subscriber instanceof CompositeSubscriber) {
+        final List<CompositeSubscriber> remaining = new ArrayList<>(Arrays.asList(composites));
+        remaining.remove(subscriber);
+        composites = remaining.toArray(new CompositeSubscriber[remaining.size()]);
+      }
+      return true;
+    } else {
+      return false;
+    }
+  }
+
+  boolean isEmpty() {
+    return members.isEmpty();
+  }
+
+  int size() {
+    return members.size();
+  }
+
+  /**
+   *  Obtains the number of subscribers that a delivery to this set reaches, counting each
+   *  member of a {@link CompositeSubscriber} individually.
+   *
+   *  @return The number of subscribers reached.
+   */
+  int weight() {
+    int weight = members.size() - composites.length;
+    for (CompositeSubscriber composite : composites) {
+      weight += composite.size();
+    }
+    return weight;
+  }
+
+  CompositeSubscriber[] getComposites() {
+    return composites;
+  }
+
+  Subscriber[] toArray() {
+    Subscriber[] snapshot = this.snapshot;
+    if (snapshot == null) {
+      this.snapshot = snapshot = members.toArray(new Subscriber[members.size()]);
+    }
+    return snapshot;
+  }
+
+  /**
+   *  Obtains the members partitioned by the lane that they are pinned to, excluding any
+   *  {@link CompositeSubscriber}s, whose own members are split across the lanes instead. Like 
+   *  the flat snapshot, the returned arrays are never modified, and may be handed to other 
+   *  threads.
+   *
+   *  @param lanes The number of lanes.
+   *  @return The members of each lane.
+   */
+  Subscriber[][] toLanes(int lanes) {
+    Subscriber[][] laneSnapshot = this.laneSnapshot;
+    if (laneSnapshot == null || laneSnapshot.length != lanes) {
+      final int[] sizes = new int[lanes];
+      final Subscriber[] all = toArray();
+      for (Subscriber subscriber : all) {
+        if (! (subscriber instanceof CompositeSubscriber)) sizes[FanOut.laneOf(subscriber, lanes)]++;
+      }
+      laneSnapshot = new Subscriber[lanes][];
+      for (int lane = 0; lane < lanes; lane++) {
+        laneSnapshot[lane] = sizes[lane] != 0 ? new Subscriber[sizes[lane]] : EMPTY;
+        sizes[lane] = 0;
+      }
+      for (Subscriber subscriber : all) {
+        if (subscriber instanceof CompositeSubscriber) continue;
+        final int lane = FanOut.laneOf(subscriber, lanes);
+        laneSnapshot[lane][sizes[lane]++] = subscriber;
+      }
+      this.laneSnapshot = laneSnapshot;
+    }
+    return laneSnapshot;
+  }
+
+  void deliver(Delivery delivery) {
+    for (Subscriber subscriber : toArray()) {
+      subscriber.accept(delivery);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "SubscriberSet [size=" + members.size() + "]";
+  }
+}
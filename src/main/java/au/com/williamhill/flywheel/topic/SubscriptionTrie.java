@@ -0,0 +1,295 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ *  A concurrent, read-optimised subscription index, structured as a trie of topic segments.<p>
+ *
+ *  Publishing is a lock-free traversal on the calling thread: the child maps are concurrent and
+ *  the subscriber sets are copy-on-write arrays, so readers never block and never observe a
+ *  partially applied mutation. Only {@link #subscribe(Topic, Subscriber)} and
+ *  {@link #unsubscribe(Topic, Subscriber)} mutate the trie; these are serialised among
+ *  themselves.<p>
+ *
+ *  Matching semantics are identical to {@link Topic#accepts(Topic)}.<p>
+ *
+ *  If given a {@link RouteCache}, the subscribers resolved for an exact topic are cached, so
+ *  that a repeat publish is a single lookup, followed by a loop over the cached array.
+ */
+public final class SubscriptionTrie {
+  private static final Subscriber[] NO_SUBSCRIBERS = {};
+
+  private static final class Node {
+    final Node parent;
+
+    final String segment;
+
+    final Map<String, Node> children = new ConcurrentHashMap<>();
+
+    /** Subscribers to a filter that terminates at this node. */
+    volatile Subscriber[] exact = NO_SUBSCRIBERS;
+
+    /** Subscribers to a filter comprising this node's path, followed by a multi-level wildcard. */
+    volatile Subscriber[] multiLevel = NO_SUBSCRIBERS;
+
+    Node(Node parent, String segment) {
+      this.parent = parent;
+      this.segment = segment;
+    }
+
+    boolean isEmpty() {
+      return children.isEmpty() && exact.length == 0 && multiLevel.length == 0;
+    }
+  }
+
+  private final Node root = new Node(null, null);
+
+  private final Object mutationLock = new Object();
+
+  private final RouteCache routeCache;
+
+  public SubscriptionTrie() {
+    this(null);
+  }
+
+  /**
+   *  Creates a trie, optionally caching resolved routes.
+   *
+   *  @param routeCache The route cache; null to resolve routes on every publish.
+   */
+  public SubscriptionTrie(RouteCache routeCache) {
+    this.routeCache = routeCache;
+  }
+
+  public RouteCache getRouteCache() {
+    return routeCache;
+  }
+
+  /**
+   *  Adds a subscriber to the given topic filter.
+   *
+   *  @param topic The topic filter, which may contain wildcards.
+   *  @param subscriber The subscriber.
+   *  @return True if the subscriber was added, false if it was already subscribed to this filter.
+   */
+  public boolean subscribe(Topic topic, Subscriber subscriber) {
+    synchronized (mutationLock) {
+      final boolean multiLevel = topic.isMultiLevelWildcard();
+      final String[] parts = topic.getParts();
+      final int depth = multiLevel ? parts.length - 1 : parts.length;
+      Node node = root;
+      for (int i = 0; i < depth; i++) {
+        final Node existing = node.children.get(parts[i]);
+        if (existing != null) {
+          node = existing;
+        } else {
+          final Node child = new Node(node, parts[i]);
+          node.children.put(parts[i], child);
+          node = child;
+        }
+      }
+
+      if (multiLevel) {
+        final Subscriber[] updated = add(node.multiLevel, subscriber);
+        if (updated == null) return false;
+        node.multiLevel = updated;
+      } else {
+        final Subscriber[] updated = add(node.exact, subscriber);
+        if (updated == null) return false;
+        node.exact = updated;
+      }
+      if (routeCache != null) routeCache.invalidate(topic);
+      return true;
+    }
+  }
+
+  /**
+   *  Removes a subscriber from the given topic filter, pruning any nodes that are no longer in use.
+   *
+   *  @param topic The topic filter, which may contain wildcards.
+   *  @param subscriber The subscriber.
+   *  @return True if the subscriber was removed, false if it wasn't subscribed to this filter.
+   */
+  public boolean unsubscribe(Topic topic, Subscriber subscriber) {
+    synchronized (mutationLock) {
+      final boolean multiLevel = topic.isMultiLevelWildcard();
+      final String[] parts = topic.getParts();
+      final int depth = multiLevel ? parts.length - 1 : parts.length;
+      Node node = root;
+      for (int i = 0; i < depth; i++) {
+        node = node.children.get(parts[i]);
+        if (node == null) return false;
+      }
+
+      if (multiLevel) {
+        final Subscriber[] updated = remove(node.multiLevel, subscriber);
+        if (updated == null) return false;
+        node.multiLevel = updated;
+      } else {
+        final Subscriber[] updated = remove(node.exact, subscriber);
+        if (updated == null) return false;
+        node.exact = updated;
+      }
+
+      prune(node);
+      if (routeCache != null) routeCache.invalidate(topic);
+      return true;
+    }
+  }
+
+  private static void prune(Node node) {
+    while (node.parent != null && node.isEmpty()) {
+      node.parent.children.remove(node.segment);
+      node = node.parent;
+    }
+  }
+
+  private static Subscriber[] add(Subscriber[] existing, Subscriber subscriber) {
+    for (Subscriber s : existing) {
+      if (s.equals(subscriber)) return null;
+    }
+    final Subscriber[] updated = Arrays.copyOf(existing, existing.length + 1);
+    updated[existing.length] = subscriber;
+    return updated;
+  }
+
+  private static Subscriber[] remove(Subscriber[] existing, Subscriber subscriber) {
+    for (int i = 0; i < existing.length; i++) {
+      if (existing[i].equals(subscriber)) {
+        if (existing.length == 1) return NO_SUBSCRIBERS;
+        final Subscriber[] updated = new Subscriber[existing.length - 1];
+        System.arraycopy(existing, 0, updated, 0, i);
+        System.arraycopy(existing, i + 1, updated, i, existing.length - i - 1);
+        return updated;
+      }
+    }
+    return null;
+  }
+
+  /**
+   *  Delivers the given payload to all subscribers whose filters match the given exact topic,
+   *  on the calling thread.
+   *
+   *  @param topic The exact topic being published to.
+   *  @param payload The payload.
+   */
+  public void publish(Topic topic, Object payload) {
+    publish(new Delivery(topic, payload));
+  }
+
+  /**
+   *  Delivers the given message to all subscribers whose filters match its topic, on the
+   *  calling thread.
+   *
+   *  @param delivery The delivery.
+   */
+  public void publish(Delivery delivery) {
+    if (routeCache == null) {
+      traverse(root, delivery.getTopic().getParts(), 0, delivery);
+      return;
+    }
+
+    final Topic topic = delivery.getTopic();
+    Subscriber[] route = routeCache.get(topic);
+    if (route == null) {
+      route = resolveAndCache(topic).subscribers;
+    }
+    deliver(route, delivery);
+  }
+
+  /**
+   *  Delivers the given payload to all subscribers whose filters match the handle's topic, on
+   *  the calling thread. The route is memoised in the handle, so a repeat publish skips the
+   *  route cache lookup altogether, for as long as the route remains current.
+   *
+   *  @param handle The topic being published to.
+   *  @param payload The payload.
+   */
+  public void publish(TopicHandle handle, Object payload) {
+    final Delivery delivery = new Delivery(handle.getTopic(), payload);
+    if (routeCache == null) {
+      traverse(root, handle.getTopic().getParts(), 0, delivery);
+      return;
+    }
+
+    RouteCache.Route route = handle.route;
+    if (route == null || ! routeCache.isCurrent(route, handle.getTopic())) {
+      route = resolveAndCache(handle.getTopic());
+      handle.route = route;
+    }
+    deliver(route.subscribers, delivery);
+  }
+
+  private RouteCache.Route resolveAndCache(Topic topic) {
+    // read the epochs before resolving, so that a concurrent change invalidates the route
+    final long globalEpoch = routeCache.getGlobalEpoch();
+    final int[] stripes = RouteCache.stripesOf(topic);
+    final long stripeEpoch = routeCache.getStripeEpoch(stripes);
+    final List<Subscriber> resolved = new ArrayList<>();
+    resolve(root, topic.getParts(), 0, resolved);
+    final Subscriber[] route = resolved.isEmpty() ? NO_SUBSCRIBERS : resolved.toArray(new Subscriber[resolved.size()]);
+    return routeCache.put(topic, route, globalEpoch, stripes, stripeEpoch);
+  }
+
+  private static void traverse(Node node, String[] parts, int depth, Delivery delivery) {
+    if (depth == parts.length) {
+      deliver(node.exact, delivery);
+      return;
+    }
+
+    deliver(node.multiLevel, delivery);
+
+    final Node child = node.children.get(parts[depth]);
+    if (child != null) {
+      traverse(child, parts, depth + 1, delivery);
+    }
+
+    final Node wildcard = node.children.get(Topic.SL_WILDCARD);
+    if (wildcard != null && wildcard != child) {
+      traverse(wildcard, parts, depth + 1, delivery);
+    }
+  }
+
+  /**
+   *  Collects the subscribers that {@link #traverse} would deliver to, in the same order.
+   */
+  private static void resolve(Node node, String[] parts, int depth, List<Subscriber> resolved) {
+    if (depth == parts.length) {
+      Collections.addAll(resolved, node.exact);
+      return;
+    }
+
+    Collections.addAll(resolved, node.multiLevel);
+
+    final Node child = node.children.get(parts[depth]);
+    if (child != null) {
+      resolve(child, parts, depth + 1, resolved);
+    }
+
+    final Node wildcard = node.children.get(Topic.SL_WILDCARD);
+    if (wildcard != null && wildcard != child) {
+      resolve(wildcard, parts, depth + 1, resolved);
+    }
+  }
+
+  private static void deliver(Subscriber[] subscribers, Delivery delivery) {
+    for (Subscriber subscriber : subscribers) {
+      subscriber.accept(delivery);
+    }
+  }
+
+  /**
+   *  Determines whether the trie holds no subscriptions.
+   *
+   *  @return True if there are no subscriptions.
+   */
+  public boolean isEmpty() {
+    return root.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return "SubscriptionTrie [root.children=" + root.children.keySet() + "]";
+  }
+}
@@ -1,6 +1,7 @@
 package au.com.williamhill.flywheel.topic;
 
 import java.util.*;
+import java.util.function.*;
 
 import com.obsidiandynamics.indigo.*;
 import com.obsidiandynamics.yconf.*;
@@ -23,6 +24,12 @@ public final class Topic {
     this.parts = parts;
   }
   
+  /**
+   *  Obtains the segments of this topic. The returned array must not be modified, as
+   *  topic instances are shared through the {@link TopicCache}.
+   *
+   *  @return The segments.
+   */
   public String[] getParts() {
     return parts;
   }
@@ -35,7 +42,18 @@ public final class Topic {
     return parts.length == 0;
   }
   
+  /**
+   *  Obtains a topic from its string form, via the default {@link TopicCache}.
+   *
+   *  @param topic The topic string.
+   *  @return The parsed topic.
+   *  @exception IllegalArgumentException If the topic is malformed.
+   */
   public static Topic of(String topic) {
+    return TopicCache.getDefault().get(topic);
+  }
+  
+  static Topic parse(String topic, UnaryOperator<String> interner) {
     if (topic.isEmpty()) {
       throw new IllegalArgumentException("Invalid topic '" + topic + "': empty topic");
     }
@@ -62,6 +80,8 @@ public final class Topic {
       if (part.isEmpty()) {
         throw new IllegalArgumentException("Invalid topic '" + topic + "': empty segment");
       }
+      
+      parts[i] = interner.apply(part);
     }
     
     return new Topic(parts);
@@ -76,7 +96,7 @@ public final class Topic {
   }
   
   static Topic fromRef(ActorRef ref) {
-    return ref.key() != null ? of(ref.key()) : root();
+    return RootShards.isRoot(ref) ? root() : of(ref.key());
   }
   
   public Topic parent() {
@@ -126,6 +146,55 @@ public final class Topic {
     return length() == exact.length();
   }
   
+  /**
+   *  Determines whether this filter matches every exact topic that the given filter matches,
+   *  making a subscription to the latter redundant alongside a subscription to the former.
+   *  
+   *  @param filter The other topic filter.
+   *  @return True if this filter covers the given one.
+   */
+  public boolean covers(Topic filter) {
+    for (int i = 0; i < parts.length; i++) {
+      final String thisPart = parts[i];
+      if (thisPart.equals(ML_WILDCARD)) {
+        return filter.length() > i;
+      }
+      
+      if (i == filter.length()) return false;
+      final String thatPart = filter.parts[i];
+      if (thatPart.equals(ML_WILDCARD)) {
+        return false;
+      } else if (! thisPart.equals(SL_WILDCARD) && ! thisPart.equals(thatPart)) {
+        return false;
+      }
+    }
+    
+    return length() == filter.length();
+  }
+  
+  /**
+   *  Determines whether there is at least one exact topic matched by both this filter and
+   *  the given one.
+   *  
+   *  @param filter The other topic filter.
+   *  @return True if the filters overlap.
+   */
+  public boolean intersects(Topic filter) {
+    for (int i = 0; ; i++) {
+      if (i == parts.length || i == filter.parts.length) {
+        return parts.length == filter.parts.length;
+      }
+      
+      final String thisPart = parts[i];
+      final String thatPart = filter.parts[i];
+      if (thisPart.equals(ML_WILDCARD) || thatPart.equals(ML_WILDCARD)) {
+        return true;
+      } else if (! thisPart.equals(SL_WILDCARD) && ! thatPart.equals(SL_WILDCARD) && ! thisPart.equals(thatPart)) {
+        return false;
+      }
+    }
+  }
+  
   @Override
   public int hashCode() {
     final int prime = 31;
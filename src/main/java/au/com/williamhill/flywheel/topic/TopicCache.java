@@ -0,0 +1,131 @@
+package au.com.williamhill.flywheel.topic;
+
+import java.util.concurrent.atomic.*;
+
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  A bounded, concurrent cache of parsed {@link Topic}s, keyed by their string form.<p>
+ *
+ *  Lookups are lock-free; only a miss takes a lock, to admit the new entry. When full, an
+ *  entry is evicted by a {@link ClockMap}, which approximates LRU without reordering on every
+ *  hit.<p>
+ *
+ *  The segments of cached topics are interned, so that topics sharing a segment also share
+ *  the same {@link String} instance, and the wildcards are always the {@link Topic#SL_WILDCARD}
+ *  and {@link Topic#ML_WILDCARD} constants. The segment pool is bounded and evicted in the same
+ *  way as the topics, so segment comparisons between recently used topics will typically
+ *  succeed on identity, without inspecting the characters.
+ */
+public final class TopicCache {
+  /** Default capacity, sized for a topic cardinality in the hundreds of thousands. */
+  public static final int DEFAULT_CAPACITY = 1 << 19;
+
+  private static final TopicCache DEFAULT = new TopicCache(DEFAULT_CAPACITY);
+
+  private final ClockMap<String, Topic> topics;
+
+  /** Interned segments, other than the wildcards, which are never evicted. */
+  private final ClockMap<String, String> segments;
+
+  private final LongAdder hits = new LongAdder();
+
+  private final LongAdder misses = new LongAdder();
+
+  public TopicCache(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+    topics = new ClockMap<>(capacity);
+    segments = new ClockMap<>(capacity);
+  }
+
+  /**
+   *  Obtains the cache used by {@link Topic#of(String)}.
+   *
+   *  @return The default cache.
+   */
+  public static TopicCache getDefault() {
+    return DEFAULT;
+  }
+
+  /**
+   *  Obtains the parsed form of the given topic, parsing and caching it if necessary.
+   *
+   *  @param topic The topic string.
+   *  @return The parsed topic.
+   *  @exception IllegalArgumentException If the topic is malformed.
+   */
+  public Topic get(String topic) {
+    final Topic existing = topics.get(topic);
+    if (existing != null) {
+      hits.increment();
+      return existing;
+    }
+
+    misses.increment();
+    final Topic parsed = Topic.parse(topic, this::intern);
+    topics.admit(topic, parsed);
+    return parsed;
+  }
+
+  /**
+   *  Interns a topic segment. The segment pool is bounded by the cache capacity, evicting the
+   *  least recently used segments in the same way as the topics. An evicted segment may
+   *  briefly coexist with a newly interned instance, which only affects whether segments are
+   *  shared, not correctness, as segments are still compared by equality.
+   *
+   *  @param segment The segment.
+   *  @return The canonical instance of the segment.
+   */
+  String intern(String segment) {
+    if (segment.equals(Topic.SL_WILDCARD)) return Topic.SL_WILDCARD;
+    if (segment.equals(Topic.ML_WILDCARD)) return Topic.ML_WILDCARD;
+
+    final String existing = segments.get(segment);
+    return existing != null ? existing : segments.admit(segment, segment);
+  }
+
+  public int capacity() {
+    return topics.capacity();
+  }
+
+  public int size() {
+    return topics.size();
+  }
+
+  int segmentCount() {
+    return segments.size();
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return topics.getEvictions();
+  }
+
+  public long getSegmentEvictions() {
+    return segments.getEvictions();
+  }
+
+  /**
+   *  Obtains the fraction of lookups that were served from the cache.
+   *
+   *  @return The hit rate, in the range [0, 1]; 0 if there were no lookups.
+   */
+  public double getHitRate() {
+    final long hits = getHits();
+    final long total = hits + getMisses();
+    return total != 0 ? (double) hits / total : 0;
+  }
+
+  @Override
+  public String toString() {
+    return "TopicCache [capacity=" + capacity() + ", size=" + size() + ", hits=" + getHits() +
+        ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+  }
+}
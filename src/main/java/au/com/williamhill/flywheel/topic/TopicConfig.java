@@ -2,4 +2,55 @@ package au.com.williamhill.flywheel.topic;
 
 public class TopicConfig {
   TopicWatcher topicWatcher = TopicWatcher.VOID;
+  
+  int rootShards = 1;
+  
+  long lingerMillis;
+  
+  FanOut fanOut;
+  
+  public TopicConfig withTopicWatcher(TopicWatcher topicWatcher) {
+    this.topicWatcher = topicWatcher;
+    return this;
+  }
+  
+  /**
+   *  Sets the number of independent root routers that the topic hierarchy is partitioned
+   *  across. Publishers must address the root through a {@link RootShards} instance of the
+   *  same size.
+   *  
+   *  @param rootShards The number of root shards.
+   *  @return This config, for chaining.
+   */
+  public TopicConfig withRootShards(int rootShards) {
+    this.rootShards = rootShards;
+    return this;
+  }
+  
+  /**
+   *  Sets the time that an empty topic router lingers for before passivating. A subscription
+   *  or subtopic arriving in the meantime revives the router, sparing the cost of deactivating
+   *  and reactivating it (and re-registering it with its parent) when clients flap. 0 
+   *  passivates routers as soon as they are empty.
+   *  
+   *  @param lingerMillis The linger period, in milliseconds.
+   *  @return This config, for chaining.
+   */
+  public TopicConfig withLingerMillis(long lingerMillis) {
+    this.lingerMillis = lingerMillis;
+    return this;
+  }
+  
+  /**
+   *  Sets the lanes that delivery to large subscriber sets is offloaded to. The fan-out
+   *  is owned by the caller, and should be closed after the actor system is shut down. 
+   *  If unset, routers always deliver on their own thread.
+   *  
+   *  @param fanOut The fan-out lanes; may be null.
+   *  @return This config, for chaining.
+   */
+  public TopicConfig withFanOut(FanOut fanOut) {
+    this.fanOut = fanOut;
+    return this;
+  }
 }
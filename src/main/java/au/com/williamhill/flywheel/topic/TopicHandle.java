@@ -0,0 +1,53 @@
+package au.com.williamhill.flywheel.topic;
+
+/**
+ *  A pre-parsed exact topic, for publishers that publish to the same topics over and over.<p>
+ *
+ *  Besides the parsed {@link Topic}, a handle memoises the outcome of the per-publish lookups
+ *  that depend only on the topic: the {@link InterestFilter} test, the root shard, and the
+ *  route resolved by a {@link SubscriptionTrie}. Each memo records the state it was computed
+ *  against, and is recomputed as soon as the subscriptions change, so a handle never goes
+ *  stale. A handle may be shared between threads.
+ */
+public final class TopicHandle {
+  private final String name;
+
+  private final Topic topic;
+
+  /** The {@link InterestFilter} version, shifted left by one, with the outcome in the low bit; -1 if unset. */
+  volatile long interest = -1;
+
+  /** The shard count in the high half, and the shard index in the low half; 0 if unset. */
+  volatile long shard;
+
+  /** The last route resolved by a {@link SubscriptionTrie}, if any. */
+  volatile RouteCache.Route route;
+
+  /**
+   *  Creates a handle for the given exact topic.
+   *
+   *  @param topic The topic, which may not contain wildcards.
+   */
+  public TopicHandle(String topic) {
+    this.topic = Topic.of(topic);
+    for (String part : this.topic.getParts()) {
+      if (part.equals(Topic.SL_WILDCARD) || part.equals(Topic.ML_WILDCARD)) {
+        throw new IllegalArgumentException("Invalid topic '" + topic + "': cannot publish to a wildcard");
+      }
+    }
+    name = topic;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public Topic getTopic() {
+    return topic;
+  }
+
+  @Override
+  public String toString() {
+    return "TopicHandle [" + name + "]";
+  }
+}
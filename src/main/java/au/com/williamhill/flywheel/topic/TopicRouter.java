@@ -1,6 +1,7 @@
 package au.com.williamhill.flywheel.topic;
 
 import java.util.*;
+import java.util.function.*;
 
 import org.slf4j.*;
 
@@ -13,22 +14,25 @@ public final class TopicRouter implements Actor {
   
   private final TopicConfig config;
   
+  private final RootShards shards;
+  
   private TopicRouterState state;
 
   public TopicRouter(TopicConfig config) {
     this.config = config;
+    shards = new RootShards(config.rootShards);
   }
   
   @Override
   public void activated(Activation a) {
     if (LOG.isTraceEnabled()) LOG.trace("{} activating", a.self());
     final Topic current = Topic.fromRef(a.self());
-    state = new TopicRouterState(current);
+    state = new TopicRouterState(current, config.fanOut);
     if (! current.isRoot()) {
       config.topicWatcher.created(a, current);
       final Topic parent = current.parent();
       if (parent != null) {
-        a.to(parent.asRef()).ask(CreateSubtopic.instance()).onFault(a::propagateFault).onResponse(r -> {});
+        a.to(parentRef(current, parent)).ask(CreateSubtopic.instance()).onFault(a::propagateFault).onResponse(r -> {});
       }
     }
   }
@@ -41,19 +45,26 @@ public final class TopicRouter implements Actor {
       config.topicWatcher.deleted(a, current);
       final Topic parent = current.parent();
       if (parent != null) {
-        a.to(parent.asRef()).ask(DeleteSubtopic.instance()).onFault(a::propagateFault).onResponse(r -> {});
+        a.to(parentRef(current, parent)).ask(DeleteSubtopic.instance()).onFault(a::propagateFault).onResponse(r -> {});
       }
     }
   }
   
+  private ActorRef parentRef(Topic current, Topic parent) {
+    return parent.isRoot() ? shards.routerFor(current) : parent.asRef();
+  }
+  
   @Override
   public void act(Activation a, Message m) {
     m.select()
     .when(Subscribe.class).then(b -> subscribe(a, m))
     .when(Unsubscribe.class).then(b -> unsubscribe(a, m))
+    .when(BatchSubscribe.class).then(b -> batchSubscribe(a, m))
+    .when(BatchUnsubscribe.class).then(b -> batchUnsubscribe(a, m))
     .when(Publish.class).then(b -> publish(a, m))
     .when(CreateSubtopic.class).then(b -> createSubtopic(a, m))
     .when(DeleteSubtopic.class).then(b -> deleteSubtopic(a, m))
+    .when(Linger.class).then(b -> {})
     .otherwise(a::messageFault);
   }
   
@@ -67,13 +78,15 @@ public final class TopicRouter implements Actor {
   private void createSubtopic(Activation a, Message m) {
     final Topic subtopic = Topic.fromRef(m.from());
     if (LOG.isTraceEnabled()) LOG.trace("{} creating {}", a.self(), subtopic.tail());
+    revive();
     state.subtopics.put(subtopic.tail(), m.from());
     a.reply(m).tell();
   }
   
   /**
    *  Called by the child of this actor during its passivation, thereby deregistering itself
-   *  from its parent. If there are no subtopics left, this actor will do the same.
+   *  from its parent. If there are no subtopics left, this actor will do the same (after
+   *  lingering, if so configured).
    *  
    *  @param a
    *  @param m
@@ -82,9 +95,7 @@ public final class TopicRouter implements Actor {
     final Topic subtopic = Topic.fromRef(m.from());
     if (LOG.isTraceEnabled()) LOG.trace("{} deleting {}", a.self(), subtopic.tail());
     state.subtopics.remove(subtopic.tail());
-    if (state.subtopics.isEmpty() && state.subscribers.isEmpty()) {
-      a.passivate();
-    }
+    passivateIfEmpty(a);
     a.reply(m).tell();
   }
   
@@ -98,6 +109,7 @@ public final class TopicRouter implements Actor {
       a.forward(m).to(subtopicRef);
     } else {
       if (LOG.isTraceEnabled()) LOG.trace("{} adding to {}", a.self(), subscribe.getTopic());
+      revive();
       // the request is for the current level or a '+' wildcard - subscribe and reply
       final boolean added = state.subscribe(subscribe.getTopic(), subscribe.getSubscriber());
       if (added) config.topicWatcher.subscribed(a, subscribe.getTopic(), subscribe.getSubscriber());
@@ -119,14 +131,112 @@ public final class TopicRouter implements Actor {
       // the request is for the current level or a '+' wildcard - subscribe and reply
       final boolean removed = state.unsubscribe(unsubscribe.getTopic(), unsubscribe.getSubscriber());
       if (removed) config.topicWatcher.unsubscribed(a, unsubscribe.getTopic(), unsubscribe.getSubscriber());
-      if (state.subtopics.isEmpty() && state.subscribers.isEmpty()) {
-        a.passivate();
-      }
+      passivateIfEmpty(a);
       
       a.reply(m).tell(UnsubscribeResponse.instance());
     }
   }
   
+  private void batchSubscribe(Activation a, Message m) {
+    final BatchSubscribe batch = m.body();
+    if (LOG.isTraceEnabled()) LOG.trace("{} processing {}", a.self(), batch);
+    final Map<ActorRef, List<Subscribe>> delegated = new HashMap<>();
+    for (Subscribe subscribe : batch.getEntries()) {
+      final ActorRef subtopicRef = resolveDeepTopicRef(subscribe.getTopic());
+      if (subtopicRef != null) {
+        delegated.computeIfAbsent(subtopicRef, k -> new ArrayList<>()).add(subscribe);
+      } else {
+        revive();
+        final boolean added = state.subscribe(subscribe.getTopic(), subscribe.getSubscriber());
+        if (added) config.topicWatcher.subscribed(a, subscribe.getTopic(), subscribe.getSubscriber());
+      }
+    }
+    
+    delegateBatch(a, m, delegated, BatchSubscribe::new, SubscribeResponse.instance());
+  }
+  
+  private void batchUnsubscribe(Activation a, Message m) {
+    final BatchUnsubscribe batch = m.body();
+    if (LOG.isTraceEnabled()) LOG.trace("{} processing {}", a.self(), batch);
+    final Map<ActorRef, List<Unsubscribe>> delegated = new HashMap<>();
+    for (Unsubscribe unsubscribe : batch.getEntries()) {
+      final ActorRef subtopicRef = resolveDeepTopicRef(unsubscribe.getTopic());
+      if (subtopicRef != null) {
+        delegated.computeIfAbsent(subtopicRef, k -> new ArrayList<>()).add(unsubscribe);
+      } else {
+        final boolean removed = state.unsubscribe(unsubscribe.getTopic(), unsubscribe.getSubscriber());
+        if (removed) config.topicWatcher.unsubscribed(a, unsubscribe.getTopic(), unsubscribe.getSubscriber());
+      }
+    }
+    
+    if (delegated.isEmpty()) {
+      passivateIfEmpty(a);
+    }
+    delegateBatch(a, m, delegated, BatchUnsubscribe::new, UnsubscribeResponse.instance());
+  }
+  
+  /**
+   *  Marks a level that may be empty as being in use again, so that a pending linger timer 
+   *  doesn't passivate it.
+   */
+  private void revive() {
+    if (state.isEmpty()) state.generation++;
+  }
+  
+  /**
+   *  Passivates this actor if it has no subscribers or subtopics, either immediately or after
+   *  the configured linger period, provided that it hasn't been revived in the meantime.
+   */
+  private void passivateIfEmpty(Activation a) {
+    if (! state.isEmpty()) return;
+    
+    if (config.lingerMillis == 0) {
+      a.passivate();
+    } else if (! state.lingering) {
+      linger(a);
+    }
+  }
+  
+  private void linger(Activation a) {
+    if (LOG.isTraceEnabled()) LOG.trace("{} lingering for {} ms", a.self(), config.lingerMillis);
+    state.lingering = true;
+    final int generation = state.generation;
+    a.to(a.self()).ask(Linger.instance()).await(config.lingerMillis).onTimeout(() -> {
+      state.lingering = false;
+      if (! state.isEmpty()) return;
+      
+      if (state.generation == generation) {
+        a.passivate();
+      } else {
+        // revived and emptied again while lingering - start over
+        linger(a);
+      }
+    }).onResponse(r -> {});
+  }
+  
+  /**
+   *  Forwards the undelivered portion of a batch to the subtopics, one batch per subtopic, 
+   *  replying to the original request once all subtopics have acknowledged. Replies immediately 
+   *  if nothing was delegated.
+   */
+  private static <E> void delegateBatch(Activation a, Message m, Map<ActorRef, List<E>> delegated, 
+                                        Function<List<E>, Object> batchFactory, Object response) {
+    if (delegated.isEmpty()) {
+      a.reply(m).tell(response);
+      return;
+    }
+    
+    final int[] outstanding = { delegated.size() };
+    for (Map.Entry<ActorRef, List<E>> entry : delegated.entrySet()) {
+      if (LOG.isTraceEnabled()) LOG.trace("{} delegating {} entries to {}", a.self(), entry.getValue().size(), entry.getKey());
+      a.to(entry.getKey()).ask(batchFactory.apply(entry.getValue())).onFault(a::propagateFault).onResponse(r -> {
+        if (--outstanding[0] == 0) {
+          a.reply(m).tell(response);
+        }
+      });
+    }
+  }
+  
   private ActorRef resolveDeepTopicRef(Topic topic) {
     if (isDeeper(topic) && ! nextTopicPart(topic).equals(Topic.SL_WILDCARD)) {
       // the request is for a subtopic - delegate down
@@ -145,40 +255,28 @@ public final class TopicRouter implements Actor {
     }
   }
   
+  /**
+   *  Delivers a publish to the matching subscribers at this level, then forwards it to the
+   *  next level down. The same {@link Publish} message and its {@link Delivery} travel the 
+   *  whole way, so routing a publish allocates nothing beyond the messaging itself.
+   */
   private void publish(Activation a, Message m) {
     final Publish publish = m.body();
-    if (LOG.isTraceEnabled()) LOG.trace("{} processing subscribe to {}", a.self(), publish.getTopic());
-    final Delivery delivery = new Delivery(publish.getTopic(), publish.getPayload());
-    for (Map.Entry<Topic, Set<Subscriber>> entry : state.subscribers.entrySet()) {
-      if (entry.getKey().accepts(publish.getTopic())) {
-        if (LOG.isTraceEnabled()) LOG.trace("{} matched {}", a.self(), entry.getKey());
-        // subscribers match the exact topic in the publish command
-        for (Subscriber subscriber : entry.getValue()) {
-          subscriber.accept(delivery);
-        }
-      } else {
-        if (LOG.isTraceEnabled()) LOG.trace("{} skipped {}", a.self(), entry.getKey());
-      }
-    }
+    if (LOG.isTraceEnabled()) LOG.trace("{} processing publish to {}", a.self(), publish.getTopic());
+    final Delivery delivery = publish.getDelivery();
+    final Topic topic = delivery.getTopic();
+    state.deliver(topic, delivery);
 
-    final ActorRef subtopicRef;
-    if (isDeeper(publish.getTopic())) {
-      // the request is for a subtopic - delegate down if one has been created
-      final String next = nextTopicPart(publish.getTopic());
-      subtopicRef = state.subtopics.get(next);
-      if (subtopicRef != null) {
-        if (LOG.isTraceEnabled()) LOG.trace("{} delegating to {}", a.self(), subtopicRef);
-        a.forward(m).to(subtopicRef);
-      } else {
-        if (LOG.isTraceEnabled()) LOG.trace("{} no subtopics", a.self());
-      }
+    final String[] parts = topic.getParts();
+    final int depth = state.topic.length();
+    final ActorRef subtopicRef = parts.length > depth ? state.subtopics.get(parts[depth]) : null;
+    if (subtopicRef != null) {
+      // the request is for a subtopic that has been created - delegate down
+      if (LOG.isTraceEnabled()) LOG.trace("{} delegating to {}", a.self(), subtopicRef);
+      a.forward(m).to(subtopicRef);
     } else {
-      // the request is for the current level - no further delegation
-      subtopicRef = null;
-    }
-    
-    if (subtopicRef == null) {
       // no delegation took place - reply in case the publisher cares
+      if (LOG.isTraceEnabled()) LOG.trace("{} no subtopics", a.self());
       a.reply(m).tell(PublishResponse.instance());
     }
   }
@@ -4,43 +4,312 @@ import java.util.*;
 
 import com.obsidiandynamics.indigo.*;
 
+/**
+ *  The state of a single {@link TopicRouter} level.<p>
+ *
+ *  The subscriptions held at a level are those for the level's own topic, and those whose
+ *  next segment is a wildcard. Rather than testing every filter against each published
+ *  topic, subscriptions are indexed by how they match: the exact, {@code #} and
+ *  terminal {@code +} buckets are fixed, while any other wildcard filters are grouped by
+ *  the shape of their suffix (length and wildcard positions), and keyed within a group by
+ *  their literal segments. A publish then costs one hash lookup per distinct shape.<p>
+ *
+ *  When a publish matches more subscribers than the {@link FanOut} threshold, delivery is
+ *  handed off to the fan-out lanes. The members of a {@link CompositeSubscriber} count
+ *  towards the threshold individually, and are split across the lanes. Once any level has
+ *  fanned out, every level sharing the lanes delivers through them until they have caught
+ *  up, so that a subsequent (smaller) delivery can't overtake it.
+ */
 final class TopicRouterState {
+  /**
+   *  A group of wildcard filters sharing the same suffix shape, e.g. {@code +/x/+} and
+   *  {@code +/y/+}, keyed by their literal segments.
+   */
+  private static final class PatternGroup {
+    /** The number of suffix segments matched, excluding a trailing '#'. */
+    final int length;
+
+    final boolean multiLevel;
+
+    /** Suffix offsets of the literal (non-wildcard) segments. */
+    final int[] literals;
+
+    final Map<PatternKey, SubscriberSet> sets = new HashMap<>();
+
+    /** Reusable lookup key; safe as an actor's state is only accessed serially. */
+    final PatternKey probe;
+
+    PatternGroup(int length, boolean multiLevel, int[] literals) {
+      this.length = length;
+      this.multiLevel = multiLevel;
+      this.literals = literals;
+      probe = new PatternKey(new String[literals.length]);
+    }
+
+    boolean hasShape(int length, boolean multiLevel, int[] literals) {
+      return this.length == length && this.multiLevel == multiLevel && Arrays.equals(this.literals, literals);
+    }
+
+    SubscriberSet match(String[] parts, int offset) {
+      final int remaining = parts.length - offset;
+      if (multiLevel ? remaining <= length : remaining != length) return null;
+
+      for (int i = 0; i < literals.length; i++) {
+        probe.parts[i] = parts[offset + literals[i]];
+      }
+      probe.rehash();
+      return sets.get(probe);
+    }
+  }
+
+  private static final class PatternKey {
+    final String[] parts;
+
+    private int hash;
+
+    PatternKey(String[] parts) {
+      this.parts = parts;
+      rehash();
+    }
+
+    void rehash() {
+      hash = Arrays.hashCode(parts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof PatternKey && Arrays.equals(parts, ((PatternKey) obj).parts);
+    }
+  }
+
   final Topic topic;
-  
+
   final Map<String, ActorRef> subtopics = new HashMap<>();
+
+  /** Subscribers to this level's topic. */
+  private final SubscriberSet exact = new SubscriberSet();
+
+  /** Subscribers to this level's topic, followed by '#'. */
+  private final SubscriberSet multiLevel = new SubscriberSet();
+
+  /** Subscribers to this level's topic, followed by a terminal '+'. */
+  private final SubscriberSet singleLevel = new SubscriberSet();
+
+  private final List<PatternGroup> patternGroups = new ArrayList<>();
+
+  /** The sets matching the publish being delivered; reused between publishes. */
+  private final List<SubscriberSet> matched = new ArrayList<>();
+
+  private final FanOut fanOut;
+
+  private int subscriptions;
+  
+  /** Incremented whenever an empty level gains a subscriber or subtopic. */
+  int generation;
   
-  final Map<Topic, Set<Subscriber>> subscribers = new HashMap<>();
+  /** Whether a linger timer is pending. */
+  boolean lingering;
 
   TopicRouterState(Topic topic) {
+    this(topic, null);
+  }
+
+  TopicRouterState(Topic topic, FanOut fanOut) {
     this.topic = topic;
+    this.fanOut = fanOut;
   }
-  
-  boolean subscribe(Topic topic, Subscriber subscriber) {
-    final Set<Subscriber> subscriberSet;
-    final Set<Subscriber> existingSet = subscribers.get(topic);
-    if (existingSet != null) {
-      subscriberSet = existingSet;
+
+  boolean hasSubscribers() {
+    return subscriptions != 0;
+  }
+
+  boolean isEmpty() {
+    return subtopics.isEmpty() && ! hasSubscribers();
+  }
+
+  boolean subscribe(Topic filter, Subscriber subscriber) {
+    final boolean added = setFor(filter, true).add(subscriber);
+    if (added) subscriptions++;
+    return added;
+  }
+
+  boolean unsubscribe(Topic filter, Subscriber subscriber) {
+    final SubscriberSet set = setFor(filter, false);
+    if (set != null && set.remove(subscriber)) {
+      subscriptions--;
+      if (set.isEmpty() && set != exact && set != multiLevel && set != singleLevel) prune(filter);
+      return true;
     } else {
-      subscribers.put(topic, subscriberSet = new HashSet<>());
+      return false;
     }
-    return subscriberSet.add(subscriber);
   }
-  
-  boolean unsubscribe(Topic topic, Subscriber subscriber) {
-    final Set<Subscriber> subscriberSet = subscribers.get(topic);
-    if (subscriberSet != null) {
-      final boolean removed = subscriberSet.remove(subscriber);
-      if (subscriberSet.isEmpty()) {
-        subscribers.remove(topic);
+
+  /**
+   *  Delivers to all subscribers at this level whose filters match the given exact topic.
+   *
+   *  @param exactTopic The published topic.
+   *  @param delivery The delivery.
+   */
+  void deliver(Topic exactTopic, Delivery delivery) {
+    final List<SubscriberSet> matched = this.matched;
+    try {
+      match(exactTopic, matched);
+      if (fanOut != null && (fanOut.isBusy() || sizeOf(matched) >= fanOut.getThreshold())) {
+        fanOut(matched, delivery);
+      } else {
+        for (int i = 0; i < matched.size(); i++) {
+          matched.get(i).deliver(delivery);
+        }
       }
-      return removed;
-    } else {
-      return false;
+    } finally {
+      matched.clear();
+    }
+  }
+
+  private void match(Topic exactTopic, List<SubscriberSet> matched) {
+    final String[] parts = exactTopic.getParts();
+    final int depth = topic.length();
+    final int remaining = parts.length - depth;
+    if (remaining == 0) {
+      if (! exact.isEmpty()) matched.add(exact);
+      return;
+    }
+
+    if (! multiLevel.isEmpty()) matched.add(multiLevel);
+    if (remaining == 1 && ! singleLevel.isEmpty()) {
+      matched.add(singleLevel);
+    }
+
+    for (int i = 0; i < patternGroups.size(); i++) {
+      final SubscriberSet set = patternGroups.get(i).match(parts, depth);
+      if (set != null) matched.add(set);
+    }
+  }
+
+  private static int sizeOf(List<SubscriberSet> sets) {
+    int size = 0;
+    for (int i = 0; i < sets.size(); i++) {
+      size += sets.get(i).weight();
+    }
+    return size;
+  }
+
+  /**
+   *  Splits the delivery into one chunk per lane, comprising the lane's share of each of
+   *  the matched sets, including the lane's share of the members of any composite
+   *  subscribers, and submits the chunks to their lanes.
+   */
+  private void fanOut(List<SubscriberSet> matched, Delivery delivery) {
+    final int lanes = fanOut.getLanes();
+    int slots = matched.size();
+    for (int i = 0; i < matched.size(); i++) {
+      slots += matched.get(i).getComposites().length;
+    }
+    
+    for (int lane = 0; lane < lanes; lane++) {
+      final List<Subscriber[]> chunk = new ArrayList<>(slots);
+      for (int i = 0; i < matched.size(); i++) {
+        final SubscriberSet set = matched.get(i);
+        final Subscriber[] subscribers = set.toLanes(lanes)[lane];
+        if (subscribers.length != 0) chunk.add(subscribers);
+        for (CompositeSubscriber composite : set.getComposites()) {
+          final Subscriber[] members = composite.toLanes(lanes)[lane];
+          if (members.length != 0) chunk.add(members);
+        }
+      }
+      if (chunk.isEmpty()) continue;
+
+      fanOut.submit(lane, () -> {
+        for (Subscriber[] subscribers : chunk) {
+          for (Subscriber subscriber : subscribers) {
+            subscriber.accept(delivery);
+          }
+        }
+      });
+    }
+  }
+
+  private SubscriberSet setFor(Topic filter, boolean create) {
+    final String[] parts = filter.getParts();
+    final int depth = topic.length();
+    final int suffixLength = parts.length - depth;
+    if (suffixLength == 0) {
+      return exact;
+    } else if (suffixLength == 1 && parts[depth].equals(Topic.ML_WILDCARD)) {
+      return multiLevel;
+    } else if (suffixLength == 1 && parts[depth].equals(Topic.SL_WILDCARD)) {
+      return singleLevel;
+    }
+
+    final boolean ml = filter.isMultiLevelWildcard();
+    final int length = ml ? suffixLength - 1 : suffixLength;
+    final int[] literals = literalsOf(parts, depth, length);
+    PatternGroup group = groupFor(length, ml, literals);
+    if (group == null) {
+      if (! create) return null;
+      group = new PatternGroup(length, ml, literals);
+      patternGroups.add(group);
+    }
+
+    final PatternKey key = keyOf(parts, depth, literals);
+    SubscriberSet set = group.sets.get(key);
+    if (set == null && create) {
+      group.sets.put(key, set = new SubscriberSet());
+    }
+    return set;
+  }
+
+  /**
+   *  Removes an emptied pattern subscriber set, along with its group if that too is empty.
+   */
+  private void prune(Topic filter) {
+    final String[] parts = filter.getParts();
+    final int depth = topic.length();
+    final boolean ml = filter.isMultiLevelWildcard();
+    final int length = ml ? parts.length - depth - 1 : parts.length - depth;
+    final int[] literals = literalsOf(parts, depth, length);
+    final PatternGroup group = groupFor(length, ml, literals);
+    if (group != null) {
+      group.sets.remove(keyOf(parts, depth, literals));
+      if (group.sets.isEmpty()) patternGroups.remove(group);
+    }
+  }
+
+  private PatternGroup groupFor(int length, boolean multiLevel, int[] literals) {
+    for (PatternGroup group : patternGroups) {
+      if (group.hasShape(length, multiLevel, literals)) return group;
+    }
+    return null;
+  }
+
+  private static int[] literalsOf(String[] parts, int offset, int length) {
+    int count = 0;
+    for (int i = 0; i < length; i++) {
+      if (! parts[offset + i].equals(Topic.SL_WILDCARD)) count++;
+    }
+    final int[] literals = new int[count];
+    for (int i = 0, j = 0; i < length; i++) {
+      if (! parts[offset + i].equals(Topic.SL_WILDCARD)) literals[j++] = i;
+    }
+    return literals;
+  }
+
+  private static PatternKey keyOf(String[] parts, int offset, int[] literals) {
+    final String[] keyParts = new String[literals.length];
+    for (int i = 0; i < literals.length; i++) {
+      keyParts[i] = parts[offset + literals[i]];
     }
+    return new PatternKey(keyParts);
   }
 
   @Override
   public String toString() {
-    return "TopicRouterState [topic=" + topic + ", subtopics=" + subtopics.keySet() + ", subscribers=" + subscribers + "]";
+    return "TopicRouterState [topic=" + topic + ", subtopics=" + subtopics.keySet() + ", subscriptions=" + subscriptions +
+        ", patternGroups=" + patternGroups.size() + "]";
   }
 }
@@ -0,0 +1,160 @@
+package au.com.williamhill.flywheel.util;
+
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ *  A pool of reusable byte buffers, in power-of-two size classes, handed out as 
+ *  reference-counted {@link PooledBuffer}s.<p>
+ *  
+ *  A request is served from the smallest class that fits it; a buffer is returned to its 
+ *  class when its last reference is released, unless the class already holds as many buffers 
+ *  as it may retain, in which case it is left to the garbage collector. Requests larger than
+ *  the largest class are served with a fresh buffer that is never pooled.
+ */
+public final class BufferPool {
+  /** Default smallest size class, in bytes. */
+  public static final int DEFAULT_MIN_SIZE = 1 << 8;
+  
+  /** Default largest size class, in bytes; enough for the largest binary frame. */
+  public static final int DEFAULT_MAX_SIZE = 1 << 16;
+  
+  /** Default number of buffers retained per size class. */
+  public static final int DEFAULT_RETAINED_PER_CLASS = 1 << 10;
+  
+  private final boolean direct;
+  
+  private final int minShift;
+  
+  private final int maxSize;
+  
+  private final List<BlockingQueue<ByteBuffer>> classes;
+  
+  private final LongAdder acquisitions = new LongAdder();
+  
+  private final LongAdder allocations = new LongAdder();
+  
+  private final LongAdder oversized = new LongAdder();
+  
+  public BufferPool() {
+    this(false, DEFAULT_MIN_SIZE, DEFAULT_MAX_SIZE, DEFAULT_RETAINED_PER_CLASS);
+  }
+  
+  /**
+   *  Creates a pool.
+   *  
+   *  @param direct Whether to allocate direct buffers, rather than heap buffers.
+   *  @param minSize The smallest size class, in bytes; must be a power of two.
+   *  @param maxSize The largest size class, in bytes; must be a power of two, no smaller than
+   *                 {@code minSize}.
+   *  @param retainedPerClass The maximum number of idle buffers retained in each size class.
+   */
+  public BufferPool(boolean direct, int minSize, int maxSize, int retainedPerClass) {
+    if (minSize < 1 || Integer.bitCount(minSize) != 1) {
+      throw new IllegalArgumentException("Minimum size must be a power of two");
+    }
+    if (maxSize < minSize || Integer.bitCount(maxSize) != 1) {
+      throw new IllegalArgumentException("Maximum size must be a power of two, no smaller than the minimum size");
+    }
+    if (retainedPerClass < 1) {
+      throw new IllegalArgumentException("Must retain at least one buffer per class");
+    }
+    this.direct = direct;
+    this.minShift = Integer.numberOfTrailingZeros(minSize);
+    this.maxSize = maxSize;
+    final int sizeClasses = Integer.numberOfTrailingZeros(maxSize) - minShift + 1;
+    classes = new ArrayList<>(sizeClasses);
+    for (int i = 0; i < sizeClasses; i++) {
+      classes.add(new ArrayBlockingQueue<>(retainedPerClass));
+    }
+  }
+  
+  /**
+   *  Acquires a buffer of at least the given size, holding a single reference to it. The 
+   *  buffer is cleared, with its limit set to the requested size.
+   *  
+   *  @param size The required size, in bytes.
+   *  @return The pooled buffer.
+   */
+  public PooledBuffer acquire(int size) {
+    acquisitions.increment();
+    if (size > maxSize) {
+      oversized.increment();
+      return new PooledBuffer(null, prepare(allocate(size), size));
+    }
+    
+    final int sizeClass = sizeClass(size);
+    final ByteBuffer recycled = classes.get(sizeClass).poll();
+    final ByteBuffer buffer;
+    if (recycled != null) {
+      buffer = recycled;
+    } else {
+      allocations.increment();
+      buffer = allocate(1 << (sizeClass + minShift));
+    }
+    return new PooledBuffer(this, prepare(buffer, size));
+  }
+  
+  private int sizeClass(int size) {
+    if (size <= 1 << minShift) return 0;
+    return 32 - Integer.numberOfLeadingZeros(size - 1) - minShift;
+  }
+  
+  private ByteBuffer allocate(int capacity) {
+    return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+  }
+  
+  private static ByteBuffer prepare(ByteBuffer buffer, int size) {
+    buffer.clear();
+    buffer.limit(size);
+    return buffer;
+  }
+  
+  void recycle(ByteBuffer buffer) {
+    classes.get(sizeClass(buffer.capacity())).offer(buffer);
+  }
+  
+  public boolean isDirect() {
+    return direct;
+  }
+  
+  /**
+   *  Obtains the number of idle buffers held by the pool, across all size classes.
+   *  
+   *  @return The number of idle buffers.
+   */
+  public int getIdle() {
+    int idle = 0;
+    for (BlockingQueue<ByteBuffer> sizeClass : classes) {
+      idle += sizeClass.size();
+    }
+    return idle;
+  }
+  
+  public long getAcquisitions() {
+    return acquisitions.sum();
+  }
+  
+  /**
+   *  Obtains the number of pooled buffers that had to be allocated, as no idle buffer of the
+   *  required size class was available.
+   *  
+   *  @return The number of allocations.
+   */
+  public long getAllocations() {
+    return allocations.sum();
+  }
+  
+  public long getOversized() {
+    return oversized.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "BufferPool [direct=" + direct + ", classes=" + (1 << minShift) + ".." + maxSize + 
+        ", idle=" + getIdle() + ", acquisitions=" + getAcquisitions() + 
+        ", allocations=" + getAllocations() + ", oversized=" + getOversized() + "]";
+  }
+}
@@ -0,0 +1,104 @@
+package au.com.williamhill.flywheel.util;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ *  A bounded, concurrent map, for use as a cache. Lookups are lock-free, while admissions are
+ *  serialised. When full, an entry is evicted using the clock (second chance) algorithm, which
+ *  approximates LRU without reordering on every hit.
+ *
+ *  @param <K> The key type.
+ *  @param <V> The value type.
+ */
+public final class ClockMap<K, V> {
+  private static final class Entry<K, V> {
+    final K key;
+    final V value;
+    volatile boolean referenced;
+
+    Entry(K key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+  }
+
+  private final Map<K, Entry<K, V>> entries;
+
+  /** The clock; guarded by this. */
+  private final Entry<?, ?>[] ring;
+
+  /** The clock hand; guarded by this. */
+  private int hand;
+
+  private final LongAdder evictions = new LongAdder();
+
+  public ClockMap(int capacity) {
+    if (capacity < 1) throw new IllegalArgumentException("Capacity must be at least 1");
+    entries = new ConcurrentHashMap<>(Math.min(capacity, 1 << 16));
+    ring = new Entry<?, ?>[capacity];
+  }
+
+  /**
+   *  Looks up a value, marking it as recently used.
+   *
+   *  @param key The key.
+   *  @return The mapped value, or {@code null} if there is none.
+   */
+  public V get(K key) {
+    final Entry<K, V> existing = entries.get(key);
+    if (existing == null) return null;
+    if (! existing.referenced) existing.referenced = true;
+    return existing.value;
+  }
+
+  /**
+   *  Admits a value, unless one is already present for the key.
+   *
+   *  @param key The key.
+   *  @param value The value.
+   *  @return The value that is now mapped to the key.
+   */
+  public synchronized V admit(K key, V value) {
+    final Entry<K, V> existing = entries.get(key);
+    if (existing != null) return existing.value;
+
+    for (;;) {
+      final Entry<?, ?> candidate = ring[hand];
+      if (candidate == null) {
+        break;
+      } else if (candidate.referenced) {
+        candidate.referenced = false;
+        hand = (hand + 1) % ring.length;
+      } else {
+        entries.remove(candidate.key);
+        evictions.increment();
+        break;
+      }
+    }
+
+    final Entry<K, V> entry = new Entry<>(key, value);
+    ring[hand] = entry;
+    hand = (hand + 1) % ring.length;
+    entries.put(key, entry);
+    return value;
+  }
+
+  public int capacity() {
+    return ring.length;
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    return "ClockMap [capacity=" + capacity() + ", size=" + size() + ", evictions=" + getEvictions() + "]";
+  }
+}
@@ -0,0 +1,144 @@
+package au.com.williamhill.flywheel.util;
+
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+/**
+ *  A bounded, lock-free ring buffer for any number of producers and a single consumer.<p>
+ *
+ *  Each slot carries a sequence number, after Vyukov's bounded queue: a producer claims a
+ *  position by advancing the tail, fills the slot, then publishes it by bumping the slot's
+ *  sequence; the consumer takes slots strictly in order. An idle consumer parks, and is woken
+ *  by the next producer.
+ *
+ *  @param <E> The element type.
+ */
+public final class MpscRing<E> {
+  private final Object[] elements;
+
+  private final AtomicLongArray sequences;
+
+  private final int mask;
+
+  private final AtomicLong tail = new AtomicLong();
+
+  /** Only accessed by the consumer. */
+  private long head;
+
+  /** 
+   *  The consumer thread, once it has polled. Only written by the consumer, so a producer 
+   *  comparing it with itself can't be misled by a stale read.
+   */
+  private Thread consumer;
+
+  private volatile Thread parked;
+
+  /**
+   *  Creates a ring with the given capacity.
+   *
+   *  @param capacity The capacity; must be a power of two.
+   */
+  public MpscRing(int capacity) {
+    if (capacity < 2 || Integer.bitCount(capacity) != 1) {
+      throw new IllegalArgumentException("Capacity must be a power of two, of at least 2");
+    }
+    elements = new Object[capacity];
+    sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      sequences.set(i, i);
+    }
+    mask = capacity - 1;
+  }
+
+  /**
+   *  Adds an element, if there is room.
+   *
+   *  @param element The element.
+   *  @return True if added, false if the ring is full.
+   */
+  public boolean offer(E element) {
+    for (;;) {
+      final long position = tail.get();
+      final int index = (int) position & mask;
+      final long sequence = sequences.get(index);
+      if (sequence == position) {
+        if (tail.compareAndSet(position, position + 1)) {
+          elements[index] = element;
+          // a full fence, so that the check for a parked consumer can't be reordered ahead of it
+          sequences.set(index, position + 1);
+          final Thread parked = this.parked;
+          if (parked != null) LockSupport.unpark(parked);
+          return true;
+        }
+      } else if (sequence < position) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   *  Adds an element, yielding for as long as the ring is full. A full ring can only be drained
+   *  by the consumer, so the consumer may not wait on itself.
+   *
+   *  @param element The element.
+   *  @exception IllegalStateException If called by the consumer thread while the ring is full.
+   */
+  public void put(E element) {
+    while (! offer(element)) {
+      if (Thread.currentThread() == consumer) {
+        throw new IllegalStateException("Ring is full, and can't be drained by its own consumer");
+      }
+      Thread.yield();
+    }
+  }
+
+  /**
+   *  Removes the next element; may only be called from the consumer thread.
+   *
+   *  @return The element, or null if the ring is empty.
+   */
+  @SuppressWarnings("unchecked")
+  public E poll() {
+    if (consumer == null) consumer = Thread.currentThread();
+    final int index = (int) head & mask;
+    if (sequences.get(index) != head + 1) return null;
+
+    final E element = (E) elements[index];
+    elements[index] = null;
+    sequences.lazySet(index, head + elements.length);
+    head++;
+    return element;
+  }
+
+  /**
+   *  Removes the next element, parking the consumer thread until one is available, or the
+   *  timeout elapses.
+   *
+   *  @param timeoutNanos The maximum time to park for.
+   *  @return The element, or null if the timeout elapsed or the thread was interrupted.
+   */
+  public E take(long timeoutNanos) {
+    E element = poll();
+    if (element != null) return element;
+
+    parked = Thread.currentThread();
+    try {
+      // re-check after announcing, so that an element added in the meantime isn't missed
+      element = poll();
+      if (element != null) return element;
+      LockSupport.parkNanos(this, timeoutNanos);
+      return poll();
+    } finally {
+      parked = null;
+    }
+  }
+
+  public int capacity() {
+    return elements.length;
+  }
+
+  @Override
+  public String toString() {
+    return "MpscRing [capacity=" + elements.length + "]";
+  }
+}
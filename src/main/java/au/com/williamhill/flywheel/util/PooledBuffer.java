@@ -0,0 +1,80 @@
+package au.com.williamhill.flywheel.util;
+
+import java.nio.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ *  A reference-counted buffer acquired from a {@link BufferPool}. The buffer goes back to the
+ *  pool once every reference has been released, after which it must no longer be read. A 
+ *  released buffer can't be revived: {@link #retain()} only succeeds while at least one 
+ *  reference is still held. A buffer that is never released is simply garbage collected.
+ */
+public final class PooledBuffer {
+  /** The owning pool; null if the buffer is not pooled. */
+  private final BufferPool pool;
+  
+  private final ByteBuffer buffer;
+  
+  private final AtomicInteger refs = new AtomicInteger(1);
+  
+  PooledBuffer(BufferPool pool, ByteBuffer buffer) {
+    this.pool = pool;
+    this.buffer = buffer;
+  }
+  
+  /**
+   *  Obtains the underlying buffer, for filling by the holder of the first reference. The 
+   *  holder should flip the buffer when done, before sharing it.
+   *  
+   *  @return The underlying buffer.
+   */
+  public ByteBuffer buffer() {
+    return buffer;
+  }
+  
+  /**
+   *  Obtains a read-only view of the contents, from position to limit of the underlying buffer,
+   *  with its own independent position.
+   *  
+   *  @return A read-only view.
+   */
+  public ByteBuffer view() {
+    return buffer.asReadOnlyBuffer();
+  }
+  
+  /**
+   *  Acquires another reference, provided that the buffer hasn't already been released.
+   *  
+   *  @return True if a reference was acquired, false if the buffer was released.
+   */
+  public boolean retain() {
+    for (;;) {
+      final int count = refs.get();
+      if (count <= 0) return false;
+      if (refs.compareAndSet(count, count + 1)) return true;
+    }
+  }
+  
+  /**
+   *  Releases a reference, returning the buffer to its pool when it was the last.
+   *  
+   *  @exception IllegalStateException If the buffer was already released.
+   */
+  public void release() {
+    final int count = refs.decrementAndGet();
+    if (count == 0) {
+      if (pool != null) pool.recycle(buffer);
+    } else if (count < 0) {
+      throw new IllegalStateException("Buffer already released");
+    }
+  }
+  
+  public int refCount() {
+    return Math.max(0, refs.get());
+  }
+
+  @Override
+  public String toString() {
+    return "PooledBuffer [buffer=" + buffer + ", refs=" + refCount() + "]";
+  }
+}
@@ -0,0 +1,32 @@
+package au.com.williamhill.flywheel.util;
+
+public final class Utf8 {
+  private Utf8() {}
+  
+  /**
+   *  Obtains the length of the UTF-8 encoding of the given characters, without encoding them.
+   *  A lone surrogate counts as a single byte, as it is encoded as a '?' replacement.
+   *  
+   *  @param chars The characters.
+   *  @return The encoded length, in bytes.
+   */
+  public static int length(CharSequence chars) {
+    final int length = chars.length();
+    int bytes = length;
+    for (int i = 0; i < length; i++) {
+      final char c = chars.charAt(i);
+      if (c < 0x80) {
+        continue;
+      } else if (c < 0x800) {
+        bytes += 1;
+      } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        // a pair of surrogates encodes to 4 bytes
+        bytes += 2;
+        i++;
+      } else if (! Character.isSurrogate(c)) {
+        bytes += 2;
+      }
+    }
+    return bytes;
+  }
+}
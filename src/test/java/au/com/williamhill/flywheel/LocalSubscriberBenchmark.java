@@ -0,0 +1,115 @@
+package au.com.williamhill.flywheel;
+
+import static org.junit.Assert.*;
+
+import java.net.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.util.*;
+import com.obsidiandynamics.socketx.*;
+import com.obsidiandynamics.socketx.util.*;
+
+import au.com.williamhill.flywheel.edge.*;
+import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.remote.*;
+
+/**
+ *  Compares consuming messages in-process, through a nexus opened with
+ *  {@link EdgeNode#openLocal}, against consuming them over a loopback connection from a
+ *  {@link RemoteNode}. Both consumers subscribe to the same topic, and the time is taken from
+ *  the first publish until the last message is received.
+ */
+public final class LocalSubscriberBenchmark implements TestSupport {
+  private static final int PREFERRED_PORT = 8080;
+
+  private static final String TOPIC = "bench/quotes";
+
+  private static class Config {
+    boolean local;
+    int n;
+    int bytes;
+    boolean log;
+  }
+
+  @Test
+  public void test() throws Exception {
+    for (boolean _local : new boolean[] {true, false}) {
+      run(new Config() {{
+        local = _local;
+        n = 1_000;
+        bytes = 16;
+        log = LOG;
+      }});
+    }
+  }
+
+  private static double run(Config c) throws Exception {
+    final int _port = SocketUtils.getAvailablePort(PREFERRED_PORT);
+    final EdgeNode edge = EdgeNode.builder()
+        .withServerConfig(new XServerConfig() {{ port = _port; }})
+        .build();
+    final RemoteNode remote = RemoteNode.builder().build();
+    final AtomicInteger received = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    final Runnable onReceive = () -> {
+      if (received.incrementAndGet() == c.n) done.countDown();
+    };
+
+    try {
+      final BindFrame bind = new BindFrame(UUID.randomUUID(),
+                                           null,
+                                           null,
+                                           new String[]{TOPIC},
+                                           new String[]{},
+                                           null);
+      final AutoCloseable consumer;
+      if (c.local) {
+        final EdgeNexus nexus = edge.openLocal(d -> onReceive.run());
+        assertTrue(edge.bindLocal(nexus, bind).get().isSuccess());
+        consumer = nexus;
+      } else {
+        final RemoteNexus nexus = remote.open(new URI("ws://localhost:" + _port + "/"), new RemoteNexusHandlerBase() {
+          @Override public void onText(RemoteNexus nexus, String topic, String payload) {
+            onReceive.run();
+          }
+        });
+        assertTrue(nexus.bind(bind).get().isSuccess());
+        consumer = nexus;
+      }
+
+      final char[] chars = new char[c.bytes];
+      Arrays.fill(chars, 'x');
+      final String payload = new String(chars);
+      final long start = System.nanoTime();
+      for (int i = 0; i < c.n; i++) {
+        edge.publish(TOPIC, payload);
+      }
+      assertTrue(done.await(60, TimeUnit.SECONDS));
+      final long tookNanos = System.nanoTime() - start;
+      consumer.close();
+
+      final double rate = c.n * 1_000_000_000d / tookNanos;
+      if (c.log) System.out.format("%s: %,d messages of %,d bytes in %,d ms, %,.0f msgs/s\n",
+                                   c.local ? "Local" : "Loopback", c.n, c.bytes, tookNanos / 1_000_000, rate);
+      return rate;
+    } finally {
+      remote.close();
+      edge.close();
+    }
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (boolean _local : new boolean[] {true, false}) {
+      run(new Config() {{
+        local = _local;
+        n = 1_000_000;
+        bytes = 128;
+        log = true;
+      }});
+    }
+  }
+}
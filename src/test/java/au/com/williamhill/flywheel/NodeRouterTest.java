@@ -5,7 +5,10 @@ import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
 import java.net.*;
+import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import org.junit.*;
 
@@ -18,6 +21,7 @@ import au.com.williamhill.flywheel.frame.*;
 import au.com.williamhill.flywheel.frame.Error;
 import au.com.williamhill.flywheel.frame.Wire.*;
 import au.com.williamhill.flywheel.remote.*;
+import au.com.williamhill.flywheel.topic.*;
 import au.com.williamhill.flywheel.util.*;
 
 public final class NodeRouterTest {
@@ -151,4 +155,120 @@ public final class NodeRouterTest {
       inOrder.verify(handler).onClose(notNull());
     });
   }
+
+  @Test
+  public void testExternalPubSubV2() throws Exception {
+    final RemoteNode remoteV2 = RemoteNode.builder()
+        .withWire(wire)
+        .withProtocol(Protocol.V2)
+        .build();
+    try {
+      final RemoteNexus remoteNexus = remoteV2.open(new URI("ws://localhost:" + port + "/"), 
+                                                    InterceptingProxy.of(handler, new LoggingInterceptor<>()));
+      
+      final String topic = "a/b/c";
+      final BindFrame bind = new BindFrame(UUID.randomUUID(), 
+                                           Long.toHexString(Crypto.machineRandom()),
+                                           null,
+                                           new String[]{topic},
+                                           new String[]{},
+                                           "some-context");
+      final BindResponseFrame bindRes = remoteNexus.bind(bind).get();
+      assertTrue(bindRes.isSuccess());
+      assertEquals(1, edge.getNexuses().size());
+      assertEquals(Protocol.V2, edge.getNexuses().get(0).getProtocol());
+
+      final String text = "hello v2";
+      final byte[] bytes = new byte[] {(byte) 0x00, (byte) 0x01, (byte) 0x02};
+      remoteNexus.publish(new PublishTextFrame(topic, text));
+      remoteNexus.publish(new PublishBinaryFrame(topic, bytes));
+      
+      SocketUtils.await().until(() -> {
+        verify(handler).onText(notNull(), eq(topic), eq(text));
+        verify(handler).onBinary(notNull(), eq(topic), eq(bytes));
+      });
+      
+      remoteNexus.close();
+      SocketUtils.await().until(() -> {
+        verify(handler).onClose(notNull());
+      });
+    } finally {
+      remoteV2.close();
+    }
+  }
+  
+  @Test
+  public void testLocalPubSub() throws Exception {
+    final List<Delivery> received = new CopyOnWriteArrayList<>();
+    final EdgeNexus localNexus = edge.openLocal(received::add);
+    assertTrue(localNexus.isLocal());
+
+    final String topic = "a/b/c";
+    final String payload = "hello local";
+    final BindFrame bind = new BindFrame(UUID.randomUUID(), 
+                                         null,
+                                         null,
+                                         new String[]{"a/+/c"},
+                                         new String[]{},
+                                         null);
+    final BindResponseFrame bindRes = edge.bindLocal(localNexus, bind).get();
+    assertTrue(bindRes.isSuccess());
+    
+    edge.publish(topic, payload);
+    SocketUtils.await().until(() -> {
+      assertEquals(1, received.size());
+    });
+    final Delivery delivery = received.get(0);
+    assertEquals(Topic.of(topic), delivery.getTopic());
+    assertEquals(new TextFrame(topic, payload), delivery.getPayload());
+    
+    localNexus.close();
+    localNexus.close(); // closing again has no effect
+  }
+  
+  @Test
+  public void testLocalNexusClosedWithNode() throws Exception {
+    final List<EdgeNexus> closed = new CopyOnWriteArrayList<>();
+    edge.addTopicListener(new TopicLambdaListener() {
+      @Override public void onClose(EdgeNexus nexus) {
+        closed.add(nexus);
+      }
+    });
+    final EdgeNexus localNexus = edge.openLocal(d -> {});
+    assertEquals(Arrays.asList(localNexus), edge.getNexuses());
+
+    edge.close();
+    edge = null;
+    assertEquals(Arrays.asList(localNexus), closed);
+    localNexus.close(); // already closed by the node
+    assertEquals(1, closed.size());
+  }
+  
+  @Test
+  public void testLocalPubSubUtf8() throws Exception {
+    final List<Delivery> received = new CopyOnWriteArrayList<>();
+    final EdgeNexus localNexus = edge.openLocal(received::add);
+
+    final String topic = "a/b/c";
+    final String payload = "h\u00e9llo \u4e16\u754c";
+    final BindFrame bind = new BindFrame(UUID.randomUUID(), 
+                                         null,
+                                         null,
+                                         new String[]{topic},
+                                         new String[]{},
+                                         null);
+    assertTrue(edge.bindLocal(localNexus, bind).get().isSuccess());
+    
+    final ByteBuffer utf8 = ByteBuffer.wrap(payload.getBytes(StandardCharsets.UTF_8));
+    edge.publishText(topic, utf8);
+    SocketUtils.await().until(() -> {
+      assertEquals(1, received.size());
+    });
+    final TextFrame frame = (TextFrame) received.get(0).getPayload();
+    assertEquals(utf8, frame.getPayloadUtf8());
+    assertEquals(payload, frame.getPayload());
+    assertEquals(new TextFrame(topic, payload), frame);
+    
+    localNexus.close();
+  }
 }
@@ -0,0 +1,103 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.util.*;
+
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  Simulates a reconnect storm, where every client of an edge binds at once, measuring the
+ *  latency of individual binds and the time taken for all subscriptions to be applied.
+ */
+public final class BindStormBenchmark implements TestSupport {
+  private static class Config {
+    int clients;
+    int topicsPerClient;
+    int distinctTopics;
+    int rootShards;
+    int bindWindowMillis;
+    boolean log;
+  }
+
+  private static final class Result {
+    long timeToStableMillis;
+    LatencyHistogram latency;
+  }
+
+  @Test
+  public void test() throws Exception {
+    for (int bindWindowMillis : new int[] {0, 1}) {
+      final Result result = run(new Config() {{
+        clients = 1_000;
+        topicsPerClient = 5;
+        distinctTopics = 200;
+        rootShards = 2;
+        this.bindWindowMillis = bindWindowMillis;
+        log = LOG;
+      }});
+      assertEquals(1_000, result.latency.count());
+    }
+  }
+
+  private static Result run(Config c) throws Exception {
+    final List<EdgeNexus> nexuses = new ArrayList<>(c.clients);
+    final Result result = new Result();
+    result.latency = new LatencyHistogram();
+
+    try (RoutingInterchange interchange = new RoutingInterchange(c.rootShards, c.bindWindowMillis)) {
+      for (int i = 0; i < c.clients; i++) {
+        final EdgeNexus nexus = new EdgeNexus(null, LocalPeer.instance());
+        interchange.onOpen(nexus);
+        nexuses.add(nexus);
+      }
+
+      final CountDownLatch stable = new CountDownLatch(c.clients);
+      final long start = System.nanoTime();
+      for (int i = 0; i < c.clients; i++) {
+        final Set<String> topics = new HashSet<>();
+        for (int t = 0; t < c.topicsPerClient; t++) {
+          final int topic = (i * c.topicsPerClient + t) % c.distinctTopics;
+          topics.add("storm/" + topic % 10 + "/" + topic);
+        }
+
+        final long bindStart = System.nanoTime();
+        interchange.onBind(nexuses.get(i), topics, Collections.emptySet()).whenComplete((r, x) -> {
+          result.latency.record(System.nanoTime() - bindStart);
+          stable.countDown();
+        });
+      }
+
+      assertTrue(stable.await(60, TimeUnit.SECONDS));
+      result.timeToStableMillis = (System.nanoTime() - start) / 1_000_000;
+
+      for (EdgeNexus nexus : nexuses) {
+        assertEquals(c.topicsPerClient, nexus.getSession().getSubscription().getTopics().size());
+        interchange.onClose(nexus);
+      }
+    }
+
+    if (c.log) System.out.format("%,d binds, %d ms window: time to stable %,d ms, bind latency p50 %,d us, p99 %,d us\n",
+                                 c.clients, c.bindWindowMillis, result.timeToStableMillis,
+                                 result.latency.percentile(50) / 1000, result.latency.percentile(99) / 1000);
+    return result;
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (int bindWindowMillis : new int[] {0, 1, 5}) {
+      run(new Config() {{
+        clients = 50_000;
+        topicsPerClient = 10;
+        distinctTopics = 5_000;
+        rootShards = Runtime.getRuntime().availableProcessors();
+        this.bindWindowMillis = bindWindowMillis;
+        log = true;
+      }});
+    }
+  }
+}
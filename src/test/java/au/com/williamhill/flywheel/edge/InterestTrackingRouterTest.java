@@ -0,0 +1,57 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+public final class InterestTrackingRouterTest {
+  private final InterestFilter interest = new InterestFilter(1 << 10);
+
+  private final List<RoutingSubscription.Plan> routed = new ArrayList<>();
+
+  private final InterestTrackingRouter router = new InterestTrackingRouter(interest, (subscriber, plan) -> {
+    routed.add(plan);
+    return CompletableFuture.completedFuture(null);
+  });
+
+  private static RoutingSubscription.Plan subscribe(String topic) {
+    return new RoutingSubscription.Plan(Arrays.asList(Topic.of(topic)), Collections.emptyList());
+  }
+
+  private static RoutingSubscription.Plan unsubscribe(String topic) {
+    return new RoutingSubscription.Plan(Collections.emptyList(), Arrays.asList(Topic.of(topic)));
+  }
+
+  @Test
+  public void testRepeatedUnsubscribe() {
+    final Subscriber s0 = d -> {};
+    final Subscriber s1 = d -> {};
+    router.route(s0, subscribe("$remote/s0/rx"));
+    router.route(s1, subscribe("$remote/s0/rx"));
+    router.route(s0, unsubscribe("$remote/s0/rx"));
+    router.route(s0, unsubscribe("$remote/s0/rx"));
+    assertTrue(interest.mightMatch("$remote/s0/rx"));
+    assertEquals(1, router.size());
+
+    router.route(s1, unsubscribe("$remote/s0/rx"));
+    assertFalse(interest.mightMatch("$remote/s0/rx"));
+    assertEquals(0, router.size());
+    assertEquals(5, routed.size());
+  }
+
+  @Test
+  public void testRepeatedSubscribe() {
+    final Subscriber s0 = d -> {};
+    router.route(s0, subscribe("a/+"));
+    router.route(s0, subscribe("a/+"));
+    assertTrue(interest.mightMatch("a/b"));
+
+    router.route(s0, unsubscribe("a/+"));
+    assertFalse(interest.mightMatch("a/b"));
+  }
+}
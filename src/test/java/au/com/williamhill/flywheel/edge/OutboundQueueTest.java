@@ -0,0 +1,197 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+import au.com.williamhill.flywheel.*;
+import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.topic.*;
+
+public final class OutboundQueueTest {
+  private final List<Frame> sent = new ArrayList<>();
+
+  private final List<SendCallback> pending = new ArrayList<>();
+
+  private int disconnects;
+
+  private OutboundQueue queue;
+
+  private void createQueue(OutboundConfig config) {
+    queue = new OutboundQueue(config, (frame, callback) -> {
+      sent.add(frame);
+      pending.add(callback);
+    }, () -> disconnects++);
+  }
+
+  private void complete(SendOutcome outcome) {
+    pending.remove(0).onCallback(outcome, null);
+  }
+
+  private static TextFrame text(String topic, String payload) {
+    return new TextFrame(topic, payload);
+  }
+
+  @Test
+  public void testWithinWindow() {
+    createQueue(new OutboundConfig().withSendWindow(3).withMaxQueuedFrames(1));
+    queue.enqueue(text("a", "0"));
+    queue.enqueue(text("a", "1"));
+    queue.enqueue(text("a", "2"));
+    assertEquals(3, sent.size());
+    assertEquals(0, queue.getQueued());
+    assertEquals(0, queue.getDropped());
+  }
+
+  @Test
+  public void testDrainOnCompletion() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(10));
+    queue.enqueue(text("a", "0"));
+    queue.enqueue(text("a", "1"));
+    queue.enqueue(text("a", "2"));
+    assertEquals(1, sent.size());
+    assertEquals(2, queue.getQueued());
+
+    complete(SendOutcome.SENT);
+    assertEquals(2, sent.size());
+    complete(SendOutcome.SENT);
+    complete(SendOutcome.SENT);
+    assertEquals(Arrays.asList(text("a", "0"), text("a", "1"), text("a", "2")), sent);
+    assertEquals(0, queue.getQueued());
+    assertEquals(0, queue.getQueuedBytes());
+
+    queue.enqueue(text("a", "3"));
+    assertEquals(4, sent.size());
+  }
+
+  @Test
+  public void testDropOldest() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(2).withOverflowPolicy(OverflowPolicy.DROP_OLDEST));
+    for (int i = 0; i < 5; i++) {
+      queue.enqueue(text("a", String.valueOf(i)));
+    }
+    assertEquals(2, queue.getDropped());
+    drain();
+    assertEquals(Arrays.asList(text("a", "0"), text("a", "3"), text("a", "4")), sent);
+  }
+
+  @Test
+  public void testDropNewest() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(2).withOverflowPolicy(OverflowPolicy.DROP_NEWEST));
+    for (int i = 0; i < 5; i++) {
+      queue.enqueue(text("a", String.valueOf(i)));
+    }
+    assertEquals(2, queue.getDropped());
+    drain();
+    assertEquals(Arrays.asList(text("a", "0"), text("a", "1"), text("a", "2")), sent);
+  }
+
+  @Test
+  public void testConflate() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(2).withOverflowPolicy(OverflowPolicy.CONFLATE));
+    queue.enqueue(text("a", "0"));
+    queue.enqueue(text("a", "1"));
+    queue.enqueue(text("b", "0"));
+    queue.enqueue(text("a", "2"));
+    queue.enqueue(text("c", "0"));
+    assertEquals(2, queue.getDropped());
+    drain();
+    assertEquals(Arrays.asList(text("a", "0"), text("b", "0"), text("c", "0")), sent);
+  }
+
+  @Test
+  public void testConflateReplacesLatest() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(3).withOverflowPolicy(OverflowPolicy.CONFLATE));
+    queue.enqueue(text("a", "0"));
+    queue.enqueue(text("a", "1"));
+    queue.enqueue(text("b", "0"));
+    queue.enqueue(text("a", "2"));
+    queue.enqueue(text("a", "3"));
+    assertEquals(3, queue.getQueued());
+    assertEquals(1, queue.getDropped());
+    
+    complete(SendOutcome.SENT);
+    complete(SendOutcome.SENT);
+    complete(SendOutcome.SENT);
+    queue.enqueue(text("a", "4"));
+    queue.enqueue(text("a", "5"));
+    queue.enqueue(text("a", "6"));
+    queue.enqueue(text("a", "7"));
+    assertEquals(2, queue.getDropped());
+    drain();
+    assertEquals(Arrays.asList(text("a", "0"), text("a", "1"), text("b", "0"), text("a", "3"), 
+                               text("a", "4"), text("a", "5"), text("a", "7")), sent);
+  }
+
+  @Test
+  public void testConflateTopics() {
+    createQueue(new OutboundConfig().withSendWindow(1).withConflateTopics(Topic.of("odds/#")));
+    queue.enqueue(text("odds/1", "0"));
+    queue.enqueue(text("odds/1", "1"));
+    queue.enqueue(text("news", "0"));
+    queue.enqueue(text("odds/2", "0"));
+    queue.enqueue(text("odds/1", "2"));
+    queue.enqueue(text("news", "1"));
+    queue.enqueue(text("odds/2", "1"));
+    assertEquals(4, queue.getQueued());
+    assertEquals(2, queue.getConflated());
+    assertEquals(0, queue.getDropped());
+    
+    complete(SendOutcome.SENT);
+    queue.enqueue(text("odds/1", "3"));
+    drain();
+    assertEquals(Arrays.asList(text("odds/1", "0"), text("odds/1", "2"), text("news", "0"), 
+                               text("odds/2", "1"), text("news", "1"), text("odds/1", "3")), sent);
+    assertEquals(2, queue.getConflated());
+    assertEquals(0, queue.getQueuedBytes());
+  }
+
+  @Test
+  public void testByteLimit() {
+    final int size = OutboundQueue.sizeOf(text("a", "0"));
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedBytes(size * 2).withOverflowPolicy(OverflowPolicy.DROP_NEWEST));
+    for (int i = 0; i < 5; i++) {
+      queue.enqueue(text("a", String.valueOf(i)));
+    }
+    assertEquals(2, queue.getQueued());
+    assertEquals(size * 2, queue.getQueuedBytes());
+    assertEquals(2, queue.getDropped());
+  }
+
+  @Test
+  public void testDisconnect() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(2).withOverflowPolicy(OverflowPolicy.DISCONNECT));
+    for (int i = 0; i < 3; i++) {
+      queue.enqueue(text("a", String.valueOf(i)));
+    }
+    assertEquals(0, disconnects);
+    queue.enqueue(text("a", "3"));
+    assertEquals(1, disconnects);
+    assertEquals(0, queue.getQueued());
+    assertEquals(3, queue.getDropped());
+
+    queue.enqueue(text("a", "4"));
+    assertEquals(1, disconnects);
+    assertEquals(4, queue.getDropped());
+  }
+
+  @Test
+  public void testErrorDiscardsQueue() {
+    createQueue(new OutboundConfig().withSendWindow(1).withMaxQueuedFrames(10));
+    for (int i = 0; i < 4; i++) {
+      queue.enqueue(text("a", String.valueOf(i)));
+    }
+    complete(SendOutcome.ERROR);
+    assertEquals(1, sent.size());
+    assertEquals(3, queue.getDropped());
+    assertEquals(0, queue.getQueued());
+  }
+
+  private void drain() {
+    while (! pending.isEmpty()) {
+      complete(SendOutcome.SENT);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import au.com.williamhill.flywheel.frame.*;
+import au.com.williamhill.flywheel.topic.*;
+
+public final class PartitionedInterchangeTest {
+  private static final int PARTITIONS = 4;
+
+  private PartitionedInterchange interchange;
+
+  private final EdgeNexus publisher = new EdgeNexus(null, LocalPeer.instance());
+
+  @After
+  public void after() throws Exception {
+    if (interchange != null) interchange.close();
+  }
+
+  private EdgeNexus open(Subscriber subscriber) {
+    final EdgeNexus nexus = new EdgeNexus(null, LocalPeer.instance(), subscriber);
+    interchange.onOpen(nexus);
+    return nexus;
+  }
+
+  private void bind(EdgeNexus nexus, Set<String> subscribe, Set<String> unsubscribe) throws Exception {
+    interchange.onBind(nexus, subscribe, unsubscribe).get(10, TimeUnit.SECONDS);
+  }
+
+  private void publish(String topic, String payload) {
+    interchange.onPublish(publisher, new PublishTextFrame(topic, payload));
+  }
+
+  private static Subscriber collector(List<String> received) {
+    return d -> received.add(((TextFrame) d.getPayload()).getPayload());
+  }
+
+  @Test
+  public void testBindAndUnbindAcrossPartitions() throws Exception {
+    interchange = new PartitionedInterchange(PARTITIONS);
+    interchange.onOpen(publisher);
+    final List<List<String>> received = new ArrayList<>();
+    final List<EdgeNexus> nexuses = new ArrayList<>();
+    for (int i = 0; i < PARTITIONS * 2; i++) {
+      final List<String> list = new CopyOnWriteArrayList<>();
+      received.add(list);
+      final EdgeNexus nexus = open(collector(list));
+      nexuses.add(nexus);
+      bind(nexus, Collections.singleton("a/b"), Collections.emptySet());
+    }
+
+    publish("a/b", "0");
+    publish("a/c", "x");
+    for (int i = 0; i < nexuses.size(); i += 2) {
+      bind(nexuses.get(i), Collections.emptySet(), Collections.singleton("a/b"));
+    }
+    publish("a/b", "1");
+    interchange.close();
+
+    for (int i = 0; i < nexuses.size(); i++) {
+      if (i % 2 == 0) {
+        // a publish still queued when the unbind completes may or may not be delivered
+        assertFalse("nexus " + i, received.get(i).contains("1"));
+      } else {
+        assertEquals("nexus " + i, Arrays.asList("0", "1"), received.get(i));
+      }
+    }
+    assertEquals(0, interchange.getDropped());
+  }
+
+  @Test
+  public void testOrderPerPublisher() throws Exception {
+    interchange = new PartitionedInterchange(PARTITIONS, 64);
+    interchange.onOpen(publisher);
+    final List<List<String>> received = new ArrayList<>();
+    for (int i = 0; i < PARTITIONS; i++) {
+      final List<String> list = new CopyOnWriteArrayList<>();
+      received.add(list);
+      bind(open(collector(list)), Collections.singleton("a/#"), Collections.emptySet());
+    }
+
+    final int publishes = 1_000;
+    for (int p = 0; p < publishes; p++) {
+      publish("a/" + p % 7, String.valueOf(p));
+    }
+    interchange.close();
+
+    // a publish may be dropped for a full partition, but never reordered
+    for (List<String> list : received) {
+      int last = -1;
+      for (String payload : list) {
+        final int p = Integer.parseInt(payload);
+        assertTrue("expected " + p + " > " + last, p > last);
+        last = p;
+      }
+    }
+    long delivered = 0;
+    for (List<String> list : received) delivered += list.size();
+    assertEquals(publishes * PARTITIONS, delivered + interchange.getDropped());
+  }
+
+  @Test
+  public void testFullRingDropsPublish() throws Exception {
+    interchange = new PartitionedInterchange(1, 2);
+    interchange.onOpen(publisher);
+    final CountDownLatch release = new CountDownLatch(1);
+    final List<String> received = new CopyOnWriteArrayList<>();
+    bind(open(d -> {
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      collector(received).accept(d);
+    }), Collections.singleton("a"), Collections.emptySet());
+
+    // the first publish blocks the partition, the next two fill its ring, and the rest are dropped
+    for (int p = 0; p < 10; p++) {
+      publish("a", String.valueOf(p));
+    }
+    assertTrue(interchange.getDropped() > 0);
+    release.countDown();
+    interchange.close();
+    assertEquals(10, received.size() + interchange.getDropped());
+  }
+
+  @Test
+  public void testReentrantPublish() throws Exception {
+    interchange = new PartitionedInterchange(1, 2);
+    interchange.onOpen(publisher);
+    final List<String> received = new CopyOnWriteArrayList<>();
+    final EdgeNexus echo = open(d -> {
+      final String payload = ((TextFrame) d.getPayload()).getPayload();
+      if (payload.length() < 4) {
+        // published from the partition's own thread, which overflows its ring, and mustn't 
+        // wait on it
+        for (int i = 0; i < 3; i++) {
+          interchange.onPublish(publisher, new PublishTextFrame("a", payload + "."));
+        }
+      }
+    });
+    bind(echo, Collections.singleton("a"), Collections.emptySet());
+    final EdgeNexus listener = open(collector(received));
+    bind(listener, Collections.singleton("a"), Collections.emptySet());
+
+    publish("a", ".");
+    interchange.close();
+    assertEquals(1 + 3 + 9 + 27, received.size());
+    assertEquals(".", received.get(0));
+    assertEquals("....", received.get(received.size() - 1));
+    assertEquals(0, interchange.getDropped());
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    interchange = new PartitionedInterchange(PARTITIONS);
+    interchange.onOpen(publisher);
+    final List<String> received = new CopyOnWriteArrayList<>();
+    final EdgeNexus nexus = open(collector(received));
+    bind(nexus, Collections.singleton("a"), Collections.emptySet());
+    interchange.onClose(nexus);
+    publish("a", "0");
+    interchange.close();
+    assertEquals(Collections.emptyList(), received);
+  }
+}
@@ -0,0 +1,67 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.ActorSystemConfig.*;
+import com.obsidiandynamics.yconf.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+public final class RoutingConfigTest {
+  @Test
+  public void testDefaults() {
+    final RoutingConfig config = new RoutingConfig();
+    assertEquals(ExecutorChoice.FIXED_THREAD_POOL, config.getExecutor());
+    assertEquals(0, config.threads);
+    assertEquals(10, config.bias);
+    assertEquals(1, config.getRootShards());
+    assertEquals(RoutingInterchange.DEFAULT_BIND_WINDOW_MILLIS, config.bindWindowMillis);
+    assertEquals(FanOut.DEFAULT_THRESHOLD, config.fanOutThreshold);
+    assertEquals(0, config.lingerMillis);
+    assertNotNull(config.toString());
+  }
+
+  @Test
+  public void testWithers() {
+    final RoutingConfig config = new RoutingConfig()
+        .withExecutor(ExecutorChoice.FORK_JOIN_POOL)
+        .withThreads(8)
+        .withBias(5)
+        .withBacklogThrottle(100, 2, 3)
+        .withRootShards(4)
+        .withBindWindowMillis(6)
+        .withFanOutThreshold(7)
+        .withLingerMillis(9);
+    assertConfig(config);
+  }
+
+  @Test
+  public void testRootShards() {
+    assertEquals(4, new RoutingConfig().withRootShards(4).getRootShards());
+    assertEquals(Runtime.getRuntime().availableProcessors(), new RoutingConfig().withRootShards(0).getRootShards());
+  }
+
+  @Test
+  public void testYaml() throws Exception {
+    final RoutingConfig config = new MappingContext()
+        .withParser(new SnakeyamlParser())
+        .fromStream(RoutingConfigTest.class.getClassLoader().getResourceAsStream("routing-config.yaml"))
+        .map(RoutingConfig.class);
+    assertConfig(config);
+  }
+
+  private static void assertConfig(RoutingConfig config) {
+    assertEquals(ExecutorChoice.FORK_JOIN_POOL, config.getExecutor());
+    assertEquals(8, config.threads);
+    assertEquals(5, config.bias);
+    assertEquals(100, config.backlogThrottleCapacity);
+    assertEquals(2, config.backlogThrottleTries);
+    assertEquals(3, config.backlogThrottleMillis);
+    assertEquals(4, config.getRootShards());
+    assertEquals(6, config.bindWindowMillis);
+    assertEquals(7, config.fanOutThreshold);
+    assertEquals(9, config.lingerMillis);
+  }
+}
@@ -0,0 +1,97 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+public final class RoutingSubscriptionTest {
+  private final List<Delivery> received = new ArrayList<>();
+  
+  private final SubscriptionTrie trie = new SubscriptionTrie();
+  
+  private final RoutingSubscription subscription = new RoutingSubscription(received::add);
+  
+  private static List<Topic> topics(String... topics) {
+    final List<Topic> list = new ArrayList<>(topics.length);
+    for (String topic : topics) list.add(Topic.of(topic));
+    return list;
+  }
+  
+  private static Set<Topic> set(List<Topic> topics) {
+    return new HashSet<>(topics);
+  }
+  
+  private RoutingSubscription.Plan bind(List<Topic> subscribe, List<Topic> unsubscribe) {
+    final RoutingSubscription.Plan plan = subscription.plan(subscribe, unsubscribe);
+    for (Topic topic : plan.subscribe) trie.subscribe(topic, subscription.getSubscriber());
+    for (Topic topic : plan.unsubscribe) trie.unsubscribe(topic, subscription.getSubscriber());
+    if (! plan.isEmpty()) subscription.settle();
+    return plan;
+  }
+  
+  @Test
+  public void testOverlappingFiltersDeliverOnce() {
+    bind(topics("odds/football/epl", "odds/football/#", "odds/+/epl"), Collections.emptyList());
+    trie.publish(Topic.of("odds/football/epl"), "frame");
+    assertEquals(1, received.size());
+    
+    trie.publish(Topic.of("odds/tennis/epl"), "frame");
+    trie.publish(Topic.of("odds/football/fa"), "frame");
+    assertEquals(3, received.size());
+  }
+  
+  @Test
+  public void testInterleavedRepeatsDeliverOnce() {
+    bind(topics("odds/football/#", "odds/+/epl"), Collections.emptyList());
+    final Topic topic = Topic.of("odds/football/epl");
+    final Delivery first = new Delivery(topic, "first");
+    final Delivery second = new Delivery(topic, "second");
+    subscription.getSubscriber().accept(first);
+    subscription.getSubscriber().accept(second);
+    subscription.getSubscriber().accept(first);
+    subscription.getSubscriber().accept(second);
+    assertEquals(Arrays.asList(first, second), received);
+  }
+  
+  @Test
+  public void testCoveringFilterDisplacesCovered() {
+    RoutingSubscription.Plan plan = bind(topics("odds/football/epl", "odds/tennis"), Collections.emptyList());
+    assertEquals(set(topics("odds/football/epl", "odds/tennis")), set(plan.subscribe));
+    assertEquals(0, plan.unsubscribe.size());
+    
+    plan = bind(topics("odds/football/#"), Collections.emptyList());
+    assertEquals(topics("odds/football/#"), plan.subscribe);
+    assertEquals(topics("odds/football/epl"), plan.unsubscribe);
+    
+    plan = bind(topics("odds/football/fa"), Collections.emptyList());
+    assertTrue(plan.isEmpty());
+    
+    plan = bind(Collections.emptyList(), topics("odds/football/#"));
+    assertEquals(set(topics("odds/football/epl", "odds/football/fa")), set(plan.subscribe));
+    assertEquals(topics("odds/football/#"), plan.unsubscribe);
+    
+    trie.publish(Topic.of("odds/football/epl"), "frame");
+    trie.publish(Topic.of("odds/football/fa"), "frame");
+    trie.publish(Topic.of("odds/football/seriea"), "frame");
+    assertEquals(2, received.size());
+  }
+  
+  @Test
+  public void testUnsubscribeCovered() {
+    bind(topics("a/#", "a/b"), Collections.emptyList());
+    assertTrue(bind(Collections.emptyList(), topics("a/b")).isEmpty());
+    trie.publish(Topic.of("a/b"), "frame");
+    assertEquals(1, received.size());
+  }
+  
+  @Test
+  public void testClearRouted() {
+    bind(topics("a/#", "a/b", "c"), Collections.emptyList());
+    assertEquals(set(topics("a/#", "c")), set(subscription.clearRouted()));
+    assertEquals(topics("a/b"), subscription.plan(topics("a/b"), Collections.emptyList()).subscribe);
+  }
+}
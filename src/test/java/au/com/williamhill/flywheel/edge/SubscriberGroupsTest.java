@@ -0,0 +1,212 @@
+package au.com.williamhill.flywheel.edge;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+import au.com.williamhill.flywheel.topic.*;
+
+public final class SubscriberGroupsTest {
+  private final SubscriptionTrie trie = new SubscriptionTrie();
+
+  private final List<Subscriber> routed = new ArrayList<>();
+
+  /** Whether routing is held back until {@link #release()} is called. */
+  private boolean deferred;
+
+  private final List<Runnable> pending = new ArrayList<>();
+
+  /** The number of unsubscriptions that didn't match a subscription. */
+  private int unmatched;
+
+  private final SubscriberGroups groups = new SubscriberGroups((subscriber, plan) -> {
+    final CompletableFuture<Void> future = new CompletableFuture<>();
+    final Runnable route = () -> {
+      for (Topic topic : plan.subscribe) {
+        trie.subscribe(topic, subscriber);
+        routed.add(subscriber);
+      }
+      for (Topic topic : plan.unsubscribe) {
+        if (! trie.unsubscribe(topic, subscriber)) unmatched++;
+        routed.remove(subscriber);
+      }
+      future.complete(null);
+    };
+    if (deferred) pending.add(route); else route.run();
+    return future;
+  });
+
+  private void release() {
+    deferred = false;
+    final List<Runnable> routes = new ArrayList<>(pending);
+    pending.clear();
+    for (Runnable route : routes) route.run();
+  }
+
+  private static final class Member {
+    final List<Delivery> received = new ArrayList<>();
+    final RoutingSubscription subscription = new RoutingSubscription(received::add);
+  }
+
+  private static List<Topic> topics(String... topics) {
+    final List<Topic> list = new ArrayList<>(topics.length);
+    for (String topic : topics) list.add(Topic.of(topic));
+    return list;
+  }
+
+  private void bind(Member member, List<Topic> subscribe, List<Topic> unsubscribe) {
+    final RoutingSubscription.Plan plan = member.subscription.plan(subscribe, unsubscribe);
+    if (! plan.isEmpty()) {
+      groups.apply(member.subscription, plan).join();
+      member.subscription.settle();
+    }
+  }
+
+  @Test
+  public void testIdenticalSetsShareGroup() {
+    final Member m0 = new Member();
+    final Member m1 = new Member();
+    bind(m0, topics("a/b", "c/#"), Collections.emptyList());
+    bind(m1, topics("c/#", "a/b"), Collections.emptyList());
+    assertEquals(1, groups.size());
+    assertEquals(2, routed.size());
+
+    trie.publish(Topic.of("a/b"), "frame");
+    trie.publish(Topic.of("c/d"), "frame");
+    assertEquals(2, m0.received.size());
+    assertEquals(2, m1.received.size());
+  }
+
+  @Test
+  public void testPrivateFiltersNotShared() {
+    final Member m0 = new Member();
+    final Member m1 = new Member();
+    bind(m0, topics("a/b", "$remote/s0/rx"), Collections.emptyList());
+    bind(m1, topics("a/b", "$remote/s1/rx"), Collections.emptyList());
+    assertEquals(1, groups.size());
+    assertEquals(3, routed.size());
+
+    trie.publish(Topic.of("$remote/s0/rx"), "frame");
+    assertEquals(1, m0.received.size());
+    assertEquals(0, m1.received.size());
+  }
+
+  @Test
+  public void testChangeMovesGroup() {
+    final Member m0 = new Member();
+    final Member m1 = new Member();
+    bind(m0, topics("a/b"), Collections.emptyList());
+    bind(m1, topics("a/b"), Collections.emptyList());
+    bind(m1, topics("c"), Collections.emptyList());
+    assertEquals(2, groups.size());
+
+    trie.publish(Topic.of("a/b"), "frame");
+    trie.publish(Topic.of("c"), "frame");
+    assertEquals(1, m0.received.size());
+    assertEquals(2, m1.received.size());
+
+    bind(m1, Collections.emptyList(), topics("c"));
+    assertEquals(1, groups.size());
+    trie.publish(Topic.of("c"), "frame");
+    assertEquals(2, m1.received.size());
+  }
+
+  @Test
+  public void testLastMemberUnroutes() {
+    final Member m0 = new Member();
+    final Member m1 = new Member();
+    bind(m0, topics("a/b", "$remote/s0/rx"), Collections.emptyList());
+    bind(m1, topics("a/b"), Collections.emptyList());
+
+    m0.subscription.close();
+    groups.close(m0.subscription);
+    assertEquals(1, groups.size());
+
+    m1.subscription.close();
+    groups.close(m1.subscription);
+    assertEquals(0, groups.size());
+    assertEquals(0, routed.size());
+    assertTrue(trie.isEmpty());
+  }
+
+  @Test
+  public void testCloseWhileBindPending() {
+    final Member m0 = new Member();
+    deferred = true;
+    final RoutingSubscription.Plan plan = m0.subscription.plan(topics("a/b", "$remote/s0/rx"), Collections.emptyList());
+    final CompletableFuture<Void> bound = groups.apply(m0.subscription, plan);
+    m0.subscription.close();
+    groups.close(m0.subscription);
+    assertFalse(bound.isDone());
+
+    release();
+    assertTrue(bound.isDone());
+    assertEquals(0, groups.size());
+    assertEquals(0, routed.size());
+    assertEquals(0, unmatched);
+    assertTrue(trie.isEmpty());
+  }
+
+  @Test
+  public void testBindAfterClose() {
+    final Member m0 = new Member();
+    bind(m0, topics("a/b", "$remote/s0/rx"), Collections.emptyList());
+    final RoutingSubscription.Plan plan = m0.subscription.plan(topics("c", "$remote/s0/tx"), Collections.emptyList());
+    m0.subscription.close();
+    groups.close(m0.subscription);
+    groups.apply(m0.subscription, plan).join();
+    assertEquals(0, groups.size());
+    assertEquals(0, routed.size());
+    assertEquals(0, unmatched);
+    assertTrue(trie.isEmpty());
+  }
+
+  @Test
+  public void testSwitchDeliversOnce() {
+    final Member m0 = new Member();
+    final Member m1 = new Member();
+    bind(m0, topics("time"), Collections.emptyList());
+    bind(m1, topics("time", "promo"), Collections.emptyList());
+
+    // the private filter holds up the switch, leaving m0 in both groups
+    deferred = true;
+    final RoutingSubscription.Plan plan = m0.subscription.plan(topics("promo", "$remote/s0/rx"), Collections.emptyList());
+    final CompletableFuture<Void> bound = groups.apply(m0.subscription, plan);
+    trie.publish(Topic.of("time"), "frame");
+    assertEquals(1, m0.received.size());
+
+    release();
+    bound.join();
+    m0.subscription.settle();
+    assertEquals(1, groups.size());
+    trie.publish(Topic.of("time"), "frame");
+    assertEquals(2, m0.received.size());
+    assertEquals(2, m1.received.size());
+  }
+
+  @Test
+  public void testGroupSplitsAcrossLanes() {
+    final Member m0 = new Member();
+    final Member m1 = new Member();
+    bind(m0, topics("a/b"), Collections.emptyList());
+    final SubscriberGroups.Group group = m0.subscription.group;
+    assertEquals(1, group.size());
+    assertEquals(1, count(group.toLanes(4)));
+
+    bind(m1, topics("a/b"), Collections.emptyList());
+    assertEquals(2, group.size());
+    final Subscriber[][] lanes = group.toLanes(4);
+    assertEquals(2, count(lanes));
+    final Subscriber joined = m1.subscription.getSubscriber();
+    assertTrue(Arrays.asList(lanes[FanOut.laneOf(joined, 4)]).contains(joined));
+  }
+
+  private static int count(Subscriber[][] lanes) {
+    int count = 0;
+    for (Subscriber[] lane : lanes) count += lane.length;
+    return count;
+  }
+}
@@ -9,6 +9,7 @@ import org.junit.*;
 import com.obsidiandynamics.indigo.util.*;
 
 import au.com.williamhill.flywheel.*;
+import au.com.williamhill.flywheel.edge.*;
 import au.com.williamhill.flywheel.edge.auth.AuthChain.*;
 import au.com.williamhill.flywheel.frame.*;
 import au.com.williamhill.flywheel.remote.*;
@@ -66,6 +67,31 @@ public final class BindAuthTest extends AbstractAuthTest {
     assertTrue(bind3Res.isSuccess());
   }
   
+  @Test
+  public void testLocalSubChain() throws Exception {
+    setupEdgeNode(new PubAuthChain(), new SubAuthChain().set("denied", DenyAllAuthenticator.instance()));
+    
+    final EdgeNexus localNexus = edge.openLocal(d -> {});
+    final BindFrame allowed = new BindFrame(UUID.randomUUID(), 
+                                            null,
+                                            null,
+                                            new String[]{"a/b/c"},
+                                            new String[]{},
+                                            null);
+    assertTrue(edge.bindLocal(localNexus, allowed).get().isSuccess());
+
+    final BindFrame denied = new BindFrame(UUID.randomUUID(), 
+                                           null,
+                                           null,
+                                           new String[]{"a/b/c", "denied/x"},
+                                           new String[]{},
+                                           null);
+    final BindResponseFrame deniedRes = edge.bindLocal(localNexus, denied).get();
+    assertEquals(1, deniedRes.getErrors().length);
+    assertEquals(TopicAccessError.class, deniedRes.getErrors()[0].getClass());
+    localNexus.close();
+  }
+  
   @SuppressWarnings("resource")
   @Test
   public void testCustomSubChain() throws Exception {
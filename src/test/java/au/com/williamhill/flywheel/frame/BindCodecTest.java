@@ -0,0 +1,107 @@
+package au.com.williamhill.flywheel.frame;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+import com.google.gson.*;
+
+import au.com.williamhill.flywheel.frame.Wire.*;
+
+public final class BindCodecTest {
+  private static List<IdFrame> frames() {
+    final Map<String, Object> metadata = new LinkedHashMap<>();
+    metadata.put("client", "test \"quoted\" <html>");
+    metadata.put("version", 2);
+    metadata.put("absent", null);
+    metadata.put("tags", Arrays.asList(1.5, "x", true));
+    final UUID messageId = UUID.randomUUID();
+    
+    return Arrays.asList(new BindFrame(),
+                         new BindFrame(messageId, "s1", new BasicAuthCredentials("user", "pass"), 
+                                       new String[]{"a/b", "c/#", null}, new String[0], metadata),
+                         new BindFrame(messageId, null, new BearerAuthCredentials("t\u00f6ken"), 
+                                       null, new String[]{"x/+/y"}, "meta"),
+                         new BindFrame(null, "s2", new BasicAuthCredentials(null, null), null, null, 42),
+                         new BindResponseFrame(messageId),
+                         new BindResponseFrame(null, new GeneralError("general"), 
+                                               new TopicAccessError("denied", "a/b"), null),
+                         new BindResponseFrame(messageId, (Error[]) null));
+  }
+  
+  @Test
+  public void testEncodeCompatibility() {
+    for (boolean pretty : new boolean[] {false, true}) {
+      final Wire wire = new Wire(pretty, LocationHint.UNSPECIFIED);
+      for (IdFrame frame : frames()) {
+        assertEquals("B " + wire.encodeBindReflectively(frame), wire.encode((TextEncodedFrame) frame));
+      }
+    }
+  }
+  
+  @Test
+  public void testDecodeCompatibility() {
+    for (LocationHint hint : LocationHint.values()) {
+      final Wire wire = new Wire(false, hint);
+      for (IdFrame frame : frames()) {
+        if (hint == LocationHint.EDGE && ! (frame instanceof BindFrame)) continue;
+        if (hint == LocationHint.REMOTE && ! (frame instanceof BindResponseFrame)) continue;
+        
+        final String encoded = wire.encode((TextEncodedFrame) frame);
+        final Frame expected = wire.decodeBindReflectively(encoded.substring(2));
+        final Frame decoded = wire.decode(encoded);
+        assertEquals(expected, decoded);
+        assertEquals("B " + wire.encodeBindReflectively((IdFrame) expected), wire.encode((TextEncodedFrame) decoded));
+      }
+    }
+  }
+  
+  @Test
+  public void testDecodeFieldOrder() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final String json = "{\"subscribe\":[\"a\"],\"auth\":{\"token\":\"t\",\"type\":\"Bearer\"},\"unknown\":{\"x\":[1]}," +
+        "\"type\":\"Bind\",\"messageId\":\"00000000-0000-0001-0000-000000000002\"}";
+    assertEquals(wire.decodeBindReflectively(json), wire.decode("B " + json));
+    
+    final Wire edge = new Wire(false, LocationHint.EDGE);
+    final String untyped = "{'sessionId':s,'subscribe':[a,1,true],'errors':[{}]}";
+    assertEquals(edge.decodeBindReflectively(untyped), edge.decode("B " + untyped));
+  }
+  
+  @Test
+  public void testDecodeEmpty() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    assertNull(wire.decode("B null"));
+    assertNull(wire.decode("B   "));
+  }
+  
+  @Test
+  public void testDecodeErrors() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final Wire edge = new Wire(false, LocationHint.EDGE);
+    assertDecodeFails(wire, "{\"sessionId\":\"s\"}");
+    assertDecodeFails(wire, "{\"type\":\"Unbind\"}");
+    assertDecodeFails(edge, "{\"auth\":{\"token\":\"t\"}}");
+    assertDecodeFails(edge, "{\"auth\":{\"type\":\"Digest\"}}");
+    assertDecodeFails(edge, "{\"sessionId\":\"s\"} x");
+    assertDecodeFails(edge, "{\"subscribe\":{}}");
+    assertDecodeFails(edge, "{\"sessionId\":\"s\"");
+  }
+  
+  private static void assertDecodeFails(Wire wire, String json) {
+    final Class<? extends Exception> expected = decodeException(() -> wire.decodeBindReflectively(json));
+    assertNotNull("Reflective decoding of " + json + " should fail", expected);
+    assertEquals(json, expected, decodeException(() -> wire.decode("B " + json)));
+  }
+  
+  private static Class<? extends Exception> decodeException(Runnable decode) {
+    try {
+      decode.run();
+      return null;
+    } catch (JsonParseException e) {
+      return e.getClass();
+    }
+  }
+}
@@ -0,0 +1,107 @@
+package au.com.williamhill.flywheel.frame;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.*;
+import java.nio.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.util.*;
+
+import au.com.williamhill.flywheel.frame.Wire.*;
+
+/**
+ *  Measures the heap allocated by {@link Wire#decode(ByteBuffer)} and {@link Wire#decode(String)}
+ *  per publish frame. The payload is decoded as a view over the received buffer or string, so 
+ *  the allocation per frame should be the same regardless of the payload size.
+ */
+public final class DecodeAllocationBenchmark implements TestSupport {
+  private static class Config {
+    boolean text;
+    int payloadBytes;
+    long n;
+    boolean log;
+  }
+
+  @Test
+  public void test() {
+    final com.sun.management.ThreadMXBean threads = threadMXBean();
+    Assume.assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported());
+
+    for (boolean _text : new boolean[] {false, true}) {
+      for (int _payloadBytes : new int[] {1024, 16384}) {
+        final double bytesPerOp = run(new Config() {{
+          text = _text;
+          payloadBytes = _payloadBytes;
+          n = 100_000;
+          log = LOG;
+        }});
+        assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp < 512);
+      }
+    }
+  }
+
+  private static com.sun.management.ThreadMXBean threadMXBean() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    return threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+  }
+
+  private static double run(Config c) {
+    final Wire wire = new Wire(false, LocationHint.EDGE);
+    final ByteBuffer encoded = wire.encode(new PublishBinaryFrame("quotes/AAPL/last", new byte[c.payloadBytes]));
+    final ByteBuffer received = ByteBuffer.allocate(encoded.remaining());
+    received.put(encoded);
+    received.flip();
+    final char[] chars = new char[c.payloadBytes];
+    Arrays.fill(chars, 'x');
+    final String receivedText = wire.encode(new PublishTextFrame("quotes/AAPL/last", new String(chars)));
+
+    long checksum = 0;
+    final long warmup = c.n / 10;
+    for (long i = 0; i < warmup; i++) {
+      checksum += c.text ? decode(wire, receivedText) : decode(wire, received);
+    }
+
+    final com.sun.management.ThreadMXBean threads = threadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final long startBytes = threads.getThreadAllocatedBytes(threadId);
+    final long startNanos = System.nanoTime();
+    for (long i = 0; i < c.n; i++) {
+      checksum += c.text ? decode(wire, receivedText) : decode(wire, received);
+    }
+    final long tookNanos = System.nanoTime() - startNanos;
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    assertEquals((warmup + c.n) * c.payloadBytes, checksum);
+
+    final double bytesPerOp = (double) allocated / c.n;
+    if (c.log) System.out.format("%,d %s decodes of %,d byte payloads: %.1f bytes/op, %,.0f ns/op\n",
+                                 c.n, c.text ? "text" : "binary", c.payloadBytes, bytesPerOp, (double) tookNanos / c.n);
+    return bytesPerOp;
+  }
+
+  private static int decode(Wire wire, ByteBuffer received) {
+    received.rewind();
+    final PublishBinaryFrame frame = (PublishBinaryFrame) wire.decode(received);
+    return frame.getPayloadLength();
+  }
+
+  private static int decode(Wire wire, String receivedText) {
+    final PublishTextFrame frame = (PublishTextFrame) wire.decode(receivedText);
+    return frame.getPayloadLength();
+  }
+
+  public static void main(String[] args) {
+    for (boolean _text : new boolean[] {false, true}) {
+      for (int _payloadBytes : new int[] {16, 1024, 16384}) {
+        run(new Config() {{
+          text = _text;
+          payloadBytes = _payloadBytes;
+          n = 10_000_000;
+          log = true;
+        }});
+      }
+    }
+  }
+}
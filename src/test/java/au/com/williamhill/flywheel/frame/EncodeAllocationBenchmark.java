@@ -0,0 +1,147 @@
+package au.com.williamhill.flywheel.frame;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.*;
+import java.nio.*;
+import java.util.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.util.*;
+
+import au.com.williamhill.flywheel.frame.Wire.*;
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  Measures the heap allocated, and the time spent collecting garbage, when fanning out binary
+ *  frames, with and without a {@link BufferPool}. Each frame is encoded for a number of 
+ *  recipients, as {@link au.com.williamhill.flywheel.SendHelper} would, and the sends are 
+ *  completed some number of frames later, to simulate the asynchronous completion of writes.
+ */
+public final class EncodeAllocationBenchmark implements TestSupport {
+  private static class Config {
+    boolean pooled;
+    int payloadBytes;
+    int fanOut;
+    int inFlight;
+    long n;
+    boolean log;
+  }
+  
+  private static final class Result {
+    final double bytesPerOp;
+    final long gcMillis;
+    
+    Result(double bytesPerOp, long gcMillis) {
+      this.bytesPerOp = bytesPerOp;
+      this.gcMillis = gcMillis;
+    }
+  }
+
+  @Test
+  public void test() {
+    final com.sun.management.ThreadMXBean threads = threadMXBean();
+    Assume.assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported());
+
+    final double[] bytesPerOp = new double[2];
+    for (boolean _pooled : new boolean[] {false, true}) {
+      bytesPerOp[_pooled ? 1 : 0] = run(new Config() {{
+        pooled = _pooled;
+        payloadBytes = 4096;
+        fanOut = 10;
+        inFlight = 100;
+        n = 50_000;
+        log = LOG;
+      }}).bytesPerOp;
+    }
+    assertTrue("Pooled " + bytesPerOp[1] + " vs unpooled " + bytesPerOp[0] + " bytes/op", 
+               bytesPerOp[1] < bytesPerOp[0] / 4);
+  }
+
+  private static com.sun.management.ThreadMXBean threadMXBean() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    return threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+  }
+  
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  private static Result run(Config c) {
+    final BufferPool pool = c.pooled ? new BufferPool() : null;
+    final Wire wire = new Wire(false, LocationHint.EDGE, pool);
+    final byte[] payload = new byte[c.payloadBytes];
+    final ArrayDeque<Object> pending = new ArrayDeque<>(c.inFlight * c.fanOut + 1);
+
+    long checksum = 0;
+    final long warmup = c.n / 10;
+    for (long i = 0; i < warmup; i++) {
+      checksum += fanOut(c, wire, new BinaryFrame("quotes/AAPL/last", payload), pending);
+    }
+
+    final com.sun.management.ThreadMXBean threads = threadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final long startGcMillis = gcMillis();
+    final long startBytes = threads.getThreadAllocatedBytes(threadId);
+    final long startNanos = System.nanoTime();
+    for (long i = 0; i < c.n; i++) {
+      checksum += fanOut(c, wire, new BinaryFrame("quotes/AAPL/last", payload), pending);
+    }
+    final long tookNanos = System.nanoTime() - startNanos;
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    final long gcMillis = gcMillis() - startGcMillis;
+    while (! pending.isEmpty()) complete(pending.poll());
+    assertTrue(checksum > 0);
+
+    final double bytesPerOp = (double) allocated / c.n;
+    if (c.log) System.out.format("%s: %,d frames of %,d bytes to %d recipients: %.1f bytes/op, %,.0f ns/op, GC %,d ms\n",
+                                 c.pooled ? "Pooled" : "Unpooled", c.n, c.payloadBytes, c.fanOut, bytesPerOp, 
+                                 (double) tookNanos / c.n, gcMillis);
+    return new Result(bytesPerOp, gcMillis);
+  }
+  
+  private static int fanOut(Config c, Wire wire, BinaryFrame frame, ArrayDeque<Object> pending) {
+    int sent = 0;
+    for (int r = 0; r < c.fanOut; r++) {
+      final ByteBuffer buf;
+      if (c.pooled) {
+        final PooledBuffer encoded = wire.encodePooled(frame);
+        buf = encoded.view();
+        pending.add(encoded);
+      } else {
+        buf = wire.encode(frame);
+        pending.add(buf);
+      }
+      sent += buf.remaining();
+    }
+    
+    while (pending.size() > c.inFlight * c.fanOut) {
+      complete(pending.poll());
+    }
+    return sent;
+  }
+  
+  private static void complete(Object send) {
+    if (send instanceof PooledBuffer) ((PooledBuffer) send).release();
+  }
+
+  public static void main(String[] args) {
+    for (boolean _pooled : new boolean[] {false, true}) {
+      for (int _payloadBytes : new int[] {256, 4096, 32768}) {
+        run(new Config() {{
+          pooled = _pooled;
+          payloadBytes = _payloadBytes;
+          fanOut = 100;
+          inFlight = 1_000;
+          n = 1_000_000;
+          log = true;
+        }});
+      }
+    }
+  }
+}
@@ -4,6 +4,7 @@ import static com.obsidiandynamics.socketx.util.BinaryUtils.*;
 import static org.junit.Assert.*;
 
 import java.nio.*;
+import java.nio.charset.*;
 import java.util.*;
 
 import org.junit.*;
@@ -12,6 +13,7 @@ import com.obsidiandynamics.indigo.util.*;
 import com.obsidiandynamics.socketx.util.*;
 
 import au.com.williamhill.flywheel.frame.Wire.*;
+import au.com.williamhill.flywheel.util.*;
 
 public final class WireTest implements TestSupport {
   private static String requote(String singleQuotedString) {
@@ -107,6 +109,144 @@ public final class WireTest implements TestSupport {
     testEncodeDecode(wire, new BinaryFrame("some/topic", BinaryUtils.toByteArray(buf)));
   }
   
+  @Test
+  public void testTextEncodedOnce() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final TextFrame frame = new TextFrame("some/topic", "some-text-here");
+    final String enc1 = wire.encode(frame);
+    final String enc2 = wire.encode(frame);
+    assertSame(enc1, enc2);
+
+    final Wire otherWire = new Wire(true, LocationHint.UNSPECIFIED);
+    final String enc3 = otherWire.encode(frame);
+    assertNotSame(enc1, enc3);
+    assertEquals(enc1, enc3);
+    assertEquals(frame, new TextFrame("some/topic", "some-text-here"));
+  }
+
+  @Test
+  public void testBinaryEncodedOnce() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final BinaryFrame frame = new BinaryFrame("some/topic", toByteArray(0x00, 0x01, 0x02));
+    final ByteBuffer enc1 = wire.encode(frame);
+    final ByteBuffer enc2 = wire.encode(frame);
+    assertNotSame(enc1, enc2);
+    assertTrue(enc1.isReadOnly());
+    assertTrue(enc2.isReadOnly());
+
+    final int length = enc2.remaining();
+    assertEquals(frame, wire.decode(enc1));
+    assertEquals(0, enc1.remaining());
+    assertEquals(length, enc2.remaining());
+    assertEquals(frame, wire.decode(enc2));
+    assertEquals(length, wire.encode(frame).remaining());
+  }
+
+  @Test
+  public void testBinaryDecodedAsView() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final ByteBuffer enc = wire.encode(new PublishBinaryFrame("some/topic", toByteArray(0x00, 0x01, 0x02)));
+    final ByteBuffer received = ByteBuffer.allocate(enc.remaining());
+    received.put(enc);
+    received.flip();
+
+    final PublishBinaryFrame decoded = (PublishBinaryFrame) wire.decode(received);
+    assertEquals(0, received.remaining());
+    assertEquals("some/topic", decoded.getTopic());
+    assertEquals(3, decoded.getPayloadLength());
+    assertTrue(decoded.getPayloadBuffer().isReadOnly());
+
+    // the payload is a view of the received buffer, up until it is copied into an array
+    received.put(received.limit() - 1, (byte) 0x09);
+    assertEquals(0x09, decoded.getPayloadBuffer().get(2));
+    final byte[] payload = decoded.getPayload();
+    assertArrayEquals(toByteArray(0x00, 0x01, 0x09), payload);
+    assertSame(payload, decoded.getPayload());
+    assertEquals(new PublishBinaryFrame("some/topic", payload), decoded);
+  }
+
+  @Test
+  public void testTextDecodedAsView() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final PublishTextFrame decoded = (PublishTextFrame) wire.decode("P some/topic some payload");
+    assertEquals("some/topic", decoded.getTopic());
+    assertEquals(12, decoded.getPayloadLength());
+    assertFalse(decoded.getPayloadSequence() instanceof String);
+    assertEquals("payload", decoded.getPayloadSequence().subSequence(5, 12).toString());
+
+    final PublishTextFrame copied = new PublishTextFrame("some/topic", "some payload");
+    assertEquals(copied.hashCode(), decoded.hashCode());
+    assertEquals(copied, decoded);
+    assertEquals("P some/topic some payload", wire.encode(decoded));
+    assertEquals("R some/topic some payload", wire.encode(new TextFrame(decoded.getTopic(), decoded.getPayloadSequence())));
+
+    final String payload = decoded.getPayload();
+    assertEquals("some payload", payload);
+    assertSame(payload, decoded.getPayload());
+  }
+
+  @Test
+  public void testTextFromUtf8() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    final String payload = "caf\u00e9 \u2603";
+    final byte[] utf8 = payload.getBytes(StandardCharsets.UTF_8);
+    final PublishTextFrame pub = new PublishTextFrame("some/topic", ByteBuffer.wrap(utf8));
+    assertEquals(ByteBuffer.wrap(utf8), pub.getPayloadUtf8());
+    assertTrue(pub.getPayloadUtf8().isReadOnly());
+    assertEquals(utf8.length, pub.getPayloadUtf8Length());
+    assertEquals(new PublishTextFrame("some/topic", payload), pub);
+    assertEquals(new PublishTextFrame("some/topic", payload).hashCode(), pub.hashCode());
+
+    final TextFrame text = new TextFrame(pub);
+    assertEquals("R some/topic " + payload, wire.encode(text));
+    assertSame(pub.getPayload(), text.getPayload());
+    
+    final TextFrame fromString = new TextFrame("some/topic", payload);
+    assertEquals(utf8.length, fromString.getPayloadUtf8Length());
+    assertEquals(ByteBuffer.wrap(utf8), fromString.getPayloadUtf8());
+    assertEquals(ByteBuffer.wrap(utf8), fromString.getPayloadUtf8());
+    assertTrue(fromString.getPayloadUtf8().isReadOnly());
+  }
+
+  @Test
+  public void testEncodePooled() {
+    final BufferPool pool = new BufferPool();
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED, pool);
+    final BinaryFrame frame = new BinaryFrame("some/topic", new byte[] {(byte) 0x00, (byte) 0x01});
+    final ByteBuffer expected = new Wire(false, LocationHint.UNSPECIFIED).encode(frame);
+    
+    final PooledBuffer first = wire.encodePooled(frame);
+    assertEquals(expected, first.view());
+    final PooledBuffer second = wire.encodePooled(frame);
+    assertSame(first, second);
+    assertEquals(2, first.refCount());
+    
+    first.release();
+    second.release();
+    assertEquals(1, pool.getIdle());
+    
+    // once released, the frame is encoded afresh, reusing the pooled buffer
+    final PooledBuffer third = wire.encodePooled(frame);
+    assertNotSame(first, third);
+    assertSame(first.buffer(), third.buffer());
+    assertEquals(expected, third.view());
+    assertEquals(1, pool.getAllocations());
+    
+    final PooledBuffer pub = wire.encodePooled(new PublishBinaryFrame("some/topic", new byte[] {(byte) 0x00}));
+    assertEquals(FrameType.PUBLISH.getByteCode(), pub.view().get());
+  }
+  
+  @Test(expected=IllegalStateException.class)
+  public void testEncodePooledWithoutPool() {
+    new Wire(false, LocationHint.UNSPECIFIED).encodePooled(new BinaryFrame("some/topic", new byte[0]));
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testTopicLengthOverrun() {
+    final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
+    wire.decode(ByteBuffer.wrap(toByteArray(FrameType.PUBLISH.getByteCode(), 0x00, 0x05, 't')));
+  }
+
   @Test(expected=IllegalArgumentException.class)
   public void testIncompleteSubscribeFrame() {
     final Wire wire = new Wire(false, LocationHint.UNSPECIFIED);
@@ -0,0 +1,142 @@
+package au.com.williamhill.flywheel.frame;
+
+import static org.junit.Assert.*;
+
+import java.nio.*;
+import java.util.*;
+
+import org.junit.*;
+
+import au.com.williamhill.flywheel.frame.Wire.*;
+
+public final class WireV2Test {
+  private Wire wire;
+  
+  @Before
+  public void setup() {
+    wire = new Wire(false, LocationHint.UNSPECIFIED);
+  }
+  
+  private Frame roundTrip(Frame frame) {
+    final ByteBuffer encoded = wire.encodeV2(frame);
+    assertTrue(Wire.isV2(encoded));
+    final Frame decoded = wire.decodeV2(encoded);
+    assertFalse(encoded.hasRemaining());
+    return decoded;
+  }
+  
+  @Test
+  public void testBind() {
+    final Map<String, Object> metadata = new LinkedHashMap<>();
+    metadata.put("client", "test");
+    metadata.put("tags", Arrays.asList("a", "b"));
+    final BindFrame[] binds = {
+      new BindFrame(),
+      new BindFrame(UUID.randomUUID(), "s1", new BasicAuthCredentials("user", "pass"), 
+                    new String[]{"a/b", "c/#", null}, new String[0], metadata),
+      new BindFrame(UUID.randomUUID(), null, new BearerAuthCredentials("t\u00f6ken"), 
+                    null, new String[]{"x/+/y"}, "meta"),
+      new BindFrame(null, "s2", new BasicAuthCredentials(null, null), null, null, null)
+    };
+    for (BindFrame bind : binds) {
+      assertEquals(bind, roundTrip(bind));
+    }
+  }
+  
+  @Test
+  public void testBindResponse() {
+    final BindResponseFrame[] responses = {
+      new BindResponseFrame(UUID.randomUUID()),
+      new BindResponseFrame(null, new GeneralError("general"), new TopicAccessError("denied", "a/b"), null),
+      new BindResponseFrame(UUID.randomUUID(), (Error[]) null)
+    };
+    for (BindResponseFrame bindRes : responses) {
+      assertEquals(bindRes, roundTrip(bindRes));
+    }
+  }
+  
+  @Test
+  public void testMessages() {
+    final String text = "caf\u00e9 \u2603";
+    assertEquals(new PublishTextFrame("a/b", text), roundTrip(new PublishTextFrame("a/b", text)));
+    assertEquals(new TextFrame("a/b", text), roundTrip(new TextFrame("a/b", text)));
+    assertEquals(new TextFrame("a/b", ""), roundTrip(new TextFrame("a/b", "")));
+    
+    final byte[] bytes = {(byte) 0x00, (byte) 0x7F, (byte) 0xFF};
+    assertEquals(new PublishBinaryFrame("a/b", bytes), roundTrip(new PublishBinaryFrame("a/b", bytes)));
+    assertEquals(new BinaryFrame("a/b", bytes), roundTrip(new BinaryFrame("a/b", bytes)));
+  }
+  
+  @Test
+  public void testNoFrameCap() {
+    final char[] chars = new char[300];
+    Arrays.fill(chars, 't');
+    final String topic = new String(chars);
+    final byte[] payload = new byte[1 << 20];
+    new Random(0).nextBytes(payload);
+    final BinaryFrame frame = new BinaryFrame(topic, payload);
+    
+    final ByteBuffer encoded = wire.encodeV2(frame);
+    assertEquals(2 + 2 + topic.length() + payload.length, encoded.remaining());
+    assertEquals(frame, wire.decodeV2(encoded));
+  }
+  
+  @Test
+  public void testEncodingMemoised() {
+    final TextFrame frame = new TextFrame("a/b", "payload");
+    final ByteBuffer first = wire.encodeV2(frame);
+    final ByteBuffer second = wire.encodeV2(frame);
+    assertNotSame(first, second);
+    assertEquals(first, second);
+    first.get();
+    assertEquals(0, second.position());
+  }
+  
+  @Test
+  public void testVersionDetection() {
+    final Wire v1 = new Wire(false, LocationHint.UNSPECIFIED);
+    assertFalse(Wire.isV2(v1.encode(new PublishBinaryFrame("a/b", new byte[1]))));
+    assertFalse(Wire.isV2(v1.encode(new BinaryFrame("a/b", new byte[1]))));
+    assertFalse(Wire.isV2(ByteBuffer.allocate(0)));
+    assertTrue(Wire.isV2(wire.encodeV2(new PublishBinaryFrame("a/b", new byte[1]))));
+  }
+  
+  @Test
+  public void testVarint() {
+    for (int value : new int[] {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE}) {
+      final ByteBuffer buf = ByteBuffer.allocate(5);
+      int v = value;
+      while ((v & ~0x7F) != 0) {
+        buf.put((byte) ((v & 0x7F) | 0x80));
+        v >>>= 7;
+      }
+      buf.put((byte) v);
+      assertEquals(WireV2.varintSize(value), buf.position());
+      buf.flip();
+      assertEquals(value, WireV2.getVarint(buf));
+    }
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testMalformedVarint() {
+    WireV2.getVarint(ByteBuffer.wrap(new byte[] {(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x01}));
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testTopicLengthOverrun() {
+    wire.decodeV2(ByteBuffer.wrap(new byte[] {(byte) 0x22, (byte) 0x00, (byte) 0x10, (byte) 'a'}));
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testTrailingBytes() {
+    final ByteBuffer encoded = wire.encodeV2(new BindResponseFrame(UUID.randomUUID()));
+    final ByteBuffer padded = ByteBuffer.allocate(encoded.remaining() + 1);
+    padded.put(encoded).put((byte) 0).flip();
+    wire.decodeV2(padded);
+  }
+  
+  @Test(expected=IllegalArgumentException.class)
+  public void testNotV2() {
+    wire.decodeV2(new Wire(false, LocationHint.UNSPECIFIED).encode(new BinaryFrame("a/b", new byte[1])));
+  }
+}
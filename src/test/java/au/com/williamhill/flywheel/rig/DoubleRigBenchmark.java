@@ -1,5 +1,7 @@
 package au.com.williamhill.flywheel.rig;
 
+import java.util.function.*;
+
 import org.junit.*;
 
 import com.obsidiandynamics.func.*;
@@ -22,6 +24,7 @@ public final class DoubleRigBenchmark implements TestSupport {
   
   abstract static class Config implements Spec {
     ThrowingFunction<Config, Summary> runner = DoubleRigBenchmark::test;
+    Supplier<Interchange> interchange = RoutingInterchange::new;
     String host;
     int port;
     String path;
@@ -135,9 +138,23 @@ public final class DoubleRigBenchmark implements TestSupport {
     }}.applyDefaults().test();
   }
 
+  @Test
+  public void testTextSmallLeavesPartitioned() throws Throwable {
+    new Config() {{
+      pulses = 10;
+      pulseDurationMillis = 1;
+      syncFrames = 10;
+      topicSpec = TopicLibrary.load("cp://specs/small-leaves.yaml");
+      text = true;
+      bytes = 16;
+      interchange = () -> new PartitionedInterchange(2);
+    }}.applyDefaults().test();
+  }
+
   private static Summary test(Config c) throws Exception {
     final EdgeNode edge = EdgeNode.builder()
         .withServerConfig(new XServerConfig() {{ port = c.port; path = c.path; }})
+        .withInterchange(c.interchange.get())
         .build();
     final EdgeRig edgeRig = new EdgeRig(edge, new EdgeRigConfig() {{
       topicSpec = c.topicSpec;
@@ -181,7 +198,9 @@ public final class DoubleRigBenchmark implements TestSupport {
    */
   public static void main(String[] args) throws Exception {
     BourneUtils.run("ulimit -Sa", null, true, System.out::print);
+    final boolean partitioned = args.length != 0 && args[0].equals("partitioned");
     new Config() {{
+      if (partitioned) interchange = PartitionedInterchange::new;
       host = HOST;
       port = SocketUtils.getAvailablePort(PREFERRED_PORT);
       path = PATH;
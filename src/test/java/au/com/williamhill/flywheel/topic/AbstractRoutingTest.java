@@ -0,0 +1,427 @@
+package au.com.williamhill.flywheel.topic;
+
+import static junit.framework.TestCase.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.*;
+
+import org.junit.*;
+import org.mockito.*;
+
+/**
+ *  Routing scenarios that every engine must pass, run against both the {@link TopicRouter}
+ *  actors and the {@link SubscriptionTrie}. Engines that don't report router lifecycle events
+ *  skip the {@link TopicWatcher} verifications.
+ */
+public abstract class AbstractRoutingTest {
+  protected TopicWatcher topicWatcher;
+  
+  @Before
+  public final void before() {
+    topicWatcher = mock(TopicWatcher.class);
+    init();
+  }
+  
+  protected abstract void init();
+  
+  protected abstract void subscribe(String topic, Subscriber subscriber) throws InterruptedException, ExecutionException;
+  
+  protected abstract void unsubscribe(String topic, Subscriber subscriber) throws InterruptedException, ExecutionException;
+  
+  /**
+   *  Publishes to the given topic, returning once the publish has been delivered.
+   *  
+   *  @param topic The topic.
+   *  @param payload The payload.
+   */
+  protected abstract void publish(String topic, Object payload) throws InterruptedException, ExecutionException;
+  
+  /**
+   *  Runs the given verification against the {@link TopicWatcher}, if the engine reports to one.
+   *  
+   *  @param verification The verification.
+   */
+  protected abstract void verifyWatched(Consumer<InOrder> verification);
+  
+  private void publishSelf(String topic) throws InterruptedException, ExecutionException {
+    publish(topic, topic);
+  }
+  
+  @Test
+  public void testNonInterfering() throws InterruptedException, ExecutionException {
+    final List<Delivery> aList = new ArrayList<>();
+    final List<Delivery> bList = new ArrayList<>();
+    subscribe("a", aList::add);
+    subscribe("b", bList::add);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("b")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("b")), notNull());
+    });
+    publish("a", "hello");
+    publish("b", "barev");
+    assertEquals(1, aList.size());
+    assertEquals(1, bList.size());
+    assertEquals("hello", aList.get(0).getPayload());
+    assertEquals("barev", bList.get(0).getPayload());
+  }
+  
+  @Test
+  public void testMultipleSubscribers() throws InterruptedException, ExecutionException {
+    final List<Delivery> a1List = new ArrayList<>();
+    final List<Delivery> a2List = new ArrayList<>();
+    subscribe("a", a1List::add);
+    subscribe("a", a2List::add);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher, times(2)).subscribed(notNull(), eq(Topic.of("a")), notNull());
+    });
+    publish("a", "hello");
+    assertEquals(1, a1List.size());
+    assertEquals(1, a2List.size());
+    assertEquals("hello", a1List.get(0).getPayload());
+    assertEquals("hello", a2List.get(0).getPayload());
+  }
+  
+  @Test
+  public void testDuplicateSubscribers() throws InterruptedException, ExecutionException {
+    final List<Delivery> aList = new ArrayList<>();
+    final Subscriber sub = aList::add;
+    subscribe("a", sub);
+    subscribe("a", sub);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a")), notNull());
+    });
+    publish("a", "hello");
+    assertEquals(1, aList.size());
+    assertEquals("hello", aList.get(0).getPayload());
+  }
+  
+  @Test
+  public void testNoSubscribers() throws InterruptedException, ExecutionException {
+    publish("a", "hello");
+  }
+  
+  @Test
+  public void testHierarchyBasic() throws InterruptedException, ExecutionException {
+    final List<Delivery> aList = new ArrayList<>();
+    final List<Delivery> abList = new ArrayList<>();
+    final List<Delivery> abcList = new ArrayList<>();
+    subscribe("a", aList::add);
+    subscribe("a/b", abList::add);
+    subscribe("a/b/c", abcList::add);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b/c")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b/c")), notNull());
+    });
+    publish("a", "hello");
+    publish("a/b", "barev");
+    publish("a/b/c", "ciao");
+    assertEquals(1, aList.size());
+    assertEquals(1, abList.size());
+    assertEquals(1, abcList.size());
+    assertEquals("hello", aList.get(0).getPayload());
+    assertEquals("barev", abList.get(0).getPayload());
+    assertEquals("ciao", abcList.get(0).getPayload());
+  }
+  
+  @Test
+  public void testHierarchyMultiLevelWildcard() throws InterruptedException, ExecutionException {
+    final List<Delivery> xList = new ArrayList<>();
+    final List<Delivery> abList = new ArrayList<>();
+    final List<Delivery> axList = new ArrayList<>();
+    final List<Delivery> cList = new ArrayList<>();
+    final List<Delivery> cxList = new ArrayList<>();
+    subscribe("#", xList::add);
+    subscribe("a/b", abList::add);
+    subscribe("a/#", axList::add);
+    subscribe("c", cList::add);
+    subscribe("c/#", cxList::add);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("#")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/#")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("c")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c/#")), notNull());
+    });
+    publish("a", "hello");
+    publish("a/b", "barev");
+    publish("c", "ciao");
+    publish("c/p", "privet");
+    publish("c/p/b", "privet vsem");
+    assertEquals(5, xList.size());
+    assertEquals(1, abList.size());
+    assertEquals(1, abList.size());
+    assertEquals(1, axList.size());
+    assertEquals(1, cList.size());
+    assertEquals(2, cxList.size());
+    assertEquals("hello", xList.get(0).getPayload());
+    assertEquals("barev", xList.get(1).getPayload());
+    assertEquals("ciao", xList.get(2).getPayload());
+    assertEquals("privet", xList.get(3).getPayload());
+    assertEquals("privet vsem", xList.get(4).getPayload());
+    assertEquals("barev", abList.get(0).getPayload());
+    assertEquals("barev", axList.get(0).getPayload());
+    assertEquals("ciao", cList.get(0).getPayload());
+    assertEquals("privet", cxList.get(0).getPayload());
+    assertEquals("privet vsem", cxList.get(1).getPayload());
+  }
+  
+  @Test
+  public void testHierarchySingleLevelWildcard() throws InterruptedException, ExecutionException {
+    final List<Delivery> xList = new ArrayList<>();
+    final List<Delivery> abList = new ArrayList<>();
+    final List<Delivery> xbList = new ArrayList<>();
+    final List<Delivery> xcList = new ArrayList<>();
+    final List<Delivery> axList = new ArrayList<>();
+    final List<Delivery> xxList = new ArrayList<>();
+    subscribe("+", xList::add);
+    subscribe("a/b", abList::add);
+    subscribe("+/b", xbList::add);
+    subscribe("+/c", xcList::add);
+    subscribe("a/+", axList::add);
+    subscribe("+/+", xxList::add);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/b")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/c")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/+")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/+")), notNull());
+    });
+    publish("a", "hello");
+    publish("a/b", "barev");
+    publish("a/c", "ciao");
+    assertEquals(1, xList.size());
+    assertEquals(1, abList.size());
+    assertEquals(1, xbList.size());
+    assertEquals(1, xcList.size());
+    assertEquals(2, axList.size());
+    assertEquals(2, xxList.size());
+    assertEquals("hello", xList.get(0).getPayload());
+    assertEquals("barev", abList.get(0).getPayload());
+    assertEquals("barev", xbList.get(0).getPayload());
+    assertEquals("ciao", xcList.get(0).getPayload());
+    assertEquals("barev", axList.get(0).getPayload());
+    assertEquals("ciao", axList.get(1).getPayload());
+    assertEquals("barev", xxList.get(0).getPayload());
+    assertEquals("ciao", xxList.get(1).getPayload());
+  }
+  
+  @Test
+  public void testHierarchyUnsubscribeBottomUp() throws InterruptedException, ExecutionException {
+    final List<Delivery> list = new ArrayList<>();
+    final Subscriber sub = list::add;
+    subscribe("a0", sub);
+    subscribe("a1", sub);
+    subscribe("a0/b0", sub);
+    subscribe("a0/b1", sub);
+    subscribe("a0/b0/c0", sub);
+    
+    publishSelf("a0");
+    publishSelf("a1");
+    publishSelf("a0/b0");
+    publishSelf("a0/b1");
+    publishSelf("a0/b0/c0");
+    assertEquals(5, list.size());
+    assertEquals(5, new HashSet<>(list).size());
+    
+    unsubscribe("a0/b0/c0", sub);
+    unsubscribe("a0/b1", sub);
+    unsubscribe("a0/b0", sub);
+    unsubscribe("a1", sub);
+    unsubscribe("a0", sub);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a1")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a1")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b1")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0/c0")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0/c0")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b1")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a1")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a1")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0")));
+    });
+    
+    list.clear();
+    publishSelf("a0");
+    publishSelf("a1");
+    publishSelf("a0/b0");
+    publishSelf("a0/b1");
+    publishSelf("a0/b0/c0");
+    assertEquals(0, list.size());
+  }
+  
+  @Test
+  public void testHierarchyUnsubscribeTopDown() throws InterruptedException, ExecutionException {
+    final List<Delivery> list = new ArrayList<>();
+    final Subscriber sub = list::add;
+    subscribe("a0", sub);
+    subscribe("a1", sub);
+    subscribe("a0/b0", sub);
+    subscribe("a0/b1", sub);
+    subscribe("a0/b0/c0", sub);
+    
+    publishSelf("a0");
+    publishSelf("a1");
+    publishSelf("a0/b0");
+    publishSelf("a0/b1");
+    publishSelf("a0/b0/c0");
+    assertEquals(5, list.size());
+    assertEquals(5, new HashSet<>(list).size());
+    
+    unsubscribe("a0", sub);
+    unsubscribe("a1", sub);
+    unsubscribe("a0/b0", sub);
+    unsubscribe("a0/b1", sub);
+    unsubscribe("a0/b0/c0", sub);
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a1")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a1")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b1")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0/c0")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a1")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a1")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b1")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0/c0")));
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0")));
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0")));
+    });
+    
+    list.clear();
+    publishSelf("a0");
+    publishSelf("a1");
+    publishSelf("a0/b0");
+    publishSelf("a0/b1");
+    publishSelf("a0/b0/c0");
+    assertEquals(0, list.size());
+  }
+  
+  @Test
+  public void testHierarchyUnsubscribeMultiLevelWildcard() throws InterruptedException, ExecutionException {
+    final List<Delivery> list = new ArrayList<>();
+    final Subscriber sub = list::add;
+    subscribe("#", sub);
+    subscribe("a/b", sub);
+    subscribe("a/#", sub);
+    subscribe("c", sub);
+    subscribe("c/#", sub);
+    
+    publishSelf("a");
+    assertEquals(1, list.size());
+    publishSelf("a/b");
+    assertEquals(4, list.size());
+    publishSelf("c");
+    assertEquals(6, list.size());
+    publishSelf("c/d");
+    assertEquals(8, list.size());
+    
+    unsubscribe("#", sub);
+    unsubscribe("a/b", sub);
+    unsubscribe("a/#", sub);
+    unsubscribe("c", sub);
+    unsubscribe("c/#", sub);
+    
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("#")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/#")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("c")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c/#")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("#")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/#")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("c")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("c/#")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("c")));
+    });
+    
+    list.clear();
+    publishSelf("a");
+    publishSelf("a/b");
+    publishSelf("c");
+    publishSelf("c/d");
+    assertEquals(0, list.size());
+  }
+  
+  @Test
+  public void testHierarchyUnsubscribeSingleLevelWildcard() throws InterruptedException, ExecutionException {
+    final List<Delivery> list = new ArrayList<>();
+    final Subscriber sub = list::add;
+    subscribe("+", sub);
+    subscribe("a/b", sub);
+    subscribe("+/b", sub);
+    subscribe("+/c", sub);
+    subscribe("a/+", sub);
+    subscribe("+/+", sub);
+
+    unsubscribe("+", sub);
+    unsubscribe("a/b", sub);
+    unsubscribe("+/b", sub);
+    unsubscribe("+/c", sub);
+    unsubscribe("a/+", sub);
+    unsubscribe("+/+", sub);
+    
+    verifyWatched(inOrder -> {
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+")), notNull());
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/b")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/c")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/+")), notNull());
+      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/+")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/b")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+/b")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+/c")), notNull());
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/+")), notNull());
+      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
+      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+/+")), notNull());
+    });
+    
+    publishSelf("a");
+    publishSelf("a/b");
+    publishSelf("a/c");
+    assertEquals(0, list.size());
+  }
+  }
@@ -0,0 +1,125 @@
+package au.com.williamhill.flywheel.topic;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.*;
+import com.obsidiandynamics.indigo.util.*;
+
+import au.com.williamhill.flywheel.util.*;
+
+/**
+ *  Publishes to a single hot topic with a large audience, alongside background traffic to
+ *  many quiet topics, measuring the delivery latency of the background publishes with and
+ *  without fan-out lanes.
+ */
+public final class HotTopicBenchmark implements TestSupport {
+  private static class Config {
+    int threads;
+    int hotSubscribers;
+    int backgroundTopics;
+    int rounds;
+    int backgroundPerRound;
+    int fanOutLanes;
+    int fanOutThreshold;
+    boolean log;
+  }
+
+  private static final class Result {
+    LatencyHistogram backgroundLatency;
+    long hotDeliveries;
+  }
+
+  @Test
+  public void test() throws Exception {
+    for (int fanOutLanes : new int[] {0, 2}) {
+      final Result result = run(new Config() {{
+        threads = 2;
+        hotSubscribers = 10_000;
+        backgroundTopics = 100;
+        rounds = 10;
+        backgroundPerRound = 100;
+        this.fanOutLanes = fanOutLanes;
+        fanOutThreshold = 1_000;
+        log = LOG;
+      }});
+      assertEquals(1_000, result.backgroundLatency.count());
+      assertEquals(100_000, result.hotDeliveries);
+    }
+  }
+
+  private static Result run(Config c) throws Exception {
+    final Result result = new Result();
+    result.backgroundLatency = new LatencyHistogram();
+    final FanOut fanOut = c.fanOutLanes != 0 ? new FanOut(c.fanOutLanes, c.fanOutThreshold) : null;
+    final ActorSystem system = new ActorSystemConfig() {{
+      parallelism = c.threads;
+    }}
+    .createActorSystem()
+    .on(TopicRouter.ROLE).cue(() -> new TopicRouter(new TopicConfig().withFanOut(fanOut)));
+
+    final AtomicLong hotDeliveries = new AtomicLong();
+    try {
+      final Topic hot = Topic.of("hot");
+      final List<Subscribe> hotSubscribes = new ArrayList<>(c.hotSubscribers);
+      for (int i = 0; i < c.hotSubscribers; i++) {
+        hotSubscribes.add(new Subscribe(hot, d -> hotDeliveries.incrementAndGet()));
+      }
+      system.ask(ActorRef.of(TopicRouter.ROLE), new BatchSubscribe(hotSubscribes)).get();
+
+      final List<Topic> backgroundTopics = new ArrayList<>(c.backgroundTopics);
+      final List<Subscribe> backgroundSubscribes = new ArrayList<>(c.backgroundTopics);
+      final CountDownLatch backgroundReceived = new CountDownLatch(c.rounds * c.backgroundPerRound);
+      for (int i = 0; i < c.backgroundTopics; i++) {
+        final Topic topic = Topic.of("background/" + i);
+        backgroundTopics.add(topic);
+        backgroundSubscribes.add(new Subscribe(topic, d -> {
+          result.backgroundLatency.record(System.nanoTime() - d.<Long>getPayload());
+          backgroundReceived.countDown();
+        }));
+      }
+      system.ask(ActorRef.of(TopicRouter.ROLE), new BatchSubscribe(backgroundSubscribes)).get();
+
+      for (int round = 0; round < c.rounds; round++) {
+        system.tell(ActorRef.of(TopicRouter.ROLE), new Publish(hot, System.nanoTime()));
+        for (int i = 0; i < c.backgroundPerRound; i++) {
+          final Topic topic = backgroundTopics.get(i % backgroundTopics.size());
+          system.tell(ActorRef.of(TopicRouter.ROLE), new Publish(topic, System.nanoTime()));
+        }
+      }
+
+      assertTrue(backgroundReceived.await(60, TimeUnit.SECONDS));
+      system.drain(0);
+    } finally {
+      system.shutdownSilently();
+      if (fanOut != null) fanOut.close();
+    }
+
+    result.hotDeliveries = hotDeliveries.get();
+    if (c.log) System.out.format("%,d hot subscribers, %d fan-out lanes: background latency p50 %,d us, p99 %,d us\n",
+                                 c.hotSubscribers, c.fanOutLanes,
+                                 result.backgroundLatency.percentile(50) / 1000,
+                                 result.backgroundLatency.percentile(99) / 1000);
+    return result;
+  }
+
+  public static void main(String[] args) throws Exception {
+    for (int fanOutLanes : new int[] {0, Runtime.getRuntime().availableProcessors()}) {
+      run(new Config() {{
+        threads = Runtime.getRuntime().availableProcessors();
+        hotSubscribers = 100_000;
+        backgroundTopics = 1_000;
+        rounds = 100;
+        backgroundPerRound = 1_000;
+        this.fanOutLanes = fanOutLanes;
+        fanOutThreshold = FanOut.DEFAULT_THRESHOLD;
+        log = true;
+      }});
+    }
+  }
+}
@@ -0,0 +1,85 @@
+package au.com.williamhill.flywheel.topic;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public final class InterestFilterTest {
+  private static final String[] FILTERS = {
+    "a/b/c", "a/b/+", "x/+/z", "m/#", "$remote/s0/rx", "$remote/s0/rx/#"
+  };
+
+  private static final String[] EXACTS = {
+    "a", "a/b", "a/b/c", "a/b/d", "a/c/c", "x", "x/y", "x/y/z", "x/y/z/w", "m", "m/n", "m/n/o",
+    "ma/n", "$remote/s0/rx", "$remote/s0/rx/r1", "$remote/s1/rx", "q/r/s"
+  };
+
+  @Test
+  public void testNoFalseNegatives() {
+    final InterestFilter filter = new InterestFilter();
+    for (String f : FILTERS) filter.add(Topic.of(f));
+
+    for (String exact : EXACTS) {
+      for (String f : FILTERS) {
+        if (Topic.of(f).accepts(Topic.of(exact))) {
+          assertTrue(exact, filter.mightMatch(exact));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDropsUnrelated() {
+    final InterestFilter filter = new InterestFilter();
+    assertFalse(filter.mightMatch("a/b/c"));
+    for (String f : FILTERS) filter.add(Topic.of(f));
+
+    assertFalse(filter.admit("q/r/s"));
+    assertFalse(filter.admit("ma/n"));
+    assertFalse(filter.admit("$remote/s1/rx"));
+    assertTrue(filter.admit("a/b/c"));
+    assertEquals(4, filter.getTested());
+    assertEquals(3, filter.getDropped());
+    assertEquals(0.75, filter.getDropRate(), 0);
+  }
+
+  @Test
+  public void testTopicHandle() {
+    final InterestFilter filter = new InterestFilter();
+    final TopicHandle handle = new TopicHandle("a/b/c");
+    assertFalse(filter.admit(handle));
+    assertFalse(filter.admit(handle));
+
+    filter.add(Topic.of("a/b/+"));
+    assertTrue(filter.admit(handle));
+    assertTrue(filter.admit(handle));
+
+    // a memo computed against one filter isn't trusted by another
+    assertFalse(new InterestFilter().admit(handle));
+
+    filter.remove(Topic.of("a/b/+"));
+    assertFalse(filter.admit(handle));
+    assertEquals(5, filter.getTested());
+    assertEquals(3, filter.getDropped());
+  }
+
+  @Test
+  public void testCounting() {
+    final InterestFilter filter = new InterestFilter();
+    filter.add(Topic.of("a/b"));
+    filter.add(Topic.of("a/b"));
+    filter.remove(Topic.of("a/b"));
+    assertTrue(filter.mightMatch("a/b"));
+    filter.remove(Topic.of("a/b"));
+    assertFalse(filter.mightMatch("a/b"));
+  }
+
+  @Test
+  public void testLeadingWildcardAdmitsAll() {
+    final InterestFilter filter = new InterestFilter();
+    filter.add(Topic.of("+/b"));
+    assertTrue(filter.mightMatch("q/r/s"));
+    filter.remove(Topic.of("+/b"));
+    assertFalse(filter.mightMatch("q/r/s"));
+  }
+}
@@ -0,0 +1,103 @@
+package au.com.williamhill.flywheel.topic;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.indigo.util.*;
+
+/**
+ *  Measures the heap allocated by the per-level publish path of the {@link TopicRouter}, by
+ *  driving a chain of {@link TopicRouterState}s (one per level of a deep topic) directly on
+ *  the calling thread. Everything past the creation of the {@link Publish} should be free of
+ *  allocation; the actor messaging between levels isn't measured.
+ */
+public final class PublishAllocationBenchmark implements TestSupport {
+  private static final String[] LEVELS = {"a", "a/b", "a/b/c", "a/b/c/d", "a/b/c/d/e", "a/b/c/d/e/f"};
+
+  private static class Config {
+    int subscribersPerFilter;
+    long n;
+    boolean log;
+  }
+
+  private static final class CountingSubscriber implements Subscriber {
+    long received;
+
+    @Override
+    public void accept(Delivery delivery) {
+      received++;
+    }
+  }
+
+  @Test
+  public void test() {
+    final com.sun.management.ThreadMXBean threads = threadMXBean();
+    Assume.assumeTrue(threads != null && threads.isThreadAllocatedMemorySupported());
+
+    final double bytesPerOp = run(new Config() {{
+      subscribersPerFilter = 10;
+      n = 1_000_000;
+      log = LOG;
+    }});
+    assertTrue("Allocated " + bytesPerOp + " bytes/op", bytesPerOp < 1);
+  }
+
+  private static com.sun.management.ThreadMXBean threadMXBean() {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    return threads instanceof com.sun.management.ThreadMXBean ? (com.sun.management.ThreadMXBean) threads : null;
+  }
+
+  private static double run(Config c) {
+    final TopicRouterState[] states = new TopicRouterState[LEVELS.length];
+    final CountingSubscriber subscriber = new CountingSubscriber();
+    for (int i = 0; i < LEVELS.length; i++) {
+      states[i] = new TopicRouterState(Topic.of(LEVELS[i]));
+      for (int s = 0; s < c.subscribersPerFilter; s++) {
+        final Subscriber sub = new CountingSubscriber();
+        states[i].subscribe(Topic.of(LEVELS[i] + "/#"), sub);
+        states[i].subscribe(Topic.of(LEVELS[i] + "/+/x"), sub);
+      }
+    }
+    final Topic leaf = Topic.of(LEVELS[LEVELS.length - 1]);
+    states[states.length - 1].subscribe(leaf, subscriber);
+
+    final Delivery delivery = new Publish(leaf, "payload").getDelivery();
+    final long warmup = c.n / 10;
+    for (long i = 0; i < warmup; i++) {
+      traverse(states, leaf, delivery);
+    }
+
+    final com.sun.management.ThreadMXBean threads = threadMXBean();
+    final long threadId = Thread.currentThread().getId();
+    final long startBytes = threads.getThreadAllocatedBytes(threadId);
+    final long startNanos = System.nanoTime();
+    for (long i = 0; i < c.n; i++) {
+      traverse(states, leaf, delivery);
+    }
+    final long tookNanos = System.nanoTime() - startNanos;
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - startBytes;
+    assertEquals(warmup + c.n, subscriber.received);
+
+    final double bytesPerOp = (double) allocated / c.n;
+    if (c.log) System.out.format("%,d publishes through %d levels: %.3f bytes/op, %,.0f ns/op\n",
+                                 c.n, LEVELS.length, bytesPerOp, (double) tookNanos / c.n);
+    return bytesPerOp;
+  }
+
+  private static void traverse(TopicRouterState[] states, Topic topic, Delivery delivery) {
+    for (TopicRouterState state : states) {
+      state.deliver(topic, delivery);
+    }
+  }
+
+  public static void main(String[] args) {
+    run(new Config() {{
+      subscribersPerFilter = 100;
+      n = 10_000_000;
+      log = true;
+    }});
+  }
+}
@@ -0,0 +1,176 @@
+package au.com.williamhill.flywheel.topic;
+
+import static junit.framework.TestCase.*;
+
+import java.util.*;
+import java.util.function.*;
+
+import org.junit.*;
+import org.mockito.*;
+
+public final class SubscriptionTrieTest extends AbstractRoutingTest {
+  private SubscriptionTrie trie;
+
+  @Override
+  protected void init() {
+    trie = new SubscriptionTrie();
+  }
+
+  @Test
+  public void testUnsubscribePrunes() {
+    final List<Delivery> list = new ArrayList<>();
+    final Subscriber sub = list::add;
+    subscribe("#", sub);
+    subscribe("a/b", sub);
+    subscribe("a/#", sub);
+    subscribe("+/c", sub);
+    subscribe("a0/b0/c0", sub);
+    assertFalse(trie.subscribe(Topic.of("a/b"), sub));
+
+    assertTrue(trie.unsubscribe(Topic.of("#"), sub));
+    assertTrue(trie.unsubscribe(Topic.of("a/b"), sub));
+    assertTrue(trie.unsubscribe(Topic.of("a/#"), sub));
+    assertTrue(trie.unsubscribe(Topic.of("+/c"), sub));
+    assertTrue(trie.unsubscribe(Topic.of("a0/b0/c0"), sub));
+    assertFalse(trie.unsubscribe(Topic.of("a0/b0/c0"), sub));
+    assertFalse(trie.unsubscribe(Topic.of("x/y"), sub));
+    assertTrue(trie.isEmpty());
+
+    publish("a", "a");
+    publish("a/b", "a/b");
+    publish("a/c", "a/c");
+    publish("a0/b0/c0", "a0/b0/c0");
+    assertEquals(0, list.size());
+  }
+
+  @Test
+  public void testAgreesWithTopicAccepts() {
+    final String[] filters = {"#", "+", "a", "a/#", "a/+", "+/b", "+/+", "+/#", "a/b", "a/b/#", "a/+/c", "+/+/+", "x/#"};
+    final String[] exacts = {"a", "b", "a/b", "a/c", "b/b", "a/b/c", "a/x/c", "a/b/c/d", "x", "x/y"};
+    final Map<String, List<Delivery>> received = new HashMap<>();
+    for (String filter : filters) {
+      final List<Delivery> list = new ArrayList<>();
+      received.put(filter, list);
+      subscribe(filter, list::add);
+    }
+
+    for (String exact : exacts) {
+      publish(exact, exact);
+    }
+
+    for (String filter : filters) {
+      final List<String> expected = new ArrayList<>();
+      for (String exact : exacts) {
+        if (Topic.of(filter).accepts(Topic.of(exact))) expected.add(exact);
+      }
+      final List<String> actual = new ArrayList<>();
+      for (Delivery d : received.get(filter)) {
+        actual.add(d.getPayload());
+      }
+      assertEquals("filter " + filter, expected, actual);
+    }
+  }
+
+  @Test
+  public void testRouteCache() {
+    final RouteCache cache = new RouteCache(2);
+    trie = new SubscriptionTrie(cache);
+    final List<Delivery> exact = new ArrayList<>();
+    final List<Delivery> sl = new ArrayList<>();
+    final List<Delivery> root = new ArrayList<>();
+    final Subscriber exactSub = exact::add;
+    subscribe("a/b", exactSub);
+    publish("a/b", "1");
+    publish("a/b", "2");
+    assertEquals(2, exact.size());
+    assertEquals(1, cache.getMisses());
+    assertEquals(1, cache.getHits());
+
+    subscribe("a/+", sl::add);
+    publish("a/b", "3");
+    assertEquals(3, exact.size());
+    assertEquals(1, sl.size());
+    assertEquals(1, cache.getInvalidations());
+
+    subscribe("+/b", root::add);
+    publish("a/b", "4");
+    assertEquals(1, root.size());
+    assertEquals(2, cache.getInvalidations());
+
+    unsubscribe("a/b", exactSub);
+    publish("a/b", "5");
+    assertEquals(4, exact.size());
+    assertEquals(3, sl.size());
+    assertEquals(3, cache.getInvalidations());
+
+    // a change under an unrelated first segment leaves the route intact
+    subscribe("c/d", d -> {});
+    publish("a/b", "6");
+    assertEquals(4, sl.size());
+    assertEquals(3, cache.getInvalidations());
+
+    // as does a change to a sibling under the same first segment
+    subscribe("a/c", d -> {});
+    subscribe("a/c/+", d -> {});
+    publish("a/b", "7");
+    assertEquals(5, sl.size());
+    assertEquals(3, cache.getInvalidations());
+
+    publish("x", "8");
+    publish("y", "9");
+    assertEquals(2, cache.size());
+    assertEquals(1, cache.getEvictions());
+  }
+
+  @Test
+  public void testTopicHandle() {
+    final RouteCache cache = new RouteCache();
+    trie = new SubscriptionTrie(cache);
+    final TopicHandle handle = new TopicHandle("a/b");
+    final List<Delivery> exact = new ArrayList<>();
+    final List<Delivery> sl = new ArrayList<>();
+    subscribe("a/b", exact::add);
+    trie.publish(handle, "1");
+    trie.publish(handle, "2");
+    assertEquals(2, exact.size());
+    assertSame(handle.getTopic(), exact.get(0).getTopic());
+    // the route is resolved once, and served from the handle thereafter
+    assertEquals(1, cache.size());
+    assertEquals(0, cache.getHits());
+
+    subscribe("a/+", sl::add);
+    trie.publish(handle, "3");
+    assertEquals(3, exact.size());
+    assertEquals(1, sl.size());
+
+    // a route resolved by another trie is never served
+    final SubscriptionTrie other = new SubscriptionTrie(new RouteCache());
+    other.publish(handle, "4");
+    trie.publish(handle, "5");
+    assertEquals(4, exact.size());
+    assertEquals(2, sl.size());
+  }
+
+  @Test(expected=IllegalArgumentException.class)
+  public void testTopicHandleWildcard() {
+    new TopicHandle("a/+/c");
+  }
+
+  @Override
+  protected void subscribe(String topic, Subscriber subscriber) {
+    trie.subscribe(Topic.of(topic), subscriber);
+  }
+
+  @Override
+  protected void unsubscribe(String topic, Subscriber subscriber) {
+    trie.unsubscribe(Topic.of(topic), subscriber);
+  }
+
+  @Override
+  protected void publish(String topic, Object payload) {
+    trie.publish(Topic.of(topic), payload);
+  }
+
+  @Override
+  protected void verifyWatched(Consumer<InOrder> verification) {}
+}
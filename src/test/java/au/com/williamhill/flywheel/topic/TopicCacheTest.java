@@ -0,0 +1,100 @@
+package au.com.williamhill.flywheel.topic;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public final class TopicCacheTest {
+  @Test
+  public void testHitAndMiss() {
+    final TopicCache cache = new TopicCache(10);
+    final Topic first = cache.get("a/b/c");
+    final Topic second = cache.get("a/b/c");
+    assertSame(first, second);
+    assertEquals(Topic.of("a/b/c"), first);
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+    assertEquals(0.5, cache.getHitRate(), 0);
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testInternedSegments() {
+    final TopicCache cache = new TopicCache(10);
+    final Topic t1 = cache.get(new String("a/b/c"));
+    final Topic t2 = cache.get(new String("a/b/d"));
+    final Topic t3 = cache.get(new String("+/b/#"));
+    assertSame(t1.getParts()[0], t2.getParts()[0]);
+    assertSame(t1.getParts()[1], t2.getParts()[1]);
+    assertSame(t1.getParts()[1], t3.getParts()[1]);
+    assertSame(Topic.SL_WILDCARD, t3.getParts()[0]);
+    assertSame(Topic.ML_WILDCARD, t3.getParts()[2]);
+  }
+
+  @Test
+  public void testBounded() {
+    final TopicCache cache = new TopicCache(4);
+    for (int i = 0; i < 100; i++) {
+      assertEquals(Topic.of("t/" + i), cache.get("t/" + i));
+    }
+    assertEquals(4, cache.size());
+    assertEquals(96, cache.getEvictions());
+  }
+
+  @Test
+  public void testSecondChance() {
+    final TopicCache cache = new TopicCache(3);
+    cache.get("a");
+    cache.get("b");
+    cache.get("c");
+    cache.get("a"); // referenced, so survives the next sweep
+    cache.get("d"); // evicts 'b'
+    final long misses = cache.getMisses();
+    cache.get("a");
+    assertEquals(misses, cache.getMisses());
+    cache.get("b");
+    assertEquals(misses + 1, cache.getMisses());
+  }
+
+  @Test
+  public void testInvalidNotCached() {
+    final TopicCache cache = new TopicCache(4);
+    try {
+      cache.get("a//b");
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException e) {}
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testSegmentPoolBounded() {
+    final TopicCache cache = new TopicCache(4);
+    final String hot = cache.get(new String("hot/x")).getParts()[0];
+    for (int i = 0; i < 100; i++) {
+      cache.get("hot/" + i);
+      assertTrue(cache.segmentCount() <= 4);
+    }
+    assertTrue(cache.getSegmentEvictions() > 0);
+    // a segment that stays in use survives the sweeps, and keeps its identity
+    assertSame(hot, cache.get(new String("hot/y")).getParts()[0]);
+
+    // wildcards are never evicted
+    final Topic wildcards = cache.get(new String("+/#"));
+    assertSame(Topic.SL_WILDCARD, wildcards.getParts()[0]);
+    assertSame(Topic.ML_WILDCARD, wildcards.getParts()[1]);
+  }
+
+  @Test
+  public void testEvictedSegmentReinterned() {
+    final TopicCache cache = new TopicCache(2);
+    final Topic first = cache.get(new String("a"));
+    cache.get("b");
+    cache.get("c");
+    cache.get("d");
+    assertEquals(2, cache.getSegmentEvictions());
+    final Topic again = cache.get(new String("a"));
+    assertNotSame(first, again);
+    assertEquals(first, again);
+    assertSame(again.getParts()[0], cache.get(new String("a/e")).getParts()[0]);
+  }
+}
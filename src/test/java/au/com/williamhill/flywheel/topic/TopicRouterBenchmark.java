@@ -18,14 +18,31 @@ import com.obsidiandynamics.indigo.benchmark.*;
 import com.obsidiandynamics.indigo.util.*;
 
 import au.com.williamhill.flywheel.topic.TopicSpec.*;
+import au.com.williamhill.flywheel.util.*;
 
 public final class TopicRouterBenchmark implements TestSupport {
+  /**
+   *  The routing engine under test.
+   */
+  enum Engine {
+    /** The actor-based {@link TopicRouter}. */
+    ACTOR,
+    
+    /** The {@link SubscriptionTrie}, publishing on the calling thread. */
+    TRIE
+  }
+  
   abstract static class Config implements Spec {
+    Engine engine = Engine.ACTOR;
     ExecutorChoice executorChoice = null;
     long n;
     int threads;
     int bias;
+    int backlogThrottleCapacity;
+    int rootShards = 1;
+    int publishers = 1;
     TopicSpec topicSpec;
+    boolean crossLevelWildcards;
     boolean assertTopicOnDelivery;
     float warmupFrac;
     LogConfig log;
@@ -37,10 +54,12 @@ public final class TopicRouterBenchmark implements TestSupport {
     List<Interest> exactInterests;
     List<Interest> singleLevelWildcardInterests;
     List<Interest> multiLevelWildcardInterests;
+    List<Interest> crossLevelWildcardInterests;
     List<Interest> interests;
     List<BenchSubscriber> subscribers;
     List<Topic> targetTopics;
     int amplification;
+    LatencyHistogram latency;
     
     private boolean initialised;
     
@@ -54,10 +73,13 @@ public final class TopicRouterBenchmark implements TestSupport {
       exactInterests = topicSpec.getExactInterests();
       singleLevelWildcardInterests = topicSpec.getSingleLevelWildcardInterests();
       multiLevelWildcardInterests = topicSpec.getMultiLevelWildcardInterests();
-      interests = new ArrayList<>(exactInterests.size() + singleLevelWildcardInterests.size() + multiLevelWildcardInterests.size());
+      crossLevelWildcardInterests = crossLevelWildcards ? crossLevelWildcardsOf(exactInterests) : Collections.emptyList();
+      interests = new ArrayList<>(exactInterests.size() + singleLevelWildcardInterests.size() + 
+                                  multiLevelWildcardInterests.size() + crossLevelWildcardInterests.size());
       interests.addAll(exactInterests);
       interests.addAll(singleLevelWildcardInterests);
       interests.addAll(multiLevelWildcardInterests);
+      interests.addAll(crossLevelWildcardInterests);
       
       subscribers = new ArrayList<>();
       for (Interest interest : interests) {
@@ -68,10 +90,28 @@ public final class TopicRouterBenchmark implements TestSupport {
 
       targetTopics = exactInterests.stream().map(s -> s.topic).collect(Collectors.toList());
       amplification = matchingSubscribers(targetTopics, subscribers);
+      latency = new LatencyHistogram();
       
       initialised = true;
     }
     
+    /**
+     *  Derives an interest in {@code +/b/c} for every exact interest {@code a/b/c}. These
+     *  all land on the root level, piling up many distinct wildcard filters at a single
+     *  router.
+     */
+    private static List<Interest> crossLevelWildcardsOf(List<Interest> exactInterests) {
+      final Set<Interest> interests = new LinkedHashSet<>();
+      for (Interest exact : exactInterests) {
+        final String[] parts = exact.topic.getParts();
+        if (parts.length < 2) continue;
+        final String[] frags = parts.clone();
+        frags[0] = Topic.SL_WILDCARD;
+        interests.add(new Interest(new Topic(frags), 1));
+      }
+      return new ArrayList<>(interests);
+    }
+    
     private static int matchingSubscribers(List<Topic> topics, List<BenchSubscriber> subscribers) {
       int matching = 0;
       for (BenchSubscriber subscriber : subscribers) {
@@ -91,15 +131,22 @@ public final class TopicRouterBenchmark implements TestSupport {
 
     @Override
     public String describe() {
-      return String.format("%d threads, %,d messages, %.0f%% warmup fraction\n" + 
-                           "(~): %,d, (-): %,d, (+): %,d, (#): %,d, (><): %,d", 
+      return String.format("%s engine, %s executor, %d threads, %d bias, %d backlog, %d root shards, %d publishers, %,d messages, %.0f%% warmup fraction\n" + 
+                           "(~): %,d, (-): %,d, (+): %,d, (#): %,d, (+/-): %,d, (><): %,d", 
+                           engine,
+                           executorChoice != null ? executorChoice : "default",
                            threads,
+                           bias,
+                           backlogThrottleCapacity,
+                           rootShards,
+                           publishers,
                            n, 
                            warmupFrac * 100,
                            leafTopics.size(),
                            exactInterests.size(),
                            singleLevelWildcardInterests.size(),
                            multiLevelWildcardInterests.size(),
+                           crossLevelWildcardInterests.size(),
                            amplification);
     }
 
@@ -116,7 +163,7 @@ public final class TopicRouterBenchmark implements TestSupport {
   private static class BenchSubscriber implements Subscriber {
     final Config c;
     final Topic topic;
-    long received;
+    final AtomicLong received = new AtomicLong();
 
     BenchSubscriber(Config c, Topic topic) {
       this.c = c;
@@ -124,13 +171,15 @@ public final class TopicRouterBenchmark implements TestSupport {
     }
     
     void reset() {
-      received = 0;
+      received.set(0);
     }
 
     @Override
     public void accept(Delivery delivery) {
       if (c.assertTopicOnDelivery) assertTrue(topic.accepts(delivery.getTopic()));
-      received++;
+      final Long publishTime = delivery.getPayload();
+      if (publishTime != null) c.latency.record(System.nanoTime() - publishTime);
+      received.incrementAndGet();
     }
   }
   
@@ -157,11 +206,172 @@ public final class TopicRouterBenchmark implements TestSupport {
     }
   }
   
+  /**
+   *  Uniform view of a routing engine, for the purpose of benchmarking.
+   */
+  private interface BenchRouter {
+    void subscribe(Topic topic, Subscriber subscriber) throws Exception;
+    
+    void unsubscribe(Topic topic, Subscriber subscriber) throws Exception;
+    
+    void publish(Topic topic, Object payload);
+    
+    void drain() throws InterruptedException;
+    
+    void close() throws InterruptedException;
+  }
+  
+  private static final class ActorBenchRouter implements BenchRouter {
+    private final ActorSystem system;
+    
+    private final RootShards shards;
+    
+    ActorBenchRouter(Config c, TopicWatcher watcher) {
+      shards = new RootShards(c.rootShards);
+      system = new ActorSystemConfig() {{
+        parallelism = c.threads;
+        if (c.executorChoice != null) {
+          executor = c.executorChoice;
+        }
+        defaultActorConfig = new ActorConfig() {{ 
+          bias = c.bias; 
+          if (c.backlogThrottleCapacity != 0) backlogThrottleCapacity = c.backlogThrottleCapacity;
+        }};
+      }}
+      .createActorSystem()
+      .on(TopicRouter.ROLE).cue(() -> new TopicRouter(new TopicConfig()
+                                                      .withTopicWatcher(watcher)
+                                                      .withRootShards(c.rootShards)));
+    }
+
+    @Override public void subscribe(Topic topic, Subscriber subscriber) throws Exception {
+      for (ActorRef routerRef : shards.routersFor(topic)) {
+        system.ask(routerRef, new Subscribe(topic, subscriber)).get();
+      }
+    }
+
+    @Override public void unsubscribe(Topic topic, Subscriber subscriber) throws Exception {
+      for (ActorRef routerRef : shards.routersFor(topic)) {
+        system.ask(routerRef, new Unsubscribe(topic, subscriber)).get();
+      }
+    }
+
+    @Override public void publish(Topic topic, Object payload) {
+      system.tell(shards.routerFor(topic), new Publish(topic, payload));
+    }
+
+    @Override public void drain() throws InterruptedException {
+      system.drain(0);
+    }
+
+    @Override public void close() throws InterruptedException {
+      system.shutdown();
+    }
+  }
+  
+  private static final class TrieBenchRouter implements BenchRouter {
+    private final SubscriptionTrie trie = new SubscriptionTrie();
+
+    @Override public void subscribe(Topic topic, Subscriber subscriber) {
+      trie.subscribe(topic, subscriber);
+    }
+
+    @Override public void unsubscribe(Topic topic, Subscriber subscriber) {
+      trie.unsubscribe(topic, subscriber);
+    }
+
+    @Override public void publish(Topic topic, Object payload) {
+      trie.publish(topic, payload);
+    }
+
+    @Override public void drain() {}
+
+    @Override public void close() {}
+  }
+  
   @Test
   public void test() throws Exception {
-    test(supplier("cp://specs/tiny-all.yaml"), 1000);
-    test(supplier("cp://specs/small-all.yaml"), 100);
-    test(supplier("cp://specs/medium-all.yaml"), 10);
+    for (Engine engine : Engine.values()) {
+      test(engine, supplier("cp://specs/tiny-all.yaml"), 1000);
+      test(engine, supplier("cp://specs/small-all.yaml"), 100);
+      test(engine, supplier("cp://specs/medium-all.yaml"), 10);
+    }
+  }
+  
+  @Test
+  public void testMultiThreaded() throws Exception {
+    final int _threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+    for (Engine engine : Engine.values()) {
+      new Config() {{
+        this.engine = engine;
+        n = 100;
+        threads = _threads;
+        bias = 10;
+        rootShards = _threads;
+        publishers = _threads;
+        topicSpec = supplier("cp://specs/small-all.yaml").get();
+        assertTopicOnDelivery = true;
+        warmupFrac = 0.05f;
+        log = new LogConfig() {{
+          summary = stages = LOG;
+        }};
+      }}.test();
+    }
+  }
+  
+  @Test
+  public void testManyInterestsPerLevel() throws Exception {
+    for (Engine engine : Engine.values()) {
+      new Config() {{
+        this.engine = engine;
+        n = 10;
+        threads = Runtime.getRuntime().availableProcessors();
+        bias = 10;
+        topicSpec = supplier("cp://specs/wide-all.yaml").get();
+        crossLevelWildcards = true;
+        assertTopicOnDelivery = true;
+        warmupFrac = 0.05f;
+        log = new LogConfig() {{
+          summary = stages = LOG;
+        }};
+      }}.test();
+    }
+  }
+  
+  @Test
+  public void testSettingsMatrix() throws Exception {
+    matrix("cp://specs/tiny-all.yaml", 100, new int[] {1, 2}, new int[] {1, 10}, new int[] {0, 1_000}, LOG);
+  }
+  
+  /**
+   *  Runs the actor engine over every combination of executor, thread count, bias and backlog
+   *  capacity, mirroring the settings available through {@code RoutingConfig}.
+   */
+  private static void matrix(String specUri, int _n, int[] threadCounts, int[] biases, int[] backlogs, 
+                             boolean _log) throws Exception {
+    final TopicSpec spec = TopicLibrary.load(specUri);
+    for (ExecutorChoice executor : new ExecutorChoice[] {ExecutorChoice.FIXED_THREAD_POOL, ExecutorChoice.FORK_JOIN_POOL}) {
+      for (int threadCount : threadCounts) {
+        for (int _bias : biases) {
+          for (int backlog : backlogs) {
+            new Config() {{
+              executorChoice = executor;
+              n = _n;
+              threads = threadCount;
+              bias = _bias;
+              backlogThrottleCapacity = backlog;
+              rootShards = threadCount;
+              publishers = threadCount;
+              topicSpec = spec;
+              warmupFrac = 0.05f;
+              log = new LogConfig() {{
+                summary = _log;
+              }};
+            }}.test();
+          }
+        }
+      }
+    }
   }
   
   private static Supplier<TopicSpec> supplier(String uri) {
@@ -174,9 +384,10 @@ public final class TopicRouterBenchmark implements TestSupport {
     };
   }
   
-  private void test(Supplier<TopicSpec> topicGenSupplier, int n) throws Exception {
+  private void test(Engine engine, Supplier<TopicSpec> topicGenSupplier, int n) throws Exception {
     final int _n = n;
     new Config() {{
+      this.engine = engine;
       n = _n;
       threads = Runtime.getRuntime().availableProcessors();
       bias = 10;
@@ -191,68 +402,56 @@ public final class TopicRouterBenchmark implements TestSupport {
   
   private Summary test(Config c) throws Throwable {
     final BenchTopicWatcher watcher = new BenchTopicWatcher();
-    final ActorSystem system = new ActorSystemConfig() {{
-      parallelism = c.threads;
-      if (c.executorChoice != null) {
-        executor = c.executorChoice;
-      }
-      defaultActorConfig = new ActorConfig() {{ 
-        bias = c.bias; 
-      }};
-    }}
-    .createActorSystem()
-    .on(TopicRouter.ROLE).cue(() -> new TopicRouter(new TopicConfig() {{
-      topicWatcher = watcher;
-    }}));
+    final BenchRouter router = c.engine == Engine.ACTOR ? new ActorBenchRouter(c, watcher) : new TrieBenchRouter();
+    final RootShards shards = new RootShards(c.rootShards);
+    final int expectedSubscriptions = c.subscribers.stream()
+        .collect(Collectors.summingInt(s -> shards.routersFor(s.topic).length)).intValue();
     
-    final ActorRef routerRef = ActorRef.of(TopicRouter.ROLE);
     for (BenchSubscriber subscriber : c.subscribers) {
       subscriber.reset();
-      subscribe(system, routerRef, subscriber.topic, subscriber).get();
+      router.subscribe(subscriber.topic, subscriber);
+    }
+    router.drain();
+    if (c.engine == Engine.ACTOR) {
+      assertEquals(expectedSubscriptions, watcher.subscribed.get());
+      assertEquals(c.exactInterests.size(), watcher.created.get());
     }
-    system.drain(0);
-    assertEquals(c.subscribers.size(), watcher.subscribed.get());
-    assertEquals(c.exactInterests.size(), watcher.created.get());
 
     final long o = c.n - c.warmup;
     final long warmupReceived;
-    final long progressInterval = Math.max(1, o / 25);
     if (c.warmup != 0) {
       if (c.log.stages) c.log.out.format("Warming up...\n");
-      for (int i = 0; i < c.warmup; i++) {
-        for (Topic topic : c.targetTopics) {
-          publish(system, routerRef, topic);
-        }
-        if (c.log.progress && i % progressInterval == 0) c.log.printProgressBlock();
-      }
-      system.drain(0);
-      warmupReceived = c.subscribers.stream().collect(Collectors.summingLong(s -> s.received)).longValue();
+      publishAll(c, router, c.warmup, false);
+      router.drain();
+      warmupReceived = totalReceived(c);
     } else {
       warmupReceived = 0;
     }
 
     if (c.log.stages) c.log.out.format("Starting timed run...\n");
+    c.latency.reset();
     final long took = TestSupport.tookThrowing(() -> {
-      for (int i = 0; i < o; i++) {
-        for (Topic topic : c.targetTopics) {
-          publish(system, routerRef, topic);
-        }
-        if (c.log.progress && (i + c.warmup) % progressInterval == 0) c.log.printProgressBlock();
-      }
-      system.drain(0);
+      publishAll(c, router, o, true);
+      router.drain();
     });
     
-    final long totalReceived = c.subscribers.stream().collect(Collectors.summingLong(s -> s.received)).longValue();
+    final long totalReceived = totalReceived(c);
     assertEquals(c.n * c.amplification, totalReceived);
+    if (c.log.summary) c.log.out.format("%s delivery latency: p50 %,d us, p99 %,d us\n", 
+                                        c.engine, c.latency.percentile(50) / 1000, c.latency.percentile(99) / 1000);
     
     for (BenchSubscriber subscriber : c.subscribers) {
-      unsubscribe(system, routerRef, subscriber.topic, subscriber).get();
+      router.unsubscribe(subscriber.topic, subscriber);
+    }
+    if (c.engine == Engine.ACTOR) {
+      assertEquals(expectedSubscriptions, watcher.unsubscribed.get());
     }
-    assertEquals(c.subscribers.size(), watcher.unsubscribed.get());
 
-    system.shutdown();
+    router.close();
 
-    assertEquals(c.exactInterests.size(), watcher.deleted.get());
+    if (c.engine == Engine.ACTOR) {
+      assertEquals(c.exactInterests.size(), watcher.deleted.get());
+    }
     
     final Summary summary = new Summary();
     summary.timedOps = totalReceived - warmupReceived;
@@ -260,32 +459,70 @@ public final class TopicRouterBenchmark implements TestSupport {
     return summary;
   }
   
-  private static void publish(ActorSystem system, ActorRef routerRef, Topic topic) {
-    system.tell(routerRef, new Publish(topic, null));
+  private static long totalReceived(Config c) {
+    return c.subscribers.stream().collect(Collectors.summingLong(s -> s.received.get())).longValue();
   }
   
-  private static CompletableFuture<SubscribeResponse> subscribe(ActorSystem system, ActorRef routerRef, Topic topic, Subscriber subscriber) {
-    return system.ask(routerRef, new Subscribe(topic, subscriber));
-  }
-  
-  private static CompletableFuture<UnsubscribeResponse> unsubscribe(ActorSystem system, ActorRef routerRef, Topic topic, Subscriber subscriber) {
-    return system.ask(routerRef, new Unsubscribe(topic, subscriber));
+  /**
+   *  Publishes each of the target topics {@code rounds} times, spreading the topics across
+   *  {@code c.publishers} threads.
+   */
+  private static void publishAll(Config c, BenchRouter router, long rounds, boolean timestamped) throws InterruptedException {
+    final long progressInterval = Math.max(1, rounds / 25);
+    final List<Thread> threads = new ArrayList<>(c.publishers);
+    for (int p = 0; p < c.publishers; p++) {
+      final List<Topic> topics = new ArrayList<>();
+      for (int t = p; t < c.targetTopics.size(); t += c.publishers) {
+        topics.add(c.targetTopics.get(t));
+      }
+      final boolean reportProgress = p == 0 && c.log.progress;
+      threads.add(new Thread(() -> {
+        for (long i = 0; i < rounds; i++) {
+          for (Topic topic : topics) {
+            router.publish(topic, timestamped ? System.nanoTime() : null);
+          }
+          if (reportProgress && i % progressInterval == 0) c.log.printProgressBlock();
+        }
+      }, "publisher-" + p));
+    }
+    
+    for (Thread thread : threads) thread.start();
+    for (Thread thread : threads) thread.join();
   }
   
+  /**
+   *  Runs the engine comparison or, given the argument {@code matrix}, the matrix of actor
+   *  system settings.
+   */
   public static void main(String[] args) throws Exception {
-    new Config() {{
-      executorChoice = ActorSystemConfig.ExecutorChoice.AUTO;
-      n = 1000;
-      warmupFrac = .05f;
-      threads = Runtime.getRuntime().availableProcessors();
-      bias = 10;
-      topicSpec = TopicLibrary.load("cp://specs/large-all.yaml");
-      assertTopicOnDelivery = false;
-      warmupFrac = .05f;
-      log = new LogConfig() {{
-        progress = intermediateSummaries = true;
-        summary = true;
-      }};
-    }}.testPercentile(3, 5, 50, Summary::byThroughput);
+    final int cores = Runtime.getRuntime().availableProcessors();
+    if (args.length != 0 && args[0].equals("matrix")) {
+      matrix("cp://specs/large-all.yaml", 100, new int[] {1, Math.max(1, cores / 2), cores, cores * 2}, 
+             new int[] {1, 10, 100}, new int[] {0, 10_000}, true);
+      return;
+    }
+    
+    for (Engine engine : Engine.values()) {
+      for (int parallelism = 1; parallelism <= cores; parallelism *= 2) {
+        final int _parallelism = parallelism;
+        new Config() {{
+          this.engine = engine;
+          executorChoice = ActorSystemConfig.ExecutorChoice.AUTO;
+          n = 1000;
+          warmupFrac = .05f;
+          threads = cores;
+          bias = 10;
+          rootShards = _parallelism;
+          publishers = _parallelism;
+          topicSpec = TopicLibrary.load("cp://specs/large-all.yaml");
+          assertTopicOnDelivery = false;
+          warmupFrac = .05f;
+          log = new LogConfig() {{
+            progress = intermediateSummaries = true;
+            summary = true;
+          }};
+        }}.testPercentile(3, 5, 50, Summary::byThroughput);
+      }
+    }
   }
-}
\ No newline at end of file
+}
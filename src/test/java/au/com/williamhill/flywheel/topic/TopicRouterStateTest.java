@@ -0,0 +1,210 @@
+package au.com.williamhill.flywheel.topic;
+
+import static junit.framework.TestCase.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import org.junit.*;
+
+public final class TopicRouterStateTest {
+  private static final String[] FILTERS = {
+    "a", "a/#", "a/+", "a/+/c", "a/+/d", "a/+/+", "a/+/#", "a/+/c/#", "a/+/c/+", "a/+/+/d", "a/+/+/+/#"
+  };
+
+  private static final String[] EXACTS = {
+    "a", "a/b", "a/c", "a/b/c", "a/b/d", "a/x/c", "a/b/c/d", "a/b/x/d", "a/b/c/d/e", "a/b/c/d/e/f"
+  };
+
+  @Test
+  public void testAgreesWithTopicAccepts() {
+    final TopicRouterState state = new TopicRouterState(Topic.of("a"));
+    final Map<String, List<String>> received = new LinkedHashMap<>();
+    for (String filter : FILTERS) {
+      final List<String> list = new ArrayList<>();
+      received.put(filter, list);
+      assertTrue(state.subscribe(Topic.of(filter), d -> list.add(d.getPayload())));
+    }
+
+    for (String exact : EXACTS) {
+      state.deliver(Topic.of(exact), new Delivery(Topic.of(exact), exact));
+    }
+
+    for (String filter : FILTERS) {
+      final List<String> expected = new ArrayList<>();
+      for (String exact : EXACTS) {
+        if (Topic.of(filter).accepts(Topic.of(exact))) expected.add(exact);
+      }
+      assertEquals("filter " + filter, expected, received.get(filter));
+    }
+  }
+
+  @Test
+  public void testRootLevel() {
+    final TopicRouterState state = new TopicRouterState(Topic.root());
+    final List<String> ml = new ArrayList<>();
+    final List<String> sl = new ArrayList<>();
+    final List<String> xb = new ArrayList<>();
+    state.subscribe(Topic.of("#"), d -> ml.add(d.getPayload()));
+    state.subscribe(Topic.of("+"), d -> sl.add(d.getPayload()));
+    state.subscribe(Topic.of("+/b"), d -> xb.add(d.getPayload()));
+    for (String exact : new String[] {"a", "a/b", "c/b", "c/d"}) {
+      state.deliver(Topic.of(exact), new Delivery(Topic.of(exact), exact));
+    }
+    assertEquals(Arrays.asList("a", "a/b", "c/b", "c/d"), ml);
+    assertEquals(Arrays.asList("a"), sl);
+    assertEquals(Arrays.asList("a/b", "c/b"), xb);
+  }
+
+  @Test
+  public void testSubscribeUnsubscribe() {
+    final TopicRouterState state = new TopicRouterState(Topic.of("a"));
+    final List<String> list = new ArrayList<>();
+    final Subscriber sub = d -> list.add(d.getPayload());
+    assertFalse(state.hasSubscribers());
+
+    for (String filter : FILTERS) {
+      assertTrue(state.subscribe(Topic.of(filter), sub));
+      assertFalse(state.subscribe(Topic.of(filter), sub));
+    }
+    assertTrue(state.hasSubscribers());
+
+    for (String filter : FILTERS) {
+      assertTrue(state.unsubscribe(Topic.of(filter), sub));
+      assertFalse(state.unsubscribe(Topic.of(filter), sub));
+    }
+    assertFalse(state.hasSubscribers());
+    assertFalse(state.unsubscribe(Topic.of("a/+/x/+"), sub));
+
+    for (String exact : EXACTS) {
+      state.deliver(Topic.of(exact), new Delivery(Topic.of(exact), exact));
+    }
+    assertEquals(0, list.size());
+  }
+
+  @Test
+  public void testFanOutPreservesOrder() throws InterruptedException {
+    final FanOut fanOut = new FanOut(4, 100);
+    final TopicRouterState state = new TopicRouterState(Topic.of("a"), fanOut);
+    final List<Subscriber> subs = new ArrayList<>();
+    final List<List<Integer>> received = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      final List<Integer> list = new ArrayList<>();
+      received.add(list);
+      final Subscriber sub = d -> list.add(d.getPayload());
+      subs.add(sub);
+      state.subscribe(Topic.of("a"), sub);
+      state.subscribe(Topic.of(i % 2 == 0 ? "a/+" : "a/#"), sub);
+    }
+
+    final int publishes = 200;
+    for (int p = 0; p < publishes; p++) {
+      if (p == publishes / 2) {
+        // drop below the threshold, forcing a switch back to delivering on the calling thread
+        for (int i = 10; i < subs.size(); i++) {
+          state.unsubscribe(Topic.of("a"), subs.get(i));
+          state.unsubscribe(Topic.of(i % 2 == 0 ? "a/+" : "a/#"), subs.get(i));
+        }
+      }
+      final Topic topic = Topic.of(p % 2 == 0 ? "a" : "a/b");
+      state.deliver(topic, new Delivery(topic, p));
+    }
+    fanOut.close();
+
+    for (int i = 0; i < subs.size(); i++) {
+      final List<Integer> list = received.get(i);
+      final int expected = i < 10 ? publishes : publishes / 2;
+      assertEquals("subscriber " + i, expected, list.size());
+      for (int p = 0; p < list.size(); p++) {
+        assertEquals(p, (int) list.get(p));
+      }
+    }
+  }
+
+  @Test
+  public void testFanOutPreservesOrderAcrossLevels() throws InterruptedException {
+    final FanOut fanOut = new FanOut(1, 2);
+    final TopicRouterState hot = new TopicRouterState(Topic.of("a"), fanOut);
+    final TopicRouterState cold = new TopicRouterState(Topic.of("a/b"), fanOut);
+    final List<Integer> received = Collections.synchronizedList(new ArrayList<>());
+    final Subscriber slow = d -> {
+      try {
+        Thread.sleep(1);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    };
+    final Subscriber sub = d -> received.add(d.getPayload());
+    hot.subscribe(Topic.of("a/#"), slow);
+    hot.subscribe(Topic.of("a/#"), sub);
+    cold.subscribe(Topic.of("a/b"), sub);
+
+    // even publishes are fanned out at the hot level; odd ones match only one subscriber
+    // at the cold level, but must still queue behind the fanned-out ones
+    final int publishes = 20;
+    for (int p = 0; p < publishes; p++) {
+      final TopicRouterState state = p % 2 == 0 ? hot : cold;
+      final Topic topic = Topic.of(p % 2 == 0 ? "a/x" : "a/b");
+      state.deliver(topic, new Delivery(topic, p));
+    }
+    fanOut.close();
+
+    assertEquals(publishes, received.size());
+    for (int p = 0; p < publishes; p++) {
+      assertEquals(p, (int) received.get(p));
+    }
+  }
+
+  @Test
+  public void testFanOutSplitsComposite() throws InterruptedException {
+    final FanOut fanOut = new FanOut(4, 100);
+    final TopicRouterState state = new TopicRouterState(Topic.of("a"), fanOut);
+    final Map<Subscriber, List<Integer>> received = new ConcurrentHashMap<>();
+    final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    final List<Subscriber> members = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      final List<Integer> list = new ArrayList<>();
+      final Subscriber member = d -> {
+        threads.add(Thread.currentThread());
+        list.add(d.getPayload());
+      };
+      received.put(member, list);
+      members.add(member);
+    }
+    final CompositeSubscriber composite = new CompositeSubscriber() {
+      @Override public void accept(Delivery delivery) {
+        for (Subscriber member : members) member.accept(delivery);
+      }
+
+      @Override public int size() {
+        return members.size();
+      }
+
+      @Override public Subscriber[][] toLanes(int lanes) {
+        final List<List<Subscriber>> byLane = new ArrayList<>();
+        for (int lane = 0; lane < lanes; lane++) byLane.add(new ArrayList<>());
+        for (Subscriber member : members) byLane.get(FanOut.laneOf(member, lanes)).add(member);
+        final Subscriber[][] split = new Subscriber[lanes][];
+        for (int lane = 0; lane < lanes; lane++) split[lane] = byLane.get(lane).toArray(new Subscriber[0]);
+        return split;
+      }
+    };
+
+    // a single composite subscription still crosses the threshold, by virtue of its members
+    state.subscribe(Topic.of("a"), composite);
+    final int publishes = 10;
+    for (int p = 0; p < publishes; p++) {
+      state.deliver(Topic.of("a"), new Delivery(Topic.of("a"), p));
+    }
+    fanOut.close();
+
+    assertFalse(threads.contains(Thread.currentThread()));
+    assertTrue(threads.size() > 1);
+    for (List<Integer> list : received.values()) {
+      assertEquals(publishes, list.size());
+      for (int p = 0; p < list.size(); p++) {
+        assertEquals(p, (int) list.get(p));
+      }
+    }
+  }
+}
@@ -6,22 +6,21 @@ import static org.mockito.Mockito.*;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.*;
 
 import org.junit.*;
+import org.mockito.*;
 
 import com.obsidiandynamics.indigo.*;
 import com.obsidiandynamics.indigo.util.*;
 
 import au.com.williamhill.flywheel.util.*;
 
-public final class TopicRouterTest implements TestSupport {
+public final class TopicRouterTest extends AbstractRoutingTest implements TestSupport {
   private ActorSystem system;
   
-  private TopicWatcher topicWatcher;
-  
-  @Before
-  public void setup() {
-    topicWatcher = mock(TopicWatcher.class);
+  @Override
+  protected void init() {
     system = ActorSystem.create()
     .on(TopicRouter.ROLE).cue(() -> new TopicRouter(new TopicConfig() {{
       topicWatcher = InterceptingProxy.of(TopicRouterTest.this.topicWatcher, new LoggingInterceptor<>());
@@ -34,397 +33,150 @@ public final class TopicRouterTest implements TestSupport {
   }
   
   @Test
-  public void testNonInterfering() throws InterruptedException, ExecutionException {
-    final List<Delivery> aList = new ArrayList<>();
-    final List<Delivery> bList = new ArrayList<>();
-    subscribe("a", aList::add);
-    subscribe("b", bList::add);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("b")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("b")), notNull());
-    });
-    publish("a", "hello").get();
-    publish("b", "barev").get();
-    assertEquals(1, aList.size());
-    assertEquals(1, bList.size());
-    assertEquals("hello", aList.get(0).getPayload());
-    assertEquals("barev", bList.get(0).getPayload());
-  }
-  
-  @Test
-  public void testMultipleSubscribers() throws InterruptedException, ExecutionException {
-    final List<Delivery> a1List = new ArrayList<>();
-    final List<Delivery> a2List = new ArrayList<>();
-    subscribe("a", a1List::add);
-    subscribe("a", a2List::add);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher, times(2)).subscribed(notNull(), eq(Topic.of("a")), notNull());
-    });
-    publish("a", "hello").get();
-    assertEquals(1, a1List.size());
-    assertEquals(1, a2List.size());
-    assertEquals("hello", a1List.get(0).getPayload());
-    assertEquals("hello", a2List.get(0).getPayload());
-  }
-  
-  @Test
-  public void testDuplicateSubscribers() throws InterruptedException, ExecutionException {
-    final List<Delivery> aList = new ArrayList<>();
-    final Subscriber sub = aList::add;
-    subscribe("a", sub);
-    subscribe("a", sub);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a")), notNull());
-    });
-    publish("a", "hello").get();
-    assertEquals(1, aList.size());
-    assertEquals("hello", aList.get(0).getPayload());
-  }
-  
-  @Test
-  public void testNoSubscribers() {
-    publish("a", "hello");
-  }
-  
-  @Test
-  public void testHierarchyBasic() throws InterruptedException, ExecutionException {
-    final List<Delivery> aList = new ArrayList<>();
-    final List<Delivery> abList = new ArrayList<>();
-    final List<Delivery> abcList = new ArrayList<>();
-    subscribe("a", aList::add);
-    subscribe("a/b", abList::add);
-    subscribe("a/b/c", abcList::add);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b/c")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b/c")), notNull());
-    });
-    publish("a", "hello").get();
-    publish("a/b", "barev").get();
-    publish("a/b/c", "ciao").get();
-    assertEquals(1, aList.size());
-    assertEquals(1, abList.size());
-    assertEquals(1, abcList.size());
-    assertEquals("hello", aList.get(0).getPayload());
-    assertEquals("barev", abList.get(0).getPayload());
-    assertEquals("ciao", abcList.get(0).getPayload());
-  }
-  
-  @Test
-  public void testHierarchyMultiLevelWildcard() throws InterruptedException, ExecutionException {
+  public void testShardedRoots() throws InterruptedException, ExecutionException {
+    system.shutdownSilently();
+    final RootShards shards = new RootShards(4);
+    system = ActorSystem.create()
+    .on(TopicRouter.ROLE).cue(() -> new TopicRouter(new TopicConfig()
+                                                    .withRootShards(shards.count())
+                                                    .withTopicWatcher(topicWatcher)));
+    
     final List<Delivery> xList = new ArrayList<>();
+    final List<Delivery> xbList = new ArrayList<>();
     final List<Delivery> abList = new ArrayList<>();
-    final List<Delivery> axList = new ArrayList<>();
-    final List<Delivery> cList = new ArrayList<>();
-    final List<Delivery> cxList = new ArrayList<>();
-    subscribe("#", xList::add);
-    subscribe("a/b", abList::add);
-    subscribe("a/#", axList::add);
-    subscribe("c", cList::add);
-    subscribe("c/#", cxList::add);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("#")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/#")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("c")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c/#")), notNull());
-    });
-    publish("a", "hello").get();
-    publish("a/b", "barev").get();
-    publish("c", "ciao").get();
-    publish("c/p", "privet").get();
-    publish("c/p/b", "privet vsem").get();
+    final List<Delivery> cdList = new ArrayList<>();
+    final Map<String, Subscriber> subscribers = new LinkedHashMap<>();
+    subscribers.put("#", xList::add);
+    subscribers.put("+/b", xbList::add);
+    subscribers.put("a/b", abList::add);
+    subscribers.put("c/d", cdList::add);
+    for (Map.Entry<String, Subscriber> entry : subscribers.entrySet()) {
+      askAll(shards.routersFor(Topic.of(entry.getKey())), new Subscribe(Topic.of(entry.getKey()), entry.getValue()));
+    }
+    verify(topicWatcher, times(shards.count())).subscribed(notNull(), eq(Topic.of("#")), notNull());
+    verify(topicWatcher, times(shards.count())).subscribed(notNull(), eq(Topic.of("+/b")), notNull());
+    verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
+    verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c/d")), notNull());
+
+    for (String topic : new String[] {"a", "a/b", "c/b", "c/d", "x/y/z"}) {
+      final Topic exact = Topic.of(topic);
+      system.ask(shards.routerFor(exact), new Publish(exact, topic)).get();
+    }
+    system.drain(0);
     assertEquals(5, xList.size());
+    assertEquals(2, xbList.size());
     assertEquals(1, abList.size());
-    assertEquals(1, abList.size());
-    assertEquals(1, axList.size());
-    assertEquals(1, cList.size());
-    assertEquals(2, cxList.size());
-    assertEquals("hello", xList.get(0).getPayload());
-    assertEquals("barev", xList.get(1).getPayload());
-    assertEquals("ciao", xList.get(2).getPayload());
-    assertEquals("privet", xList.get(3).getPayload());
-    assertEquals("privet vsem", xList.get(4).getPayload());
-    assertEquals("barev", abList.get(0).getPayload());
-    assertEquals("barev", axList.get(0).getPayload());
-    assertEquals("ciao", cList.get(0).getPayload());
-    assertEquals("privet", cxList.get(0).getPayload());
-    assertEquals("privet vsem", cxList.get(1).getPayload());
-  }
-  
-  @Test
-  public void testHierarchySingleLevelWildcard() throws InterruptedException, ExecutionException {
-    final List<Delivery> xList = new ArrayList<>();
-    final List<Delivery> abList = new ArrayList<>();
-    final List<Delivery> xbList = new ArrayList<>();
-    final List<Delivery> xcList = new ArrayList<>();
-    final List<Delivery> axList = new ArrayList<>();
-    final List<Delivery> xxList = new ArrayList<>();
-    subscribe("+", xList::add);
-    subscribe("a/b", abList::add);
-    subscribe("+/b", xbList::add);
-    subscribe("+/c", xcList::add);
-    subscribe("a/+", axList::add);
-    subscribe("+/+", xxList::add);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/b")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/c")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/+")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/+")), notNull());
-    });
-    publish("a", "hello").get();
-    publish("a/b", "barev").get();
-    publish("a/c", "ciao").get();
-    assertEquals(1, xList.size());
-    assertEquals(1, abList.size());
-    assertEquals(1, xbList.size());
-    assertEquals(1, xcList.size());
-    assertEquals(2, axList.size());
-    assertEquals(2, xxList.size());
-    assertEquals("hello", xList.get(0).getPayload());
-    assertEquals("barev", abList.get(0).getPayload());
-    assertEquals("barev", xbList.get(0).getPayload());
-    assertEquals("ciao", xcList.get(0).getPayload());
-    assertEquals("barev", axList.get(0).getPayload());
-    assertEquals("ciao", axList.get(1).getPayload());
-    assertEquals("barev", xxList.get(0).getPayload());
-    assertEquals("ciao", xxList.get(1).getPayload());
-  }
-  
-  @Test
-  public void testHierarchyUnsubscribeBottomUp() throws InterruptedException, ExecutionException {
-    final List<Delivery> list = new ArrayList<>();
-    final Subscriber sub = list::add;
-    subscribe("a0", sub);
-    subscribe("a1", sub);
-    subscribe("a0/b0", sub);
-    subscribe("a0/b1", sub);
-    subscribe("a0/b0/c0", sub);
-    
-    publishSelf("a0").get();
-    publishSelf("a1").get();
-    publishSelf("a0/b0").get();
-    publishSelf("a0/b1").get();
-    publishSelf("a0/b0/c0").get();
-    assertEquals(5, list.size());
-    assertEquals(5, new HashSet<>(list).size());
-    
-    unsubscribe("a0/b0/c0", sub);
-    unsubscribe("a0/b1", sub);
-    unsubscribe("a0/b0", sub);
-    unsubscribe("a1", sub);
-    unsubscribe("a0", sub);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a1")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a1")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b1")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0/c0")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0/c0")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b1")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a1")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a1")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0")));
-    });
-    
-    list.clear();
-    publishSelf("a0").get();
-    publishSelf("a1").get();
-    publishSelf("a0/b0").get();
-    publishSelf("a0/b1").get();
-    publishSelf("a0/b0/c0").get();
-    assertEquals(0, list.size());
+    assertEquals(1, cdList.size());
+
+    for (Map.Entry<String, Subscriber> entry : subscribers.entrySet()) {
+      askAll(shards.routersFor(Topic.of(entry.getKey())), new Unsubscribe(Topic.of(entry.getKey()), entry.getValue()));
+    }
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("c/d")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("c")));
   }
   
   @Test
-  public void testHierarchyUnsubscribeTopDown() throws InterruptedException, ExecutionException {
+  public void testBatch() throws InterruptedException, ExecutionException {
     final List<Delivery> list = new ArrayList<>();
     final Subscriber sub = list::add;
-    subscribe("a0", sub);
-    subscribe("a1", sub);
-    subscribe("a0/b0", sub);
-    subscribe("a0/b1", sub);
-    subscribe("a0/b0/c0", sub);
+    final String[] topics = {"a", "a/b", "a/c", "a/b/c", "+/b", "a/#", "d/e"};
+    final List<Subscribe> subscribes = new ArrayList<>();
+    for (String topic : topics) subscribes.add(new Subscribe(Topic.of(topic), sub));
+    system.ask(ActorRef.of(TopicRouter.ROLE), new BatchSubscribe(subscribes)).get();
+    system.drain(0);
+    for (String topic : topics) {
+      verify(topicWatcher).subscribed(notNull(), eq(Topic.of(topic)), notNull());
+    }
+    verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
+    verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
+    verify(topicWatcher).created(notNull(), eq(Topic.of("a/b/c")));
     
-    publishSelf("a0").get();
-    publishSelf("a1").get();
-    publishSelf("a0/b0").get();
-    publishSelf("a0/b1").get();
-    publishSelf("a0/b0/c0").get();
-    assertEquals(5, list.size());
-    assertEquals(5, new HashSet<>(list).size());
+    publishSelf("a");
+    publishSelf("a/b");
+    publishSelf("a/b/c");
+    publishSelf("d/e");
+    system.drain(0);
+    assertEquals(7, list.size());
     
-    unsubscribe("a0", sub);
-    unsubscribe("a1", sub);
-    unsubscribe("a0/b0", sub);
-    unsubscribe("a0/b1", sub);
-    unsubscribe("a0/b0/c0", sub);
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a1")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a1")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b1")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a0/b0/c0")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a1")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a1")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b1")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b1")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a0/b0/c0")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0/c0")));
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0/b0")));
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a0")));
-    });
+    final List<Unsubscribe> unsubscribes = new ArrayList<>();
+    for (String topic : topics) unsubscribes.add(new Unsubscribe(Topic.of(topic), sub));
+    system.ask(ActorRef.of(TopicRouter.ROLE), new BatchUnsubscribe(unsubscribes)).get();
+    system.drain(0);
+    for (String topic : topics) {
+      verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of(topic)), notNull());
+    }
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b/c")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("d")));
     
     list.clear();
-    publishSelf("a0").get();
-    publishSelf("a1").get();
-    publishSelf("a0/b0").get();
-    publishSelf("a0/b1").get();
-    publishSelf("a0/b0/c0").get();
+    publishSelf("a/b/c");
+    system.drain(0);
     assertEquals(0, list.size());
   }
   
   @Test
-  public void testHierarchyUnsubscribeMultiLevelWildcard() throws InterruptedException, ExecutionException {
-    final List<Delivery> list = new ArrayList<>();
-    final Subscriber sub = list::add;
-    subscribe("#", sub);
-    subscribe("a/b", sub);
-    subscribe("a/#", sub);
-    subscribe("c", sub);
-    subscribe("c/#", sub);
-    
-    publishSelf("a").get();
-    assertEquals(1, list.size());
-    publishSelf("a/b").get();
-    assertEquals(4, list.size());
-    publishSelf("c").get();
-    assertEquals(6, list.size());
-    publishSelf("c/d").get();
-    assertEquals(8, list.size());
-    
-    unsubscribe("#", sub);
-    unsubscribe("a/b", sub);
-    unsubscribe("a/#", sub);
-    unsubscribe("c", sub);
-    unsubscribe("c/#", sub);
+  public void testLinger() throws InterruptedException, ExecutionException {
+    system.shutdownSilently();
+    final CountingTopicWatcher counter = new CountingTopicWatcher(topicWatcher);
+    system = ActorSystem.create()
+    .on(TopicRouter.ROLE).cue(() -> new TopicRouter(new TopicConfig()
+                                                    .withLingerMillis(200)
+                                                    .withTopicWatcher(counter)));
     
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("#")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/#")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("c")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("c/#")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("#")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/#")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("c")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("c/#")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("c")));
-    });
+    final Subscriber sub = d -> {};
+    for (int i = 0; i < 5; i++) {
+      subscribe("a/b", sub);
+      unsubscribe("a/b", sub);
+    }
+    assertEquals(2, counter.getCreated());
+    assertEquals(0, counter.getDeleted());
+    assertEquals(5, counter.getSubscribed());
+    assertEquals(5, counter.getUnsubscribed());
     
-    list.clear();
-    publishSelf("a").get();
-    publishSelf("a/b").get();
-    publishSelf("c").get();
-    publishSelf("c/d").get();
-    assertEquals(0, list.size());
+    Thread.sleep(1_000);
+    system.drain(0);
+    assertEquals(2, counter.getDeleted());
+    assertEquals(0, counter.getLive());
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
+    verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
   }
   
-  @Test
-  public void testHierarchyUnsubscribeSingleLevelWildcard() throws InterruptedException, ExecutionException {
-    final List<Delivery> list = new ArrayList<>();
-    final Subscriber sub = list::add;
-    subscribe("+", sub);
-    subscribe("a/b", sub);
-    subscribe("+/b", sub);
-    subscribe("+/c", sub);
-    subscribe("a/+", sub);
-    subscribe("+/+", sub);
-
-    unsubscribe("+", sub);
-    unsubscribe("a/b", sub);
-    unsubscribe("+/b", sub);
-    unsubscribe("+/c", sub);
-    unsubscribe("a/+", sub);
-    unsubscribe("+/+", sub);
-    
-    Ordered.of(topicWatcher, inOrder -> {
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+")), notNull());
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).created(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/b")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/c")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("a/+")), notNull());
-      inOrder.verify(topicWatcher).subscribed(notNull(), eq(Topic.of("+/+")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/b")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a/b")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+/b")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+/c")), notNull());
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("a/+")), notNull());
-      inOrder.verify(topicWatcher).deleted(notNull(), eq(Topic.of("a")));
-      inOrder.verify(topicWatcher).unsubscribed(notNull(), eq(Topic.of("+/+")), notNull());
-    });
-    
-    publishSelf("a").get();
-    publishSelf("a/b").get();
-    publishSelf("a/c").get();
-    assertEquals(0, list.size());
+  private void askAll(ActorRef[] refs, Object body) throws InterruptedException, ExecutionException {
+    for (ActorRef ref : refs) {
+      system.ask(ref, body).get();
+    }
+    system.drain(0);
   }
   
-  private void subscribe(String topic, Subscriber subscriber) throws InterruptedException, ExecutionException {
+  @Override
+  protected void subscribe(String topic, Subscriber subscriber) throws InterruptedException, ExecutionException {
     final CompletableFuture<?> f = system.ask(ActorRef.of(TopicRouter.ROLE), new Subscribe(Topic.of(topic), subscriber));
     f.get();
     system.drain(0);
   }
   
-  private void unsubscribe(String topic, Subscriber subscriber) throws InterruptedException, ExecutionException {
+  @Override
+  protected void unsubscribe(String topic, Subscriber subscriber) throws InterruptedException, ExecutionException {
     final CompletableFuture<?> f =  system.ask(ActorRef.of(TopicRouter.ROLE), new Unsubscribe(Topic.of(topic), subscriber));
     f.get();
     system.drain(0);
   }
   
-  private CompletableFuture<PublishResponse> publishSelf(String topic) {
-    return publish(topic, topic);
+  @Override
+  protected void publish(String topic, Object payload) throws InterruptedException, ExecutionException {
+    system.ask(ActorRef.of(TopicRouter.ROLE), new Publish(Topic.of(topic), payload)).get();
+  }
+  
+  private void publishSelf(String topic) throws InterruptedException, ExecutionException {
+    publish(topic, topic);
   }
   
-  private CompletableFuture<PublishResponse> publish(String topic, Object payload) {
-    return system.ask(ActorRef.of(TopicRouter.ROLE), new Publish(Topic.of(topic), payload));
+  @Override
+  protected void verifyWatched(Consumer<InOrder> verification) {
+    Ordered.of(topicWatcher, verification);
   }
 }
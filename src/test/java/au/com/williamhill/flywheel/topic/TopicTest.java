@@ -30,6 +30,37 @@ public final class TopicTest {
     }
   }
   
+  @Test
+  public void testCovers() {
+    assertTrue(Topic.of("a").covers(Topic.of("a")));
+    assertTrue(Topic.of("#").covers(Topic.of("a/b")));
+    assertTrue(Topic.of("#").covers(Topic.of("+/#")));
+    assertTrue(Topic.of("a/#").covers(Topic.of("a/b")));
+    assertTrue(Topic.of("a/#").covers(Topic.of("a/+/c")));
+    assertTrue(Topic.of("a/#").covers(Topic.of("a/b/#")));
+    assertTrue(Topic.of("a/+").covers(Topic.of("a/b")));
+    assertTrue(Topic.of("+/+").covers(Topic.of("a/+")));
+    assertFalse(Topic.of("a/#").covers(Topic.of("a")));
+    assertFalse(Topic.of("a/#").covers(Topic.of("b/c")));
+    assertFalse(Topic.of("a/b").covers(Topic.of("a/+")));
+    assertFalse(Topic.of("a/+").covers(Topic.of("a/#")));
+    assertFalse(Topic.of("a/+").covers(Topic.of("a/b/c")));
+    assertFalse(Topic.of("a/b/c").covers(Topic.of("a/b")));
+    assertFalse(Topic.of("+/#").covers(Topic.of("#")));
+  }
+  
+  @Test
+  public void testIntersects() {
+    assertTrue(Topic.of("a/b").intersects(Topic.of("a/b")));
+    assertTrue(Topic.of("a/#").intersects(Topic.of("+/b")));
+    assertTrue(Topic.of("+/b").intersects(Topic.of("a/+")));
+    assertTrue(Topic.of("#").intersects(Topic.of("a")));
+    assertFalse(Topic.of("a/#").intersects(Topic.of("a")));
+    assertFalse(Topic.of("a/+").intersects(Topic.of("b/+")));
+    assertFalse(Topic.of("a/+").intersects(Topic.of("a/b/c")));
+    assertFalse(Topic.of("rx/123").intersects(Topic.of("rx/123/#")));
+  }
+  
   @Test
   public void testParts() {
     assertArrayEquals(new String[]{"a", "b o b", "c"}, Topic.of("a/b o b/c").getParts());
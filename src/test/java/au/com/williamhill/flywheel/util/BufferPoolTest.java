@@ -0,0 +1,71 @@
+package au.com.williamhill.flywheel.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public final class BufferPoolTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testNonPowerOfTwo() {
+    new BufferPool(false, 100, 1024, 1);
+  }
+
+  @Test
+  public void testSizeClasses() {
+    final BufferPool pool = new BufferPool(false, 16, 64, 4);
+    assertEquals(16, pool.acquire(1).buffer().capacity());
+    assertEquals(16, pool.acquire(16).buffer().capacity());
+    assertEquals(32, pool.acquire(17).buffer().capacity());
+    assertEquals(64, pool.acquire(64).buffer().capacity());
+    assertEquals(65, pool.acquire(65).buffer().capacity());
+    assertEquals(1, pool.getOversized());
+
+    final PooledBuffer buffer = pool.acquire(20);
+    assertEquals(0, buffer.buffer().position());
+    assertEquals(20, buffer.buffer().limit());
+  }
+
+  @Test
+  public void testReuse() {
+    final BufferPool pool = new BufferPool(true, 16, 64, 1);
+    final PooledBuffer first = pool.acquire(30);
+    assertTrue(first.buffer().isDirect());
+    first.release();
+    assertEquals(1, pool.getIdle());
+
+    final PooledBuffer second = pool.acquire(20);
+    assertSame(first.buffer(), second.buffer());
+    assertEquals(20, second.buffer().limit());
+    assertEquals(1, pool.getAllocations());
+    assertEquals(2, pool.getAcquisitions());
+
+    // only one buffer per class is retained
+    final PooledBuffer third = pool.acquire(20);
+    second.release();
+    third.release();
+    assertEquals(1, pool.getIdle());
+  }
+
+  @Test
+  public void testRefCount() {
+    final BufferPool pool = new BufferPool();
+    final PooledBuffer buffer = pool.acquire(10);
+    assertEquals(1, buffer.refCount());
+    assertTrue(buffer.retain());
+    assertEquals(2, buffer.refCount());
+
+    buffer.release();
+    assertEquals(0, pool.getIdle());
+    buffer.release();
+    assertEquals(1, pool.getIdle());
+    assertEquals(0, buffer.refCount());
+    assertFalse(buffer.retain());
+  }
+
+  @Test(expected=IllegalStateException.class)
+  public void testOverRelease() {
+    final PooledBuffer buffer = new BufferPool().acquire(10);
+    buffer.release();
+    buffer.release();
+  }
+}
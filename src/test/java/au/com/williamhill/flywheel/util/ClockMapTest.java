@@ -0,0 +1,40 @@
+package au.com.williamhill.flywheel.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.*;
+
+public final class ClockMapTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testZeroCapacity() {
+    new ClockMap<>(0);
+  }
+
+  @Test
+  public void testAdmitKeepsExisting() {
+    final ClockMap<String, Integer> map = new ClockMap<>(4);
+    assertNull(map.get("a"));
+    assertEquals(Integer.valueOf(1), map.admit("a", 1));
+    assertEquals(Integer.valueOf(1), map.admit("a", 2));
+    assertEquals(Integer.valueOf(1), map.get("a"));
+    assertEquals(1, map.size());
+    assertEquals(4, map.capacity());
+  }
+
+  @Test
+  public void testSecondChance() {
+    final ClockMap<String, Integer> map = new ClockMap<>(3);
+    map.admit("a", 1);
+    map.admit("b", 2);
+    map.admit("c", 3);
+    map.get("a");
+    map.admit("d", 4); // 'a' was referenced, so 'b' is evicted
+
+    assertEquals(Integer.valueOf(1), map.get("a"));
+    assertNull(map.get("b"));
+    assertEquals(Integer.valueOf(3), map.get("c"));
+    assertEquals(Integer.valueOf(4), map.get("d"));
+    assertEquals(3, map.size());
+    assertEquals(1, map.getEvictions());
+  }
+}
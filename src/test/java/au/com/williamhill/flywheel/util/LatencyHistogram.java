@@ -0,0 +1,69 @@
+package au.com.williamhill.flywheel.util;
+
+import java.util.concurrent.atomic.*;
+
+/**
+ *  A lock-free histogram of latency samples (in nanoseconds), using log-linear buckets with a
+ *  relative error of roughly 3%. Samples may be recorded concurrently from any number of threads.
+ */
+public final class LatencyHistogram {
+  private static final int LINEAR_BUCKETS = 64;
+
+  private static final int SUB_BUCKET_BITS = 5;
+
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  private static final int GROUPS = 63 - SUB_BUCKET_BITS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(LINEAR_BUCKETS + GROUPS * SUB_BUCKETS);
+
+  private final AtomicLong total = new AtomicLong();
+
+  private static int indexOf(long nanos) {
+    if (nanos < LINEAR_BUCKETS) return (int) Math.max(0, nanos);
+    final int group = 63 - Long.numberOfLeadingZeros(nanos) - SUB_BUCKET_BITS;
+    final int sub = (int) (nanos >>> group) - SUB_BUCKETS;
+    return LINEAR_BUCKETS + (group - 1) * SUB_BUCKETS + sub;
+  }
+
+  private static long upperBoundOf(int index) {
+    if (index < LINEAR_BUCKETS) return index;
+    final int group = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+    final int sub = (index - LINEAR_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + sub + 1) << group) - 1;
+  }
+
+  public void record(long nanos) {
+    counts.incrementAndGet(indexOf(nanos));
+    total.incrementAndGet();
+  }
+
+  public long count() {
+    return total.get();
+  }
+
+  /**
+   *  Obtains the (approximate) value at the given percentile.
+   *
+   *  @param percentile The percentile, in the range (0, 100].
+   *  @return The latency in nanoseconds, or 0 if no samples were recorded.
+   */
+  public long percentile(double percentile) {
+    final long samples = total.get();
+    if (samples == 0) return 0;
+    final long target = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+    long cumulative = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      cumulative += counts.get(i);
+      if (cumulative >= target) return upperBoundOf(i);
+    }
+    return upperBoundOf(counts.length() - 1);
+  }
+
+  public void reset() {
+    for (int i = 0; i < counts.length(); i++) {
+      counts.set(i, 0);
+    }
+    total.set(0);
+  }
+}
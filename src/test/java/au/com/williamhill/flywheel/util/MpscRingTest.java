@@ -0,0 +1,84 @@
+package au.com.williamhill.flywheel.util;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.*;
+
+public final class MpscRingTest {
+  @Test(expected=IllegalArgumentException.class)
+  public void testNonPowerOfTwo() {
+    new MpscRing<>(6);
+  }
+
+  @Test
+  public void testOrderAndCapacity() {
+    final MpscRing<Integer> ring = new MpscRing<>(4);
+    assertEquals(4, ring.capacity());
+    assertNull(ring.poll());
+
+    for (int round = 0; round < 3; round++) {
+      for (int i = 0; i < 4; i++) {
+        assertTrue(ring.offer(i));
+      }
+      assertFalse(ring.offer(4));
+
+      for (int i = 0; i < 4; i++) {
+        assertEquals(Integer.valueOf(i), ring.poll());
+      }
+      assertNull(ring.poll());
+    }
+  }
+
+  @Test
+  public void testTakeTimeout() {
+    final MpscRing<Integer> ring = new MpscRing<>(2);
+    assertNull(ring.take(1_000_000L));
+  }
+
+  @Test
+  public void testPutByConsumerWhenFull() {
+    final MpscRing<Integer> ring = new MpscRing<>(2);
+    assertNull(ring.poll());
+    ring.put(0);
+    ring.put(1);
+    try {
+      ring.put(2);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException e) {}
+    assertEquals(Integer.valueOf(0), ring.poll());
+  }
+
+  @Test
+  public void testMultipleProducers() throws InterruptedException {
+    final int producers = 4;
+    final int perProducer = 100_000;
+    final MpscRing<long[]> ring = new MpscRing<>(64);
+
+    final List<Thread> threads = new ArrayList<>(producers);
+    for (int p = 0; p < producers; p++) {
+      final int producer = p;
+      final Thread thread = new Thread(() -> {
+        for (int i = 0; i < perProducer; i++) {
+          ring.put(new long[] {producer, i});
+        }
+      });
+      threads.add(thread);
+      thread.start();
+    }
+
+    final int[] next = new int[producers];
+    for (int received = 0; received < producers * perProducer; received++) {
+      long[] element;
+      while ((element = ring.take(10_000_000L)) == null);
+      final int producer = (int) element[0];
+      assertEquals(next[producer]++, element[1]);
+    }
+    assertNull(ring.poll());
+
+    for (Thread thread : threads) {
+      thread.join();
+    }
+  }
+}
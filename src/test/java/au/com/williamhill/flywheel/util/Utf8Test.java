@@ -0,0 +1,24 @@
+package au.com.williamhill.flywheel.util;
+
+import static org.junit.Assert.*;
+
+import java.nio.charset.*;
+
+import org.junit.*;
+
+import com.obsidiandynamics.assertion.*;
+
+public final class Utf8Test {
+  @Test
+  public void testConformance() throws Exception {
+    Assertions.assertUtilityClassWellDefined(Utf8.class);
+  }
+
+  @Test
+  public void testLength() {
+    for (String str : new String[] {"", "abc", "caf\u00e9", "\u20ac100", "\ud83d\ude00!", "x\ud83dy", "\udc00"}) {
+      assertEquals(str, str.getBytes(StandardCharsets.UTF_8).length, Utf8.length(str));
+      assertEquals(str, str.getBytes(StandardCharsets.UTF_8).length, Utf8.length(new StringBuilder(str)));
+    }
+  }
+}
@@ -23,6 +23,12 @@ public final class ConfigLauncher implements Launcher  {
   @YInject
   private XServerConfig serverConfig = new XServerConfig();
   
+  @YInject
+  private Interchange interchange;
+  
+  @YInject
+  private OutboundConfig outboundConfig = new OutboundConfig();
+  
   @YInject(type=PubAuthChain.class)
   private AuthChain<PubAuthChain> pubAuthChain = new PubAuthChain();
   
@@ -44,6 +50,16 @@ public final class ConfigLauncher implements Launcher  {
     return this;
   }
   
+  public ConfigLauncher withInterchange(Interchange interchange) {
+    this.interchange = interchange;
+    return this;
+  }
+  
+  public ConfigLauncher withOutboundConfig(OutboundConfig outboundConfig) {
+    this.outboundConfig = outboundConfig;
+    return this;
+  }
+  
   public ConfigLauncher withPubAuthChain(AuthChain<PubAuthChain> pubAuthChain) {
     this.pubAuthChain = pubAuthChain;
     return this;
@@ -68,6 +84,8 @@ public final class ConfigLauncher implements Launcher  {
     final StringBuilder sb = new StringBuilder();
     sb.append("\n  Args: ").append(Arrays.toString(args));
     sb.append("\n  Backplane: ").append(backplane);
+    sb.append("\n  Interchange: ").append(interchange != null ? interchange : "<default>");
+    sb.append("\n  Outbound config: ").append(outboundConfig);
     
     sb.append("\n  Server config:")
     .append("\n    port: ").append(serverConfig.port)
@@ -101,6 +119,8 @@ public final class ConfigLauncher implements Launcher  {
     return EdgeNode.builder()
         .withServerConfig(serverConfig)
         .withBackplane(backplane)
+        .withInterchange(interchange)
+        .withOutboundConfig(outboundConfig)
         .withPubAuthChain(pubAuthChain)
         .withSubAuthChain(subAuthChain)
         .withPlugins(plugins);
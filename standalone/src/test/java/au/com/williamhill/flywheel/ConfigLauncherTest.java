@@ -11,6 +11,7 @@ import org.slf4j.*;
 import com.obsidiandynamics.socketx.*;
 import com.obsidiandynamics.socketx.util.*;
 
+import au.com.williamhill.flywheel.edge.*;
 import au.com.williamhill.flywheel.edge.auth.*;
 import au.com.williamhill.flywheel.edge.backplane.*;
 import au.com.williamhill.flywheel.edge.plugin.*;
@@ -38,6 +39,7 @@ public final class ConfigLauncherTest {
     .withServerConfig(new XServerConfig()
                       .withPort(SocketUtils.getAvailablePort(PORT))
                       .withServlets(new XMappedServlet("/health", HealthServlet.class)))
+    .withOutboundConfig(new OutboundConfig().withMaxQueuedFrames(1000).withOverflowPolicy(OverflowPolicy.CONFLATE))
     .withPubAuthChain(new PubAuthChain())
     .withSubAuthChain(new SubAuthChain())
     .withPlugins(Mockito.mock(Plugin.class))